@@ -0,0 +1,356 @@
+package se.pex.analyze;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A node in a {@link PlanTable}. All values are read from the table, the node itself only knows its index.
+ */
+class CompactNode extends Node {
+	/** The table. */
+	private final PlanTable table;
+
+	/** Index of the node in the table. */
+	private final int index;
+
+	/**
+	 * Creates a new facade.
+	 * @param table The table.
+	 * @param index Index of the node in the table.
+	 */
+	CompactNode(PlanTable table, int index) {
+		this.table = table;
+		this.index = index;
+	}
+
+	/**
+	 * @return The table.
+	 */
+	PlanTable getTable() {
+		return table;
+	}
+
+	/**
+	 * @param flag A flag.
+	 * @return <code>true</code> if the flag is set for this node.
+	 */
+	private boolean hasFlag(byte flag) {
+		return (table.flags[index] & flag) != 0;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getMainLine()
+	 */
+	@Override
+	public String getMainLine() {
+		return new String(table.text, table.lineStart[index], table.extraStart[index] - table.lineStart[index]);
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getMetrics()
+	 */
+	@Override
+	public Metrics getMetrics() {
+		Metrics m = new Metrics();
+		m.hasCost = hasFlag(PlanTable.HAS_COST);
+		m.startupCost = table.startupCost[index];
+		m.totalCost = table.totalCost[index];
+		m.planRows = table.planRows[index];
+		m.planWidth = table.planWidth[index];
+		m.hasTime = hasFlag(PlanTable.HAS_TIME);
+		m.startupTime = table.startupTime[index];
+		m.totalTime = table.totalTime[index];
+		m.actualRows = table.actualRows[index];
+		m.loops = table.loops[index];
+		m.isTrigger = hasFlag(PlanTable.IS_TRIGGER);
+		m.triggerTime = table.triggerTime[index];
+		m.triggerCalls = table.triggerCalls[index];
+		return m;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getLoopCount()
+	 */
+	@Override
+	public int getLoopCount() {
+		return hasFlag(PlanTable.HAS_TIME) ? table.loops[index] : 0;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getTimeInclusive(boolean)
+	 */
+	@Override
+	public float getTimeInclusive(boolean ignoreTriggers) {
+		if (hasFlag(PlanTable.HAS_TIME)) {
+			return table.inclusiveTime(index);
+		}
+		if (!ignoreTriggers && hasFlag(PlanTable.IS_TRIGGER)) {
+			return table.triggerTime[index];
+		}
+		return 0;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getParallelism()
+	 */
+	@Override
+	public int getParallelism() {
+		return table.parallelism[index];
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getTimeExclusive()
+	 */
+	@Override
+	public float getTimeExclusive() {
+		return table.timeExclusive[index];
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getSubtreeNodeCount()
+	 */
+	@Override
+	public int getSubtreeNodeCount() {
+		return table.subtreeNodeCount[index];
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getQError()
+	 */
+	@Override
+	public float getQError() {
+		return table.qError[index];
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getEstimateSource()
+	 */
+	@Override
+	public Node getEstimateSource() {
+		return table.getNode(table.estimateSource[index]);
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getReadBlocks()
+	 */
+	@Override
+	public long getReadBlocks() {
+		return table.readBlocks[index];
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getReadBlocksExclusive()
+	 */
+	@Override
+	public long getReadBlocksExclusive() {
+		return table.readBlocksExclusive[index];
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getReadTime()
+	 */
+	@Override
+	public float getReadTime() {
+		return table.readTime[index];
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getReadTimeExclusive()
+	 */
+	@Override
+	public float getReadTimeExclusive() {
+		return table.readTimeExclusive[index];
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getHeats()
+	 */
+	@Override
+	byte getHeats() {
+		return table.heat[index];
+	}
+
+	/**
+	 * The heat classes are calculated again for the whole table.
+	 * @see se.pex.analyze.Node#calculateHeat(se.pex.analyze.Heat)
+	 */
+	@Override
+	void calculateHeat(Heat settings) {
+		table.applyHeat(settings);
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getSubtreeMaxTimeExclusive()
+	 */
+	@Override
+	public float getSubtreeMaxTimeExclusive() {
+		return table.subtreeMaxTimeExclusive[index];
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getTotalTime()
+	 */
+	@Override
+	public float getTotalTime() {
+		return table.treeTotalTime;
+	}
+
+	/**
+	 * The table has no input lines.
+	 * @see se.pex.analyze.Node#getFirstLine()
+	 */
+	@Override
+	public int getFirstLine() {
+		return -1;
+	}
+
+	/**
+	 * The table has no input lines.
+	 * @see se.pex.analyze.Node#getSubtreeLastLine()
+	 */
+	@Override
+	public int getSubtreeLastLine() {
+		return -1;
+	}
+
+	/**
+	 * The table has no input lines.
+	 * @see se.pex.analyze.Node#findNodeContainingLines(int, int)
+	 */
+	@Override
+	public Node findNodeContainingLines(int first, int last) {
+		return null;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getParent()
+	 */
+	@Override
+	public Node getParent() {
+		return table.getNode(table.parent[index]);
+	}
+
+	/**
+	 * The children are read from the table when they are asked for, nothing is copied.
+	 * @see se.pex.analyze.Node#getChildren()
+	 */
+	@Override
+	public List<Node> getChildren() {
+		final int start = table.childStart[index];
+		final int count = table.childCount[index];
+		if (count == 0) {
+			return Collections.emptyList();
+		}
+		return new AbstractList<Node>() {
+			@Override
+			public Node get(int i) {
+				if (i < 0 || i >= count) {
+					throw new IndexOutOfBoundsException(String.valueOf(i));
+				}
+				return table.getNode(table.children[start + i]);
+			}
+
+			@Override
+			public int size() {
+				return count;
+			}
+		};
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#findSubPlanNode()
+	 */
+	@Override
+	public boolean findSubPlanNode() {
+		int end = table.childStart[index] + table.childCount[index];
+		for (int i = table.childStart[index]; i < end; i++) {
+			if (table.startsWith(table.children[i], "SubPlan")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getExtraInformation(int)
+	 */
+	@Override
+	public String getExtraInformation(int limitLength) {
+		StringBuilder res = new StringBuilder();
+		int end = table.textEnd(index);
+		int start = table.extraStart[index];
+		while (start < end) {
+			// Skip the line break before the line
+			start++;
+			int lineEnd = start;
+			while (lineEnd < end && table.text[lineEnd] != '\n') {
+				lineEnd++;
+			}
+			res.append(table.text, start, Math.min(lineEnd - start, limitLength)).append("\n");
+			start = lineEnd;
+		}
+		return res.toString().trim();
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getLines()
+	 */
+	@Override
+	List<String> getLines() {
+		return table.lines(index);
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getRowCountInfo()
+	 */
+	@Override
+	public RowCountInfo getRowCountInfo() {
+		if (hasFlag(PlanTable.HAS_TIME) && hasFlag(PlanTable.HAS_COST)) {
+			return new RowCountInfo(table.actualRows[index], table.planRows[index], table.loops[index]);
+		}
+		return new RowCountInfo(-1, -1, 0);
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#isExecuted()
+	 */
+	@Override
+	public boolean isExecuted() {
+		return !hasFlag(PlanTable.NEVER_EXECUTED);
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder res = new StringBuilder();
+		Deque<Integer> stack = new ArrayDeque<Integer>();
+		Deque<Integer> indentations = new ArrayDeque<Integer>();
+		stack.push(index);
+		indentations.push(0);
+		while (!stack.isEmpty()) {
+			int node = stack.pop();
+			int indentation = indentations.pop();
+			int end = table.textEnd(node);
+			int start = table.lineStart[node];
+			do {
+				int lineEnd = start;
+				while (lineEnd < end && table.text[lineEnd] != '\n') {
+					lineEnd++;
+				}
+				addIndentation(indentation, res).append(table.text, start, lineEnd - start).append("\n");
+				start = lineEnd + 1;
+			} while (start <= end);
+			// The children are pushed last first
+			for (int i = table.childStart[node] + table.childCount[node] - 1; i >= table.childStart[node]; i--) {
+				stack.push(table.children[i]);
+				indentations.push(indentation + 2);
+			}
+		}
+		return res.toString();
+	}
+}
@@ -2,23 +2,234 @@ package se.pex.analyze;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The part that analyzes the explain analyze text.
  */
 public class Engine {
+	/** Separates the psql header from the plan, only text after the last separator is analyzed. */
+	private static final String SEPARATOR = "----";
+
+	/** Largest number of bytes of plans analyzed by one task when a log is analyzed in parallel. */
+	private static final int BATCH_SIZE = 1024 * 1024;
+
+	/** Smallest number of tasks a log is split into, so that small logs also use several threads. */
+	private static final int MIN_BATCHES = 64;
+
 	/**
-	 * Creates a new node.
-	 * @param lines The lines to analyze.
-	 * @param index The line index that is currently being analyzed.
-	 * @param currentNode The current node.
-	 * @param indentation The indentation of the line.
-	 * @return A newly created node.
+	 * Reads the nodes one line at a time and hands them to a {@link NodeSink}, so that the input never has to be
+	 * kept in memory. The open nodes are kept on an explicit stack, so neither the depth nor the width of the plan
+	 * affects the call stack.
 	 */
-	private static Node createNode(String[] lines, int index, Node currentNode, int indentation) {
-		Node newNode = new Node(currentNode, trimLeft(lines[index]), indentation);
-		analyze(lines, index + 1, newNode, indentation);
-		return newNode;
+	private static class Parser {
+		/** Receives the nodes. */
+		private final NodeSink sink;
+
+		/** The root node, <code>-1</code> until the first line has been analyzed. */
+		private int root = -1;
+
+		/** The current node, which will become the parent of any new nodes under this. */
+		private int currentNode = -1;
+
+		/** The most recently created node, its main line is complete once another node is created. */
+		private int lastNode = -1;
+
+		/** The current node and its ancestors, the current node is last. */
+		private int[] openNodes = new int[16];
+
+		/** The indentations of the open nodes. */
+		private int[] openIndentations = new int[16];
+
+		/** Number of open nodes. */
+		private int openCount;
+
+		/** The current space indentation. */
+		private int indentation;
+
+		/** The indentation of the root node. */
+		private int rootIndentation;
+
+		/** A SubPlan node waiting for its first child, the child is always on the line after the SubPlan. */
+		private int subPlanNode = -1;
+
+		/** Set when the end of the plan has been found, the rest of the input is only checked for separators. */
+		private boolean done;
+
+		/** Index of the line being analyzed. */
+		private int lineNumber;
+
+		/** Cleared if the lines depend on anything outside of them, like a separator or a trigger attached to the root. */
+		private boolean selfContained = true;
+
+		/**
+		 * Creates a new parser.
+		 * @param firstLineNumber Index of the first line that will be analyzed.
+		 * @param sink Receives the nodes.
+		 */
+		private Parser(int firstLineNumber, NodeSink sink) {
+			lineNumber = firstLineNumber - 1;
+			this.sink = sink;
+		}
+
+		/**
+		 * Throws away everything analyzed so far.
+		 */
+		private void reset() {
+			selfContained = false;
+			root = -1;
+			currentNode = -1;
+			indentation = 0;
+			subPlanNode = -1;
+			lastNode = -1;
+			done = false;
+			openCount = 0;
+			sink.clear();
+		}
+
+		/**
+		 * Adds a node and parses the numbers of the previous one, as its main line is now complete.
+		 * @param parent The parent node, <code>-1</code> if there is none.
+		 * @param line The main line of the node.
+		 * @param newIndentation The indentation of the line.
+		 * @return The new node.
+		 */
+		private int addNode(int parent, String line, int newIndentation) {
+			if (lastNode >= 0) {
+				sink.parseMetrics(lastNode);
+			}
+			int node = sink.addNode(parent, line, newIndentation, lineNumber);
+			if (openCount == openNodes.length) {
+				openNodes = Arrays.copyOf(openNodes, openCount * 2);
+				openIndentations = Arrays.copyOf(openIndentations, openCount * 2);
+			}
+			openNodes[openCount] = node;
+			openIndentations[openCount++] = newIndentation;
+			lastNode = node;
+			return node;
+		}
+
+		/**
+		 * Pops open nodes until reaching a node with a smaller indentation, and makes that the current node.
+		 * @param newIndentation Indentation to look for.
+		 * @return The new current node, <code>-1</code> if there is none.
+		 */
+		private int popToIndentation(int newIndentation) {
+			while (openCount > 0 && openIndentations[openCount - 1] >= newIndentation) {
+				openCount--;
+			}
+			if (openCount == 0 && root >= 0) {
+				selfContained = false;
+			}
+			currentNode = openCount > 0 ? openNodes[openCount - 1] : -1;
+			return currentNode;
+		}
+
+		/**
+		 * Makes the root the only open node and the current node.
+		 * @return The root node.
+		 */
+		private int popToRoot() {
+			selfContained = false;
+			openNodes[0] = root;
+			openIndentations[0] = rootIndentation;
+			openCount = 1;
+			currentNode = root;
+			return root;
+		}
+
+		/**
+		 * Creates a new node and makes it the current node.
+		 * @param line The line describing the node.
+		 * @param parent The parent node, <code>-1</code> if there is none.
+		 * @param newIndentation The indentation of the line.
+		 */
+		private void createNode(String line, int parent, int newIndentation) {
+			currentNode = addNode(parent, trimLeft(line), newIndentation);
+			indentation = newIndentation;
+			if (root < 0) {
+				root = currentNode;
+				rootIndentation = newIndentation;
+			}
+		}
+
+		/**
+		 * Analyzes the next line of the input.
+		 * @param input The line to analyze.
+		 */
+		private void analyzeLine(String input) {
+			lineNumber++;
+			String line = input;
+			int separator = line.lastIndexOf(SEPARATOR);
+			if (separator > -1) {
+				reset();
+				// The character after the separator is skipped, normally that is the line break
+				int start = separator + SEPARATOR.length() + 1;
+				if (start > line.length()) {
+					return;
+				}
+				line = line.substring(start);
+			}
+			if (done) {
+				return;
+			}
+			if (subPlanNode >= 0) {
+				int parent = subPlanNode;
+				subPlanNode = -1;
+				createNode(line, parent, getIndentation(line));
+				return;
+			}
+			String trimmed = line.trim();
+			if (trimmed.startsWith("---")) {
+				return;
+			}
+			if (trimmed.contains("Total runtime")) {
+				done = true;
+				selfContained = false;
+			}
+			else if (trimmed.startsWith("->")) {
+				// Count number of space, if same as indentation, then use parent node instead
+				int newIndentation = getIndentation(line);
+				createNode(line, popToIndentation(newIndentation), newIndentation);
+			}
+			else if (currentNode < 0) {
+				createNode(line, -1, indentation);
+			}
+			else if (trimmed.startsWith("SubPlan")) {
+				int subplanIndentation = getIndentation(line);
+				subPlanNode = addNode(popToIndentation(subplanIndentation), trimmed, subplanIndentation);
+			}
+			else if (trimmed.startsWith("Trigger for")) {
+				createNode(line, popToRoot(), 0);
+			}
+			else if (getIndentation(line) <= indentation) {
+				sink.appendToLastLine(currentNode, line);
+				sink.setLastLine(currentNode, lineNumber);
+			}
+			else {
+				sink.addLine(currentNode, trimmed);
+				sink.setLastLine(currentNode, lineNumber);
+			}
+		}
+
+		/**
+		 * @return The root node in the resulting tree.
+		 */
+		private Node getRoot() {
+			if (lastNode >= 0) {
+				sink.parseMetrics(lastNode);
+			}
+			return sink.getRoot();
+		}
 	}
 
 	/**
@@ -38,67 +249,13 @@ public class Engine {
 	}
 
 	/**
-	 * Analyzes the input, line by line.
-	 * @param lines The lines to analyze.
-	 * @param index The index of the first line to analyze.
-	 * @param currentNode The current node, which will become the parent of any new nodes under this.
-	 * @param indentation The current space indentation.
-	 * @return A new node.
-	 */
-	private static Node analyze(String[] lines, int index, Node currentNode, int indentation) {
-		for (int i = index; i < lines.length; i++) {
-			String trimmed = trimLeft(lines[i]);
-			trimmed = lines[i].trim();
-			if (!trimmed.startsWith("---")) {
-				if (trimmed.contains("Total runtime")) {
-					return null;
-				}
-				if (trimmed.startsWith("->")) {
-					// Count number of space, if same as indentation, then use parent node instead
-					int newIndentation = getIndentation(lines, i);
-					currentNode = currentNode.walkToIndentation(newIndentation);
-					return createNode(lines, i, currentNode, newIndentation);
-				}
-				else if (currentNode == null) {
-					return createNode(lines, i, currentNode, indentation);
-				}
-				else {
-					if (trimmed.startsWith("SubPlan")) {
-						final String subplan = trimmed;
-						trimmed = lines[i + 1].trim();
-						int subplanIndentation = getIndentation(lines, i);
-						currentNode = currentNode.walkToIndentation(subplanIndentation);
-						final Node subPlanNode = new Node(currentNode, subplan, subplanIndentation);
-						createNode(lines, i + 1, subPlanNode, getIndentation(lines, i + 1));
-						return subPlanNode;
-					}
-					else if (trimmed.startsWith("Trigger for")) {
-						while (currentNode.getParent() != null) {
-							currentNode = currentNode.getParent();
-						}
-						return createNode(lines, i, currentNode, 0);
-					}
-					else if (currentNode != null && getIndentation(lines, i) <= indentation) {
-						currentNode.appendToLastLine(lines[i]);
-					}
-					else {
-						currentNode.addLine(trimmed);
-					}
-				}
-			}
-		}
-		return null;
-	}
-
-	/**
-	 * Get the number of spaces of the current line, spaces are used to determine whether a node is a subnode or not.
-	 * @param lines The lines to analyze.
-	 * @param i The line index to get indentation for.
+	 * Get the number of spaces of a line, spaces are used to determine whether a node is a subnode or not.
+	 * @param line The line to get indentation for.
 	 * @return The number of spaces of the line.
 	 */
-	private static int getIndentation(String[] lines, int i) {
+	private static int getIndentation(String line) {
 		int newIndentation = 0;
-		while (lines[i].length() > newIndentation && lines[i].charAt(newIndentation) == ' ') {
+		while (line.length() > newIndentation && line.charAt(newIndentation) == ' ') {
 			newIndentation++;
 		}
 		return newIndentation;
@@ -110,27 +267,249 @@ public class Engine {
 	 * @return The root node in the resulting tree.
 	 */
 	public static Node analyze(String text) {
-		String input = text;
-		if (text.lastIndexOf("----") > -1) {
-			input = text.substring(text.lastIndexOf("----") + 5);
+		try {
+			return analyze(new BufferedReader(new StringReader(text)));
+		}
+		catch (IOException e) {
+			// Reading from a string never fails
+			throw new IllegalStateException(e);
 		}
-		return analyze(input.split("\n"), 0, null, 0);
 	}
 
 	/**
 	 * Analyzes and creates a node tree of all the data from the explain.
-	 * @param stream The explain as given by psql.
+	 * The stream is analyzed without reading all of it into memory. The format is detected from the first
+	 * characters that are not whitespace, JSON starts with a bracket, XML with <code>&lt;</code> and YAML with a dash
+	 * and a space. Anything else is analyzed as text.
+	 * @param stream The explain as given by psql, in text, JSON, XML or YAML format.
 	 * @return The root node in the resulting tree.
 	 * @throws IOException On error reading from the stream.
 	 */
 	public static Node analyze(BufferedReader stream) throws IOException {
-		StringBuilder text = new StringBuilder();
+		return analyze(stream, new TreeNode.Builder());
+	}
+
+	/**
+	 * Analyzes an explain like {@link #analyze(BufferedReader)}, but writes the nodes straight into a
+	 * {@link PlanTable} while they are read, so that no node objects are created for huge plans. The tree has no
+	 * input lines and can not be analyzed again in parts.
+	 * @param stream The explain as given by psql, in text, JSON, XML or YAML format.
+	 * @return The root node in the resulting tree.
+	 * @throws IOException On error reading from the stream.
+	 */
+	public static Node analyzeCompact(BufferedReader stream) throws IOException {
+		return analyze(stream, new PlanTable.Builder());
+	}
+
+	/**
+	 * Detects the format and analyzes the explain.
+	 * @param stream The explain as given by psql, in text, JSON, XML or YAML format.
+	 * @param sink Receives the nodes.
+	 * @return The root node in the resulting tree.
+	 * @throws IOException On error reading from the stream.
+	 */
+	private static Node analyze(BufferedReader stream, NodeSink sink) throws IOException {
+		int blankLines = 0;
+		int first;
+		int second = -1;
+		do {
+			stream.mark(2);
+			first = stream.read();
+			if (first == '\n') {
+				blankLines++;
+			}
+		} while (first != -1 && Character.isWhitespace(first));
+		if (first != -1) {
+			second = stream.read();
+			stream.reset();
+		}
+		if (first == '[' || first == '{') {
+			return JsonPlanParser.parse(stream, sink);
+		}
+		if (first == '<') {
+			return XmlPlanParser.parse(stream, sink);
+		}
+		if (isYaml(first, second)) {
+			return YamlPlanParser.parse(stream, sink);
+		}
+		Parser parser = new Parser(blankLines, sink);
 		String line = stream.readLine();
 		while (line != null) {
-			text.append(line).append("\n");
+			parser.analyzeLine(line);
 			line = stream.readLine();
 		}
-		return analyze(text.toString());
+		return parser.getRoot();
+	}
+
+	/**
+	 * Analyzes all plans of a log in parallel.
+	 * @param log The indexed log.
+	 * @param threads Number of threads to use.
+	 * @return The root nodes of the plans, in the order of the log.
+	 * @throws IOException On error reading the log, or if the thread is interrupted.
+	 */
+	public static List<Node> analyzeAll(PlanLog log, int threads) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			return analyzeAll(log, executor);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Analyzes all plans of a log in parallel. The plans are split into batches of plans that follow each other
+	 * in the file, every batch is read with one read and analyzed by one task. The plans are independent, so
+	 * the tasks share nothing but the log index.
+	 * @param log The indexed log.
+	 * @param executor Runs the tasks.
+	 * @return The root nodes of the plans, in the order of the log.
+	 * @throws IOException On error reading the log, or if the thread is interrupted.
+	 */
+	public static List<Node> analyzeAll(final PlanLog log, ExecutorService executor) throws IOException {
+		long total = 0;
+		for (int i = 0; i < log.size(); i++) {
+			total += log.getEntry(i).getLength();
+		}
+		long batchSize = Math.min(BATCH_SIZE, total / MIN_BATCHES);
+		List<Future<List<Node>>> batches = new ArrayList<Future<List<Node>>>();
+		int first = 0;
+		while (first < log.size()) {
+			int end = first;
+			long size = 0;
+			do {
+				size += log.getEntry(end++).getLength();
+			} while (end < log.size() && size < batchSize);
+			final int batchFirst = first;
+			final int batchEnd = end;
+			batches.add(executor.submit(new Callable<List<Node>>() {
+				@Override
+				public List<Node> call() throws IOException {
+					List<Node> roots = new ArrayList<Node>(batchEnd - batchFirst);
+					for (String text : log.getPlanTexts(batchFirst, batchEnd)) {
+						roots.add(analyze(text));
+					}
+					return roots;
+				}
+			}));
+			first = end;
+		}
+		List<Node> roots = new ArrayList<Node>(log.size());
+		try {
+			for (Future<List<Node>> batch : batches) {
+				roots.addAll(batch.get());
+			}
+		}
+		catch (InterruptedException e) {
+			cancel(batches);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch (ExecutionException e) {
+			cancel(batches);
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw (RuntimeException) e.getCause();
+		}
+		return roots;
+	}
+
+	/**
+	 * Cancels the tasks that are not done.
+	 * @param tasks The tasks.
+	 */
+	private static void cancel(List<? extends Future<?>> tasks) {
+		for (Future<?> task : tasks) {
+			task.cancel(true);
+		}
+	}
+
+	/**
+	 * Analyzes the changed part of an explain again, and replaces the affected subtree in the tree of the old text.
+	 * Nodes outside of the affected subtree are kept as they are.
+	 * @param root The root of the tree analyzed from the text before the change.
+	 * @param firstLine Index of the first changed line, before the change.
+	 * @param lastLine Index of the last changed line, before the change.
+	 * @param lineDelta Number of lines added by the change, negative if lines were removed.
+	 * @param text The text after the change.
+	 * @return The root of the new subtree, or <code>null</code> if the change can not be handled without analyzing the whole text.
+	 */
+	public static Node reanalyze(Node root, int firstLine, int lastLine, int lineDelta, LineSource text) {
+		for (int i = 0; i < text.getLineCount(); i++) {
+			String trimmed = text.getLine(i).trim();
+			if (trimmed.length() > 0) {
+				char first = trimmed.charAt(0);
+				if (first == '[' || first == '{' || first == '<' || isYaml(first, trimmed.length() > 1 ? trimmed.charAt(1) : -1)) {
+					// Lines can only be analyzed on their own in the text format
+					return null;
+				}
+				break;
+			}
+		}
+		if (!(root instanceof TreeNode)) {
+			// A compact tree has no input lines
+			return null;
+		}
+		TreeNode node = ((TreeNode) root).findNodeContainingLines(firstLine, lastLine);
+		if (node == null || node.getParent() == null || !node.getMainLine().startsWith("->")) {
+			return null;
+		}
+		int start = node.getFirstLine();
+		int oldEnd = node.getSubtreeLastLine();
+		int newEnd = oldEnd + lineDelta;
+		if (newEnd < start || newEnd >= text.getLineCount()) {
+			return null;
+		}
+		TreeNode.Builder nodes = new TreeNode.Builder();
+		Parser parser = new Parser(start, nodes);
+		for (int i = start; i <= newEnd; i++) {
+			parser.analyzeLine(text.getLine(i));
+		}
+		if (!parser.selfContained || parser.subPlanNode >= 0 || parser.root < 0) {
+			return null;
+		}
+		TreeNode replacement = nodes.getNode(parser.root);
+		if (replacement.getIndentation() != node.getIndentation() || !replacement.getMainLine().startsWith("->")) {
+			return null;
+		}
+		if (newEnd + 1 < text.getLineCount() && !isSubtreeEnd(text.getLine(newEnd + 1), node.getIndentation())) {
+			return null;
+		}
+		nodes.parseMetrics(parser.lastNode);
+		if (lineDelta != 0) {
+			// Edits within a line, the common case while typing, leave the line numbers as they are
+			((TreeNode) root).shiftLines(oldEnd, lineDelta);
+		}
+		node.getParent().replaceChild(node, replacement);
+		return replacement;
+	}
+
+	/**
+	 * @param first The first character of the explain that is not whitespace.
+	 * @param second The character after the first, <code>-1</code> if there is none.
+	 * @return <code>true</code> if the explain is in YAML format, which starts with a list item.
+	 */
+	private static boolean isYaml(int first, int second) {
+		return first == '-' && (second == ' ' || second == '\n' || second == '\r');
+	}
+
+	/**
+	 * Checks if a line ends a subtree no matter what the subtree contains.
+	 * @param line The line after the subtree.
+	 * @param subtreeIndentation The indentation of the root of the subtree.
+	 * @return <code>true</code> if the line is not added to any node in the subtree.
+	 */
+	private static boolean isSubtreeEnd(String line, int subtreeIndentation) {
+		String trimmed = line.trim();
+		if (trimmed.startsWith("->") || trimmed.startsWith("SubPlan")) {
+			return getIndentation(line) <= subtreeIndentation;
+		}
+		return trimmed.startsWith("Trigger for") || trimmed.contains("Total runtime") || line.contains(SEPARATOR);
 	}
 
 }
@@ -0,0 +1,363 @@
+package se.pex.analyze;
+
+import java.util.List;
+
+/**
+ * The heat classes of the nodes, how much of the execution time a node takes, how bad its row estimate is and how
+ * many of the blocks of the plan it reads.
+ * The classes of all mark modes are calculated once when the aggregates of a tree are calculated, and packed in
+ * a byte per node with two bits per mode, so that coloring a node is a single lookup.
+ * The levels where a node becomes a little bad, pretty bad and bad are given on one of the {@link Scale}s, and
+ * turned into times and row estimate ratios for a tree in one pass over the nodes.
+ */
+public final class Heat {
+	/** Nothing to mark. */
+	public static final int NONE = 0;
+	/** A little bad. */
+	public static final int LOW = 1;
+	/** Pretty bad. */
+	public static final int MEDIUM = 2;
+	/** Bad. */
+	public static final int HIGH = 3;
+
+	/** Position of the class based on exclusive times. */
+	public static final int EXCLUSIVE = 0;
+	/** Position of the class based on inclusive times. */
+	public static final int INCLUSIVE = 2;
+	/** Position of the class based on row estimates. */
+	public static final int COUNT = 4;
+	/** Position of the class based on blocks read exclusive child nodes. */
+	public static final int IO = 6;
+
+	/** The scales the levels can be given on. */
+	public enum Scale {
+		/** Time levels in percent of the total time, row estimate levels as ratios, read levels in percent of the blocks read. */
+		Fixed,
+		/** Time levels in milliseconds, row estimate levels as ratios, read levels in percent of the blocks read. */
+		Absolute,
+		/** All levels as percentiles of the values of the nodes of the tree. */
+		Percentile;
+
+		/**
+		 * Returns the scale from its name.
+		 * @param name Name of the scale to look for.
+		 * @return The scale.
+		 */
+		public static Scale getScale(String name) {
+			for (Scale scale : Scale.values()) {
+				if (scale.name().equalsIgnoreCase(name)) {
+					return scale;
+				}
+			}
+			throw new IllegalArgumentException("No such scale: " + name);
+		}
+	}
+
+	/**
+	 * The levels of a tree, as times, row estimate ratios and blocks.
+	 */
+	static class Levels {
+		/** Exclusive times where the classes start. */
+		private final float[] exclusive;
+
+		/** Inclusive times where the classes start. */
+		private final float[] inclusive;
+
+		/** Row estimate ratios where the classes start. */
+		private final float[] count;
+
+		/** Blocks read where the classes start. */
+		private final float[] io;
+
+		/** <code>true</code> if a value equal to a level is in the class, otherwise it has to be larger. */
+		private final boolean atLeast;
+
+		/**
+		 * Creates new levels, each array has the low, medium and high level.
+		 * @param exclusive Exclusive times where the classes start.
+		 * @param inclusive Inclusive times where the classes start.
+		 * @param count Row estimate ratios where the classes start.
+		 * @param io Blocks read where the classes start.
+		 * @param atLeast <code>true</code> if a value equal to a level is in the class.
+		 */
+		Levels(float[] exclusive, float[] inclusive, float[] count, float[] io, boolean atLeast) {
+			this.exclusive = exclusive;
+			this.inclusive = inclusive;
+			this.count = count;
+			this.io = io;
+			this.atLeast = atLeast;
+		}
+
+		/**
+		 * Calculates the heat classes of a node.
+		 * @param timeExclusive The execution time exclusive child nodes.
+		 * @param timeInclusive The execution time inclusive child nodes.
+		 * @param estimate The q-error of the row estimate.
+		 * @param readBlocks Blocks read exclusive child nodes.
+		 * @return The heat classes of all modes.
+		 */
+		byte classify(float timeExclusive, float timeInclusive, float estimate, long readBlocks) {
+			int heat = level(timeExclusive, exclusive) << EXCLUSIVE;
+			heat |= level(timeInclusive, inclusive) << INCLUSIVE;
+			heat |= level(estimate, count) << COUNT;
+			heat |= level(readBlocks, io) << IO;
+			return (byte) heat;
+		}
+
+		/**
+		 * @param value A value of a node.
+		 * @param levels The low, medium and high level.
+		 * @return The heat class of the value.
+		 */
+		private int level(float value, float[] levels) {
+			if (value <= 0) {
+				return NONE;
+			}
+			for (int i = HIGH; i > NONE; i--) {
+				if (value > levels[i - 1] || (atLeast && value == levels[i - 1])) {
+					return i;
+				}
+			}
+			return NONE;
+		}
+	}
+
+	/**
+	 * The default levels, 10, 50 and 90 percent of the total time and of the blocks read, and row estimates off by
+	 * 10, 100 and 1000 times.
+	 */
+	private static final Heat FIXED = new Heat(Scale.Fixed, new float[] { 10, 50, 90 }, new float[] { 10, 100, 1000 },
+		new float[] { 10, 50, 90 });
+
+	/** The levels used for trees that are analyzed. */
+	private static volatile Heat defaultHeat = FIXED;
+
+	/** The scale of the levels. */
+	private final Scale scale;
+
+	/** The low, medium and high level of the times. */
+	private final float[] timeLevels;
+
+	/** The low, medium and high level of the row estimates. */
+	private final float[] countLevels;
+
+	/** The low, medium and high level of the blocks read. */
+	private final float[] ioLevels;
+
+	/**
+	 * Creates new levels.
+	 * @param scale The scale of the levels.
+	 * @param timeLevels The low, medium and high level of the times, in percent of the total time, in
+	 * milliseconds or as percentiles.
+	 * @param countLevels The low, medium and high level of the row estimates, as ratios or as percentiles.
+	 * @param ioLevels The low, medium and high level of the blocks read, in percent of the blocks read by the tree
+	 * or as percentiles.
+	 */
+	public Heat(Scale scale, float[] timeLevels, float[] countLevels, float[] ioLevels) {
+		this.scale = scale;
+		this.timeLevels = timeLevels.clone();
+		this.countLevels = countLevels.clone();
+		this.ioLevels = ioLevels.clone();
+	}
+
+	/**
+	 * @return The levels used for trees that are analyzed.
+	 */
+	public static Heat getDefault() {
+		return defaultHeat;
+	}
+
+	/**
+	 * Sets the levels used for trees that are analyzed from now on, trees that have already been analyzed are
+	 * updated with {@link #apply(Node)}.
+	 * @param heat The levels.
+	 */
+	public static void setDefault(Heat heat) {
+		defaultHeat = heat;
+	}
+
+	/**
+	 * @return The scale of the levels.
+	 */
+	public Scale getScale() {
+		return scale;
+	}
+
+	/**
+	 * @param mode The position of a mode, {@link #EXCLUSIVE}, {@link #INCLUSIVE}, {@link #COUNT} or {@link #IO}.
+	 * @return The low, medium and high level of the mode, on the scale of the levels.
+	 */
+	public float[] getLevels(int mode) {
+		switch (mode) {
+			case COUNT:
+				return countLevels.clone();
+			case IO:
+				return ioLevels.clone();
+			default:
+				return timeLevels.clone();
+		}
+	}
+
+	/**
+	 * Reads levels written as three ascending numbers separated by commas, like <code>10,50,90</code>.
+	 * @param text The levels.
+	 * @return The low, medium and high level.
+	 * @throws IllegalArgumentException If the text is not three ascending numbers.
+	 */
+	public static float[] parseLevels(String text) {
+		String[] parts = text.split(",");
+		if (parts.length != 3) {
+			throw new IllegalArgumentException("Three levels expected: " + text);
+		}
+		float[] levels = new float[3];
+		for (int i = 0; i < 3; i++) {
+			levels[i] = Float.parseFloat(parts[i].trim());
+			if (levels[i] < 0 || (i > 0 && levels[i] < levels[i - 1])) {
+				throw new IllegalArgumentException("Levels must be ascending: " + text);
+			}
+		}
+		return levels;
+	}
+
+	/**
+	 * Calculates the heat classes of all nodes of a tree again with these levels.
+	 * @param root The root of the tree.
+	 */
+	public void apply(Node root) {
+		root.calculateHeat(this);
+	}
+
+	/**
+	 * Turns the levels into times, row estimate ratios and blocks for a tree.
+	 * @param nodes All nodes of the tree.
+	 * @param totalTime The total execution time of the tree.
+	 * @param totalReads The blocks read by the tree.
+	 * @return The levels of the tree.
+	 */
+	Levels resolve(List<? extends Node> nodes, float totalTime, long totalReads) {
+		if (scale != Scale.Percentile) {
+			return resolve(null, null, null, null, totalTime, totalReads);
+		}
+		float[] exclusive = new float[nodes.size()];
+		float[] inclusive = new float[nodes.size()];
+		float[] count = new float[nodes.size()];
+		float[] reads = new float[nodes.size()];
+		for (int i = 0; i < nodes.size(); i++) {
+			Node node = nodes.get(i);
+			exclusive[i] = node.getTimeExclusive();
+			inclusive[i] = node.getTimeInclusive(true);
+			count[i] = node.getQError();
+			reads[i] = node.getReadBlocksExclusive();
+		}
+		return resolve(exclusive, inclusive, count, reads, totalTime, totalReads);
+	}
+
+	/**
+	 * Turns the levels into times, row estimate ratios and blocks for a tree. The arrays are only needed on the
+	 * percentile scale, and are reordered.
+	 * @param exclusive The exclusive times of the nodes.
+	 * @param inclusive The inclusive times of the nodes.
+	 * @param count The q-errors of the row estimates of the nodes.
+	 * @param reads The exclusive blocks read of the nodes.
+	 * @param totalTime The total execution time of the tree.
+	 * @param totalReads The blocks read by the tree.
+	 * @return The levels of the tree.
+	 */
+	Levels resolve(float[] exclusive, float[] inclusive, float[] count, float[] reads, float totalTime, long totalReads) {
+		switch (scale) {
+			case Fixed:
+				float[] times = share(timeLevels, totalTime);
+				return new Levels(times, times, countLevels, share(ioLevels, totalReads), false);
+			case Absolute:
+				return new Levels(timeLevels, timeLevels, countLevels, share(ioLevels, totalReads), false);
+			default:
+				return new Levels(percentiles(exclusive, timeLevels), percentiles(inclusive, timeLevels),
+					percentiles(count, countLevels), percentiles(reads, ioLevels), true);
+		}
+	}
+
+	/**
+	 * @param percents The low, medium and high level in percent.
+	 * @param total The value of the whole tree.
+	 * @return The levels as parts of the total.
+	 */
+	private static float[] share(float[] percents, float total) {
+		float[] res = new float[3];
+		for (int i = 0; i < 3; i++) {
+			res[i] = percents[i] / 100 * total;
+		}
+		return res;
+	}
+
+	/**
+	 * @param values The values of the nodes, which are reordered.
+	 * @param percentiles The low, medium and high percentile.
+	 * @return The values at the percentiles.
+	 */
+	private static float[] percentiles(float[] values, float[] percentiles) {
+		float[] res = new float[3];
+		if (values.length == 0) {
+			return res;
+		}
+		// The highest percentile first, so the later selections only have to look below it
+		int end = values.length;
+		for (int i = 2; i >= 0; i--) {
+			int rank = (int) Math.ceil(percentiles[i] / 100 * values.length) - 1;
+			rank = Math.max(0, Math.min(rank, end - 1));
+			res[i] = select(values, 0, end, rank);
+			end = rank + 1;
+		}
+		return res;
+	}
+
+	/**
+	 * Finds the value that would be at a position if the values were sorted, in linear time on average. The
+	 * values are reordered so that no value before the position is larger and no value after it is smaller.
+	 * @param values The values.
+	 * @param start The start of the range to look in.
+	 * @param end The end of the range to look in.
+	 * @param k The position, in the range.
+	 * @return The value.
+	 */
+	static float select(float[] values, int start, int end, int k) {
+		int left = start;
+		int right = end - 1;
+		while (left < right) {
+			float pivot = values[(left + right) >>> 1];
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (values[i] < pivot) {
+					i++;
+				}
+				while (values[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					float swap = values[i];
+					values[i++] = values[j];
+					values[j--] = swap;
+				}
+			}
+			if (k <= j) {
+				right = j;
+			}
+			else if (k >= i) {
+				left = i;
+			}
+			else {
+				break;
+			}
+		}
+		return values[k];
+	}
+
+	/**
+	 * @param heat The heat classes of all modes of a node.
+	 * @param mode The position of a mode, {@link #EXCLUSIVE}, {@link #INCLUSIVE}, {@link #COUNT} or {@link #IO}.
+	 * @return The heat class of the mode.
+	 */
+	static int get(byte heat, int mode) {
+		return (heat >> mode) & 3;
+	}
+}
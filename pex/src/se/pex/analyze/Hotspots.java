@@ -0,0 +1,183 @@
+package se.pex.analyze;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Where the time of a plan goes: the hottest path from the root to a leaf, and the nodes with the largest
+ * exclusive times in order. Calculated once when a plan has been analyzed, so that moving from one hotspot to
+ * the next does not search the tree.
+ */
+public class Hotspots {
+	/** Max number of nodes ranked, nobody steps through more hotspots than this. */
+	static final int MAX_HOTSPOTS = 1000;
+
+	/** Orders nodes with the smallest exclusive time first. */
+	private static final Comparator<Node> COLDEST_FIRST = new Comparator<Node>() {
+		@Override
+		public int compare(Node n1, Node n2) {
+			return Float.compare(n1.getTimeExclusive(), n2.getTimeExclusive());
+		}
+	};
+
+	/** The nodes with the largest exclusive times, the hottest first. */
+	private final Node[] nodes;
+
+	/** The exclusive times of the nodes, in falling order. */
+	private final float[] times;
+
+	/** The position of every ranked node. */
+	private final Map<Node, Integer> positions;
+
+	/** The hottest path, from the root to a leaf. */
+	private final List<Node> criticalPath;
+
+	/**
+	 * Creates new hotspots.
+	 * @param ranked The nodes with the largest exclusive times, the hottest first.
+	 * @param criticalPath The hottest path, from the root to a leaf.
+	 */
+	Hotspots(List<Node> ranked, List<Node> criticalPath) {
+		this.criticalPath = Collections.unmodifiableList(criticalPath);
+		nodes = ranked.toArray(new Node[ranked.size()]);
+		times = new float[nodes.length];
+		positions = new IdentityHashMap<Node, Integer>(nodes.length * 2);
+		for (int i = 0; i < nodes.length; i++) {
+			times[i] = nodes[i].getTimeExclusive();
+			positions.put(nodes[i], i);
+		}
+	}
+
+	/**
+	 * Finds the hotspots of a tree.
+	 * @param root The root of the tree.
+	 * @return The hotspots.
+	 */
+	public static Hotspots calculate(Node root) {
+		if (root instanceof CompactNode) {
+			return ((CompactNode) root).getTable().hotspots(MAX_HOTSPOTS);
+		}
+		PriorityQueue<Node> hottest = new PriorityQueue<Node>(MAX_HOTSPOTS + 1, COLDEST_FIRST);
+		List<Node> stack = new ArrayList<Node>();
+		stack.add(root);
+		while (!stack.isEmpty()) {
+			Node node = stack.remove(stack.size() - 1);
+			float time = node.getTimeExclusive();
+			if (time > 0 && (hottest.size() < MAX_HOTSPOTS || time > hottest.peek().getTimeExclusive())) {
+				hottest.add(node);
+				if (hottest.size() > MAX_HOTSPOTS) {
+					hottest.poll();
+				}
+			}
+			stack.addAll(node.getChildren());
+		}
+		List<Node> ranked = new ArrayList<Node>(hottest.size());
+		while (!hottest.isEmpty()) {
+			ranked.add(hottest.poll());
+		}
+		Collections.reverse(ranked);
+
+		List<Node> path = new ArrayList<Node>();
+		for (Node node = root; node != null; node = hottestChild(node)) {
+			path.add(node);
+		}
+		return new Hotspots(ranked, path);
+	}
+
+	/**
+	 * @param node A node.
+	 * @return The child with the largest inclusive time, <code>null</code> if the node has no children.
+	 */
+	private static Node hottestChild(Node node) {
+		Node hottest = null;
+		for (Node child : node.getChildren()) {
+			if (hottest == null || child.getTimeInclusive(true) > hottest.getTimeInclusive(true)) {
+				hottest = child;
+			}
+		}
+		return hottest;
+	}
+
+	/**
+	 * @return The hottest path, from the root to a leaf.
+	 */
+	public List<Node> getCriticalPath() {
+		return criticalPath;
+	}
+
+	/**
+	 * @return Number of ranked nodes.
+	 */
+	public int size() {
+		return nodes.length;
+	}
+
+	/**
+	 * @param index The rank of the node, <code>0</code> for the hottest.
+	 * @return The node.
+	 */
+	public Node get(int index) {
+		return nodes[index];
+	}
+
+	/**
+	 * Finds the hotspot after a node.
+	 * @param current The node to start from, <code>null</code> to start from the top.
+	 * @return The next colder hotspot, <code>null</code> if there is none.
+	 */
+	public Node next(Node current) {
+		int index;
+		if (current == null) {
+			index = 0;
+		}
+		else {
+			Integer position = positions.get(current);
+			index = position != null ? position + 1 : firstColder(current.getTimeExclusive());
+		}
+		return index < nodes.length ? nodes[index] : null;
+	}
+
+	/**
+	 * Finds the hotspot before a node.
+	 * @param current The node to start from, <code>null</code> to start from the bottom.
+	 * @return The next hotter hotspot, <code>null</code> if there is none.
+	 */
+	public Node previous(Node current) {
+		int index;
+		if (current == null) {
+			index = nodes.length - 1;
+		}
+		else {
+			Integer position = positions.get(current);
+			// Without a position, the last node that is hotter than the current node
+			index = position != null ? position - 1 : firstColder(Math.nextUp(current.getTimeExclusive())) - 1;
+		}
+		return index >= 0 ? nodes[index] : null;
+	}
+
+	/**
+	 * Binary search for nodes that are not ranked, like nodes too cold to be ranked or nodes analyzed again after
+	 * an edit.
+	 * @param time An exclusive time.
+	 * @return The position of the first node with a smaller time than the given time.
+	 */
+	private int firstColder(float time) {
+		int low = 0;
+		int high = nodes.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (times[mid] >= time) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
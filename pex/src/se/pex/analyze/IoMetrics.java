@@ -0,0 +1,285 @@
+package se.pex.analyze;
+
+import java.util.List;
+
+/**
+ * The numbers on the buffer and I/O timing lines of a node, like
+ * <pre>
+ * Buffers: shared hit=12 read=3 dirtied=1, temp read=5 written=7
+ * I/O Timings: read=0.512 write=0.100
+ * </pre>
+ * The I/O Timings line of PostgreSQL 16 and later, like <code>I/O Timings: shared read=0.512, temp read=0.1</code>,
+ * is added up over the kinds of buffers. Like the times, the numbers include the child nodes.
+ */
+public class IoMetrics {
+	/** Start of the buffers line. */
+	static final String BUFFERS = "Buffers:";
+	/** Start of the I/O timings line. */
+	static final String IO_TIMINGS = "I/O Timings:";
+	/** Ends the line that starts the buffers used by the planner, which are not part of any node. */
+	private static final String PLANNING = "Planning:";
+
+	/** Metrics of a node without buffer lines. */
+	static final IoMetrics EMPTY = new IoMetrics();
+
+	/** Shared blocks found in the cache. */
+	long sharedHit;
+	/** Shared blocks read. */
+	long sharedRead;
+	/** Shared blocks dirtied. */
+	long sharedDirtied;
+	/** Shared blocks written. */
+	long sharedWritten;
+	/** Local blocks found in the cache. */
+	long localHit;
+	/** Local blocks read. */
+	long localRead;
+	/** Local blocks dirtied. */
+	long localDirtied;
+	/** Local blocks written. */
+	long localWritten;
+	/** Temporary blocks read. */
+	long tempRead;
+	/** Temporary blocks written. */
+	long tempWritten;
+
+	/** Time spent reading blocks in milliseconds. */
+	float readTime;
+	/** Time spent writing blocks in milliseconds. */
+	float writeTime;
+
+	/**
+	 * Scans the lines of a node.
+	 * @param mainLine The main line of the node, which may have the buffer lines appended to it.
+	 * @param lines The extra lines of the node.
+	 * @return The metrics of the lines, {@link #EMPTY} if there are no buffer or I/O timing lines.
+	 */
+	static IoMetrics parse(String mainLine, List<String> lines) {
+		IoMetrics metrics = null;
+		boolean planning = mainLine.endsWith(PLANNING);
+		for (String line : lines) {
+			if (!planning && (line.startsWith(BUFFERS) || line.startsWith(IO_TIMINGS))) {
+				if (metrics == null) {
+					metrics = new IoMetrics();
+				}
+				metrics.scan(line);
+			}
+			planning = line.endsWith(PLANNING);
+		}
+		if (mainLine.contains(BUFFERS) || mainLine.contains(IO_TIMINGS)) {
+			if (metrics == null) {
+				metrics = new IoMetrics();
+			}
+			metrics.scan(mainLine);
+		}
+		return metrics != null ? metrics : EMPTY;
+	}
+
+	/**
+	 * Scans the buffer and I/O timing parts of a line.
+	 * @param line The line.
+	 */
+	private void scan(String line) {
+		int buffers = line.indexOf(BUFFERS);
+		int timings = line.indexOf(IO_TIMINGS);
+		if (buffers >= 0) {
+			scan(line, buffers + BUFFERS.length(), timings > buffers ? timings : line.length(), false);
+		}
+		if (timings >= 0) {
+			scan(line, timings + IO_TIMINGS.length(), buffers > timings ? buffers : line.length(), true);
+		}
+	}
+
+	/**
+	 * Scans the values of a line, like <code>shared hit=12 read=3, temp read=5</code>.
+	 * @param line The line.
+	 * @param start Position after the start of the line.
+	 * @param end Position after the values.
+	 * @param timings <code>true</code> for the I/O timings, <code>false</code> for the buffers.
+	 */
+	private void scan(String line, int start, int end, boolean timings) {
+		String kind = "shared";
+		int pos = start;
+		while (pos < end) {
+			char c = line.charAt(pos);
+			if (c == ' ' || c == ',') {
+				pos++;
+				continue;
+			}
+			int wordEnd = pos;
+			while (wordEnd < end && line.charAt(wordEnd) != ' ' && line.charAt(wordEnd) != ',') {
+				wordEnd++;
+			}
+			int equals = line.indexOf('=', pos);
+			if (equals < 0 || equals > wordEnd) {
+				kind = line.substring(pos, wordEnd);
+			}
+			else {
+				try {
+					String key = line.substring(pos, equals);
+					String value = line.substring(equals + 1, wordEnd);
+					if (timings) {
+						setTime(key, Float.parseFloat(value));
+					}
+					else {
+						setBlocks(kind, key, Long.parseLong(value));
+					}
+				}
+				catch (NumberFormatException e) {
+					// Values that are not numbers are skipped
+				}
+			}
+			pos = wordEnd;
+		}
+	}
+
+	/**
+	 * Adds a time.
+	 * @param key <code>read</code> or <code>write</code>.
+	 * @param value The time in milliseconds.
+	 */
+	private void setTime(String key, float value) {
+		if ("read".equals(key)) {
+			readTime += value;
+		}
+		else if ("write".equals(key)) {
+			writeTime += value;
+		}
+	}
+
+	/**
+	 * Sets a block count.
+	 * @param kind <code>shared</code>, <code>local</code> or <code>temp</code>.
+	 * @param key <code>hit</code>, <code>read</code>, <code>dirtied</code> or <code>written</code>.
+	 * @param value The number of blocks.
+	 */
+	private void setBlocks(String kind, String key, long value) {
+		if ("shared".equals(kind)) {
+			if ("hit".equals(key)) {
+				sharedHit = value;
+			}
+			else if ("read".equals(key)) {
+				sharedRead = value;
+			}
+			else if ("dirtied".equals(key)) {
+				sharedDirtied = value;
+			}
+			else if ("written".equals(key)) {
+				sharedWritten = value;
+			}
+		}
+		else if ("local".equals(kind)) {
+			if ("hit".equals(key)) {
+				localHit = value;
+			}
+			else if ("read".equals(key)) {
+				localRead = value;
+			}
+			else if ("dirtied".equals(key)) {
+				localDirtied = value;
+			}
+			else if ("written".equals(key)) {
+				localWritten = value;
+			}
+		}
+		else if ("temp".equals(kind)) {
+			if ("read".equals(key)) {
+				tempRead = value;
+			}
+			else if ("written".equals(key)) {
+				tempWritten = value;
+			}
+		}
+	}
+
+	/**
+	 * @return Shared blocks found in the cache.
+	 */
+	public long getSharedHit() {
+		return sharedHit;
+	}
+
+	/**
+	 * @return Shared blocks read.
+	 */
+	public long getSharedRead() {
+		return sharedRead;
+	}
+
+	/**
+	 * @return Shared blocks dirtied.
+	 */
+	public long getSharedDirtied() {
+		return sharedDirtied;
+	}
+
+	/**
+	 * @return Shared blocks written.
+	 */
+	public long getSharedWritten() {
+		return sharedWritten;
+	}
+
+	/**
+	 * @return Local blocks found in the cache.
+	 */
+	public long getLocalHit() {
+		return localHit;
+	}
+
+	/**
+	 * @return Local blocks read.
+	 */
+	public long getLocalRead() {
+		return localRead;
+	}
+
+	/**
+	 * @return Local blocks dirtied.
+	 */
+	public long getLocalDirtied() {
+		return localDirtied;
+	}
+
+	/**
+	 * @return Local blocks written.
+	 */
+	public long getLocalWritten() {
+		return localWritten;
+	}
+
+	/**
+	 * @return Temporary blocks read.
+	 */
+	public long getTempRead() {
+		return tempRead;
+	}
+
+	/**
+	 * @return Temporary blocks written.
+	 */
+	public long getTempWritten() {
+		return tempWritten;
+	}
+
+	/**
+	 * @return Time spent reading blocks in milliseconds.
+	 */
+	public float getReadTime() {
+		return readTime;
+	}
+
+	/**
+	 * @return Time spent writing blocks in milliseconds.
+	 */
+	public float getWriteTime() {
+		return writeTime;
+	}
+
+	/**
+	 * @return Blocks read of all kinds, the blocks that were not found in the cache.
+	 */
+	public long getReadBlocks() {
+		return sharedRead + localRead + tempRead;
+	}
+}
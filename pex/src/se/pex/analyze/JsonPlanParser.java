@@ -0,0 +1,258 @@
+package se.pex.analyze;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Imports the output of <code>EXPLAIN (FORMAT JSON)</code>.
+ * The input is read with a pull parser, one token at a time, and the fields are handed to a
+ * {@link PlanTreeBuilder} without building a document in memory.
+ */
+class JsonPlanParser {
+	/** The reader. */
+	private final JsonReader reader;
+
+	/** Builds the tree. */
+	private final PlanTreeBuilder builder;
+
+	/**
+	 * Creates a new parser.
+	 * @param in The JSON input.
+	 * @param sink Receives the nodes.
+	 */
+	private JsonPlanParser(Reader in, NodeSink sink) {
+		reader = new JsonReader(in);
+		builder = new PlanTreeBuilder(sink);
+	}
+
+	/**
+	 * Analyzes and creates a node tree from a JSON explain. If the input contains several plans, the last one is used.
+	 * Input that is not valid JSON, like a plan that is being edited, gives the tree read up to the error.
+	 * @param in The explain in JSON format.
+	 * @param sink Receives the nodes.
+	 * @return The root node in the resulting tree.
+	 * @throws IOException On error reading from the stream.
+	 */
+	static Node parse(Reader in, NodeSink sink) throws IOException {
+		JsonPlanParser parser = new JsonPlanParser(in, sink);
+		try {
+			parser.readTop();
+		}
+		catch (JsonReader.SyntaxException e) {
+			// Keep what was read so far, like the text format does with broken lines
+		}
+		return parser.builder.getRoot();
+	}
+
+	/**
+	 * Reads the top level, which is an array of query objects or a single query object.
+	 * @throws IOException On error reading or if the input is not valid JSON.
+	 */
+	private void readTop() throws IOException {
+		if (reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+			reader.beginArray();
+			while (reader.hasNext()) {
+				readQuery();
+			}
+			reader.endArray();
+		}
+		else {
+			readQuery();
+		}
+	}
+
+	/**
+	 * Reads a query object, with the plan and the triggers.
+	 * @throws IOException On error reading or if the input is not valid JSON.
+	 */
+	private void readQuery() throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if ("Plan".equals(name)) {
+				readPlan();
+			}
+			else if ("Triggers".equals(name)) {
+				readTriggers();
+			}
+			else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+	}
+
+	/**
+	 * Reads a plan object and all plans below it. The plans are kept on an explicit stack, so the depth of the plan
+	 * does not affect the call stack.
+	 * @throws IOException On error reading or if the input is not valid JSON.
+	 */
+	private void readPlan() throws IOException {
+		// One entry for every open plan, true while reading its child plans
+		Deque<Boolean> inPlans = new ArrayDeque<Boolean>();
+		reader.beginObject();
+		builder.beginPlan();
+		inPlans.push(false);
+		while (!inPlans.isEmpty()) {
+			if (inPlans.peek()) {
+				if (reader.hasNext()) {
+					reader.beginObject();
+					builder.beginPlan();
+					inPlans.push(false);
+				}
+				else {
+					reader.endArray();
+					inPlans.pop();
+					inPlans.push(false);
+				}
+			}
+			else if (!reader.hasNext()) {
+				reader.endObject();
+				builder.endPlan();
+				inPlans.pop();
+			}
+			else {
+				String name = reader.nextName();
+				if ("Plans".equals(name)) {
+					builder.beginChildren();
+					reader.beginArray();
+					inPlans.pop();
+					inPlans.push(true);
+				}
+				else {
+					readField(name);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads a field of a plan object.
+	 * @param name The field name.
+	 * @throws IOException On error reading or if the input is not valid JSON.
+	 */
+	private void readField(String name) throws IOException {
+		JsonReader.Token token = reader.peek();
+		if (token == JsonReader.Token.BEGIN_OBJECT) {
+			reader.skipValue();
+		}
+		else if (token == JsonReader.Token.BEGIN_ARRAY && "Workers".equals(name)) {
+			readWorkers();
+		}
+		else if (token == JsonReader.Token.BEGIN_ARRAY) {
+			builder.field(name, readList());
+		}
+		else {
+			builder.field(name, reader.nextValue());
+		}
+	}
+
+	/**
+	 * Reads an array of values, like an output list or a sort key.
+	 * @return The values separated with commas, <code>null</code> if the array contains objects.
+	 * @throws IOException On error reading or if the input is not valid JSON.
+	 */
+	private String readList() throws IOException {
+		StringBuilder res = new StringBuilder();
+		boolean simple = true;
+		reader.beginArray();
+		while (reader.hasNext()) {
+			JsonReader.Token token = reader.peek();
+			if (token == JsonReader.Token.BEGIN_OBJECT || token == JsonReader.Token.BEGIN_ARRAY) {
+				reader.skipValue();
+				simple = false;
+			}
+			else {
+				res.append(res.length() == 0 ? "" : ", ").append(reader.nextValue());
+			}
+		}
+		reader.endArray();
+		return simple ? res.toString() : null;
+	}
+
+	/**
+	 * Reads the workers array of a plan, written by explain verbose for nodes run by parallel workers.
+	 * @throws IOException On error reading or if the input is not valid JSON.
+	 */
+	private void readWorkers() throws IOException {
+		reader.beginArray();
+		while (reader.hasNext()) {
+			if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+				reader.skipValue();
+				continue;
+			}
+			String number = null;
+			String startupTime = null;
+			String totalTime = null;
+			String rows = null;
+			String loops = null;
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				if (reader.peek() == JsonReader.Token.BEGIN_OBJECT || reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+					reader.skipValue();
+					continue;
+				}
+				String value = reader.nextValue();
+				if ("Worker Number".equals(name)) {
+					number = value;
+				}
+				else if ("Actual Startup Time".equals(name)) {
+					startupTime = value;
+				}
+				else if ("Actual Total Time".equals(name)) {
+					totalTime = value;
+				}
+				else if ("Actual Rows".equals(name)) {
+					rows = value;
+				}
+				else if ("Actual Loops".equals(name)) {
+					loops = value;
+				}
+			}
+			reader.endObject();
+			builder.worker(number, startupTime, totalTime, rows, loops);
+		}
+		reader.endArray();
+	}
+
+	/**
+	 * Reads the triggers array.
+	 * @throws IOException On error reading or if the input is not valid JSON.
+	 */
+	private void readTriggers() throws IOException {
+		reader.beginArray();
+		while (reader.hasNext()) {
+			String triggerName = null;
+			String constraintName = null;
+			String time = "0";
+			String calls = "0";
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				if (reader.peek() == JsonReader.Token.BEGIN_OBJECT || reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+					reader.skipValue();
+					continue;
+				}
+				String value = reader.nextValue();
+				if ("Trigger Name".equals(name)) {
+					triggerName = value;
+				}
+				else if ("Constraint Name".equals(name)) {
+					constraintName = value;
+				}
+				else if ("Time".equals(name)) {
+					time = value;
+				}
+				else if ("Calls".equals(name)) {
+					calls = value;
+				}
+			}
+			reader.endObject();
+			builder.trigger(triggerName, constraintName, time, calls);
+		}
+		reader.endArray();
+	}
+}
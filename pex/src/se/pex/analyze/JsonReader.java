@@ -0,0 +1,425 @@
+package se.pex.analyze;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A pull parser for JSON, reads one token at a time from a stream without building any document in memory.
+ */
+class JsonReader {
+	/** The kinds of tokens. */
+	enum Token {
+		/** <code>{</code>. */
+		BEGIN_OBJECT,
+		/** <code>}</code>. */
+		END_OBJECT,
+		/** <code>[</code>. */
+		BEGIN_ARRAY,
+		/** <code>]</code>. */
+		END_ARRAY,
+		/** A name in an object. */
+		NAME,
+		/** A string value. */
+		STRING,
+		/** A number, <code>true</code>, <code>false</code> or <code>null</code>. */
+		LITERAL,
+		/** End of input. */
+		END_DOCUMENT
+	}
+
+	/**
+	 * Thrown when the input is not valid JSON.
+	 */
+	static class SyntaxException extends IOException {
+		/** Serial version. */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Creates a new exception.
+		 * @param message Description of the error.
+		 */
+		SyntaxException(String message) {
+			super(message);
+		}
+	}
+
+	/** The input. */
+	private final Reader in;
+
+	/** Read buffer. */
+	private final char[] buffer = new char[8192];
+
+	/** Position of the next character in the buffer. */
+	private int pos;
+
+	/** Number of characters in the buffer. */
+	private int limit;
+
+	/** The next token, <code>null</code> until peeked. */
+	private Token peeked;
+
+	/** Text of a peeked name, string or literal. */
+	private String peekedText;
+
+	/** Open containers, <code>true</code> for objects. */
+	private boolean[] containers = new boolean[32];
+
+	/** Number of open containers. */
+	private int depth;
+
+	/** <code>true</code> if a value or name has been read in the current container. */
+	private boolean[] nonEmpty = new boolean[32];
+
+	/** <code>true</code> if a name has been read and its value is expected next. */
+	private boolean expectValue;
+
+	/**
+	 * Creates a new reader.
+	 * @param in The input.
+	 */
+	JsonReader(Reader in) {
+		this.in = in;
+	}
+
+	/**
+	 * @return The kind of the next token, without consuming it.
+	 * @throws IOException On error reading or if the input is not valid JSON.
+	 */
+	Token peek() throws IOException {
+		if (peeked != null) {
+			return peeked;
+		}
+		int c = nextNonWhitespace();
+		if (expectValue) {
+			expectValue = false;
+			return peekValue(c);
+		}
+		if (depth > 0) {
+			if (c == (containers[depth - 1] ? '}' : ']')) {
+				peeked = containers[depth - 1] ? Token.END_OBJECT : Token.END_ARRAY;
+				return peeked;
+			}
+			if (nonEmpty[depth - 1]) {
+				if (c != ',') {
+					throw new SyntaxException("Expected ',' but was " + describe(c));
+				}
+				c = nextNonWhitespace();
+			}
+			nonEmpty[depth - 1] = true;
+			if (containers[depth - 1]) {
+				if (c != '"') {
+					throw new SyntaxException("Expected a name but was " + describe(c));
+				}
+				peekedText = readString();
+				if (nextNonWhitespace() != ':') {
+					throw new SyntaxException("Expected ':' after " + peekedText);
+				}
+				expectValue = true;
+				peeked = Token.NAME;
+				return peeked;
+			}
+		}
+		else if (c == -1) {
+			peeked = Token.END_DOCUMENT;
+			return peeked;
+		}
+		return peekValue(c);
+	}
+
+	/**
+	 * Peeks a value starting with a character.
+	 * @param c The first character of the value.
+	 * @return The kind of the value.
+	 * @throws IOException On error reading or if the input is not valid JSON.
+	 */
+	private Token peekValue(int c) throws IOException {
+		switch (c) {
+		case '{':
+			peeked = Token.BEGIN_OBJECT;
+			break;
+		case '[':
+			peeked = Token.BEGIN_ARRAY;
+			break;
+		case '"':
+			peekedText = readString();
+			peeked = Token.STRING;
+			break;
+		case -1:
+			throw new SyntaxException("Unexpected end of input");
+		default:
+			peekedText = readLiteral((char) c);
+			peeked = Token.LITERAL;
+		}
+		return peeked;
+	}
+
+	/**
+	 * Consumes a token.
+	 * @param expected The expected kind of the token.
+	 * @return The text of the token, <code>null</code> for brackets.
+	 * @throws IOException On error reading or if the next token is of another kind.
+	 */
+	private String consume(Token expected) throws IOException {
+		Token token = peek();
+		if (token != expected) {
+			throw new SyntaxException("Expected " + expected + " but was " + token);
+		}
+		peeked = null;
+		return peekedText;
+	}
+
+	/**
+	 * Consumes the start of an object.
+	 * @throws IOException On error reading or if the next token is something else.
+	 */
+	void beginObject() throws IOException {
+		consume(Token.BEGIN_OBJECT);
+		push(true);
+	}
+
+	/**
+	 * Consumes the end of an object.
+	 * @throws IOException On error reading or if the next token is something else.
+	 */
+	void endObject() throws IOException {
+		consume(Token.END_OBJECT);
+		depth--;
+	}
+
+	/**
+	 * Consumes the start of an array.
+	 * @throws IOException On error reading or if the next token is something else.
+	 */
+	void beginArray() throws IOException {
+		consume(Token.BEGIN_ARRAY);
+		push(false);
+	}
+
+	/**
+	 * Consumes the end of an array.
+	 * @throws IOException On error reading or if the next token is something else.
+	 */
+	void endArray() throws IOException {
+		consume(Token.END_ARRAY);
+		depth--;
+	}
+
+	/**
+	 * @return <code>true</code> if the current object or array has more elements.
+	 * @throws IOException On error reading or if the input is not valid JSON.
+	 */
+	boolean hasNext() throws IOException {
+		Token token = peek();
+		return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+	}
+
+	/**
+	 * @return The next name in the current object.
+	 * @throws IOException On error reading or if the next token is something else.
+	 */
+	String nextName() throws IOException {
+		return consume(Token.NAME);
+	}
+
+	/**
+	 * Reads a string or a literal value. Numbers are returned exactly as written.
+	 * @return The value, <code>null</code> for a JSON null.
+	 * @throws IOException On error reading or if the next token is not a string or literal.
+	 */
+	String nextValue() throws IOException {
+		if (peek() == Token.STRING) {
+			return consume(Token.STRING);
+		}
+		String literal = consume(Token.LITERAL);
+		return "null".equals(literal) ? null : literal;
+	}
+
+	/**
+	 * Skips the next value, including everything inside it if it is an object or an array.
+	 * @throws IOException On error reading or if the input is not valid JSON.
+	 */
+	void skipValue() throws IOException {
+		int open = 0;
+		do {
+			switch (peek()) {
+			case BEGIN_OBJECT:
+				beginObject();
+				open++;
+				break;
+			case BEGIN_ARRAY:
+				beginArray();
+				open++;
+				break;
+			case END_OBJECT:
+				endObject();
+				open--;
+				break;
+			case END_ARRAY:
+				endArray();
+				open--;
+				break;
+			case END_DOCUMENT:
+				throw new SyntaxException("Unexpected end of input");
+			default:
+				peeked = null;
+			}
+		} while (open > 0);
+	}
+
+	/**
+	 * Opens a container.
+	 * @param object <code>true</code> for an object, <code>false</code> for an array.
+	 */
+	private void push(boolean object) {
+		if (depth == containers.length) {
+			boolean[] newContainers = new boolean[depth * 2];
+			System.arraycopy(containers, 0, newContainers, 0, depth);
+			containers = newContainers;
+			boolean[] newNonEmpty = new boolean[depth * 2];
+			System.arraycopy(nonEmpty, 0, newNonEmpty, 0, depth);
+			nonEmpty = newNonEmpty;
+		}
+		containers[depth] = object;
+		nonEmpty[depth] = false;
+		depth++;
+	}
+
+	/**
+	 * @return The next character, <code>-1</code> at the end of the input.
+	 * @throws IOException On error reading.
+	 */
+	private int read() throws IOException {
+		if (pos == limit) {
+			limit = in.read(buffer, 0, buffer.length);
+			pos = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+		}
+		return buffer[pos++];
+	}
+
+	/**
+	 * @return The next character that is not whitespace, <code>-1</code> at the end of the input.
+	 * @throws IOException On error reading.
+	 */
+	private int nextNonWhitespace() throws IOException {
+		int c = read();
+		while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+			c = read();
+		}
+		return c;
+	}
+
+	/**
+	 * Reads a string, the opening quote has already been read.
+	 * @return The string without quotes and escapes.
+	 * @throws IOException On error reading or if the string is not terminated.
+	 */
+	private String readString() throws IOException {
+		StringBuilder res = new StringBuilder();
+		while (true) {
+			int c = read();
+			if (c == '"') {
+				return res.toString();
+			}
+			if (c == -1) {
+				throw new SyntaxException("Unterminated string");
+			}
+			if (c == '\\') {
+				c = read();
+				switch (c) {
+				case 'b':
+					res.append('\b');
+					break;
+				case 'f':
+					res.append('\f');
+					break;
+				case 'n':
+					res.append('\n');
+					break;
+				case 'r':
+					res.append('\r');
+					break;
+				case 't':
+					res.append('\t');
+					break;
+				case 'u':
+					int code = 0;
+					for (int i = 0; i < 4; i++) {
+						int digit = Character.digit(read(), 16);
+						if (digit < 0) {
+							throw new SyntaxException("Invalid unicode escape");
+						}
+						code = code * 16 + digit;
+					}
+					res.append((char) code);
+					break;
+				case -1:
+					throw new SyntaxException("Unterminated string");
+				default:
+					res.append((char) c);
+				}
+			}
+			else {
+				res.append((char) c);
+			}
+		}
+	}
+
+	/**
+	 * Reads a number, <code>true</code>, <code>false</code> or <code>null</code>.
+	 * @param first The first character of the literal.
+	 * @return The literal as written.
+	 * @throws IOException On error reading or if the literal is not valid.
+	 */
+	private String readLiteral(char first) throws IOException {
+		StringBuilder res = new StringBuilder();
+		res.append(first);
+		while (true) {
+			if (pos == limit && read() != -1) {
+				pos--;
+			}
+			if (pos == limit) {
+				break;
+			}
+			char c = buffer[pos];
+			if (c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+				break;
+			}
+			res.append(c);
+			pos++;
+		}
+		String literal = res.toString();
+		if (!isLiteral(literal)) {
+			throw new SyntaxException("Invalid value " + literal);
+		}
+		return literal;
+	}
+
+	/**
+	 * @param literal The text of a literal.
+	 * @return <code>true</code> if the text is a number, <code>true</code>, <code>false</code> or <code>null</code>.
+	 */
+	private static boolean isLiteral(String literal) {
+		if ("true".equals(literal) || "false".equals(literal) || "null".equals(literal)) {
+			return true;
+		}
+		for (int i = 0; i < literal.length(); i++) {
+			char c = literal.charAt(i);
+			if (!(c >= '0' && c <= '9') && c != '-' && c != '+' && c != '.' && c != 'e' && c != 'E') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param c A character.
+	 * @return A description of the character for error messages.
+	 */
+	private static String describe(int c) {
+		return c == -1 ? "end of input" : "'" + (char) c + "'";
+	}
+}
@@ -0,0 +1,19 @@
+package se.pex.analyze;
+
+/**
+ * Gives access to the lines of a text by index, used to analyze parts of a changed text again.
+ */
+public interface LineSource {
+
+	/**
+	 * @return The number of lines in the text.
+	 */
+	public int getLineCount();
+
+	/**
+	 * Returns a line.
+	 * @param index The line index, starting with 0.
+	 * @return The line without line delimiter.
+	 */
+	public String getLine(int index);
+}
@@ -0,0 +1,147 @@
+package se.pex.analyze;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reads a file through memory mapped windows, for explain files too large to be loaded as a document.
+ * Only one window of the file is mapped at a time and the characters are decoded into a small buffer, so the
+ * heap used does not depend on the file size.
+ */
+public class MappedFileReader extends Reader {
+	/** Default size of a mapped window. */
+	private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+	/** The file. */
+	private final RandomAccessFile file;
+
+	/** The channel of the file. */
+	private final FileChannel channel;
+
+	/** Length of the file in bytes. */
+	private final long length;
+
+	/** Size of a mapped window. */
+	private final int windowSize;
+
+	/** Decodes the bytes. */
+	private final CharsetDecoder decoder;
+
+	/** Decoded characters not read yet. */
+	private final CharBuffer chars = CharBuffer.allocate(8192);
+
+	/** The mapped window, <code>null</code> before the first window is mapped. */
+	private MappedByteBuffer window;
+
+	/** File position of the start of the window. */
+	private long windowStart;
+
+	/** <code>true</code> when the bytes left in the window have to be decoded from a new window. */
+	private boolean needsWindow = true;
+
+	/** <code>true</code> when the whole file has been decoded. */
+	private boolean endOfFile;
+
+	/**
+	 * Opens a file.
+	 * @param file The file to read.
+	 * @param charset The encoding of the file.
+	 * @throws IOException If the file can not be opened.
+	 */
+	public MappedFileReader(File file, Charset charset) throws IOException {
+		this(file, charset, WINDOW_SIZE);
+	}
+
+	/**
+	 * Opens a file.
+	 * @param file The file to read.
+	 * @param charset The encoding of the file.
+	 * @param windowSize Size of a mapped window.
+	 * @throws IOException If the file can not be opened.
+	 */
+	MappedFileReader(File file, Charset charset, int windowSize) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+		this.length = channel.size();
+		this.windowSize = windowSize;
+		decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		chars.flip();
+	}
+
+	/**
+	 * @return Length of the file in bytes.
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * @return Number of bytes decoded so far.
+	 */
+	public long position() {
+		return window == null ? 0 : windowStart + window.position();
+	}
+
+	/**
+	 * @see java.io.Reader#read(char[], int, int)
+	 */
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (!chars.hasRemaining()) {
+			if (endOfFile) {
+				return -1;
+			}
+			fill();
+		}
+		int count = Math.min(len, chars.remaining());
+		chars.get(cbuf, off, count);
+		return count;
+	}
+
+	/**
+	 * Decodes more characters, mapping the next window when the current one is used up.
+	 * @throws IOException On error mapping the file.
+	 */
+	private void fill() throws IOException {
+		chars.clear();
+		do {
+			if (needsWindow) {
+				// The next window starts at the first byte not decoded, which may be in the middle of a character
+				long start = position();
+				window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, length - start));
+				windowStart = start;
+			}
+			boolean lastWindow = windowStart + window.limit() == length;
+			CoderResult result = decoder.decode(window, chars, lastWindow);
+			if (lastWindow && !window.hasRemaining()) {
+				decoder.flush(chars);
+				endOfFile = true;
+			}
+			else {
+				needsWindow = result.isUnderflow();
+			}
+		} while (chars.position() == 0 && !endOfFile);
+		chars.flip();
+	}
+
+	/**
+	 * @see java.io.Reader#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		window = null;
+		file.close();
+	}
+}
@@ -0,0 +1,386 @@
+package se.pex.analyze;
+
+/**
+ * The numbers on the main line of a node, like
+ * <code>(cost=0.00..1.00 rows=10 width=4) (actual time=0.010..0.020 rows=5 loops=1)</code>.
+ * The line is scanned once by hand instead of with regular expressions, as the values are read on every repaint.
+ */
+public class Metrics {
+	/** Start of the planner cost part. */
+	private static final String COST = "cost=";
+	/** Start of the actual time part. */
+	private static final String ACTUAL_TIME = "actual time=";
+	/** Start of a trigger line. */
+	private static final String TRIGGER = "Trigger for constraint ";
+	/** Start of the trigger time. */
+	private static final String TRIGGER_TIME = ": time=";
+
+	/** Powers of ten used when scanning decimals. */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18 };
+
+	/** <code>true</code> if the line contains planner costs. */
+	boolean hasCost;
+	/** Estimated startup cost. */
+	float startupCost;
+	/** Estimated total cost. */
+	float totalCost;
+	/** Estimated number of rows. */
+	long planRows;
+	/** Estimated row width in bytes. */
+	int planWidth;
+
+	/** <code>true</code> if the line contains actual times. */
+	boolean hasTime;
+	/** Actual startup time for one loop. */
+	float startupTime;
+	/** Actual total time for one loop. */
+	float totalTime;
+	/** Actual number of rows for one loop, newer versions write an average with decimals. */
+	double actualRows;
+	/** Number of loops. */
+	int loops;
+
+	/** <code>true</code> if the line is a trigger line. */
+	boolean isTrigger;
+	/** Time spent in the trigger. */
+	float triggerTime;
+	/** Number of trigger calls. */
+	long triggerCalls;
+
+	/** Scanning position, only used while scanning. */
+	private int pos;
+
+	/**
+	 * Scans a main line.
+	 * @param line The main line of a node.
+	 * @return The metrics of the line, fields that are not on the line are left empty.
+	 */
+	static Metrics parse(CharSequence line) {
+		Metrics metrics = new Metrics();
+		metrics.scanCost(line);
+		metrics.scanTime(line);
+		metrics.scanTrigger(line);
+		return metrics;
+	}
+
+	/**
+	 * Scans <code>cost=1.00..2.00 rows=3 width=4</code>.
+	 * @param line The line to scan.
+	 */
+	private void scanCost(CharSequence line) {
+		pos = lastIndexOf(line, COST);
+		if (pos < 0) {
+			return;
+		}
+		pos += COST.length();
+		float startup = (float) scanDecimal(line);
+		if (pos < 0 || !skip(line, "..")) {
+			return;
+		}
+		float total = (float) scanDecimal(line);
+		if (pos < 0 || !skipSpaces(line) || !skip(line, "rows=")) {
+			return;
+		}
+		long rows = scanLong(line);
+		if (pos < 0) {
+			return;
+		}
+		hasCost = true;
+		startupCost = startup;
+		totalCost = total;
+		planRows = rows;
+		if (skipSpaces(line) && skip(line, "width=")) {
+			long width = scanLong(line);
+			planWidth = pos < 0 ? 0 : (int) width;
+		}
+	}
+
+	/**
+	 * Scans <code>actual time=1.00..2.00 rows=3 loops=4</code>.
+	 * @param line The line to scan.
+	 */
+	private void scanTime(CharSequence line) {
+		pos = lastIndexOf(line, ACTUAL_TIME);
+		if (pos < 0) {
+			return;
+		}
+		pos += ACTUAL_TIME.length();
+		float startup = (float) scanDecimal(line);
+		if (pos < 0 || !skip(line, "..")) {
+			return;
+		}
+		float total = (float) scanDecimal(line);
+		if (pos < 0 || !skipSpaces(line) || !skip(line, "rows=")) {
+			return;
+		}
+		// Newer versions write average row counts with decimals, which are kept for the q-error over all loops
+		double rows = scanDecimal(line);
+		if (pos < 0 || !skipSpaces(line) || !skip(line, "loops=")) {
+			return;
+		}
+		long loopCount = scanLong(line);
+		if (pos < 0) {
+			return;
+		}
+		hasTime = true;
+		startupTime = startup;
+		totalTime = total;
+		actualRows = rows;
+		loops = (int) Math.min(loopCount, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Scans <code>Trigger for constraint name: time=1.00 calls=2</code>.
+	 * @param line The line to scan.
+	 */
+	private void scanTrigger(CharSequence line) {
+		pos = 0;
+		if (!skip(line, TRIGGER)) {
+			return;
+		}
+		pos = indexOf(line, TRIGGER_TIME, pos);
+		if (pos < 0) {
+			return;
+		}
+		pos += TRIGGER_TIME.length();
+		float time = (float) scanDecimal(line);
+		if (pos < 0 || !skip(line, " calls=")) {
+			return;
+		}
+		long calls = scanLong(line);
+		if (pos < 0) {
+			return;
+		}
+		isTrigger = true;
+		triggerTime = time;
+		triggerCalls = calls;
+	}
+
+	/**
+	 * Skips a string at the current position.
+	 * @param line The line to scan.
+	 * @param expected The string that must be at the current position.
+	 * @return <code>true</code> if the string was found and skipped.
+	 */
+	private boolean skip(CharSequence line, String expected) {
+		if (pos + expected.length() > line.length()) {
+			return false;
+		}
+		for (int i = 0; i < expected.length(); i++) {
+			if (line.charAt(pos + i) != expected.charAt(i)) {
+				return false;
+			}
+		}
+		pos += expected.length();
+		return true;
+	}
+
+	/**
+	 * Skips at least one whitespace.
+	 * @param line The line to scan.
+	 * @return <code>true</code> if there was whitespace at the current position.
+	 */
+	private boolean skipSpaces(CharSequence line) {
+		int start = pos;
+		while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+			pos++;
+		}
+		return pos > start;
+	}
+
+	/**
+	 * Scans a decimal number like <code>12.345</code>, sets the position to -1 if there is no number.
+	 * @param line The line to scan.
+	 * @return The number.
+	 */
+	private double scanDecimal(CharSequence line) {
+		int start = pos;
+		long mantissa = 0;
+		int decimals = -1;
+		int digits = 0;
+		while (pos < line.length()) {
+			char c = line.charAt(pos);
+			if (c >= '0' && c <= '9') {
+				if (digits < 18) {
+					mantissa = mantissa * 10 + (c - '0');
+					digits++;
+					if (decimals >= 0) {
+						decimals++;
+					}
+				}
+				else if (decimals < 0) {
+					// Too many digits to be exact, keep the magnitude
+					mantissa = mantissa * 10;
+				}
+			}
+			else if (c == '.' && decimals < 0 && pos + 1 < line.length() && line.charAt(pos + 1) != '.') {
+				decimals = 0;
+			}
+			else {
+				break;
+			}
+			pos++;
+		}
+		if (pos == start) {
+			pos = -1;
+			return 0;
+		}
+		return decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+	}
+
+	/**
+	 * Scans a whole number, sets the position to -1 if there is no number.
+	 * @param line The line to scan.
+	 * @return The number.
+	 */
+	private long scanLong(CharSequence line) {
+		int start = pos;
+		long value = 0;
+		while (pos < line.length() && line.charAt(pos) >= '0' && line.charAt(pos) <= '9') {
+			value = value * 10 + (line.charAt(pos) - '0');
+			pos++;
+		}
+		if (pos == start) {
+			pos = -1;
+		}
+		return value;
+	}
+
+	/**
+	 * Finds a string in a char sequence.
+	 * @param line The line to search.
+	 * @param s The string to look for.
+	 * @param from The position to start looking from.
+	 * @return The position of the first match, -1 if not found.
+	 */
+	private static int indexOf(CharSequence line, String s, int from) {
+		for (int i = from; i <= line.length() - s.length(); i++) {
+			if (matchesAt(line, s, i)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the last occurrence of a string in a char sequence.
+	 * @param line The line to search.
+	 * @param s The string to look for.
+	 * @return The position of the last match, -1 if not found.
+	 */
+	private static int lastIndexOf(CharSequence line, String s) {
+		for (int i = line.length() - s.length(); i >= 0; i--) {
+			if (matchesAt(line, s, i)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param line The line to check.
+	 * @param s The string to look for.
+	 * @param index The position in the line.
+	 * @return <code>true</code> if the string is found at the position.
+	 */
+	private static boolean matchesAt(CharSequence line, String s, int index) {
+		for (int i = 0; i < s.length(); i++) {
+			if (line.charAt(index + i) != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return <code>true</code> if the line contains planner costs.
+	 */
+	public boolean hasCost() {
+		return hasCost;
+	}
+
+	/**
+	 * @return Estimated startup cost.
+	 */
+	public float getStartupCost() {
+		return startupCost;
+	}
+
+	/**
+	 * @return Estimated total cost.
+	 */
+	public float getTotalCost() {
+		return totalCost;
+	}
+
+	/**
+	 * @return Estimated number of rows.
+	 */
+	public long getPlanRows() {
+		return planRows;
+	}
+
+	/**
+	 * @return Estimated row width in bytes.
+	 */
+	public int getPlanWidth() {
+		return planWidth;
+	}
+
+	/**
+	 * @return <code>true</code> if the line contains actual times, which it does not if the node was never executed.
+	 */
+	public boolean hasTime() {
+		return hasTime;
+	}
+
+	/**
+	 * @return Actual startup time for one loop.
+	 */
+	public float getStartupTime() {
+		return startupTime;
+	}
+
+	/**
+	 * @return Actual total time for one loop.
+	 */
+	public float getTotalTime() {
+		return totalTime;
+	}
+
+	/**
+	 * @return Actual number of rows for one loop, rounded.
+	 */
+	public long getActualRows() {
+		return Math.round(actualRows);
+	}
+
+	/**
+	 * @return Number of loops.
+	 */
+	public int getLoops() {
+		return loops;
+	}
+
+	/**
+	 * @return <code>true</code> if the line is a trigger line.
+	 */
+	public boolean isTrigger() {
+		return isTrigger;
+	}
+
+	/**
+	 * @return Time spent in the trigger.
+	 */
+	public float getTriggerTime() {
+		return triggerTime;
+	}
+
+	/**
+	 * @return Number of trigger calls.
+	 */
+	public long getTriggerCalls() {
+		return triggerCalls;
+	}
+}
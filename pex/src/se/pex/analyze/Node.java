@@ -1,199 +1,301 @@
 package se.pex.analyze;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
- * A node in the analyze tree.
+ * A node in the analyze tree. Nodes are read only, the parsers of this package build the tree either as a
+ * {@link TreeNode} for every node, or for huge plans as rows of a {@link PlanTable} that are read through a
+ * {@link CompactNode}.
  */
-public class Node {
-	/** Regex for getting time. */
-	static final Pattern timePattern = Pattern.compile(".*actual\\stime=(.*)\\.\\.(.*)\\srows=(.*)\\sloops=(\\d*).*");
-	/** Regex for getting rowcount. */
-	static final Pattern rowCountPattern = Pattern.compile(".*cost=([\\d\\.]*)\\srows=(\\d*).*");
-	/** Regex for trigger matching. */
-	static final Pattern triggerPattern = Pattern.compile("Trigger for constraint (.+?): time=(\\d+.?\\d*) calls=(\\d+)");
+public abstract class Node {
+	/**
+	 * Creates a new node, only the nodes of this package extend this class.
+	 */
+	Node() {
+	}
 
-	/** Main line for the node. */
-	private StringBuilder line;
+	/**
+	 * @return The main line of text describing the node.
+	 */
+	public abstract String getMainLine();
 
-	/** Extra lines for the node. */
-	private List<String> lines = new ArrayList<String>();
+	/**
+	 * @return The numbers on the main line.
+	 */
+	public abstract Metrics getMetrics();
 
-	/** Node children. */
-	private List<Node> children = new ArrayList<Node>();
+	/**
+	 * @return The numbers on the buffer and I/O timing lines, which include the child nodes.
+	 */
+	public IoMetrics getIo() {
+		return IoMetrics.parse(getMainLine(), getLines());
+	}
+
+	/**
+	 * @return Number of loops for this node.
+	 */
+	public int getLoopCount() {
+		Metrics m = getMetrics();
+		return m.hasTime ? m.loops : 0;
+	}
 
-	/** Parent node. */
-	private Node parent;
+	/**
+	 * The time of all loops, divided by the number of processes for nodes that run in parallel, since the loops of
+	 * such a node include one loop per worker and the workers run at the same time.
+	 * @param ignoreTriggers If <code>true</code> trigger rows will return 0.
+	 * @return The execution time inclusive child nodes.
+	 */
+	public abstract float getTimeInclusive(boolean ignoreTriggers);
 
-	/** Number of spaces on the line, used during parsing. */
-	private int indentation;
+	/**
+	 * @return Number of processes that run the node, more than one below a Gather node.
+	 */
+	public abstract int getParallelism();
 
 	/**
-	 * Creates a new node.
-	 * @param parent The parent node.
-	 * @param line The main line describing the node.
-	 * @param indentation Spaces on the line.
+	 * @return The number of workers planned by a Gather node, <code>-1</code> for other nodes.
 	 */
-	protected Node(Node parent, String line, int indentation) {
-		this.line = new StringBuilder(line);
-		this.indentation = indentation;
-		if (parent != null) {
-			this.parent = parent;
-			parent.addChild(this);
-		}
+	public int getWorkersPlanned() {
+		return scanCount(getLines(), "Workers Planned: ");
 	}
 
 	/**
-	 * Adds a child node.
-	 * @param n The child to add.
+	 * @return The number of workers launched by a Gather node, <code>-1</code> for other nodes.
 	 */
-	private void addChild(Node n) {
-		children.add(n);
+	public int getWorkersLaunched() {
+		return scanCount(getLines(), "Workers Launched: ");
 	}
 
 	/**
-	 * Adds more text to the last line added to the node.
-	 * @param string Text to append.
+	 * @param lines The extra lines of a node.
+	 * @param prefix The start of an extra line with a count.
+	 * @return The count, <code>-1</code> if the node has no such line.
 	 */
-	public void appendToLastLine(String string) {
-		if (lines.size() == 0) {
-			line.append(string);
-		}
-		else {
-			lines.add(lines.remove(lines.size() - 1) + string);
+	static int scanCount(List<String> lines, String prefix) {
+		for (String extra : lines) {
+			if (extra.startsWith(prefix)) {
+				try {
+					return Integer.parseInt(extra.substring(prefix.length()).trim());
+				}
+				catch (NumberFormatException e) {
+					return -1;
+				}
+			}
 		}
+		return -1;
 	}
 
 	/**
-	 * Adds a new line to the node.
-	 * @param trimmed The line.
+	 * @param totalTime Actual total time for one loop.
+	 * @param loops Number of loops.
+	 * @param parallelism Number of processes that run the node, the loops of the processes run at the same time.
+	 * @return The execution time of the node inclusive child nodes.
 	 */
-	public void addLine(String trimmed) {
-		lines.add(trimmed);
+	static float loopTime(float totalTime, int loops, int parallelism) {
+		return parallelism > 1 ? totalTime * loops / parallelism : totalTime * loops;
 	}
 
 	/**
-	 * Adds indentation to a line.
-	 * @param count Number of spaces to add.
-	 * @param res The stringbuilder to add it to.
-	 * @return The stringbuilder.
+	 * @param timeInclusive The execution time of a node inclusive child nodes.
+	 * @param childTimeInclusive The summed execution time of the children inclusive their child nodes.
+	 * @return The execution time of the node exclusive child nodes.
 	 */
-	private StringBuilder addIndentation(int count, StringBuilder res) {
-		for (int i = 0; i < count; i++) {
-			res.append(" ");
-		}
-		return res;
+	static float exclusiveTime(float timeInclusive, float childTimeInclusive) {
+		return timeInclusive - childTimeInclusive;
 	}
 
 	/**
-	 * @return The main line of text describing the node.
+	 * @param timeExclusive The execution time of a node exclusive child nodes.
+	 * @param childMaxTimeExclusive The largest exclusive time in the subtrees of the children.
+	 * @return The largest exclusive time in the subtree of the node.
 	 */
-	public String getMainLine() {
-		return line.toString();
+	static float subtreeMaxTime(float timeExclusive, float childMaxTimeExclusive) {
+		return Math.max(timeExclusive, childMaxTimeExclusive);
 	}
 
-
 	/**
-	 * @return Number of loops for this node.
+	 * Rolls up reads. The reads of a node include its child nodes, but nodes without a buffers line still add up
+	 * their children.
+	 * @param reads The reads of a node, as given on its lines.
+	 * @param childReads The summed reads of the children.
+	 * @return The reads of the subtree of the node.
 	 */
-	public int getLoopCount() {
-		Matcher m = timePattern.matcher(line.toString());
-		if (m.matches()) {
-			return Integer.parseInt(m.group(4));
-		}
-		return 0;
+	static long rollUpReads(long reads, long childReads) {
+		return Math.max(reads, childReads);
 	}
 
 	/**
-	 * @param ignoreTriggers If <code>true</code> trigger rows will return 0.
-	 * @return The execution time inclusive child nodes.
+	 * Rolls up read times like {@link #rollUpReads(long, long)}.
+	 * @param readTime The read time of a node, as given on its lines.
+	 * @param childReadTime The summed read time of the children.
+	 * @return The read time of the subtree of the node.
 	 */
-	public float getTimeInclusive(boolean ignoreTriggers) {
-		Matcher m = timePattern.matcher(line.toString());
-		if (m.matches()) {
-			return Float.parseFloat(m.group(2)) * Integer.parseInt(m.group(4));
-		}
-		if (!ignoreTriggers) {
-			m = triggerPattern.matcher(line.toString());
-			if (m.matches()) {
-				return Float.parseFloat(m.group(2));
-			}
-		}
-		return 0;
+	static float rollUpReads(float readTime, float childReadTime) {
+		return Math.max(readTime, childReadTime);
 	}
 
 	/**
-	 * @return The execution time exclusive child nodes.
+	 * Finds the number of processes that run the children of a Gather node, the workers that run the parallel part
+	 * of the plan plus the leader if it took part.
+	 * @param parallelism Number of processes that run the Gather node.
+	 * @param launched The number of workers launched by the node, <code>-1</code> if not known.
+	 * @param loops Number of loops of the node, 0 if it has no actual times.
+	 * @param childLoops The largest number of loops of any child, 0 if no child has actual times.
+	 * @return Number of processes that run the children.
 	 */
-	public float getTimeExclusive() {
-		float result = getTimeInclusive(true);
-		for (Node child : children ) {
-			result -= child.getTimeInclusive(true);
+	static int gatherParallelism(int parallelism, int launched, int loops, int childLoops) {
+		if (launched < 0) {
+			return parallelism;
 		}
-		return result;
+		// Every process runs the child once per loop of the Gather, which also tells if the leader took part
+		if (loops > 0 && childLoops > 0) {
+			return Math.max(1, Math.round((float) childLoops / loops));
+		}
+		return launched + 1;
 	}
 
 	/**
-	 * @return The parent node.
+	 * @return The numbers of the parallel workers, from explain verbose, empty if there are none.
 	 */
-	public Node getParent() {
-		return parent;
+	public List<WorkerMetrics> getWorkers() {
+		return WorkerMetrics.parse(getLines());
 	}
 
 	/**
-	 * A string describing the node and its children.
-	 * @param indentation Number of spaces to indent lines with.
-	 * @param res Stringbuilder to add output to.
-	 * @return The resulting string.
+	 * Compares the time of the busiest process with the average, the leader counts as a process if it has any
+	 * loops left after the workers.
+	 * @return The time of the busiest process divided by the average time, 1 if the work is evenly spread or if
+	 * the workers are not known.
 	 */
-	private String toString(int indentation, StringBuilder res) {
-		StringBuilder internal = res != null ? res : new StringBuilder();
-		addIndentation(indentation, internal).append(line).append("\n");
-		for (String line : lines) {
-			addIndentation(indentation, internal).append(line).append("\n");
+	public float getWorkerSkew() {
+		List<WorkerMetrics> workers = getWorkers();
+		if (workers.isEmpty()) {
+			return 1;
+		}
+		Metrics m = getMetrics();
+		float sum = 0;
+		float max = 0;
+		int loops = 0;
+		for (WorkerMetrics worker : workers) {
+			sum += worker.getTime();
+			max = Math.max(max, worker.getTime());
+			loops += worker.getLoops();
+		}
+		int processes = workers.size();
+		if (m.hasTime && m.loops > loops) {
+			float leader = Math.max(0, m.totalTime * m.loops - sum);
+			sum += leader;
+			max = Math.max(max, leader);
+			processes++;
 		}
-		for (Node child : children) {
-			child.toString(indentation + 2, internal);
+		if (processes < 2 || sum <= 0) {
+			return 1;
 		}
-		return internal.toString();
+		return max / (sum / processes);
 	}
 
 	/**
-	 * @see java.lang.Object#toString()
+	 * @return The execution time exclusive child nodes.
 	 */
-	public String toString() {
-		return toString(0, null);
-	}
+	public abstract float getTimeExclusive();
 
 	/**
-	 * @return The child nodes.
+	 * @return The q-error of the row estimate, the factor between estimated and actual rows over all loops,
+	 * <code>-1</code> if unknown.
 	 */
-	public List<Node> getChildren() {
-		return children;
-	}
+	public abstract float getQError();
 
 	/**
-	 * Goes up in the tree until reaching a node with a smaller indentation.
-	 * @param newIndentation Indentation to look for.
-	 * @return A node with smalled indentation.
+	 * @return The node where the estimate error of this node starts, this node if the error starts here,
+	 * <code>null</code> if the estimate is good.
 	 */
-	public Node walkToIndentation(int newIndentation) {
-		Node result = this;
-		while (result != null && result.indentation >= newIndentation) {
-			result = result.getParent();
-		}
-		return result;
+	public abstract Node getEstimateSource();
+
+	/**
+	 * @return Blocks read by the subtree.
+	 */
+	public abstract long getReadBlocks();
+
+	/**
+	 * @return Blocks read exclusive child nodes.
+	 */
+	public abstract long getReadBlocksExclusive();
+
+	/**
+	 * @return Time spent reading blocks in the subtree.
+	 */
+	public abstract float getReadTime();
+
+	/**
+	 * @return Time spent reading blocks exclusive child nodes.
+	 */
+	public abstract float getReadTimeExclusive();
+
+	/**
+	 * @param mode The position of a mark mode in the heat classes, {@link Heat#EXCLUSIVE}, {@link Heat#INCLUSIVE},
+	 * {@link Heat#COUNT} or {@link Heat#IO}.
+	 * @return The heat class of the mode, from {@link Heat#NONE} to {@link Heat#HIGH}.
+	 */
+	public int getHeat(int mode) {
+		return Heat.get(getHeats(), mode);
 	}
 
+	/**
+	 * @return The heat classes of all mark modes.
+	 */
+	abstract byte getHeats();
+
+	/**
+	 * Calculates the heat classes of the tree below this node again.
+	 * @param settings The levels to use.
+	 */
+	abstract void calculateHeat(Heat settings);
+
+	/**
+	 * @return Number of nodes in the subtree, including this node.
+	 */
+	public abstract int getSubtreeNodeCount();
+
+	/**
+	 * @return The largest exclusive time of any node in the subtree, including this node.
+	 */
+	public abstract float getSubtreeMaxTimeExclusive();
+
+	/**
+	 * @return Index of the first input line of the node, <code>-1</code> if the input lines are not known.
+	 */
+	public abstract int getFirstLine();
+
+	/**
+	 * @return Index of the last input line of the node and all its child nodes, <code>-1</code> if the input
+	 * lines are not known.
+	 */
+	public abstract int getSubtreeLastLine();
+
+	/**
+	 * Finds the deepest node whose input lines, including child nodes, contain all the given lines.
+	 * @param first Index of the first line.
+	 * @param last Index of the last line.
+	 * @return The node, or <code>null</code> if not even this node contains the lines.
+	 */
+	public abstract Node findNodeContainingLines(int first, int last);
+
+	/**
+	 * @return The parent node.
+	 */
+	public abstract Node getParent();
+
+	/**
+	 * @return The child nodes, which can not be changed.
+	 */
+	public abstract List<Node> getChildren();
+
 	/**
 	 * @return <code>true</code> if any of the children contains a node with the text SubPlan in the beginning.
 	 */
 	public boolean findSubPlanNode() {
-		for (Node child : children) {
-			if (child.line.indexOf("SubPlan") == 0) {
+		for (Node child : getChildren()) {
+			if (child.getMainLine().startsWith("SubPlan")) {
 				return true;
 			}
 		}
@@ -203,13 +305,12 @@ public class Node {
 	/**
 	 * @return Get the total execution time, can be called on any node in the tree.
 	 */
-	public float getTotalTime() {
-		Node node = this;
-		while (node.getParent() != null) {
-			node = node.getParent();
-		}
-		return node.getTimeInclusive(true);
-	}
+	public abstract float getTotalTime();
+
+	/**
+	 * @return The extra lines of the node.
+	 */
+	abstract List<String> getLines();
 
 	/**
 	 * @param limitLength The max line length for a line.
@@ -217,7 +318,7 @@ public class Node {
 	 */
 	public String getExtraInformation(int limitLength) {
 		StringBuilder res = new StringBuilder();
-		for (String line : lines) {
+		for (String line : getLines()) {
 			res.append(line.substring(0, Math.min(line.length(), limitLength))).append("\n");
 		}
 		return res.toString().trim();
@@ -227,57 +328,54 @@ public class Node {
 	 * @return The row count information for a line.
 	 */
 	public RowCountInfo getRowCountInfo() {
-		Matcher m = timePattern.matcher(line.toString());
-		if (m.matches()) {
-			int actual = Integer.parseInt(m.group(3));
-			m = rowCountPattern.matcher(line.toString());
-			if (m.matches()) {
-				int estimated = Integer.parseInt(m.group(2));
-				return new RowCountInfo(actual, estimated);
-			}
+		Metrics m = getMetrics();
+		if (m.hasTime && m.hasCost) {
+			return new RowCountInfo(m.actualRows, m.planRows, m.loops);
 		}
-		return new RowCountInfo(-1, -1);
+		return new RowCountInfo(-1, -1, 0);
 	}
 
-
 	/**
 	 * @return <code>true</code> if the path has been executed.
 	 */
-	public boolean isExecuted() {
-		return line.indexOf("(never executed)") == -1;
+	public abstract boolean isExecuted();
+
+	/**
+	 * Adds indentation to a line.
+	 * @param count Number of spaces to add.
+	 * @param res The stringbuilder to add it to.
+	 * @return The stringbuilder.
+	 */
+	static StringBuilder addIndentation(int count, StringBuilder res) {
+		for (int i = 0; i < count; i++) {
+			res.append(" ");
+		}
+		return res;
 	}
 
 	/**
 	 * Container class that contains information about the row count diff between estimated and actual.
 	 */
 	public class RowCountInfo {
-		/** The ratio between estimated and actual. */
+		/** The ratio between estimated and actual, the q-error rounded down. */
 		public int count;
 
 		/** Indicates in which direction the estimate differs. */
 		public boolean toHigh;
 
+		/** The q-error, <code>-1</code> if unknown. */
+		public float qError;
+
 		/**
 		 * Creates a new row count info.
-		 * @param actual Actual number of lines.
-		 * @param estimated Estimated number of lines.
+		 * @param actual Actual number of lines for one loop.
+		 * @param estimated Estimated number of lines for one loop.
+		 * @param loops Number of loops.
 		 */
-		public RowCountInfo(int actual, int estimated) {
-			if (estimated < 0) {
-				count = -1;
-			}
-			else if (estimated == 0 || actual == 0) {
-				// TODO: Is this really correct
-				count = 0;
-			}
-			else if (estimated > actual) {
-				count = estimated / actual;
-				toHigh = true;
-			}
-			else {
-				count = actual / estimated;
-				toHigh = false;
-			}
+		public RowCountInfo(double actual, long estimated, int loops) {
+			qError = RowEstimates.qError(actual, estimated, loops);
+			count = qError < 0 ? -1 : (int) Math.min(qError, Integer.MAX_VALUE);
+			toHigh = count > 1 && estimated > actual;
 		}
 
 		/**
@@ -294,4 +392,3 @@ public class Node {
 		}
 	}
 }
-
@@ -0,0 +1,343 @@
+package se.pex.analyze;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A search index over the lines of all nodes of a plan. Every line is split into words of letters, digits and
+ * underscores, and the index keeps the sorted words with the nodes they are found in. A query is first narrowed
+ * down to the nodes that have all its words, only those nodes are searched for the whole query, so most queries
+ * never look at the text of most nodes.
+ */
+public class NodeIndex {
+	/** The nodes in pre order, <code>null</code> if the nodes are read from a table. */
+	private final Node[] nodes;
+
+	/** The table of a compact tree, <code>null</code> if the nodes are kept in an array. */
+	private final PlanTable table;
+
+	/** Number of nodes. */
+	private final int size;
+
+	/** All words found, lower case and sorted. */
+	private final String[] words;
+
+	/** For every word, the nodes it is found in in increasing order. */
+	private final int[][] postings;
+
+	/**
+	 * The nodes of one word while the index is built.
+	 */
+	private static class Postings {
+		/** The nodes. */
+		private int[] nodes = new int[4];
+
+		/** Number of nodes. */
+		private int size;
+
+		/**
+		 * Adds a node, a node is only added once as the nodes are added in order.
+		 * @param node The node.
+		 */
+		void add(int node) {
+			if (size > 0 && nodes[size - 1] == node) {
+				return;
+			}
+			if (size == nodes.length) {
+				nodes = Arrays.copyOf(nodes, size * 2);
+			}
+			nodes[size++] = node;
+		}
+	}
+
+	/**
+	 * Creates a new index.
+	 * @param nodes The nodes in pre order, <code>null</code> if the nodes are read from a table.
+	 * @param table The table of a compact tree, <code>null</code> if the nodes are kept in an array.
+	 * @param size Number of nodes.
+	 * @param found The nodes of every word.
+	 */
+	private NodeIndex(Node[] nodes, PlanTable table, int size, Map<String, Postings> found) {
+		this.nodes = nodes;
+		this.table = table;
+		this.size = size;
+		words = found.keySet().toArray(new String[found.size()]);
+		Arrays.sort(words);
+		postings = new int[words.length][];
+		for (int i = 0; i < words.length; i++) {
+			Postings p = found.get(words[i]);
+			postings[i] = Arrays.copyOf(p.nodes, p.size);
+		}
+	}
+
+	/**
+	 * Builds the index of a tree.
+	 * @param root The root of the tree.
+	 * @return The index.
+	 */
+	public static NodeIndex build(Node root) {
+		Map<String, Postings> found = new HashMap<String, Postings>();
+		if (root instanceof CompactNode) {
+			// The text is read straight from the table, no facades are created
+			PlanTable table = ((CompactNode) root).getTable();
+			CharBuffer text = CharBuffer.wrap(table.text);
+			for (int i = 0; i < table.size; i++) {
+				addWords(found, text, table.lineStart[i], table.textEnd(i), i);
+			}
+			return new NodeIndex(null, table, table.size, found);
+		}
+		List<Node> nodes = new ArrayList<Node>(root.getSubtreeNodeCount());
+		List<Node> stack = new ArrayList<Node>();
+		stack.add(root);
+		while (!stack.isEmpty()) {
+			Node node = stack.remove(stack.size() - 1);
+			int index = nodes.size();
+			nodes.add(node);
+			addWords(found, node.getMainLine(), 0, node.getMainLine().length(), index);
+			for (String line : node.getLines()) {
+				addWords(found, line, 0, line.length(), index);
+			}
+			List<Node> children = node.getChildren();
+			for (int i = children.size() - 1; i >= 0; i--) {
+				stack.add(children.get(i));
+			}
+		}
+		return new NodeIndex(nodes.toArray(new Node[nodes.size()]), null, nodes.size(), found);
+	}
+
+	/**
+	 * Adds the words of a text to the index.
+	 * @param found The nodes of every word.
+	 * @param text The text.
+	 * @param start Start of the text of the node.
+	 * @param end End of the text of the node.
+	 * @param node The node.
+	 */
+	private static void addWords(Map<String, Postings> found, CharSequence text, int start, int end, int node) {
+		StringBuilder word = new StringBuilder();
+		for (int i = start; i <= end; i++) {
+			char c = i < end ? text.charAt(i) : ' ';
+			if (isWordChar(c)) {
+				word.append(Character.toLowerCase(c));
+			}
+			else if (word.length() > 0) {
+				String key = word.toString();
+				Postings p = found.get(key);
+				if (p == null) {
+					p = new Postings();
+					found.put(key, p);
+				}
+				p.add(node);
+				word.setLength(0);
+			}
+		}
+	}
+
+	/**
+	 * @param c A character.
+	 * @return <code>true</code> if the character is part of a word.
+	 */
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+
+	/**
+	 * @return Number of nodes.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param index The position of the node in pre order.
+	 * @return The node.
+	 */
+	Node getNode(int index) {
+		return nodes != null ? nodes[index] : table.getNode(index);
+	}
+
+	/**
+	 * Starts a search, nothing is searched until the matches are asked for.
+	 * @param query The text to search for, upper and lower case are the same.
+	 * @return The search.
+	 */
+	public Search search(String query) {
+		StringBuilder lower = new StringBuilder(query.length());
+		for (int i = 0; i < query.length(); i++) {
+			// The same lower case as the words of the index, whatever the locale
+			lower.append(Character.toLowerCase(query.charAt(i)));
+		}
+		return new Search(lower.toString());
+	}
+
+	/**
+	 * Finds the nodes that may contain a query, from the words of the query. A word in the middle of the query
+	 * must be a whole word of the node, the first word may be the end of a word and the last word the start of a
+	 * word.
+	 * @param query The lower case query.
+	 * @return The nodes that may contain the query, <code>null</code> if the query has no words.
+	 */
+	private BitSet candidates(String query) {
+		BitSet candidates = null;
+		int i = 0;
+		while (i < query.length()) {
+			if (!isWordChar(query.charAt(i))) {
+				i++;
+				continue;
+			}
+			int start = i;
+			while (i < query.length() && isWordChar(query.charAt(i))) {
+				i++;
+			}
+			String word = query.substring(start, i);
+			BitSet found = find(word, start > 0, i < query.length());
+			if (candidates == null) {
+				candidates = found;
+			}
+			else {
+				candidates.and(found);
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * Finds the nodes with a word.
+	 * @param word A word of the query.
+	 * @param wholeStart <code>true</code> if the word must be the start of a word of the node.
+	 * @param wholeEnd <code>true</code> if the word must be the end of a word of the node.
+	 * @return The nodes.
+	 */
+	private BitSet find(String word, boolean wholeStart, boolean wholeEnd) {
+		BitSet found = new BitSet(size);
+		int first = 0;
+		if (wholeStart) {
+			// The words starting with the word are next to each other in the sorted words
+			first = Arrays.binarySearch(words, word);
+			if (first < 0) {
+				first = -first - 1;
+			}
+		}
+		for (int i = first; i < words.length; i++) {
+			String candidate = words[i];
+			if (wholeStart && !candidate.startsWith(word)) {
+				break;
+			}
+			boolean match = wholeStart ? (!wholeEnd || candidate.length() == word.length())
+				: wholeEnd ? candidate.endsWith(word) : candidate.contains(word);
+			if (match) {
+				for (int node : postings[i]) {
+					found.set(node);
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Checks if a part of a text contains a query.
+	 * @param text The text.
+	 * @param start Start of the part.
+	 * @param end End of the part.
+	 * @param query The lower case query.
+	 * @return <code>true</code> if the query is found.
+	 */
+	private static boolean contains(CharSequence text, int start, int end, String query) {
+		for (int i = start; i <= end - query.length(); i++) {
+			int j = 0;
+			while (j < query.length() && Character.toLowerCase(text.charAt(i + j)) == query.charAt(j)) {
+				j++;
+			}
+			if (j == query.length()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A search of the index. The matches are found a few nodes at a time, so that a search can be stopped and the
+	 * first matches can be shown before all are found.
+	 */
+	public class Search {
+		/** The lower case query. */
+		private final String query;
+
+		/** The nodes that may contain the query, <code>null</code> if all nodes may. */
+		private final BitSet candidates;
+
+		/** The next node to look at. */
+		private int next;
+
+		/**
+		 * Creates a new search.
+		 * @param query The lower case query.
+		 */
+		Search(String query) {
+			this.query = query;
+			candidates = candidates(query);
+			next = query.length() == 0 ? size : nextCandidate(0);
+		}
+
+		/**
+		 * @param from A position in pre order.
+		 * @return The first node from the position that may contain the query, the number of nodes if there is none.
+		 */
+		private int nextCandidate(int from) {
+			if (candidates == null) {
+				return from;
+			}
+			int candidate = candidates.nextSetBit(from);
+			return candidate >= 0 ? candidate : size;
+		}
+
+		/**
+		 * @return <code>true</code> if all matches have been found.
+		 */
+		public boolean isDone() {
+			return next >= size;
+		}
+
+		/**
+		 * Looks for more matches.
+		 * @param count Max number of nodes to look at.
+		 * @return The nodes that contain the query, in pre order.
+		 */
+		public List<Node> next(int count) {
+			List<Node> matches = new ArrayList<Node>();
+			for (int i = 0; i < count && next < size; i++) {
+				if (matches(next)) {
+					matches.add(getNode(next));
+				}
+				next = nextCandidate(next + 1);
+			}
+			return matches;
+		}
+
+		/**
+		 * @param index The position of a node in pre order.
+		 * @return <code>true</code> if one of the lines of the node contains the query.
+		 */
+		private boolean matches(int index) {
+			if (table != null) {
+				// A query never contains a line break, so it is never found across lines
+				return contains(CharBuffer.wrap(table.text), table.lineStart[index], table.textEnd(index), query);
+			}
+			Node node = nodes[index];
+			if (contains(node.getMainLine(), 0, node.getMainLine().length(), query)) {
+				return true;
+			}
+			for (String line : node.getLines()) {
+				if (contains(line, 0, line.length(), query)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
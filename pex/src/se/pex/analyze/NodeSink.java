@@ -0,0 +1,64 @@
+package se.pex.analyze;
+
+/**
+ * Receives the nodes of a plan from a parser, in the order they are read. Nodes are referred to by the number
+ * returned when they were added, so a sink can store them any way it likes, as a tree of {@link TreeNode} or as
+ * the rows of a {@link PlanTable}. A node is always added after its parent, and new nodes are only added below
+ * the node added last or one of its ancestors, so the nodes are numbered in pre order.
+ */
+interface NodeSink {
+	/**
+	 * Adds a node.
+	 * @param parent The number of the parent node, <code>-1</code> for a node without parent.
+	 * @param line The main line describing the node.
+	 * @param indentation Spaces on the line.
+	 * @param lineNumber Index of the input line of the node.
+	 * @return The number of the node.
+	 */
+	int addNode(int parent, String line, int indentation, int lineNumber);
+
+	/**
+	 * Adds a new line to a node.
+	 * @param node The number of the node.
+	 * @param line The line.
+	 */
+	void addLine(int node, String line);
+
+	/**
+	 * Adds more text to the last line added to a node.
+	 * @param node The number of the node.
+	 * @param text Text to append.
+	 */
+	void appendToLastLine(int node, String text);
+
+	/**
+	 * Sets the last input line of a node, not counting child nodes.
+	 * @param node The number of the node.
+	 * @param lineNumber Index of the last input line.
+	 */
+	void setLastLine(int node, int lineNumber);
+
+	/**
+	 * Parses the numbers on the main line of a node, called when the main line is complete.
+	 * @param node The number of the node.
+	 */
+	void parseMetrics(int node);
+
+	/**
+	 * Sets the numbers of a node, for nodes that were not created from a text line.
+	 * @param node The number of the node.
+	 * @param metrics The numbers.
+	 */
+	void setMetrics(int node, Metrics metrics);
+
+	/**
+	 * Throws away all nodes, the next node added gets number 0.
+	 */
+	void clear();
+
+	/**
+	 * Completes the tree, node 0 is the root. Nodes that are not below the root are left out.
+	 * @return The root node, an empty node if no nodes were added.
+	 */
+	Node getRoot();
+}
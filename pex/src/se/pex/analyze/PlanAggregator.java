@@ -0,0 +1,484 @@
+package se.pex.analyze;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sums up many plans, like all plans of a log, by node type. Plans are added one at a time and nothing of a plan
+ * is kept after it has been added, so any number of plans can be summed up.
+ * The node types are kept in a hash table with the 64 bit hash of the type name as key and the totals in arrays
+ * indexed by type, and only the worst row estimates are kept in a bounded heap.
+ */
+public class PlanAggregator {
+	/** Longest main line kept for a misestimated node. */
+	private static final int MAX_LINE_LENGTH = 200;
+
+	/**
+	 * The totals of a node type.
+	 */
+	public static class NodeType {
+		/** The node type, like <code>Seq Scan on a</code>. */
+		private final String name;
+
+		/** Number of nodes. */
+		private final int count;
+
+		/** Summed exclusive time. */
+		private final double exclusiveTime;
+
+		/** The worst row estimate ratio. */
+		private final int worstEstimate;
+
+		/**
+		 * Creates new totals.
+		 * @param name The node type.
+		 * @param count Number of nodes.
+		 * @param exclusiveTime Summed exclusive time.
+		 * @param worstEstimate The worst row estimate ratio.
+		 */
+		NodeType(String name, int count, double exclusiveTime, int worstEstimate) {
+			this.name = name;
+			this.count = count;
+			this.exclusiveTime = exclusiveTime;
+			this.worstEstimate = worstEstimate;
+		}
+
+		/**
+		 * @return The node type, like <code>Seq Scan on a</code>.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return Number of nodes.
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * @return Summed exclusive time.
+		 */
+		public double getExclusiveTime() {
+			return exclusiveTime;
+		}
+
+		/**
+		 * @return The worst row estimate ratio between estimated and actual rows of any node.
+		 */
+		public int getWorstEstimate() {
+			return worstEstimate;
+		}
+	}
+
+	/**
+	 * A node with a bad row estimate.
+	 */
+	public static class Misestimate {
+		/** Index of the plan. */
+		private final int plan;
+
+		/** The main line of the node. */
+		private final String line;
+
+		/** The ratio between estimated and actual rows, rounded down. */
+		private final int count;
+
+		/** The q-error, the exact ratio between estimated and actual rows over all loops. */
+		private final float qError;
+
+		/** <code>true</code> if more rows were estimated than found. */
+		private final boolean toHigh;
+
+		/**
+		 * Creates a new misestimate.
+		 * @param plan Index of the plan.
+		 * @param line The main line of the node.
+		 * @param estimate The row count information of the node.
+		 */
+		Misestimate(int plan, String line, Node.RowCountInfo estimate) {
+			this.plan = plan;
+			this.line = line;
+			this.count = estimate.count;
+			this.qError = estimate.qError;
+			this.toHigh = estimate.toHigh;
+		}
+
+		/**
+		 * @return Index of the plan.
+		 */
+		public int getPlan() {
+			return plan;
+		}
+
+		/**
+		 * @return The main line of the node.
+		 */
+		public String getLine() {
+			return line;
+		}
+
+		/**
+		 * @return The ratio between estimated and actual rows, rounded down.
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * @return The q-error, the exact ratio between estimated and actual rows over all loops.
+		 */
+		public float getQError() {
+			return qError;
+		}
+
+		/**
+		 * @return <code>true</code> if more rows were estimated than found.
+		 */
+		public boolean isToHigh() {
+			return toHigh;
+		}
+
+		/**
+		 * @see java.lang.Object#toString()
+		 */
+		public String toString() {
+			return count + " " + (toHigh ? "↑" : "↓");
+		}
+	}
+
+	/** Orders misestimates with the smallest q-error first. */
+	private static final Comparator<Misestimate> SMALLEST_ERROR_FIRST = new Comparator<Misestimate>() {
+		@Override
+		public int compare(Misestimate m1, Misestimate m2) {
+			return Float.compare(m1.qError, m2.qError);
+		}
+	};
+
+	/** Number of node types and misestimates reported. */
+	private final int topCount;
+
+	/** Hashes of the type names, <code>0</code> for free slots. */
+	private long[] hashes = new long[64];
+
+	/** Index of the type for every used slot. */
+	private int[] slots = new int[64];
+
+	/** Number of node types. */
+	private int typeCount;
+
+	/** Names of the types. */
+	private String[] names = new String[32];
+
+	/** Number of nodes of every type. */
+	private int[] counts = new int[32];
+
+	/** Summed exclusive time of every type. */
+	private double[] exclusiveTimes = new double[32];
+
+	/** Worst row estimate ratio of every type. */
+	private int[] worstEstimates = new int[32];
+
+	/** The worst misestimates so far, the least bad on top. */
+	private final PriorityQueue<Misestimate> misestimates;
+
+	/** Number of plans added. */
+	private int planCount;
+
+	/** Summed total time of all plans. */
+	private double totalTime;
+
+	/**
+	 * Creates a new aggregator.
+	 * @param topCount Number of node types and misestimates reported.
+	 */
+	public PlanAggregator(int topCount) {
+		this.topCount = topCount;
+		misestimates = new PriorityQueue<Misestimate>(topCount + 1, SMALLEST_ERROR_FIRST);
+	}
+
+	/**
+	 * Adds the nodes of a plan to the totals.
+	 * @param plan Index of the plan, reported with its misestimates.
+	 * @param root The root node of the plan.
+	 */
+	public void add(int plan, Node root) {
+		planCount++;
+		totalTime += root.getTotalTime();
+		Deque<Node> stack = new ArrayDeque<Node>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			String line = node.getMainLine();
+			if (line.length() > 0) {
+				addNode(plan, node, line);
+			}
+			for (Node child : node.getChildren()) {
+				stack.push(child);
+			}
+		}
+	}
+
+	/**
+	 * Adds a node to the totals of its type.
+	 * @param plan Index of the plan.
+	 * @param node The node.
+	 * @param line The main line of the node.
+	 */
+	private void addNode(int plan, Node node, String line) {
+		int type = findType(getTypeName(node, line));
+		counts[type]++;
+		exclusiveTimes[type] += node.getTimeExclusive();
+		Node.RowCountInfo estimate = node.getRowCountInfo();
+		if (estimate.count > worstEstimates[type]) {
+			worstEstimates[type] = estimate.count;
+		}
+		// Only the nodes where an error starts are reported, not the nodes above them that carry it
+		// They are ranked by the exact q-error, so errors with the same rounded ratio are still told apart
+		if (topCount > 0 && estimate.qError >= RowEstimates.MISESTIMATE && node.getEstimateSource() == node
+			&& (misestimates.size() < topCount || estimate.qError > misestimates.peek().qError)) {
+			String kept = line.length() > MAX_LINE_LENGTH ? line.substring(0, MAX_LINE_LENGTH) : line;
+			misestimates.add(new Misestimate(plan, kept, estimate));
+			if (misestimates.size() > topCount) {
+				misestimates.poll();
+			}
+		}
+	}
+
+	/**
+	 * Gets the node type of a node, the main line without numbers and aliases, and the sort method of sorts.
+	 * @param node The node.
+	 * @param line The main line of the node.
+	 * @return The node type, like <code>Index Scan using a_pkey on a</code>.
+	 */
+	static String getTypeName(Node node, String line) {
+		String name = getTypeName(line);
+		if (name.startsWith("Sort") || name.startsWith("Incremental Sort")) {
+			String method = getSortMethod(node);
+			if (method != null) {
+				name = name + " with " + method;
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * Gets the node type written in a main line, the line without numbers and aliases.
+	 * @param line The main line of a node.
+	 * @return The node type, like <code>Index Scan using a_pkey on a</code>.
+	 */
+	static String getTypeName(String line) {
+		int start = line.startsWith("->") ? 2 : 0;
+		while (start < line.length() && line.charAt(start) == ' ') {
+			start++;
+		}
+		int end = line.indexOf("  (cost=", start);
+		if (end < 0) {
+			end = line.indexOf(" (actual ", start);
+		}
+		if (end < 0) {
+			end = line.indexOf(" (never executed)", start);
+		}
+		if (end < 0) {
+			end = line.length();
+		}
+		if (line.startsWith("SubPlan", start) || line.startsWith("InitPlan", start)) {
+			end = line.indexOf(' ', start);
+			end = end < 0 ? line.length() : end;
+		}
+		else if (line.startsWith("Trigger", start) && line.indexOf(':', start) > 0) {
+			end = line.indexOf(':', start);
+		}
+		else {
+			// The alias after the relation is left out
+			int on = line.lastIndexOf(" on ", end);
+			if (on >= start) {
+				int alias = line.indexOf(' ', on + 4);
+				if (alias >= 0 && alias < end) {
+					end = alias;
+				}
+			}
+		}
+		return line.substring(start, end).trim();
+	}
+
+	/**
+	 * @param node A sort node.
+	 * @return The sort method, <code>null</code> if it is not known.
+	 */
+	private static String getSortMethod(Node node) {
+		String extra = node.getExtraInformation(Integer.MAX_VALUE);
+		int start = extra.indexOf("Sort Method: ");
+		if (start < 0) {
+			return null;
+		}
+		start += "Sort Method: ".length();
+		int end = start;
+		while (end < extra.length() && extra.charAt(end) != '\n' && !extra.startsWith("  ", end)) {
+			end++;
+		}
+		return extra.substring(start, end).trim();
+	}
+
+	/**
+	 * Finds a node type in the hash table, and adds it if it is new.
+	 * @param name The type name.
+	 * @return Index of the type.
+	 */
+	private int findType(String name) {
+		long hash = hash(name);
+		int mask = hashes.length - 1;
+		int slot = (int) (hash ^ (hash >>> 32)) & mask;
+		while (hashes[slot] != 0) {
+			if (hashes[slot] == hash && names[slots[slot]].equals(name)) {
+				return slots[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (typeCount == names.length) {
+			int size = names.length * 2;
+			names = copyOf(names, size);
+			counts = copyOf(counts, size);
+			exclusiveTimes = copyOf(exclusiveTimes, size);
+			worstEstimates = copyOf(worstEstimates, size);
+		}
+		int type = typeCount++;
+		names[type] = name;
+		hashes[slot] = hash;
+		slots[slot] = type;
+		if (typeCount * 2 > hashes.length) {
+			rehash();
+		}
+		return type;
+	}
+
+	/**
+	 * Doubles the size of the hash table.
+	 */
+	private void rehash() {
+		long[] oldHashes = hashes;
+		int[] oldSlots = slots;
+		hashes = new long[oldHashes.length * 2];
+		slots = new int[oldSlots.length * 2];
+		int mask = hashes.length - 1;
+		for (int i = 0; i < oldHashes.length; i++) {
+			if (oldHashes[i] != 0) {
+				int slot = (int) (oldHashes[i] ^ (oldHashes[i] >>> 32)) & mask;
+				while (hashes[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				hashes[slot] = oldHashes[i];
+				slots[slot] = oldSlots[i];
+			}
+		}
+	}
+
+	/**
+	 * Hashes a type name with 64 bit FNV-1a.
+	 * @param name The type name.
+	 * @return The hash, never <code>0</code> as that marks free slots.
+	 */
+	static long hash(String name) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < name.length(); i++) {
+			hash ^= name.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash == 0 ? 1 : hash;
+	}
+
+	/**
+	 * @param array An array.
+	 * @param size The new size.
+	 * @return A copy of the array with the new size.
+	 */
+	private static String[] copyOf(String[] array, int size) {
+		String[] copy = new String[size];
+		System.arraycopy(array, 0, copy, 0, array.length);
+		return copy;
+	}
+
+	/**
+	 * @param array An array.
+	 * @param size The new size.
+	 * @return A copy of the array with the new size.
+	 */
+	private static int[] copyOf(int[] array, int size) {
+		int[] copy = new int[size];
+		System.arraycopy(array, 0, copy, 0, array.length);
+		return copy;
+	}
+
+	/**
+	 * @param array An array.
+	 * @param size The new size.
+	 * @return A copy of the array with the new size.
+	 */
+	private static double[] copyOf(double[] array, int size) {
+		double[] copy = new double[size];
+		System.arraycopy(array, 0, copy, 0, array.length);
+		return copy;
+	}
+
+	/**
+	 * @return The node types with the most exclusive time, the most first.
+	 */
+	public List<NodeType> getHottestTypes() {
+		// A heap of type indexes with the least exclusive time on top
+		PriorityQueue<Integer> top = new PriorityQueue<Integer>(topCount + 1, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer t1, Integer t2) {
+				return Double.compare(exclusiveTimes[t1], exclusiveTimes[t2]);
+			}
+		});
+		for (int type = 0; type < typeCount; type++) {
+			top.add(type);
+			if (top.size() > topCount) {
+				top.poll();
+			}
+		}
+		List<NodeType> res = new ArrayList<NodeType>(top.size());
+		while (!top.isEmpty()) {
+			int type = top.poll();
+			res.add(new NodeType(names[type], counts[type], exclusiveTimes[type], worstEstimates[type]));
+		}
+		Collections.reverse(res);
+		return res;
+	}
+
+	/**
+	 * @return The nodes with the worst row estimates, the worst first.
+	 */
+	public List<Misestimate> getWorstEstimates() {
+		List<Misestimate> res = new ArrayList<Misestimate>(misestimates);
+		Collections.sort(res, Collections.reverseOrder(SMALLEST_ERROR_FIRST));
+		return res;
+	}
+
+	/**
+	 * @return Number of plans added.
+	 */
+	public int getPlanCount() {
+		return planCount;
+	}
+
+	/**
+	 * @return Number of different node types.
+	 */
+	public int getTypeCount() {
+		return typeCount;
+	}
+
+	/**
+	 * @return Summed total time of all plans.
+	 */
+	public double getTotalTime() {
+		return totalTime;
+	}
+}
@@ -0,0 +1,465 @@
+package se.pex.analyze;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aligns the nodes of two plans of the same statement, like a plan before and after tuning, so that they can be
+ * shown side by side with the differences of every node.
+ * The nodes are matched in passes that all take time linear in the number of nodes:
+ * <ol>
+ * <li>Subtrees of at least two nodes that are the same in both plans, compared by a hash of the node types and
+ * how they are nested, are matched node by node, the largest first. This finds parts of a plan that have moved,
+ * like the inner side of a join that has become the outer side.</li>
+ * <li>From the roots down, the children of matched nodes are matched with children of the same node type.</li>
+ * <li>The remaining nodes are matched with any remaining node of the same type, which finds nodes that have got
+ * a new parent, like a scan below a new materialize.</li>
+ * <li>From the roots down, the remaining children of matched nodes are matched in order, which finds nodes that
+ * have changed, like a sequential scan that has become an index scan.</li>
+ * </ol>
+ */
+public class PlanDiff {
+	/**
+	 * A line of the diff, a node of the first plan and its match in the second plan.
+	 */
+	public static class Pair {
+		/** The node in the first plan, <code>null</code> if the node is only in the second plan. */
+		private final Node before;
+
+		/** The node in the second plan, <code>null</code> if the node is only in the first plan. */
+		private final Node after;
+
+		/** The parent line, <code>null</code> for the root. */
+		private final Pair parent;
+
+		/** The child lines. */
+		private final List<Pair> children = new ArrayList<Pair>();
+
+		/**
+		 * Creates a new line.
+		 * @param parent The parent line.
+		 * @param before The node in the first plan.
+		 * @param after The node in the second plan.
+		 */
+		Pair(Pair parent, Node before, Node after) {
+			this.parent = parent;
+			this.before = before;
+			this.after = after;
+			if (parent != null) {
+				parent.children.add(this);
+			}
+		}
+
+		/**
+		 * @return The node in the first plan, <code>null</code> if the node is only in the second plan.
+		 */
+		public Node getBefore() {
+			return before;
+		}
+
+		/**
+		 * @return The node in the second plan, <code>null</code> if the node is only in the first plan.
+		 */
+		public Node getAfter() {
+			return after;
+		}
+
+		/**
+		 * @return The parent line, <code>null</code> for the root.
+		 */
+		public Pair getParent() {
+			return parent;
+		}
+
+		/**
+		 * @return The child lines, the nodes of the first plan in order followed by the nodes only in the
+		 * second plan.
+		 */
+		public List<Pair> getChildren() {
+			return Collections.unmodifiableList(children);
+		}
+
+		/**
+		 * @return The change of the execution time inclusive child nodes.
+		 */
+		public float getTimeInclusiveDelta() {
+			return timeInclusive(after) - timeInclusive(before);
+		}
+
+		/**
+		 * @return The change of the execution time exclusive child nodes.
+		 */
+		public float getTimeExclusiveDelta() {
+			return timeExclusive(after) - timeExclusive(before);
+		}
+
+		/**
+		 * @return The change of the number of loops.
+		 */
+		public int getLoopsDelta() {
+			return (after == null ? 0 : after.getLoopCount()) - (before == null ? 0 : before.getLoopCount());
+		}
+
+		/**
+		 * @return The change of the q-error of the row estimate, positive if the estimate got worse. A missing node
+		 * or estimate counts as a perfect estimate.
+		 */
+		public float getQErrorDelta() {
+			return qError(after) - qError(before);
+		}
+
+		/**
+		 * @param node A node, or <code>null</code>.
+		 * @return The q-error of the row estimate, <code>1</code> for <code>null</code> or a node without estimate.
+		 */
+		private static float qError(Node node) {
+			return node == null || node.getQError() < 0 ? 1 : node.getQError();
+		}
+
+		/**
+		 * @param node A node, or <code>null</code>.
+		 * @return The execution time inclusive child nodes, <code>0</code> for <code>null</code>.
+		 */
+		private static float timeInclusive(Node node) {
+			return node == null ? 0 : node.getTimeInclusive(true);
+		}
+
+		/**
+		 * @param node A node, or <code>null</code>.
+		 * @return The execution time exclusive child nodes, <code>0</code> for <code>null</code>.
+		 */
+		private static float timeExclusive(Node node) {
+			return node == null ? 0 : node.getTimeExclusive();
+		}
+	}
+
+	/** The root line. */
+	private final Pair root;
+
+	/** Number of matched nodes. */
+	private int matchedCount;
+
+	/** Matched nodes of the second plan by node of the first plan. */
+	private final Map<Node, Node> matches = new IdentityHashMap<Node, Node>();
+
+	/** Matched nodes of the first plan by node of the second plan. */
+	private final Map<Node, Node> reverseMatches = new IdentityHashMap<Node, Node>();
+
+	/**
+	 * Aligns two plans.
+	 * @param before The root of the first plan.
+	 * @param after The root of the second plan.
+	 */
+	private PlanDiff(Node before, Node after) {
+		Map<Node, Long> beforeHashes = hashSubtrees(before);
+		Map<Node, Long> afterHashes = hashSubtrees(after);
+		matchSameSubtrees(before, beforeHashes, after, afterHashes);
+		if (!matches.containsKey(before) && !reverseMatches.containsKey(after)) {
+			match(before, after);
+		}
+		matchTopDown(before, false);
+		matchSameType(before, after);
+		matchTopDown(before, true);
+		root = buildPairs(before, after);
+	}
+
+	/**
+	 * Aligns two plans.
+	 * @param before The root of the first plan.
+	 * @param after The root of the second plan.
+	 * @return The diff.
+	 */
+	public static PlanDiff compare(Node before, Node after) {
+		return new PlanDiff(before, after);
+	}
+
+	/**
+	 * @return The root line.
+	 */
+	public Pair getRoot() {
+		return root;
+	}
+
+	/**
+	 * @return Number of nodes of the first plan that have been matched with a node of the second plan.
+	 */
+	public int getMatchedCount() {
+		return matchedCount;
+	}
+
+	/**
+	 * @param node A node of the first plan.
+	 * @return The matched node of the second plan, <code>null</code> if the node has not been matched.
+	 */
+	public Node getMatch(Node node) {
+		return matches.get(node);
+	}
+
+	/**
+	 * Matches two nodes.
+	 * @param before The node of the first plan.
+	 * @param after The node of the second plan.
+	 */
+	private void match(Node before, Node after) {
+		matches.put(before, after);
+		reverseMatches.put(after, before);
+		matchedCount++;
+	}
+
+	/**
+	 * Hashes every subtree of a plan from the node types and how they are nested, in one bottom up pass.
+	 * @param root The root of the plan.
+	 * @return The hashes by node.
+	 */
+	private static Map<Node, Long> hashSubtrees(Node root) {
+		Map<Node, Long> hashes = new IdentityHashMap<Node, Long>();
+		List<Node> preOrder = preOrder(root);
+		for (int i = preOrder.size() - 1; i >= 0; i--) {
+			Node node = preOrder.get(i);
+			long hash = PlanAggregator.hash(PlanAggregator.getTypeName(node.getMainLine()));
+			for (Node child : node.getChildren()) {
+				hash = (hash ^ hashes.get(child)) * 0x100000001b3L;
+			}
+			hashes.put(node, (hash ^ node.getChildren().size()) * 0x100000001b3L);
+		}
+		return hashes;
+	}
+
+	/**
+	 * @param root The root of a plan.
+	 * @return The nodes of the plan in pre order.
+	 */
+	private static List<Node> preOrder(Node root) {
+		List<Node> nodes = new ArrayList<Node>(root.getSubtreeNodeCount());
+		Deque<Node> stack = new ArrayDeque<Node>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			nodes.add(node);
+			List<Node> children = node.getChildren();
+			for (int i = children.size() - 1; i >= 0; i--) {
+				stack.push(children.get(i));
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Matches the subtrees of at least two nodes that are the same in both plans. The first plan is walked in
+	 * pre order, so the largest subtrees are matched first.
+	 * @param before The root of the first plan.
+	 * @param beforeHashes The subtree hashes of the first plan.
+	 * @param after The root of the second plan.
+	 * @param afterHashes The subtree hashes of the second plan.
+	 */
+	private void matchSameSubtrees(Node before, Map<Node, Long> beforeHashes, Node after, Map<Node, Long> afterHashes) {
+		Map<Long, Deque<Node>> candidates = new HashMap<Long, Deque<Node>>();
+		for (Node node : preOrder(after)) {
+			if (!node.getChildren().isEmpty()) {
+				Long hash = afterHashes.get(node);
+				Deque<Node> nodes = candidates.get(hash);
+				if (nodes == null) {
+					nodes = new ArrayDeque<Node>(1);
+					candidates.put(hash, nodes);
+				}
+				nodes.add(node);
+			}
+		}
+		Deque<Node> stack = new ArrayDeque<Node>();
+		stack.push(before);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			Deque<Node> nodes = node.getChildren().isEmpty() ? null : candidates.get(beforeHashes.get(node));
+			Node candidate = nodes == null ? null : pollUnmatched(nodes);
+			if (candidate != null && sameSubtree(node, candidate)) {
+				matchSubtree(node, candidate);
+				continue;
+			}
+			for (Node child : node.getChildren()) {
+				stack.push(child);
+			}
+		}
+	}
+
+	/**
+	 * @param nodes Nodes of the second plan.
+	 * @return The first node that has not been matched, <code>null</code> if all are matched.
+	 */
+	private Node pollUnmatched(Deque<Node> nodes) {
+		while (!nodes.isEmpty()) {
+			Node node = nodes.poll();
+			if (!reverseMatches.containsKey(node)) {
+				return node;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks that two subtrees really are the same, and do not only have the same hash.
+	 * @param before A subtree of the first plan.
+	 * @param after A subtree of the second plan.
+	 * @return <code>true</code> if the subtrees have the same node types nested in the same way.
+	 */
+	private static boolean sameSubtree(Node before, Node after) {
+		List<Node> beforeNodes = preOrder(before);
+		List<Node> afterNodes = preOrder(after);
+		if (beforeNodes.size() != afterNodes.size()) {
+			return false;
+		}
+		for (int i = 0; i < beforeNodes.size(); i++) {
+			Node b = beforeNodes.get(i);
+			Node a = afterNodes.get(i);
+			if (b.getChildren().size() != a.getChildren().size()
+					|| !PlanAggregator.getTypeName(b.getMainLine()).equals(PlanAggregator.getTypeName(a.getMainLine()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Matches the nodes of two subtrees that are the same node by node.
+	 * @param before A subtree of the first plan.
+	 * @param after A subtree of the second plan.
+	 */
+	private void matchSubtree(Node before, Node after) {
+		List<Node> beforeNodes = preOrder(before);
+		List<Node> afterNodes = preOrder(after);
+		for (int i = 0; i < beforeNodes.size(); i++) {
+			if (!reverseMatches.containsKey(afterNodes.get(i))) {
+				match(beforeNodes.get(i), afterNodes.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Matches the remaining children of matched nodes from the roots down.
+	 * @param before The root of the first plan.
+	 * @param inOrder <code>true</code> to match the children in order, <code>false</code> to only match children
+	 * with the same node type.
+	 */
+	private void matchTopDown(Node before, boolean inOrder) {
+		Deque<Node> queue = new ArrayDeque<Node>();
+		queue.add(before);
+		while (!queue.isEmpty()) {
+			Node node = queue.poll();
+			Node match = matches.get(node);
+			if (match != null) {
+				if (inOrder) {
+					matchInOrder(node.getChildren(), match.getChildren());
+				}
+				else {
+					matchSameType(node.getChildren(), match.getChildren());
+				}
+			}
+			queue.addAll(node.getChildren());
+		}
+	}
+
+	/**
+	 * Matches the remaining nodes of two plans with remaining nodes of the same type, in pre order.
+	 * @param before The root of the first plan.
+	 * @param after The root of the second plan.
+	 */
+	private void matchSameType(Node before, Node after) {
+		matchSameType(preOrder(before), preOrder(after));
+	}
+
+	/**
+	 * Matches nodes that have not been matched yet with nodes of the same type.
+	 * @param beforeNodes Nodes of the first plan.
+	 * @param afterNodes Nodes of the second plan.
+	 */
+	private void matchSameType(List<Node> beforeNodes, List<Node> afterNodes) {
+		Map<String, Deque<Node>> byType = new HashMap<String, Deque<Node>>();
+		for (Node node : afterNodes) {
+			if (!reverseMatches.containsKey(node)) {
+				String type = PlanAggregator.getTypeName(node.getMainLine());
+				Deque<Node> nodes = byType.get(type);
+				if (nodes == null) {
+					nodes = new ArrayDeque<Node>(1);
+					byType.put(type, nodes);
+				}
+				nodes.add(node);
+			}
+		}
+		if (byType.isEmpty()) {
+			return;
+		}
+		for (Node node : beforeNodes) {
+			if (!matches.containsKey(node)) {
+				Deque<Node> nodes = byType.get(PlanAggregator.getTypeName(node.getMainLine()));
+				Node candidate = nodes == null ? null : pollUnmatched(nodes);
+				if (candidate != null) {
+					match(node, candidate);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Matches the children of two matched nodes that have not been matched yet in order.
+	 * @param beforeChildren The children of the node of the first plan.
+	 * @param afterChildren The children of the node of the second plan.
+	 */
+	private void matchInOrder(List<Node> beforeChildren, List<Node> afterChildren) {
+		int next = 0;
+		for (Node child : beforeChildren) {
+			if (!matches.containsKey(child)) {
+				while (next < afterChildren.size() && reverseMatches.containsKey(afterChildren.get(next))) {
+					next++;
+				}
+				if (next == afterChildren.size()) {
+					return;
+				}
+				match(child, afterChildren.get(next++));
+			}
+		}
+	}
+
+	/**
+	 * Builds the lines of the diff. The lines follow the first plan, the nodes only in the second plan are
+	 * added below the line of their parent.
+	 * @param before The root of the first plan.
+	 * @param after The root of the second plan.
+	 * @return The root line.
+	 */
+	private Pair buildPairs(Node before, Node after) {
+		Map<Node, Pair> afterPairs = new IdentityHashMap<Node, Pair>();
+		Pair rootPair = null;
+		Deque<Node> stack = new ArrayDeque<Node>();
+		Deque<Pair> parents = new ArrayDeque<Pair>();
+		stack.push(before);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			Pair parent = node.getParent() == null ? null : parents.pop();
+			Pair pair = new Pair(parent, node, matches.get(node));
+			if (parent == null) {
+				rootPair = pair;
+			}
+			if (pair.after != null) {
+				afterPairs.put(pair.after, pair);
+			}
+			List<Node> children = node.getChildren();
+			for (int i = children.size() - 1; i >= 0; i--) {
+				stack.push(children.get(i));
+				parents.push(pair);
+			}
+		}
+		// Parents come before their children in pre order, so the line of the parent always exists
+		for (Node node : preOrder(after)) {
+			if (!afterPairs.containsKey(node)) {
+				Pair parent = node.getParent() == null ? rootPair : afterPairs.get(node.getParent());
+				afterPairs.put(node, new Pair(parent, null, node));
+			}
+		}
+		return rootPair;
+	}
+}
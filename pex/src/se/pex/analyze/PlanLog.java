@@ -0,0 +1,397 @@
+package se.pex.analyze;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the plans in a PostgreSQL log written by auto_explain, like
+ * <pre>
+ * 2015-03-01 10:00:00 CET LOG:  duration: 12.345 ms  plan:
+ * 	Query Text: select * from a
+ * 	Seq Scan on a  (cost=0.00..1.00 rows=10 width=4) (actual time=0.010..0.020 rows=5 loops=1)
+ * </pre>
+ * The file is read once from start to end to find where every plan is, plans are only read and analyzed when
+ * they are asked for. The most recently used plans are cached, as compact tables where plans of the same shape
+ * share one tree structure.
+ * The lines of a log entry after the first one are expected to start with a tab, as in the stderr log format.
+ */
+public class PlanLog {
+	/** Ends the log line that starts a plan. */
+	private static final String PLAN = "plan:";
+
+	/** Starts the duration on the log line that starts a plan. */
+	private static final String DURATION = "duration: ";
+
+	/** Starts the query text of a plan. */
+	private static final String QUERY_TEXT = "Query Text:";
+
+	/** Number of bytes at the start of a file that are checked for plans by {@link #isLog(File)}. */
+	private static final int DETECT_SIZE = 1024 * 1024;
+
+	/** Longest part of a line that is kept while indexing, the rest is not needed to recognize a plan. */
+	private static final int MAX_LINE = 4096;
+
+	/** Default number of analyzed plans kept in the cache. */
+	public static final int CACHE_SIZE = 16;
+
+	/**
+	 * A plan in the log.
+	 */
+	public static class Entry {
+		/** File position of the first line of the plan. */
+		private final long offset;
+
+		/** Number of bytes in the plan. */
+		private int length;
+
+		/** Index of the log line that starts the plan. */
+		private final int lineNumber;
+
+		/** The duration of the statement in milliseconds, <code>-1</code> if unknown. */
+		private final float duration;
+
+		/** The log line that starts the plan. */
+		private final String header;
+
+		/**
+		 * Creates a new entry.
+		 * @param offset File position of the first line of the plan.
+		 * @param lineNumber Index of the log line that starts the plan.
+		 * @param duration The duration of the statement in milliseconds.
+		 * @param header The log line that starts the plan.
+		 */
+		Entry(long offset, int lineNumber, float duration, String header) {
+			this.offset = offset;
+			this.lineNumber = lineNumber;
+			this.duration = duration;
+			this.header = header;
+		}
+
+		/**
+		 * @return File position of the first line of the plan.
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * @return Number of bytes in the plan.
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * @return Index of the log line that starts the plan.
+		 */
+		public int getLineNumber() {
+			return lineNumber;
+		}
+
+		/**
+		 * @return The duration of the statement in milliseconds, <code>-1</code> if unknown.
+		 */
+		public float getDuration() {
+			return duration;
+		}
+
+		/**
+		 * @return The log line that starts the plan.
+		 */
+		public String getHeader() {
+			return header;
+		}
+	}
+
+	/** The log file. */
+	private final File file;
+
+	/** The encoding of the file. */
+	private final Charset charset;
+
+	/** The plans in the order they appear in the file. */
+	private final List<Entry> entries = new ArrayList<Entry>();
+
+	/** Number of plans to keep in the cache. */
+	private final int cacheSize;
+
+	/** Analyzed plans by index, the least recently used first. */
+	private final Map<Integer, Node> cache;
+
+	/** The shapes of the analyzed plans, guarded by the cache. */
+	private final PlanShapes shapes = new PlanShapes();
+
+	/**
+	 * Creates an empty index.
+	 * @param file The log file.
+	 * @param charset The encoding of the file.
+	 * @param cacheSize Number of analyzed plans to keep in the cache.
+	 */
+	private PlanLog(File file, Charset charset, int cacheSize) {
+		this.file = file;
+		this.charset = charset;
+		this.cacheSize = cacheSize;
+		cache = new LinkedHashMap<Integer, Node>(cacheSize, 0.75f, true) {
+			/** Serial version. */
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Node> eldest) {
+				return size() > PlanLog.this.cacheSize;
+			}
+		};
+	}
+
+	/**
+	 * Indexes the plans in a log file.
+	 * @param file The log file.
+	 * @param charset The encoding of the file.
+	 * @return The index.
+	 * @throws IOException On error reading the file.
+	 */
+	public static PlanLog index(File file, Charset charset) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			return index(file, charset, in, CACHE_SIZE);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Indexes the plans in a log file.
+	 * @param file The log file, used when plans are read later.
+	 * @param charset The encoding of the file.
+	 * @param in The content of the file, which may be wrapped to follow the progress. The stream is not closed.
+	 * @param cacheSize Number of analyzed plans to keep in the cache.
+	 * @return The index.
+	 * @throws IOException On error reading the file.
+	 */
+	public static PlanLog index(File file, Charset charset, InputStream in, int cacheSize) throws IOException {
+		PlanLog log = new PlanLog(file, charset, cacheSize);
+		byte[] buffer = new byte[64 * 1024];
+		byte[] line = new byte[MAX_LINE];
+		int lineLength = 0;
+		int lineNumber = 0;
+		long offset = 0;
+		Entry plan = null;
+		int count = in.read(buffer);
+		while (count >= 0) {
+			for (int i = 0; i < count; i++) {
+				byte b = buffer[i];
+				offset++;
+				if (b != '\n') {
+					if (lineLength < line.length) {
+						line[lineLength++] = b;
+					}
+				}
+				else {
+					plan = log.endLine(plan, line, lineLength, offset, lineNumber++);
+					lineLength = 0;
+				}
+			}
+			count = in.read(buffer);
+		}
+		if (lineLength > 0) {
+			log.endLine(plan, line, lineLength, offset, lineNumber);
+		}
+		return log;
+	}
+
+	/**
+	 * Handles a complete line. Lines starting with a tab continue the log entry, other lines start a new entry.
+	 * @param plan The plan being read, <code>null</code> if the current log entry is not a plan.
+	 * @param line The bytes of the line, without the line break.
+	 * @param length Number of bytes in the line.
+	 * @param end File position after the line.
+	 * @param lineNumber Index of the line.
+	 * @return The plan being read after the line, <code>null</code> if the line is not part of a plan.
+	 */
+	private Entry endLine(Entry plan, byte[] line, int length, long end, int lineNumber) {
+		if (length > 0 && line[0] == '\t') {
+			if (plan != null) {
+				plan.length = (int) Math.min(end - plan.offset, Integer.MAX_VALUE);
+			}
+			return plan;
+		}
+		return startPlan(line, length, end, lineNumber);
+	}
+
+	/**
+	 * Checks a log line, and adds a plan if the line starts one.
+	 * @param line The bytes of the line, without the line break.
+	 * @param length Number of bytes in the line.
+	 * @param end File position after the line.
+	 * @param lineNumber Index of the line.
+	 * @return The plan started by the line, <code>null</code> if it does not start a plan.
+	 */
+	private Entry startPlan(byte[] line, int length, long end, int lineNumber) {
+		// Only the ASCII characters are looked at, and all encodings used by PostgreSQL keep them as they are
+		String text = new String(line, 0, length, charset).trim();
+		if (!text.endsWith(PLAN)) {
+			return null;
+		}
+		int duration = text.indexOf(DURATION);
+		if (duration < 0) {
+			return null;
+		}
+		Entry entry = new Entry(end, lineNumber, parseDuration(text, duration + DURATION.length()), text);
+		entries.add(entry);
+		return entry;
+	}
+
+	/**
+	 * @param text A log line.
+	 * @param start Position of the duration.
+	 * @return The duration in milliseconds, <code>-1</code> if it can not be read.
+	 */
+	private static float parseDuration(String text, int start) {
+		int end = start;
+		while (end < text.length() && (Character.isDigit(text.charAt(end)) || text.charAt(end) == '.')) {
+			end++;
+		}
+		try {
+			return Float.parseFloat(text.substring(start, end));
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Checks the start of a file for plans written by auto_explain.
+	 * @param file The file to check.
+	 * @return <code>true</code> if a plan starts in the first megabyte of the file.
+	 * @throws IOException On error reading the file.
+	 */
+	public static boolean isLog(File file) throws IOException {
+		byte[] bytes = new byte[(int) Math.min(file.length(), DETECT_SIZE)];
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			in.readFully(bytes);
+		}
+		finally {
+			in.close();
+		}
+		// The markers are ASCII, so any encoding will do
+		PlanLog log = index(file, Charset.forName("ISO-8859-1"), new ByteArrayInputStream(bytes), 0);
+		return log.size() > 0;
+	}
+
+	/**
+	 * @return Number of plans in the log.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @param index Index of a plan.
+	 * @return The plan entry.
+	 */
+	public Entry getEntry(int index) {
+		return entries.get(index);
+	}
+
+	/**
+	 * Reads the text of a plan. The tabs that start the lines in the log and the query text are removed.
+	 * @param index Index of the plan.
+	 * @return The plan as it would be written by psql.
+	 * @throws IOException On error reading the file.
+	 */
+	public String getPlanText(int index) throws IOException {
+		return getPlanTexts(index, index + 1).get(0);
+	}
+
+	/**
+	 * Reads the texts of plans that follow each other in the file, with a single read.
+	 * @param first Index of the first plan.
+	 * @param end Index after the last plan.
+	 * @return The plans as they would be written by psql.
+	 * @throws IOException On error reading the file.
+	 */
+	List<String> getPlanTexts(int first, int end) throws IOException {
+		long start = entries.get(first).offset;
+		Entry last = entries.get(end - 1);
+		byte[] bytes = new byte[(int) (last.offset + last.length - start)];
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			in.seek(start);
+			in.readFully(bytes);
+		}
+		finally {
+			in.close();
+		}
+		List<String> texts = new ArrayList<String>(end - first);
+		for (int i = first; i < end; i++) {
+			Entry entry = entries.get(i);
+			texts.add(toPlanText(new String(bytes, (int) (entry.offset - start), entry.length, charset)));
+		}
+		return texts;
+	}
+
+	/**
+	 * Removes the tabs that start the lines in the log and the query text.
+	 * @param logText The lines of a plan as written in the log.
+	 * @return The plan as it would be written by psql.
+	 */
+	private static String toPlanText(String logText) {
+		String[] lines = logText.split("\r?\n");
+		StringBuilder res = new StringBuilder();
+		boolean inQueryText = lines.length > 0 && lines[0].trim().startsWith(QUERY_TEXT);
+		for (String line : lines) {
+			String trimmed = line.startsWith("\t") ? line.substring(1) : line;
+			if (inQueryText && isPlanStart(trimmed)) {
+				inQueryText = false;
+			}
+			if (!inQueryText) {
+				res.append(trimmed).append('\n');
+			}
+		}
+		return res.toString();
+	}
+
+	/**
+	 * @param line A line after the query text.
+	 * @return <code>true</code> if the line is the first line of the plan.
+	 */
+	private static boolean isPlanStart(String line) {
+		String trimmed = line.trim();
+		return trimmed.startsWith("{") || trimmed.startsWith("[") || trimmed.startsWith("<") || trimmed.startsWith("- ")
+			|| line.contains("(cost=") || line.contains("(actual ") || line.contains("(never executed)");
+	}
+
+	/**
+	 * Gets an analyzed plan, the plan is read and analyzed if it is not in the cache.
+	 * Can be called from several threads, the same plan may then be analyzed more than once.
+	 * @param index Index of the plan.
+	 * @return The root node of the plan.
+	 * @throws IOException On error reading the file.
+	 */
+	public Node getPlan(int index) throws IOException {
+		synchronized (cache) {
+			Node root = cache.get(index);
+			if (root != null) {
+				return root;
+			}
+		}
+		Node root = Engine.analyzeCompact(new BufferedReader(new StringReader(getPlanText(index))));
+		synchronized (cache) {
+			root = shapes.intern(root);
+			cache.put(index, root);
+		}
+		return root;
+	}
+}
@@ -0,0 +1,270 @@
+package se.pex.analyze;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups plans, like all plans of a log, by their shape. Two plans have the same shape if they have the same
+ * node types on the same relations in the same tree, whatever the conditions, numbers and timings.
+ * For the report only the structure of a shape, the indexes of its plans and their summed time are kept. Plans
+ * that are kept in memory, like the plans cached by a {@link PlanLog}, can be interned, then all plans of a shape
+ * share the structure of one {@link PlanTable} and only keep their own text and numbers.
+ */
+public class PlanShapes {
+	/**
+	 * The plans of a shape.
+	 */
+	public static class Shape {
+		/** The fingerprint of the shape. */
+		private final long fingerprint;
+
+		/** The type names of the nodes in pre order, to tell shapes with the same fingerprint apart. */
+		private final String[] typeNames;
+
+		/** The number of children of the nodes in pre order. */
+		private final int[] childCounts;
+
+		/** The first plan interned with the shape, whose structure the other interned plans share. */
+		private PlanTable structure;
+
+		/** Indexes of the plans, in the order they were added. */
+		private int[] plans = new int[4];
+
+		/** Number of plans. */
+		private int planCount;
+
+		/** Summed total time of the plans. */
+		private double totalTime;
+
+		/**
+		 * Creates a new shape.
+		 * @param fingerprint The fingerprint of the shape.
+		 * @param typeNames The type names of the nodes in pre order.
+		 * @param childCounts The number of children of the nodes in pre order.
+		 */
+		Shape(long fingerprint, String[] typeNames, int[] childCounts) {
+			this.fingerprint = fingerprint;
+			this.typeNames = typeNames;
+			this.childCounts = childCounts;
+		}
+
+		/**
+		 * Adds a plan.
+		 * @param plan Index of the plan.
+		 * @param time Total time of the plan.
+		 */
+		void add(int plan, float time) {
+			if (planCount == plans.length) {
+				int[] newPlans = new int[planCount * 2];
+				System.arraycopy(plans, 0, newPlans, 0, planCount);
+				plans = newPlans;
+			}
+			plans[planCount++] = plan;
+			totalTime += time;
+		}
+
+		/**
+		 * @return The fingerprint of the shape.
+		 */
+		public long getFingerprint() {
+			return fingerprint;
+		}
+
+		/**
+		 * @return The root node type of the shape.
+		 */
+		public String getName() {
+			return typeNames[0];
+		}
+
+		/**
+		 * @return Number of nodes in the plans of the shape.
+		 */
+		public int getNodeCount() {
+			return typeNames.length;
+		}
+
+		/**
+		 * @return Number of plans.
+		 */
+		public int getPlanCount() {
+			return planCount;
+		}
+
+		/**
+		 * @param i Index of a plan in the shape.
+		 * @return Index of the plan as it was added.
+		 */
+		public int getPlan(int i) {
+			return plans[i];
+		}
+
+		/**
+		 * @return Summed total time of the plans.
+		 */
+		public double getTotalTime() {
+			return totalTime;
+		}
+	}
+
+	/**
+	 * The fingerprint, type names and child counts of a plan, found in one walk of the tree.
+	 */
+	private static class Description {
+		/** The fingerprint. */
+		private long fingerprint;
+
+		/** The type names of the nodes in pre order. */
+		private final String[] typeNames;
+
+		/** The number of children of the nodes in pre order. */
+		private final int[] childCounts;
+
+		/**
+		 * Walks a plan in pre order.
+		 * @param root The root node of the plan.
+		 */
+		private Description(Node root) {
+			int size = root.getSubtreeNodeCount();
+			typeNames = new String[size];
+			childCounts = new int[size];
+			Deque<Node> stack = new ArrayDeque<Node>();
+			stack.push(root);
+			int index = 0;
+			while (!stack.isEmpty()) {
+				Node node = stack.pop();
+				List<Node> children = node.getChildren();
+				String typeName = PlanAggregator.getTypeName(node.getMainLine());
+				typeNames[index] = typeName;
+				childCounts[index++] = children.size();
+				fingerprint = (fingerprint ^ PlanAggregator.hash(typeName)) * 0x100000001b3L;
+				fingerprint = (fingerprint ^ children.size()) * 0x100000001b3L;
+				for (int i = children.size() - 1; i >= 0; i--) {
+					stack.push(children.get(i));
+				}
+			}
+		}
+	}
+
+	/** Shapes by fingerprint, more than one if fingerprints collide. */
+	private final Map<Long, List<Shape>> byFingerprint = new HashMap<Long, List<Shape>>();
+
+	/** The shapes in the order they were found. */
+	private final List<Shape> shapes = new ArrayList<Shape>();
+
+	/** Number of plans added. */
+	private int planCount;
+
+	/**
+	 * Computes the fingerprint of a plan, a hash of the node types and how the nodes are nested. Numbers,
+	 * aliases, conditions and other extra lines are left out.
+	 * @param root The root node of the plan.
+	 * @return The fingerprint.
+	 */
+	public static long fingerprint(Node root) {
+		return new Description(root).fingerprint;
+	}
+
+	/**
+	 * Adds a plan to its shape, a new shape is started if no plan with the same shape has been added before.
+	 * @param plan Index of the plan.
+	 * @param root The root node of the plan, which is not kept.
+	 * @return The shape of the plan.
+	 */
+	public Shape add(int plan, Node root) {
+		planCount++;
+		Shape shape = getShape(new Description(root));
+		shape.add(plan, root.getTotalTime());
+		return shape;
+	}
+
+	/**
+	 * Makes a plan share the structure of the other interned plans of its shape. The plan is not added to the
+	 * totals of the shape.
+	 * @param root The root node of the plan.
+	 * @return The root node of a table with the text and numbers of the plan, and the structure of the first plan
+	 * interned with the shape.
+	 */
+	public Node intern(Node root) {
+		PlanTable table;
+		if (root instanceof CompactNode) {
+			table = ((CompactNode) root).getTable();
+			if (table.getRoot() != root) {
+				// Only whole plans have a shape
+				return root;
+			}
+		}
+		else {
+			table = PlanTable.compact(root);
+		}
+		Shape shape = getShape(new Description(root));
+		if (shape.structure == null) {
+			shape.structure = table;
+			return table.getRoot();
+		}
+		return table.withStructure(shape.structure).getRoot();
+	}
+
+	/**
+	 * Finds the shape of a plan, a new shape is started if there is none.
+	 * @param plan The description of the plan.
+	 * @return The shape.
+	 */
+	private Shape getShape(Description plan) {
+		List<Shape> candidates = byFingerprint.get(plan.fingerprint);
+		if (candidates == null) {
+			candidates = new ArrayList<Shape>(1);
+			byFingerprint.put(plan.fingerprint, candidates);
+		}
+		for (Shape shape : candidates) {
+			// The fingerprint can collide, so the plan must really have the shape
+			if (Arrays.equals(plan.childCounts, shape.childCounts) && Arrays.equals(plan.typeNames, shape.typeNames)) {
+				return shape;
+			}
+		}
+		Shape shape = new Shape(plan.fingerprint, plan.typeNames, plan.childCounts);
+		candidates.add(shape);
+		shapes.add(shape);
+		return shape;
+	}
+
+	/**
+	 * @return Number of shapes with added plans.
+	 */
+	public int size() {
+		return getShapes().size();
+	}
+
+	/**
+	 * @return Number of plans added.
+	 */
+	public int getPlanCount() {
+		return planCount;
+	}
+
+	/**
+	 * @return The shapes with added plans, the one with the most summed total time first.
+	 */
+	public List<Shape> getShapes() {
+		List<Shape> res = new ArrayList<Shape>(shapes.size());
+		for (Shape shape : shapes) {
+			if (shape.planCount > 0) {
+				res.add(shape);
+			}
+		}
+		Collections.sort(res, new Comparator<Shape>() {
+			@Override
+			public int compare(Shape s1, Shape s2) {
+				return Double.compare(s2.totalTime, s1.totalTime);
+			}
+		});
+		return res;
+	}
+}
@@ -0,0 +1,876 @@
+package se.pex.analyze;
+
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A compact representation of a node tree for huge plans. The tree is stored in primitive arrays, one entry
+ * per node in pre order, and all text is kept in one shared char buffer. Nodes are only created as a
+ * {@link Node} compatible facade when they are asked for, so a plan with millions of nodes costs a few
+ * arrays instead of millions of objects. A {@link Builder} fills a table while the plan is parsed, so the
+ * nodes of a huge plan never exist as objects at all.
+ */
+public class PlanTable {
+	/** Flag set if the node has planner costs. */
+	static final byte HAS_COST = 1;
+	/** Flag set if the node has actual times. */
+	static final byte HAS_TIME = 2;
+	/** Flag set if the node is a trigger. */
+	static final byte IS_TRIGGER = 4;
+	/** Flag set if the node was never executed. */
+	static final byte NEVER_EXECUTED = 8;
+
+	/** Number of nodes. */
+	final int size;
+
+	/** Index of the parent, <code>-1</code> for the root. */
+	final int[] parent;
+	/** Number of children. */
+	final int[] childCount;
+	/** Offset of the children of the node in {@link #children}. */
+	final int[] childStart;
+	/** Indexes of the children of all nodes, the children of a node follow each other in order. */
+	final int[] children;
+
+	/** Flags of the nodes. */
+	final byte[] flags;
+	/** Estimated startup cost. */
+	final float[] startupCost;
+	/** Estimated total cost. */
+	final float[] totalCost;
+	/** Estimated number of rows. */
+	final long[] planRows;
+	/** Estimated row width. */
+	final int[] planWidth;
+	/** Actual startup time for one loop. */
+	final float[] startupTime;
+	/** Actual total time for one loop. */
+	final float[] totalTime;
+	/** Actual number of rows for one loop. */
+	final double[] actualRows;
+	/** Number of loops. */
+	final int[] loops;
+	/** Number of processes that run the node. */
+	final int[] parallelism;
+	/** Trigger time. */
+	final float[] triggerTime;
+	/** Trigger calls. */
+	final long[] triggerCalls;
+
+	/** Execution time exclusive child nodes. */
+	final float[] timeExclusive;
+	/** Number of nodes in the subtree. */
+	final int[] subtreeNodeCount;
+	/** Largest exclusive time in the subtree. */
+	final float[] subtreeMaxTimeExclusive;
+	/** Blocks read by the subtree. */
+	final long[] readBlocks;
+	/** Blocks read exclusive child nodes. */
+	final long[] readBlocksExclusive;
+	/** Time spent reading blocks in the subtree. */
+	final float[] readTime;
+	/** Time spent reading blocks exclusive child nodes. */
+	final float[] readTimeExclusive;
+	/** The q-error of the row estimate. */
+	final float[] qError;
+	/** Index of the node where the estimate error starts, <code>-1</code> if the estimate is good. */
+	final int[] estimateSource;
+	/** Heat classes of all mark modes. */
+	final byte[] heat;
+	/** Total execution time of the tree. */
+	final float treeTotalTime;
+
+	/** All text, for every node the main line followed by the extra lines, each extra line starting with a line break. */
+	final char[] text;
+	/** Offset of the main line in the text. */
+	final int[] lineStart;
+	/** Offset of the extra lines in the text, which is also the end of the main line. */
+	final int[] extraStart;
+
+	/**
+	 * Facades created so far, <code>null</code> for nodes that have not been asked for. The facades are asked for
+	 * by background jobs as well as by the UI thread, so they are created with compare and set.
+	 */
+	private final AtomicReferenceArray<CompactNode> facades;
+
+	/**
+	 * Creates an empty table.
+	 * @param size Number of nodes.
+	 * @param textLength Length of all text.
+	 * @param treeTotalTime Total execution time of the tree.
+	 */
+	private PlanTable(int size, int textLength, float treeTotalTime) {
+		this.size = size;
+		this.treeTotalTime = treeTotalTime;
+		parent = new int[size];
+		childCount = new int[size];
+		childStart = new int[size];
+		children = new int[Math.max(0, size - 1)];
+		flags = new byte[size];
+		startupCost = new float[size];
+		totalCost = new float[size];
+		planRows = new long[size];
+		planWidth = new int[size];
+		startupTime = new float[size];
+		totalTime = new float[size];
+		actualRows = new double[size];
+		loops = new int[size];
+		parallelism = new int[size];
+		triggerTime = new float[size];
+		triggerCalls = new long[size];
+		timeExclusive = new float[size];
+		subtreeNodeCount = new int[size];
+		subtreeMaxTimeExclusive = new float[size];
+		readBlocks = new long[size];
+		readBlocksExclusive = new long[size];
+		readTime = new float[size];
+		readTimeExclusive = new float[size];
+		qError = new float[size];
+		estimateSource = new int[size];
+		heat = new byte[size];
+		text = new char[textLength];
+		lineStart = new int[size + 1];
+		extraStart = new int[size];
+		facades = new AtomicReferenceArray<CompactNode>(size);
+	}
+
+	/**
+	 * Creates a table with the text and numbers of one table and the tree of another table of the same shape.
+	 * @param values The table with the text and numbers.
+	 * @param structure The table whose parent, child and subtree size arrays are shared.
+	 */
+	private PlanTable(PlanTable values, PlanTable structure) {
+		size = values.size;
+		treeTotalTime = values.treeTotalTime;
+		parent = structure.parent;
+		childCount = structure.childCount;
+		childStart = structure.childStart;
+		children = structure.children;
+		subtreeNodeCount = structure.subtreeNodeCount;
+		flags = values.flags;
+		startupCost = values.startupCost;
+		totalCost = values.totalCost;
+		planRows = values.planRows;
+		planWidth = values.planWidth;
+		startupTime = values.startupTime;
+		totalTime = values.totalTime;
+		actualRows = values.actualRows;
+		loops = values.loops;
+		parallelism = values.parallelism;
+		triggerTime = values.triggerTime;
+		triggerCalls = values.triggerCalls;
+		timeExclusive = values.timeExclusive;
+		subtreeMaxTimeExclusive = values.subtreeMaxTimeExclusive;
+		readBlocks = values.readBlocks;
+		readBlocksExclusive = values.readBlocksExclusive;
+		readTime = values.readTime;
+		readTimeExclusive = values.readTimeExclusive;
+		qError = values.qError;
+		estimateSource = values.estimateSource;
+		heat = values.heat;
+		text = values.text;
+		lineStart = values.lineStart;
+		extraStart = values.extraStart;
+		facades = new AtomicReferenceArray<CompactNode>(size);
+	}
+
+	/**
+	 * Copies a node tree into a table. The node tree is not needed afterwards.
+	 * @param root The root of the tree.
+	 * @return The table.
+	 */
+	public static PlanTable compact(Node root) {
+		int size = root.getSubtreeNodeCount();
+		// The text is measured first, so the buffer is allocated once
+		int textLength = 0;
+		Deque<Node> stack = new ArrayDeque<Node>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			textLength += node.getMainLine().length();
+			for (String line : node.getLines()) {
+				textLength += line.length() + 1;
+			}
+			for (Node child : node.getChildren()) {
+				stack.push(child);
+			}
+		}
+		PlanTable table = new PlanTable(size, textLength, root.getTotalTime());
+		// Parent indexes of the nodes on the stack, in the same order
+		int[] parents = new int[size];
+		int top = 0;
+		stack.push(root);
+		parents[top++] = -1;
+		int index = 0;
+		int offset = 0;
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			int parentIndex = parents[--top];
+			table.parent[index] = parentIndex;
+			if (parentIndex >= 0) {
+				table.childCount[parentIndex]++;
+			}
+			table.copyValues(index, node);
+			table.subtreeNodeCount[index] = node.getSubtreeNodeCount();
+			table.lineStart[index] = offset;
+			offset = table.copyText(offset, node.getMainLine());
+			table.extraStart[index] = offset;
+			for (String line : node.getLines()) {
+				table.text[offset++] = '\n';
+				offset = table.copyText(offset, line);
+			}
+			// Children are pushed last first, so they are numbered in order
+			List<Node> children = node.getChildren();
+			for (int i = children.size() - 1; i >= 0; i--) {
+				stack.push(children.get(i));
+				parents[top++] = index;
+			}
+			index++;
+		}
+		table.lineStart[size] = offset;
+		table.linkChildren();
+		table.calculateEstimateSources();
+		return table;
+	}
+
+	/**
+	 * Fills in the children of every node from the parents and the child counts. The nodes are numbered in
+	 * pre order, so the children of a node are found in order when going forwards.
+	 */
+	private void linkChildren() {
+		int offset = 0;
+		for (int i = 0; i < size; i++) {
+			childStart[i] = offset;
+			offset += childCount[i];
+		}
+		int[] added = new int[size];
+		for (int i = 1; i < size; i++) {
+			children[childStart[parent[i]] + added[parent[i]]++] = i;
+		}
+	}
+
+	/**
+	 * Copies the numbers of a node.
+	 * @param index The index of the node in the table.
+	 * @param node The node.
+	 */
+	private void copyValues(int index, Node node) {
+		Metrics m = node.getMetrics();
+		byte flag = 0;
+		if (m.hasCost) {
+			flag |= HAS_COST;
+		}
+		if (m.hasTime) {
+			flag |= HAS_TIME;
+		}
+		if (m.isTrigger) {
+			flag |= IS_TRIGGER;
+		}
+		if (!node.isExecuted()) {
+			flag |= NEVER_EXECUTED;
+		}
+		flags[index] = flag;
+		startupCost[index] = m.startupCost;
+		totalCost[index] = m.totalCost;
+		planRows[index] = m.planRows;
+		planWidth[index] = m.planWidth;
+		startupTime[index] = m.startupTime;
+		totalTime[index] = m.totalTime;
+		actualRows[index] = m.actualRows;
+		loops[index] = m.loops;
+		parallelism[index] = node.getParallelism();
+		triggerTime[index] = m.triggerTime;
+		triggerCalls[index] = m.triggerCalls;
+		timeExclusive[index] = node.getTimeExclusive();
+		subtreeMaxTimeExclusive[index] = node.getSubtreeMaxTimeExclusive();
+		readBlocks[index] = node.getReadBlocks();
+		readBlocksExclusive[index] = node.getReadBlocksExclusive();
+		readTime[index] = node.getReadTime();
+		readTimeExclusive[index] = node.getReadTimeExclusive();
+		qError[index] = node.getQError();
+		heat[index] = node.getHeats();
+	}
+
+	/**
+	 * Copies a string into the text buffer.
+	 * @param offset Where to copy the string.
+	 * @param string The string.
+	 * @return The offset after the string.
+	 */
+	private int copyText(int offset, String string) {
+		string.getChars(0, string.length(), text, offset);
+		return offset + string.length();
+	}
+
+	/**
+	 * Calculates the parallelism, exclusive times and subtree aggregates of all nodes from the numbers of the
+	 * nodes, like {@link TreeNode} does, and the heat classes.
+	 */
+	private void calculateAggregates() {
+		// Pre order visits every parent before its children
+		if (size > 0) {
+			parallelism[0] = 1;
+		}
+		for (int i = 0; i < size; i++) {
+			int processes = parallelism[i];
+			if (contains(i, "Gather")) {
+				int childLoops = 0;
+				for (int c = childStart[i]; c < childStart[i] + childCount[i]; c++) {
+					childLoops = Math.max(childLoops, (flags[children[c]] & HAS_TIME) != 0 ? loops[children[c]] : 0);
+				}
+				int nodeLoops = (flags[i] & HAS_TIME) != 0 ? loops[i] : 0;
+				processes = Node.gatherParallelism(processes, Node.scanCount(lines(i), "Workers Launched: "), nodeLoops, childLoops);
+			}
+			for (int c = childStart[i]; c < childStart[i] + childCount[i]; c++) {
+				parallelism[children[c]] = processes;
+			}
+		}
+		// Reverse pre order visits every child before its parent
+		for (int i = size - 1; i >= 0; i--) {
+			subtreeNodeCount[i] = 1;
+			float childTimeInclusive = 0;
+			float childMaxTimeExclusive = -Float.MAX_VALUE;
+			long childReadBlocks = 0;
+			float childReadTime = 0;
+			for (int c = childStart[i]; c < childStart[i] + childCount[i]; c++) {
+				int child = children[c];
+				subtreeNodeCount[i] += subtreeNodeCount[child];
+				childTimeInclusive += inclusiveTime(child);
+				childMaxTimeExclusive = Math.max(childMaxTimeExclusive, subtreeMaxTimeExclusive[child]);
+				childReadBlocks += readBlocks[child];
+				childReadTime += readTime[child];
+			}
+			timeExclusive[i] = Node.exclusiveTime(inclusiveTime(i), childTimeInclusive);
+			subtreeMaxTimeExclusive[i] = Node.subtreeMaxTime(timeExclusive[i], childMaxTimeExclusive);
+			IoMetrics io = IoMetrics.EMPTY;
+			if (extraStart[i] < textEnd(i) || contains(i, IoMetrics.BUFFERS) || contains(i, IoMetrics.IO_TIMINGS)) {
+				io = IoMetrics.parse(new String(text, lineStart[i], extraStart[i] - lineStart[i]), lines(i));
+			}
+			readBlocks[i] = Node.rollUpReads(io.getReadBlocks(), childReadBlocks);
+			readBlocksExclusive[i] = readBlocks[i] - childReadBlocks;
+			readTime[i] = Node.rollUpReads(io.getReadTime(), childReadTime);
+			readTimeExclusive[i] = readTime[i] - childReadTime;
+			boolean estimated = (flags[i] & HAS_TIME) != 0 && (flags[i] & HAS_COST) != 0;
+			qError[i] = estimated ? RowEstimates.qError(actualRows[i], planRows[i], loops[i]) : -1;
+		}
+		calculateEstimateSources();
+		applyHeat(Heat.getDefault());
+	}
+
+	/**
+	 * Finds where the estimate errors start, like {@link Node} does when the aggregates are calculated. The nodes
+	 * are numbered in pre order, so going backwards visits every child before its parent.
+	 */
+	private void calculateEstimateSources() {
+		for (int i = size - 1; i >= 0; i--) {
+			boolean tooHigh = RowEstimates.isTooHigh(planRows[i], actualRows[i]);
+			int worst = -1;
+			for (int c = childStart[i]; c < childStart[i] + childCount[i]; c++) {
+				int child = children[c];
+				if (estimateSource[child] < 0) {
+					continue;
+				}
+				// Nodes without an estimate stand for the source of the error
+				int estimate = qError[child] >= 0 ? child : estimateSource[child];
+				if (RowEstimates.isWorse(qError[i], tooHigh, qError[estimate], RowEstimates.isTooHigh(planRows[estimate], actualRows[estimate]),
+					worst >= 0 ? qError[worst] : -1)) {
+					worst = estimate;
+				}
+			}
+			boolean worstTooHigh = worst >= 0 && RowEstimates.isTooHigh(planRows[worst], actualRows[worst]);
+			switch (RowEstimates.source(qError[i], tooHigh, worst >= 0 ? qError[worst] : -1, worstTooHigh)) {
+				case RowEstimates.CHILD_SOURCE:
+					estimateSource[i] = estimateSource[worst];
+					break;
+				case RowEstimates.OWN_SOURCE:
+					estimateSource[i] = i;
+					break;
+				default:
+					estimateSource[i] = -1;
+			}
+		}
+	}
+
+	/**
+	 * Finds the hotspots of the table, only the facades of the hotspots and the critical path are created.
+	 * @param count Max number of nodes ranked.
+	 * @return The hotspots.
+	 */
+	Hotspots hotspots(int count) {
+		PriorityQueue<Integer> hottest = new PriorityQueue<Integer>(count + 1, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return Float.compare(timeExclusive[i1], timeExclusive[i2]);
+			}
+		});
+		for (int i = 0; i < size; i++) {
+			if (timeExclusive[i] > 0 && (hottest.size() < count || timeExclusive[i] > timeExclusive[hottest.peek()])) {
+				hottest.add(i);
+				if (hottest.size() > count) {
+					hottest.poll();
+				}
+			}
+		}
+		List<Node> ranked = new ArrayList<Node>(hottest.size());
+		while (!hottest.isEmpty()) {
+			ranked.add(getNode(hottest.poll()));
+		}
+		Collections.reverse(ranked);
+
+		List<Node> path = new ArrayList<Node>();
+		for (int i = size > 0 ? 0 : -1; i >= 0;) {
+			path.add(getNode(i));
+			int hottestChild = -1;
+			for (int c = childStart[i]; c < childStart[i] + childCount[i]; c++) {
+				int child = children[c];
+				if (hottestChild < 0 || inclusiveTime(child) > inclusiveTime(hottestChild)) {
+					hottestChild = child;
+				}
+			}
+			i = hottestChild;
+		}
+		return new Hotspots(ranked, path);
+	}
+
+	/**
+	 * @param index The index of the node.
+	 * @return Execution time inclusive child nodes.
+	 */
+	float inclusiveTime(int index) {
+		return (flags[index] & HAS_TIME) != 0 ? Node.loopTime(totalTime[index], loops[index], parallelism[index]) : 0;
+	}
+
+	/**
+	 * Calculates the heat classes of all nodes again.
+	 * @param settings The levels to use.
+	 */
+	void applyHeat(Heat settings) {
+		float[] inclusive = new float[size];
+		float[] reads = new float[size];
+		for (int i = 0; i < size; i++) {
+			inclusive[i] = inclusiveTime(i);
+			reads[i] = readBlocksExclusive[i];
+		}
+		// The percentiles reorder the values, so copies are handed over
+		Heat.Levels levels = settings.resolve(timeExclusive.clone(), inclusive.clone(), qError.clone(), reads,
+			treeTotalTime, size > 0 ? readBlocks[0] : 0);
+		for (int i = 0; i < size; i++) {
+			heat[i] = levels.classify(timeExclusive[i], inclusive[i], qError[i], readBlocksExclusive[i]);
+		}
+	}
+
+	/**
+	 * @return Number of nodes in the table.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Creates a table that shares the tree of a table with the same shape, so the parent, child and subtree size
+	 * arrays of this table are not needed any more.
+	 * @param structure A table with the same shape.
+	 * @return A table with the text and numbers of this table.
+	 */
+	PlanTable withStructure(PlanTable structure) {
+		if (structure == this) {
+			return this;
+		}
+		return new PlanTable(this, structure);
+	}
+
+	/**
+	 * @return The root node.
+	 */
+	public Node getRoot() {
+		return getNode(0);
+	}
+
+	/**
+	 * Gets the facade of a node, the same facade is returned every time, also to threads that ask at the same time.
+	 * @param index The index of the node.
+	 * @return The node, <code>null</code> if the index is <code>-1</code>.
+	 */
+	Node getNode(int index) {
+		if (index < 0) {
+			return null;
+		}
+		CompactNode facade = facades.get(index);
+		if (facade == null) {
+			// If another thread got there first its facade is used, so there is only ever one per node
+			facades.compareAndSet(index, null, new CompactNode(this, index));
+			facade = facades.get(index);
+		}
+		return facade;
+	}
+
+	/**
+	 * @param index The index of the node.
+	 * @return The end of the text of the node.
+	 */
+	int textEnd(int index) {
+		return lineStart[index + 1];
+	}
+
+	/**
+	 * @param index The index of the node.
+	 * @return The extra lines of the node.
+	 */
+	List<String> lines(int index) {
+		List<String> lines = new ArrayList<String>();
+		int end = textEnd(index);
+		int start = extraStart[index];
+		while (start < end) {
+			// Skip the line break before the line
+			start++;
+			int lineEnd = start;
+			while (lineEnd < end && text[lineEnd] != '\n') {
+				lineEnd++;
+			}
+			lines.add(new String(text, start, lineEnd - start));
+			start = lineEnd;
+		}
+		return lines;
+	}
+
+	/**
+	 * @param index The index of the node.
+	 * @param prefix A prefix.
+	 * @return <code>true</code> if the main line of the node starts with the prefix.
+	 */
+	boolean startsWith(int index, String prefix) {
+		return regionMatches(lineStart[index], extraStart[index], prefix);
+	}
+
+	/**
+	 * @param index The index of the node.
+	 * @param part Text to look for.
+	 * @return <code>true</code> if the main line of the node contains the text.
+	 */
+	boolean contains(int index, String part) {
+		for (int i = lineStart[index]; i <= extraStart[index] - part.length(); i++) {
+			if (regionMatches(i, extraStart[index], part)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param start Where to look in the text.
+	 * @param end The end of the region that may be looked at.
+	 * @param part Text to look for.
+	 * @return <code>true</code> if the text contains the part at the start.
+	 */
+	private boolean regionMatches(int start, int end, String part) {
+		if (end - start < part.length()) {
+			return false;
+		}
+		for (int i = 0; i < part.length(); i++) {
+			if (text[start + i] != part.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Fills a table while a plan is parsed. The text of all nodes is written to one growing buffer, and lines
+	 * added to a node that is not the last one written move the text of the node to the end of the buffer. Once
+	 * the plan is complete the nodes below the root are copied into a table of the right size.
+	 */
+	static class Builder implements NodeSink {
+		/** Flag set once the numbers of the main line have been read, only used while building. */
+		private static final byte HAS_METRICS = 16;
+
+		/** Number of nodes added. */
+		private int count;
+		/** Index of the parent, <code>-1</code> for nodes without parent. */
+		private int[] parent = new int[16];
+		/** Flags of the nodes. */
+		private byte[] flags = new byte[16];
+		/** Estimated startup cost. */
+		private float[] startupCost = new float[16];
+		/** Estimated total cost. */
+		private float[] totalCost = new float[16];
+		/** Estimated number of rows. */
+		private long[] planRows = new long[16];
+		/** Estimated row width. */
+		private int[] planWidth = new int[16];
+		/** Actual startup time for one loop. */
+		private float[] startupTime = new float[16];
+		/** Actual total time for one loop. */
+		private float[] totalTime = new float[16];
+		/** Actual number of rows for one loop. */
+		private double[] actualRows = new double[16];
+		/** Number of loops. */
+		private int[] loops = new int[16];
+		/** Trigger time. */
+		private float[] triggerTime = new float[16];
+		/** Trigger calls. */
+		private long[] triggerCalls = new long[16];
+
+		/** The text of all nodes, including text that has been moved. */
+		private char[] text = new char[1024];
+		/** Length of the text. */
+		private int textLength;
+		/** The node whose text is at the end of the buffer, <code>-1</code> if there is none. */
+		private int lastWritten = -1;
+		/** Offset of the main line in the text. */
+		private int[] lineStart = new int[16];
+		/** Offset of the extra lines in the text. */
+		private int[] extraStart = new int[16];
+		/** End of the text of the node. */
+		private int[] textEnd = new int[16];
+
+		/**
+		 * @see se.pex.analyze.NodeSink#addNode(int, java.lang.String, int, int)
+		 */
+		@Override
+		public int addNode(int parentNode, String line, int indentation, int lineNumber) {
+			if (count == parent.length) {
+				grow();
+			}
+			int node = count++;
+			parent[node] = parentNode;
+			flags[node] = 0;
+			lineStart[node] = textLength;
+			append(line);
+			extraStart[node] = textLength;
+			textEnd[node] = textLength;
+			lastWritten = node;
+			return node;
+		}
+
+		/**
+		 * @see se.pex.analyze.NodeSink#addLine(int, java.lang.String)
+		 */
+		@Override
+		public void addLine(int node, String line) {
+			moveToEnd(node);
+			ensureText(1);
+			text[textLength++] = '\n';
+			append(line);
+			textEnd[node] = textLength;
+		}
+
+		/**
+		 * @see se.pex.analyze.NodeSink#appendToLastLine(int, java.lang.String)
+		 */
+		@Override
+		public void appendToLastLine(int node, String string) {
+			moveToEnd(node);
+			boolean mainLine = extraStart[node] == textEnd[node];
+			append(string);
+			textEnd[node] = textLength;
+			if (mainLine) {
+				extraStart[node] = textLength;
+				flags[node] &= ~HAS_METRICS;
+			}
+		}
+
+		/**
+		 * The table has no input lines.
+		 * @see se.pex.analyze.NodeSink#setLastLine(int, int)
+		 */
+		@Override
+		public void setLastLine(int node, int lineNumber) {
+		}
+
+		/**
+		 * @see se.pex.analyze.NodeSink#parseMetrics(int)
+		 */
+		@Override
+		public void parseMetrics(int node) {
+			setMetrics(node, Metrics.parse(CharBuffer.wrap(text, lineStart[node], extraStart[node] - lineStart[node])));
+		}
+
+		/**
+		 * @see se.pex.analyze.NodeSink#setMetrics(int, se.pex.analyze.Metrics)
+		 */
+		@Override
+		public void setMetrics(int node, Metrics m) {
+			byte flag = HAS_METRICS;
+			if (m.hasCost) {
+				flag |= HAS_COST;
+			}
+			if (m.hasTime) {
+				flag |= HAS_TIME;
+			}
+			if (m.isTrigger) {
+				flag |= IS_TRIGGER;
+			}
+			flags[node] = flag;
+			startupCost[node] = m.startupCost;
+			totalCost[node] = m.totalCost;
+			planRows[node] = m.planRows;
+			planWidth[node] = m.planWidth;
+			startupTime[node] = m.startupTime;
+			totalTime[node] = m.totalTime;
+			actualRows[node] = m.actualRows;
+			loops[node] = m.loops;
+			triggerTime[node] = m.triggerTime;
+			triggerCalls[node] = m.triggerCalls;
+		}
+
+		/**
+		 * @see se.pex.analyze.NodeSink#clear()
+		 */
+		@Override
+		public void clear() {
+			count = 0;
+			textLength = 0;
+			lastWritten = -1;
+		}
+
+		/**
+		 * @see se.pex.analyze.NodeSink#getRoot()
+		 */
+		@Override
+		public Node getRoot() {
+			if (count == 0) {
+				// The editor always expects a root, even for an empty explain
+				addNode(-1, "", 0, 0);
+			}
+			return build().getRoot();
+		}
+
+		/**
+		 * Copies the nodes below the root into a table, and calculates the aggregates.
+		 * @return The table.
+		 */
+		private PlanTable build() {
+			// Parents are added before their children, so one pass finds the nodes below the root
+			int[] index = new int[count];
+			int size = 0;
+			int length = 0;
+			for (int i = 0; i < count; i++) {
+				if (i == 0 || (parent[i] >= 0 && index[parent[i]] >= 0)) {
+					index[i] = size++;
+					length += textEnd[i] - lineStart[i];
+				}
+				else {
+					index[i] = -1;
+				}
+			}
+			boolean hasTime = (metricFlags(0) & HAS_TIME) != 0;
+			PlanTable table = new PlanTable(size, length, hasTime ? totalTime[0] * loops[0] : 0);
+			int offset = 0;
+			for (int i = 0; i < count; i++) {
+				int row = index[i];
+				if (row < 0) {
+					continue;
+				}
+				table.parent[row] = i == 0 ? -1 : index[parent[i]];
+				if (row > 0) {
+					table.childCount[table.parent[row]]++;
+				}
+				table.flags[row] = (byte) (metricFlags(i) & ~HAS_METRICS);
+				table.startupCost[row] = startupCost[i];
+				table.totalCost[row] = totalCost[i];
+				table.planRows[row] = planRows[i];
+				table.planWidth[row] = planWidth[i];
+				table.startupTime[row] = startupTime[i];
+				table.totalTime[row] = totalTime[i];
+				table.actualRows[row] = actualRows[i];
+				table.loops[row] = loops[i];
+				table.triggerTime[row] = triggerTime[i];
+				table.triggerCalls[row] = triggerCalls[i];
+				table.lineStart[row] = offset;
+				table.extraStart[row] = offset + extraStart[i] - lineStart[i];
+				System.arraycopy(text, lineStart[i], table.text, offset, textEnd[i] - lineStart[i]);
+				offset += textEnd[i] - lineStart[i];
+				if (table.contains(row, "(never executed)")) {
+					table.flags[row] |= NEVER_EXECUTED;
+				}
+			}
+			table.lineStart[size] = offset;
+			// The buffers are not needed any more, and may be much larger than the table
+			clear();
+			text = new char[0];
+			table.linkChildren();
+			table.calculateAggregates();
+			return table;
+		}
+
+		/**
+		 * @param node The number of a node.
+		 * @return The flags of the node, after reading the numbers of the main line if that has not been done.
+		 */
+		private byte metricFlags(int node) {
+			if ((flags[node] & HAS_METRICS) == 0) {
+				parseMetrics(node);
+			}
+			return flags[node];
+		}
+
+		/**
+		 * Moves the text of a node to the end of the buffer, so that more text can be added to it.
+		 * @param node The number of the node.
+		 */
+		private void moveToEnd(int node) {
+			if (node == lastWritten) {
+				return;
+			}
+			int length = textEnd[node] - lineStart[node];
+			ensureText(length);
+			System.arraycopy(text, lineStart[node], text, textLength, length);
+			int delta = textLength - lineStart[node];
+			lineStart[node] += delta;
+			extraStart[node] += delta;
+			textEnd[node] += delta;
+			textLength += length;
+			lastWritten = node;
+		}
+
+		/**
+		 * Adds a string to the end of the text.
+		 * @param string The string.
+		 */
+		private void append(String string) {
+			ensureText(string.length());
+			string.getChars(0, string.length(), text, textLength);
+			textLength += string.length();
+		}
+
+		/**
+		 * Makes room for more text.
+		 * @param length Number of characters that will be added.
+		 */
+		private void ensureText(int length) {
+			if (textLength + length > text.length) {
+				text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+			}
+		}
+
+		/**
+		 * Makes room for more nodes.
+		 */
+		private void grow() {
+			int capacity = count * 2;
+			parent = Arrays.copyOf(parent, capacity);
+			flags = Arrays.copyOf(flags, capacity);
+			startupCost = Arrays.copyOf(startupCost, capacity);
+			totalCost = Arrays.copyOf(totalCost, capacity);
+			planRows = Arrays.copyOf(planRows, capacity);
+			planWidth = Arrays.copyOf(planWidth, capacity);
+			startupTime = Arrays.copyOf(startupTime, capacity);
+			totalTime = Arrays.copyOf(totalTime, capacity);
+			actualRows = Arrays.copyOf(actualRows, capacity);
+			loops = Arrays.copyOf(loops, capacity);
+			triggerTime = Arrays.copyOf(triggerTime, capacity);
+			triggerCalls = Arrays.copyOf(triggerCalls, capacity);
+			lineStart = Arrays.copyOf(lineStart, capacity);
+			extraStart = Arrays.copyOf(extraStart, capacity);
+			textEnd = Arrays.copyOf(textEnd, capacity);
+		}
+	}
+}
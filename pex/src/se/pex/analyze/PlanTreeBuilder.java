@@ -0,0 +1,415 @@
+package se.pex.analyze;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Builds the node tree from plans given as named fields, like in the JSON, XML and YAML explain formats.
+ * The importers report plans, fields and triggers in the order they are read, and only the fields of the
+ * open plans are kept in memory. Field names are the ones used in the JSON format.
+ * The main lines of the nodes are written like in the text format, so the tree looks the same as if the
+ * text format had been analyzed. The nodes are handed to a {@link NodeSink}, which decides how they are stored.
+ */
+class PlanTreeBuilder {
+	/** Fields shown on the main line or as part of the tree, they are not added as extra lines. */
+	private static final String[] MAIN_LINE_FIELDS = { "Node Type", "Parent Relationship", "Parallel Aware", "Async Capable",
+		"Startup Cost", "Total Cost", "Plan Rows", "Plan Width", "Actual Startup Time", "Actual Total Time", "Actual Rows",
+		"Actual Loops", "Relation Name", "Alias", "Schema", "Index Name", "Scan Direction", "Join Type", "Strategy",
+		"Partial Mode", "Subplan Name", "CTE Name", "Function Name", "Inner Unique", "Operation" };
+
+	/** Buffer fields and the text used for them on the Buffers line. */
+	private static final String[][] BUFFER_FIELDS = {
+		{ "Shared Hit Blocks", "shared", "hit" }, { "Shared Read Blocks", "shared", "read" },
+		{ "Shared Dirtied Blocks", "shared", "dirtied" }, { "Shared Written Blocks", "shared", "written" },
+		{ "Local Hit Blocks", "local", "hit" }, { "Local Read Blocks", "local", "read" },
+		{ "Local Dirtied Blocks", "local", "dirtied" }, { "Local Written Blocks", "local", "written" },
+		{ "Temp Read Blocks", "temp", "read" }, { "Temp Written Blocks", "temp", "written" } };
+
+	/** I/O timing fields and the text used for them on the I/O Timings line. */
+	private static final String[][] IO_FIELDS = { { "I/O Read Time", "read" }, { "I/O Write Time", "write" } };
+
+	/**
+	 * A plan being read.
+	 */
+	private class PlanObject {
+		/** The node of the parent plan, <code>-1</code> for the top plan. */
+		private final int parent;
+
+		/** The node, created when the children are reached or when the plan ends, <code>-1</code> until then. */
+		private int node = -1;
+
+		/** The fields of the plan read so far, names and values after each other. */
+		private List<String> fields = new ArrayList<String>();
+
+		/** Extra lines not yet added to the node. */
+		private List<String> lines = new ArrayList<String>();
+
+		/**
+		 * Creates a new plan object.
+		 * @param parent The node of the parent plan, <code>-1</code> for the top plan.
+		 */
+		private PlanObject(int parent) {
+			this.parent = parent;
+		}
+
+		/**
+		 * @param name A field name.
+		 * @return The value of the field, <code>null</code> if it has not been read.
+		 */
+		private String get(String name) {
+			for (int i = 0; i < fields.size(); i += 2) {
+				if (fields.get(i).equals(name)) {
+					return fields.get(i + 1);
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Creates the node from the fields read so far, and adds the extra lines read so far.
+		 * @return The node.
+		 */
+		private int getNode() {
+			if (node < 0) {
+				int nodeParent = parent;
+				String subplanName = get("Subplan Name");
+				if (subplanName != null && parent >= 0) {
+					if (subplanName.startsWith("SubPlan")) {
+						// The text format has a SubPlan node between the parent and the plan
+						nodeParent = sink.addNode(parent, subplanName, 0, 0);
+					}
+					else {
+						sink.addLine(parent, subplanName);
+					}
+				}
+				node = sink.addNode(nodeParent, createMainLine(), 0, 0);
+				sink.setMetrics(node, createMetrics());
+				addBufferLines();
+			}
+			for (String line : lines) {
+				sink.addLine(node, line);
+			}
+			lines.clear();
+			return node;
+		}
+
+		/**
+		 * @return The main line like in the text format.
+		 */
+		private String createMainLine() {
+			StringBuilder res = new StringBuilder();
+			if (parent >= 0) {
+				res.append("->  ");
+			}
+			res.append(createName());
+			String startupCost = get("Startup Cost");
+			if (startupCost != null) {
+				res.append("  (cost=").append(startupCost).append("..").append(get("Total Cost"))
+					.append(" rows=").append(get("Plan Rows")).append(" width=").append(get("Plan Width")).append(')');
+			}
+			String loops = get("Actual Loops");
+			if ("0".equals(loops)) {
+				res.append(" (never executed)");
+			}
+			else if (loops != null) {
+				res.append(" (actual time=").append(get("Actual Startup Time")).append("..").append(get("Actual Total Time"))
+					.append(" rows=").append(get("Actual Rows")).append(" loops=").append(loops).append(')');
+			}
+			return res.toString();
+		}
+
+		/**
+		 * @return The node name like in the text format, for example <code>Index Scan Backward using idx on t</code>.
+		 */
+		private String createName() {
+			String type = get("Node Type");
+			StringBuilder res = new StringBuilder();
+			if ("Partial".equals(get("Partial Mode")) || "Finalize".equals(get("Partial Mode"))) {
+				res.append(get("Partial Mode")).append(' ');
+			}
+			if ("true".equals(get("Parallel Aware"))) {
+				res.append("Parallel ");
+			}
+			String strategy = get("Strategy");
+			String joinType = get("Join Type");
+			if ("Aggregate".equals(type) && strategy != null && !"Plain".equals(strategy)) {
+				res.append("Hashed".equals(strategy) ? "Hash" : "Sorted".equals(strategy) ? "Group" : strategy).append(type);
+			}
+			else if ("ModifyTable".equals(type) && get("Operation") != null) {
+				res.append(get("Operation"));
+			}
+			else if (joinType != null && !"Inner".equals(joinType)) {
+				res.append("Nested Loop".equals(type) ? type : type.replace(" Join", "")).append(' ').append(joinType).append(" Join");
+			}
+			else {
+				res.append(type);
+			}
+			if ("Backward".equals(get("Scan Direction"))) {
+				res.append(" Backward");
+			}
+			if (get("Index Name") != null) {
+				res.append(" using ").append(get("Index Name"));
+			}
+			String relation = get("Relation Name") != null ? get("Relation Name") : get("CTE Name") != null
+				? get("CTE Name") : get("Function Name");
+			String alias = get("Alias");
+			if (relation != null) {
+				res.append(" on ");
+				if (get("Schema") != null) {
+					res.append(get("Schema")).append('.');
+				}
+				res.append(relation);
+				if (alias != null && !alias.equals(relation)) {
+					res.append(' ').append(alias);
+				}
+			}
+			else if (alias != null) {
+				res.append(" on ").append(alias);
+			}
+			return res.toString();
+		}
+
+		/**
+		 * @return The numbers of the node, taken directly from the fields.
+		 */
+		private Metrics createMetrics() {
+			Metrics metrics = new Metrics();
+			if (get("Startup Cost") != null) {
+				metrics.hasCost = true;
+				metrics.startupCost = parseFloat(get("Startup Cost"));
+				metrics.totalCost = parseFloat(get("Total Cost"));
+				metrics.planRows = parseLong(get("Plan Rows"));
+				metrics.planWidth = (int) parseLong(get("Plan Width"));
+			}
+			long loops = parseLong(get("Actual Loops"));
+			if (loops > 0) {
+				metrics.hasTime = true;
+				metrics.startupTime = parseFloat(get("Actual Startup Time"));
+				metrics.totalTime = parseFloat(get("Actual Total Time"));
+				metrics.actualRows = parseDouble(get("Actual Rows"));
+				metrics.loops = (int) Math.min(loops, Integer.MAX_VALUE);
+			}
+			return metrics;
+		}
+
+		/**
+		 * Adds the Buffers and I/O Timings lines like in the text format, with only the values that are not zero.
+		 */
+		private void addBufferLines() {
+			StringBuilder buffers = new StringBuilder();
+			String group = null;
+			for (String[] field : BUFFER_FIELDS) {
+				String value = get(field[0]);
+				if (value != null && parseLong(value) != 0) {
+					if (!field[1].equals(group)) {
+						buffers.append(group == null ? "Buffers: " : ", ").append(field[1]);
+						group = field[1];
+					}
+					buffers.append(' ').append(field[2]).append('=').append(value);
+				}
+			}
+			if (group != null) {
+				lines.add(buffers.toString());
+			}
+			StringBuilder timings = new StringBuilder();
+			for (String[] field : IO_FIELDS) {
+				String value = get(field[0]);
+				if (value != null && parseFloat(value) != 0) {
+					timings.append(timings.length() == 0 ? "I/O Timings: " : " ").append(field[1]).append('=').append(value);
+				}
+			}
+			if (timings.length() > 0) {
+				lines.add(timings.toString());
+			}
+		}
+	}
+
+	/** Receives the nodes. */
+	private final NodeSink sink;
+
+	/** The open plans, the innermost is on top. */
+	private Deque<PlanObject> openPlans = new ArrayDeque<PlanObject>();
+
+	/** The top plan object of the plan being read, or of the last plan read. */
+	private PlanObject topPlan;
+
+	/**
+	 * Creates a new builder.
+	 * @param sink Receives the nodes.
+	 */
+	PlanTreeBuilder(NodeSink sink) {
+		this.sink = sink;
+	}
+
+	/**
+	 * Starts a plan, it becomes a child of the innermost open plan.
+	 */
+	void beginPlan() {
+		if (openPlans.isEmpty()) {
+			// Only the last plan is kept, so the nodes of the previous one are thrown away
+			sink.clear();
+		}
+		PlanObject plan = new PlanObject(openPlans.isEmpty() ? -1 : openPlans.peek().getNode());
+		if (openPlans.isEmpty()) {
+			topPlan = plan;
+		}
+		openPlans.push(plan);
+	}
+
+	/**
+	 * Adds a field to the innermost open plan.
+	 * @param name The field name as in the JSON format.
+	 * @param value The value, numbers exactly as written.
+	 */
+	void field(String name, String value) {
+		if (value == null || openPlans.isEmpty()) {
+			return;
+		}
+		PlanObject plan = openPlans.peek();
+		plan.fields.add(name);
+		plan.fields.add(value);
+		if (!isMainLineField(name) && !isBufferField(name)) {
+			plan.lines.add(name + ": " + value);
+		}
+	}
+
+	/**
+	 * Called before the child plans of the innermost open plan, the node must exist before its children.
+	 */
+	void beginChildren() {
+		if (!openPlans.isEmpty()) {
+			openPlans.peek().getNode();
+		}
+	}
+
+	/**
+	 * Ends the innermost open plan.
+	 */
+	void endPlan() {
+		if (!openPlans.isEmpty()) {
+			openPlans.pop().getNode();
+		}
+	}
+
+	/**
+	 * Adds a worker line to the innermost open plan like in the text format of explain verbose, workers without
+	 * actual times are left out.
+	 * @param number The worker number.
+	 * @param startupTime The actual startup time.
+	 * @param totalTime The actual total time.
+	 * @param rows The actual rows.
+	 * @param loops The actual loops.
+	 */
+	void worker(String number, String startupTime, String totalTime, String rows, String loops) {
+		if (openPlans.isEmpty() || number == null || startupTime == null || totalTime == null || loops == null) {
+			return;
+		}
+		openPlans.peek().lines.add("Worker " + number + ":  actual time=" + startupTime + ".." + totalTime
+			+ " rows=" + (rows != null ? rows : "0") + " loops=" + loops);
+	}
+
+	/**
+	 * Adds a trigger to the root like in the text format.
+	 * @param triggerName The trigger name.
+	 * @param constraintName The constraint name, <code>null</code> if the trigger does not belong to a constraint.
+	 * @param time The time spent in the trigger.
+	 * @param calls The number of calls.
+	 */
+	void trigger(String triggerName, String constraintName, String time, String calls) {
+		if (topPlan == null) {
+			return;
+		}
+		String line = (constraintName != null ? "Trigger for constraint " + constraintName : "Trigger " + triggerName)
+			+ ": time=" + time + " calls=" + calls;
+		int trigger = sink.addNode(topPlan.getNode(), line, 0, 0);
+		Metrics metrics = new Metrics();
+		metrics.isTrigger = true;
+		metrics.triggerTime = parseFloat(time);
+		metrics.triggerCalls = parseLong(calls);
+		sink.setMetrics(trigger, metrics);
+	}
+
+	/**
+	 * Completes the tree. Plans that are still open, because the input was broken, keep what was read so far.
+	 * @return The root node in the resulting tree.
+	 */
+	Node getRoot() {
+		if (topPlan != null) {
+			// The top plan is the first node after the sink was cleared
+			topPlan.getNode();
+		}
+		return sink.getRoot();
+	}
+
+	/**
+	 * @param name A field name.
+	 * @return <code>true</code> if the field is shown on the main line.
+	 */
+	private static boolean isMainLineField(String name) {
+		for (String field : MAIN_LINE_FIELDS) {
+			if (field.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param name A field name.
+	 * @return <code>true</code> if the field is shown on the Buffers or I/O Timings line.
+	 */
+	private static boolean isBufferField(String name) {
+		for (String[] field : BUFFER_FIELDS) {
+			if (field[0].equals(name)) {
+				return true;
+			}
+		}
+		for (String[] field : IO_FIELDS) {
+			if (field[0].equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param value A number as written in the explain.
+	 * @return The number, 0 if it is missing or not a number.
+	 */
+	private static float parseFloat(String value) {
+		try {
+			return value == null ? 0 : Float.parseFloat(value);
+		}
+		catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @param value A number as written in the explain, like an average row count with decimals.
+	 * @return The number, 0 if it is missing or not a number.
+	 */
+	private static double parseDouble(String value) {
+		try {
+			return value == null ? 0 : Double.parseDouble(value);
+		}
+		catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @param value A number as written in the explain, newer versions write average row counts with decimals.
+	 * @return The number rounded to a long, 0 if it is missing or not a number.
+	 */
+	private static long parseLong(String value) {
+		try {
+			return value == null ? 0 : Math.round(Double.parseDouble(value));
+		}
+		catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package se.pex.analyze;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The quality of the row estimates of a plan, as q-errors: the factor between the estimated and the actual rows,
+ * whichever is larger, so that 1 is a perfect estimate. The rows are compared over all loops with 64 bit
+ * counts, so a node that finds no rows in most of its loops is not taken for a good estimate.
+ * A bad estimate usually makes the estimates of the nodes above it bad as well. The q-errors and where the error
+ * of every node starts are calculated with the other aggregates, in the same bottom up pass.
+ */
+public final class RowEstimates {
+	/** The q-error from which an estimate is bad. */
+	public static final float MISESTIMATE = 2;
+
+	/** How much worse than the worst child estimate an estimate has to be for a new error to start at the node. */
+	static final float NEW_ERROR = 2;
+
+	/** No bad estimate stands for the node. */
+	static final int NO_SOURCE = 0;
+	/** The error of the node is the error of the worst child estimate carried upwards. */
+	static final int CHILD_SOURCE = 1;
+	/** A new error starts at the node. */
+	static final int OWN_SOURCE = 2;
+
+	/** Orders nodes with the smallest q-error first. */
+	private static final Comparator<Node> SMALLEST_ERROR_FIRST = new Comparator<Node>() {
+		@Override
+		public int compare(Node n1, Node n2) {
+			return Float.compare(n1.getQError(), n2.getQError());
+		}
+	};
+
+	/**
+	 * Only static methods.
+	 */
+	private RowEstimates() {
+	}
+
+	/**
+	 * Calculates the q-error of a node. The counts of one loop are multiplied by the loops, and are at least 1, as
+	 * the planner never estimates fewer rows.
+	 * @param actualRows Actual number of rows for one loop, an average with decimals in newer versions.
+	 * @param planRows Estimated number of rows for one loop, <code>-1</code> if unknown.
+	 * @param loops Number of loops.
+	 * @return The q-error, <code>-1</code> if unknown.
+	 */
+	static float qError(double actualRows, long planRows, int loops) {
+		if (planRows < 0 || actualRows < 0) {
+			return -1;
+		}
+		int n = Math.max(loops, 1);
+		// The average is only rounded for all loops, rows=0.40 loops=100000 are 40000 rows and not none
+		double actual = Math.max((double) Math.round(actualRows * n), 1);
+		double estimated = Math.max((double) planRows * n, 1);
+		return (float) (actual > estimated ? actual / estimated : estimated / actual);
+	}
+
+	/**
+	 * @param planRows Estimated number of rows for one loop.
+	 * @param actualRows Actual number of rows for one loop.
+	 * @return <code>true</code> if more rows were estimated than found.
+	 */
+	static boolean isTooHigh(long planRows, double actualRows) {
+		return planRows > actualRows;
+	}
+
+	/**
+	 * Decides if the estimate that stands for a child is the worst one of the children so far that can be carried
+	 * upwards to the node.
+	 * @param qError The q-error of the node, <code>-1</code> if it has no estimate.
+	 * @param tooHigh <code>true</code> if the node estimated more rows than found.
+	 * @param childError The q-error of the estimate that stands for the child.
+	 * @param childTooHigh <code>true</code> if that estimate is more rows than found.
+	 * @param worstError The q-error of the worst estimate so far, <code>-1</code> if there is none.
+	 * @return <code>true</code> if the estimate of the child is the worst so far.
+	 */
+	static boolean isWorse(float qError, boolean tooHigh, float childError, boolean childTooHigh, float worstError) {
+		// Only an error in the same direction can be carried upwards
+		return (qError < 0 || childTooHigh == tooHigh) && (worstError < 0 || childError > worstError);
+	}
+
+	/**
+	 * Decides where the estimate error of a node starts.
+	 * @param qError The q-error of the node, <code>-1</code> if it has no estimate.
+	 * @param tooHigh <code>true</code> if the node estimated more rows than found.
+	 * @param worstError The q-error of the worst child estimate, <code>-1</code> if there is none.
+	 * @param worstTooHigh <code>true</code> if the worst child estimate is more rows than found.
+	 * @return {@link #NO_SOURCE}, {@link #CHILD_SOURCE} or {@link #OWN_SOURCE}.
+	 */
+	static int source(float qError, boolean tooHigh, float worstError, boolean worstTooHigh) {
+		if (qError < 0) {
+			// Nodes without an estimate, like SubPlan, pass the error of their children on
+			return worstError >= 0 ? CHILD_SOURCE : NO_SOURCE;
+		}
+		if (qError < MISESTIMATE) {
+			return NO_SOURCE;
+		}
+		if (worstError >= 0 && inherits(qError, tooHigh, worstError, worstTooHigh)) {
+			return CHILD_SOURCE;
+		}
+		return OWN_SOURCE;
+	}
+
+	/**
+	 * Decides if the error of a node is the error of a child carried upwards, or a new error.
+	 * @param qError The q-error of the node.
+	 * @param tooHigh <code>true</code> if the node estimated more rows than found.
+	 * @param childError The q-error of the child with the worst estimate.
+	 * @param childTooHigh <code>true</code> if the child estimated more rows than found.
+	 * @return <code>true</code> if the error comes from the child.
+	 */
+	static boolean inherits(float qError, boolean tooHigh, float childError, boolean childTooHigh) {
+		return tooHigh == childTooHigh && qError <= childError * NEW_ERROR;
+	}
+
+	/**
+	 * Ranks the nodes where bad estimates start, nodes that only carry the error of a child are left out.
+	 * @param root The root of the plan.
+	 * @param count The number of nodes to return.
+	 * @return The nodes with the worst q-errors first.
+	 */
+	public static List<Node> rank(Node root, int count) {
+		if (count <= 0) {
+			return new ArrayList<Node>();
+		}
+		PriorityQueue<Node> worst = new PriorityQueue<Node>(count + 1, SMALLEST_ERROR_FIRST);
+		List<Node> stack = new ArrayList<Node>();
+		stack.add(root);
+		while (!stack.isEmpty()) {
+			Node node = stack.remove(stack.size() - 1);
+			if (node.getEstimateSource() == node && (worst.size() < count || node.getQError() > worst.peek().getQError())) {
+				worst.add(node);
+				if (worst.size() > count) {
+					worst.poll();
+				}
+			}
+			stack.addAll(node.getChildren());
+		}
+		List<Node> res = new ArrayList<Node>(worst.size());
+		while (!worst.isEmpty()) {
+			res.add(worst.poll());
+		}
+		Collections.reverse(res);
+		return res;
+	}
+
+	/**
+	 * Follows the error of a node upwards.
+	 * @param source A node where a bad estimate starts.
+	 * @return The ancestors that carry the error, the closest first.
+	 */
+	public static List<Node> getPropagation(Node source) {
+		List<Node> res = new ArrayList<Node>();
+		for (Node node = source.getParent(); node != null && node.getEstimateSource() == source; node = node.getParent()) {
+			res.add(node);
+		}
+		return res;
+	}
+}
@@ -0,0 +1,787 @@
+package se.pex.analyze;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A node of a tree built by the parsers, with the text and numbers of the node in fields. The parsers add the
+ * lines of a node while they read them, and incremental reanalysis replaces subtrees, everything else only
+ * reads the tree through {@link Node}.
+ */
+class TreeNode extends Node {
+	/** Extra lines of nodes that have none, so that leaves do not need lists of their own. */
+	private static final List<String> NO_LINES = Collections.emptyList();
+
+	/** Children of nodes that have none. */
+	private static final List<TreeNode> NO_CHILDREN = Collections.emptyList();
+
+	/** Main line for the node. */
+	private String line;
+
+	/** Extra lines for the node. */
+	private List<String> lines = NO_LINES;
+
+	/** Node children. */
+	private List<TreeNode> children = NO_CHILDREN;
+
+	/** Parent node. */
+	private TreeNode parent;
+
+	/** Number of spaces on the line, used during parsing. */
+	private int indentation;
+
+	/** Index of the first input line of the node. */
+	private int firstLine;
+
+	/** Index of the last input line of the node, not counting child nodes. */
+	private int lastLine;
+
+	/** The numbers on the main line, parsed once the main line is complete. */
+	private Metrics metrics;
+
+	/** The numbers on the buffer and I/O timing lines, parsed when they are first needed. */
+	private IoMetrics io;
+
+	/** <code>true</code> when the values below have been calculated for the tree. */
+	private boolean aggregated;
+
+	/** Number of processes that run the node, more than one below a Gather node. */
+	private int parallelism;
+
+	/** Execution time exclusive child nodes. */
+	private float timeExclusive;
+
+	/** Number of nodes in the subtree, including this node. */
+	private int subtreeNodeCount;
+
+	/** The largest exclusive time of any node in the subtree, including this node. */
+	private float subtreeMaxTimeExclusive;
+
+	/** Blocks read by the subtree. */
+	private long readBlocks;
+
+	/** Blocks read exclusive child nodes. */
+	private long readBlocksExclusive;
+
+	/** Time spent reading blocks in the subtree. */
+	private float readTime;
+
+	/** Time spent reading blocks exclusive child nodes. */
+	private float readTimeExclusive;
+
+	/** The q-error of the row estimate, <code>-1</code> if unknown. */
+	private float qError;
+
+	/** The node where the estimate error of this node starts, <code>null</code> if the estimate is good. */
+	private TreeNode estimateSource;
+
+	/** Total execution time of the tree this node belongs to. */
+	private float totalTime;
+
+	/** The heat classes of all mark modes, see {@link Heat}. */
+	private byte heat;
+
+	/** The levels the heat classes of the tree were calculated with, only set on the root. */
+	private Heat.Levels heatLevels;
+
+	/**
+	 * Creates a new node.
+	 * @param parent The parent node.
+	 * @param line The main line describing the node.
+	 * @param indentation Spaces on the line.
+	 */
+	TreeNode(TreeNode parent, String line, int indentation) {
+		this.line = line;
+		this.indentation = indentation;
+		if (parent != null) {
+			this.parent = parent;
+			parent.addChild(this);
+		}
+	}
+
+	/**
+	 * Adds a child node.
+	 * @param n The child to add.
+	 */
+	private void addChild(TreeNode n) {
+		if (children == NO_CHILDREN) {
+			children = new ArrayList<TreeNode>(2);
+		}
+		children.add(n);
+	}
+
+	/**
+	 * Adds more text to the last line added to the node.
+	 * @param string Text to append.
+	 */
+	void appendToLastLine(String string) {
+		if (lines.size() == 0) {
+			line += string;
+			metrics = null;
+		}
+		else {
+			lines.add(lines.remove(lines.size() - 1) + string);
+		}
+		io = null;
+	}
+
+	/**
+	 * Adds a new line to the node.
+	 * @param trimmed The line.
+	 */
+	void addLine(String trimmed) {
+		if (lines == NO_LINES) {
+			lines = new ArrayList<String>(2);
+		}
+		lines.add(trimmed);
+		io = null;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getMainLine()
+	 */
+	@Override
+	public String getMainLine() {
+		return line;
+	}
+
+	/**
+	 * Parses the numbers on the main line, called when the main line is complete.
+	 */
+	void parseMetrics() {
+		metrics = Metrics.parse(line);
+	}
+
+	/**
+	 * Sets the numbers of the node, for nodes that were not created from a text line.
+	 * @param metrics The numbers.
+	 */
+	void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getMetrics()
+	 */
+	@Override
+	public Metrics getMetrics() {
+		if (metrics == null) {
+			parseMetrics();
+		}
+		return metrics;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getIo()
+	 */
+	@Override
+	public IoMetrics getIo() {
+		if (io == null) {
+			io = super.getIo();
+		}
+		return io;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getTimeInclusive(boolean)
+	 */
+	@Override
+	public float getTimeInclusive(boolean ignoreTriggers) {
+		ensureAggregated();
+		return timeInclusive(ignoreTriggers);
+	}
+
+	/**
+	 * @param ignoreTriggers If <code>true</code> trigger rows will return 0.
+	 * @return The execution time inclusive child nodes, once the parallelism is known.
+	 */
+	private float timeInclusive(boolean ignoreTriggers) {
+		Metrics m = getMetrics();
+		if (m.hasTime) {
+			return loopTime(m.totalTime, m.loops, parallelism);
+		}
+		if (!ignoreTriggers && m.isTrigger) {
+			return m.triggerTime;
+		}
+		return 0;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getParallelism()
+	 */
+	@Override
+	public int getParallelism() {
+		ensureAggregated();
+		return parallelism;
+	}
+
+	/**
+	 * @return Number of processes that run the children of this node, for a Gather node the number of workers
+	 * that run the parallel part of the plan plus the leader.
+	 */
+	private int childParallelism() {
+		if (line.indexOf("Gather") < 0) {
+			return parallelism;
+		}
+		int childLoops = 0;
+		for (TreeNode child : children) {
+			childLoops = Math.max(childLoops, child.getLoopCount());
+		}
+		return gatherParallelism(parallelism, getWorkersLaunched(), getLoopCount(), childLoops);
+	}
+
+	/**
+	 * Calculates exclusive times and subtree aggregates for the tree below this node in one bottom up pass,
+	 * so that the getters do not have to walk the tree. Called once the tree is complete.
+	 */
+	void calculateAggregates() {
+		List<TreeNode> nodes = aggregateSubtree();
+		setTotalTime(nodes, timeInclusive(true));
+		classifyHeat(nodes, Heat.getDefault());
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#calculateHeat(se.pex.analyze.Heat)
+	 */
+	@Override
+	void calculateHeat(Heat settings) {
+		ensureAggregated();
+		classifyHeat(getSubtree(), settings);
+	}
+
+	/**
+	 * @return The nodes of the subtree in pre order.
+	 */
+	private List<TreeNode> getSubtree() {
+		List<TreeNode> preOrder = new ArrayList<TreeNode>();
+		Deque<TreeNode> stack = new ArrayDeque<TreeNode>();
+		stack.push(this);
+		while (!stack.isEmpty()) {
+			TreeNode node = stack.pop();
+			preOrder.add(node);
+			for (TreeNode child : node.children) {
+				stack.push(child);
+			}
+		}
+		return preOrder;
+	}
+
+	/**
+	 * Calculates the aggregates of the subtree below this node, bottom up.
+	 * @return The nodes of the subtree in pre order.
+	 */
+	private List<TreeNode> aggregateSubtree() {
+		List<TreeNode> preOrder = getSubtree();
+		// Pre order visits every parent before its children
+		parallelism = parent == null ? 1 : parent.childParallelism();
+		for (TreeNode node : preOrder) {
+			int childParallelism = node.childParallelism();
+			for (TreeNode child : node.children) {
+				child.parallelism = childParallelism;
+			}
+		}
+		// Reverse pre order visits every child before its parent
+		for (int i = preOrder.size() - 1; i >= 0; i--) {
+			preOrder.get(i).aggregateChildren();
+		}
+		return preOrder;
+	}
+
+	/**
+	 * Calculates the aggregates of this node from the aggregates of the children.
+	 */
+	private void aggregateChildren() {
+		subtreeNodeCount = 1;
+		float childTimeInclusive = 0;
+		float childMaxTimeExclusive = -Float.MAX_VALUE;
+		long childReadBlocks = 0;
+		float childReadTime = 0;
+		for (TreeNode child : children) {
+			subtreeNodeCount += child.subtreeNodeCount;
+			childTimeInclusive += child.timeInclusive(true);
+			childMaxTimeExclusive = Math.max(childMaxTimeExclusive, child.subtreeMaxTimeExclusive);
+			childReadBlocks += child.readBlocks;
+			childReadTime += child.readTime;
+		}
+		timeExclusive = exclusiveTime(timeInclusive(true), childTimeInclusive);
+		subtreeMaxTimeExclusive = subtreeMaxTime(timeExclusive, childMaxTimeExclusive);
+		IoMetrics m = getIo();
+		readBlocks = rollUpReads(m.getReadBlocks(), childReadBlocks);
+		readBlocksExclusive = readBlocks - childReadBlocks;
+		readTime = rollUpReads(m.getReadTime(), childReadTime);
+		readTimeExclusive = readTime - childReadTime;
+		aggregateEstimate();
+	}
+
+	/**
+	 * Calculates the q-error of the row estimate, and where the error starts, from the children.
+	 */
+	private void aggregateEstimate() {
+		Metrics m = getMetrics();
+		qError = m.hasTime && m.hasCost ? RowEstimates.qError(m.actualRows, m.planRows, m.loops) : -1;
+		boolean tooHigh = isTooHigh();
+		TreeNode worst = null;
+		for (TreeNode child : children) {
+			TreeNode estimate = child.getEstimateNode();
+			if (estimate != null
+				&& RowEstimates.isWorse(qError, tooHigh, estimate.qError, estimate.isTooHigh(), worst != null ? worst.qError : -1)) {
+				worst = estimate;
+			}
+		}
+		switch (RowEstimates.source(qError, tooHigh, worst != null ? worst.qError : -1, worst != null && worst.isTooHigh())) {
+			case RowEstimates.CHILD_SOURCE:
+				estimateSource = worst.estimateSource;
+				break;
+			case RowEstimates.OWN_SOURCE:
+				estimateSource = this;
+				break;
+			default:
+				estimateSource = null;
+		}
+	}
+
+	/**
+	 * @return The node with the estimate that stands for this node, this node or for nodes without an estimate
+	 * the source of the error, <code>null</code> if there is no bad estimate.
+	 */
+	private TreeNode getEstimateNode() {
+		if (estimateSource == null) {
+			return null;
+		}
+		return qError >= 0 ? this : estimateSource;
+	}
+
+	/**
+	 * @return <code>true</code> if more rows were estimated than found.
+	 */
+	private boolean isTooHigh() {
+		Metrics m = getMetrics();
+		return RowEstimates.isTooHigh(m.planRows, m.actualRows);
+	}
+
+	/**
+	 * Sets the total time and marks the nodes as aggregated.
+	 * @param nodes The nodes to update.
+	 * @param total The total execution time of the tree.
+	 */
+	private static void setTotalTime(List<TreeNode> nodes, float total) {
+		for (TreeNode node : nodes) {
+			node.totalTime = total;
+			node.aggregated = true;
+		}
+	}
+
+	/**
+	 * Calculates the heat classes of the nodes of the tree below this node, after the aggregates.
+	 * @param nodes The nodes of the tree.
+	 * @param settings The levels to use.
+	 */
+	private void classifyHeat(List<TreeNode> nodes, Heat settings) {
+		heatLevels = settings.resolve(nodes, totalTime, readBlocks);
+		for (TreeNode node : nodes) {
+			node.classifyHeat(heatLevels);
+		}
+	}
+
+	/**
+	 * Calculates the heat classes from the aggregates.
+	 * @param levels The levels of the tree.
+	 */
+	private void classifyHeat(Heat.Levels levels) {
+		heat = levels.classify(timeExclusive, timeInclusive(true), qError, readBlocksExclusive);
+	}
+
+	/**
+	 * Replaces a child with a new subtree, and updates the aggregates of the new subtree and all ancestors.
+	 * @param oldChild The child to replace.
+	 * @param newChild The root of the new subtree.
+	 */
+	void replaceChild(TreeNode oldChild, TreeNode newChild) {
+		ensureAggregated();
+		children.set(children.indexOf(oldChild), newChild);
+		oldChild.parent = null;
+		newChild.parent = this;
+		List<TreeNode> nodes = newChild.aggregateSubtree();
+		setTotalTime(nodes, totalTime);
+		// The new nodes are classified with the levels of the tree, percentiles are not calculated again
+		TreeNode root = this;
+		while (root.parent != null) {
+			root = root.parent;
+		}
+		Heat.Levels levels = root.heatLevels != null ? root.heatLevels : Heat.getDefault().resolve(nodes, totalTime, root.readBlocks);
+		for (TreeNode node : nodes) {
+			node.classifyHeat(levels);
+		}
+		for (TreeNode node = this; node != null; node = node.parent) {
+			node.aggregateChildren();
+			node.classifyHeat(levels);
+		}
+	}
+
+	/**
+	 * Makes sure the aggregates have been calculated, for trees that were not created by the parser.
+	 */
+	private void ensureAggregated() {
+		if (!aggregated) {
+			TreeNode node = this;
+			while (node.parent != null) {
+				node = node.parent;
+			}
+			node.calculateAggregates();
+		}
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getTimeExclusive()
+	 */
+	@Override
+	public float getTimeExclusive() {
+		ensureAggregated();
+		return timeExclusive;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getQError()
+	 */
+	@Override
+	public float getQError() {
+		ensureAggregated();
+		return qError;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getEstimateSource()
+	 */
+	@Override
+	public Node getEstimateSource() {
+		ensureAggregated();
+		return estimateSource;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getReadBlocks()
+	 */
+	@Override
+	public long getReadBlocks() {
+		ensureAggregated();
+		return readBlocks;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getReadBlocksExclusive()
+	 */
+	@Override
+	public long getReadBlocksExclusive() {
+		ensureAggregated();
+		return readBlocksExclusive;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getReadTime()
+	 */
+	@Override
+	public float getReadTime() {
+		ensureAggregated();
+		return readTime;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getReadTimeExclusive()
+	 */
+	@Override
+	public float getReadTimeExclusive() {
+		ensureAggregated();
+		return readTimeExclusive;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getHeats()
+	 */
+	@Override
+	byte getHeats() {
+		ensureAggregated();
+		return heat;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getSubtreeNodeCount()
+	 */
+	@Override
+	public int getSubtreeNodeCount() {
+		ensureAggregated();
+		return subtreeNodeCount;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getSubtreeMaxTimeExclusive()
+	 */
+	@Override
+	public float getSubtreeMaxTimeExclusive() {
+		ensureAggregated();
+		return subtreeMaxTimeExclusive;
+	}
+
+	/**
+	 * @return Number of spaces on the line, used during parsing.
+	 */
+	int getIndentation() {
+		return indentation;
+	}
+
+	/**
+	 * Sets the input lines of the node, called by the parser.
+	 * @param first Index of the first input line.
+	 * @param last Index of the last input line, not counting child nodes.
+	 */
+	void setLines(int first, int last) {
+		firstLine = first;
+		lastLine = last;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getFirstLine()
+	 */
+	@Override
+	public int getFirstLine() {
+		return firstLine;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getSubtreeLastLine()
+	 */
+	@Override
+	public int getSubtreeLastLine() {
+		int last = lastLine;
+		TreeNode node = this;
+		while (!node.children.isEmpty()) {
+			node = node.children.get(node.children.size() - 1);
+			last = Math.max(last, node.lastLine);
+		}
+		return last;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#findNodeContainingLines(int, int)
+	 */
+	@Override
+	public TreeNode findNodeContainingLines(int first, int last) {
+		TreeNode result = null;
+		TreeNode node = this;
+		while (node != null && first >= node.firstLine && last <= node.getSubtreeLastLine()) {
+			result = node;
+			// Children are in line order, find the last one starting before the first line
+			TreeNode next = null;
+			int low = 0;
+			int high = node.children.size() - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				if (node.children.get(middle).firstLine <= first) {
+					next = node.children.get(middle);
+					low = middle + 1;
+				}
+				else {
+					high = middle - 1;
+				}
+			}
+			node = next;
+		}
+		return result;
+	}
+
+	/**
+	 * Moves the input lines of all nodes after a line, used when lines have been added or removed.
+	 * @param after Nodes with lines after this line are moved.
+	 * @param delta Number of lines to move.
+	 */
+	void shiftLines(int after, int delta) {
+		Deque<TreeNode> stack = new ArrayDeque<TreeNode>();
+		stack.push(this);
+		while (!stack.isEmpty()) {
+			TreeNode node = stack.pop();
+			if (node.firstLine > after) {
+				node.firstLine += delta;
+			}
+			if (node.lastLine > after) {
+				node.lastLine += delta;
+			}
+			for (TreeNode child : node.children) {
+				stack.push(child);
+			}
+		}
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getParent()
+	 */
+	@Override
+	public TreeNode getParent() {
+		return parent;
+	}
+
+	/**
+	 * A string describing the node and its children.
+	 * The tree is walked with an explicit stack, so deep plans can not overflow the call stack.
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder res = new StringBuilder();
+		Deque<TreeNode> stack = new ArrayDeque<TreeNode>();
+		Deque<Integer> indentations = new ArrayDeque<Integer>();
+		stack.push(this);
+		indentations.push(0);
+		while (!stack.isEmpty()) {
+			TreeNode node = stack.pop();
+			int indentation = indentations.pop();
+			addIndentation(indentation, res).append(node.line).append("\n");
+			for (String line : node.lines) {
+				addIndentation(indentation, res).append(line).append("\n");
+			}
+			for (int i = node.children.size() - 1; i >= 0; i--) {
+				stack.push(node.children.get(i));
+				indentations.push(indentation + 2);
+			}
+		}
+		return res.toString();
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getChildren()
+	 */
+	@Override
+	public List<Node> getChildren() {
+		return Collections.<Node>unmodifiableList(children);
+	}
+
+	/**
+	 * Goes up in the tree until reaching a node with a smaller indentation.
+	 * @param newIndentation Indentation to look for.
+	 * @return A node with smalled indentation.
+	 */
+	TreeNode walkToIndentation(int newIndentation) {
+		TreeNode result = this;
+		while (result != null && result.indentation >= newIndentation) {
+			result = result.parent;
+		}
+		return result;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getTotalTime()
+	 */
+	@Override
+	public float getTotalTime() {
+		ensureAggregated();
+		return totalTime;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#getLines()
+	 */
+	@Override
+	List<String> getLines() {
+		return lines;
+	}
+
+	/**
+	 * @see se.pex.analyze.Node#isExecuted()
+	 */
+	@Override
+	public boolean isExecuted() {
+		return line.indexOf("(never executed)") == -1;
+	}
+
+	/**
+	 * Builds a tree of nodes for the parsers, used for plans that are shown as they were written and can be
+	 * analyzed again in parts.
+	 */
+	static class Builder implements NodeSink {
+		/** The nodes added so far, in the order they were added. */
+		private final List<TreeNode> nodes = new ArrayList<TreeNode>();
+
+		/**
+		 * @param node The number of a node.
+		 * @return The node.
+		 */
+		TreeNode getNode(int node) {
+			return nodes.get(node);
+		}
+
+		/**
+		 * @see se.pex.analyze.NodeSink#addNode(int, java.lang.String, int, int)
+		 */
+		@Override
+		public int addNode(int parent, String line, int indentation, int lineNumber) {
+			TreeNode node = new TreeNode(parent >= 0 ? nodes.get(parent) : null, line, indentation);
+			node.setLines(lineNumber, lineNumber);
+			nodes.add(node);
+			return nodes.size() - 1;
+		}
+
+		/**
+		 * @see se.pex.analyze.NodeSink#addLine(int, java.lang.String)
+		 */
+		@Override
+		public void addLine(int node, String line) {
+			nodes.get(node).addLine(line);
+		}
+
+		/**
+		 * @see se.pex.analyze.NodeSink#appendToLastLine(int, java.lang.String)
+		 */
+		@Override
+		public void appendToLastLine(int node, String text) {
+			nodes.get(node).appendToLastLine(text);
+		}
+
+		/**
+		 * @see se.pex.analyze.NodeSink#setLastLine(int, int)
+		 */
+		@Override
+		public void setLastLine(int node, int lineNumber) {
+			TreeNode n = nodes.get(node);
+			n.setLines(n.firstLine, lineNumber);
+		}
+
+		/**
+		 * @see se.pex.analyze.NodeSink#parseMetrics(int)
+		 */
+		@Override
+		public void parseMetrics(int node) {
+			nodes.get(node).parseMetrics();
+		}
+
+		/**
+		 * @see se.pex.analyze.NodeSink#setMetrics(int, se.pex.analyze.Metrics)
+		 */
+		@Override
+		public void setMetrics(int node, Metrics metrics) {
+			nodes.get(node).setMetrics(metrics);
+		}
+
+		/**
+		 * @see se.pex.analyze.NodeSink#clear()
+		 */
+		@Override
+		public void clear() {
+			nodes.clear();
+		}
+
+		/**
+		 * @see se.pex.analyze.NodeSink#getRoot()
+		 */
+		@Override
+		public Node getRoot() {
+			if (nodes.isEmpty()) {
+				// The editor always expects a root, even for an empty explain
+				return new TreeNode(null, "", 0);
+			}
+			TreeNode root = nodes.get(0);
+			root.calculateAggregates();
+			return root;
+		}
+	}
+}
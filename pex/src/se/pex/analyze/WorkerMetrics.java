@@ -0,0 +1,106 @@
+package se.pex.analyze;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The numbers of one parallel worker of a node, from a line like
+ * <code>Worker 0:  actual time=0.028..10.264 rows=31250 loops=1</code>.
+ * The lines are written by explain verbose, the leader has no line of its own.
+ */
+public class WorkerMetrics {
+	/** Start of a worker line. */
+	private static final String WORKER = "Worker ";
+
+	/** The number of the worker. */
+	private final int number;
+
+	/** The numbers on the worker line. */
+	private final Metrics metrics;
+
+	/**
+	 * Creates new worker metrics.
+	 * @param number The number of the worker.
+	 * @param metrics The numbers on the worker line.
+	 */
+	WorkerMetrics(int number, Metrics metrics) {
+		this.number = number;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Scans the worker lines of a node, lines of a worker without actual times are skipped.
+	 * @param lines The extra lines of the node.
+	 * @return The workers in the order of the lines.
+	 */
+	static List<WorkerMetrics> parse(List<String> lines) {
+		List<WorkerMetrics> workers = null;
+		for (String line : lines) {
+			if (!line.startsWith(WORKER)) {
+				continue;
+			}
+			int colon = line.indexOf(':');
+			if (colon < 0) {
+				continue;
+			}
+			Metrics m = Metrics.parse(line);
+			if (!m.hasTime) {
+				continue;
+			}
+			try {
+				int number = Integer.parseInt(line.substring(WORKER.length(), colon).trim());
+				if (workers == null) {
+					workers = new ArrayList<WorkerMetrics>();
+				}
+				workers.add(new WorkerMetrics(number, m));
+			}
+			catch (NumberFormatException e) {
+				// Not a worker line
+			}
+		}
+		return workers != null ? workers : Collections.<WorkerMetrics>emptyList();
+	}
+
+	/**
+	 * @return The number of the worker.
+	 */
+	public int getNumber() {
+		return number;
+	}
+
+	/**
+	 * @return Actual startup time for one loop.
+	 */
+	public float getStartupTime() {
+		return metrics.startupTime;
+	}
+
+	/**
+	 * @return Actual total time for one loop.
+	 */
+	public float getTotalTime() {
+		return metrics.totalTime;
+	}
+
+	/**
+	 * @return Actual number of rows for one loop, rounded.
+	 */
+	public long getActualRows() {
+		return metrics.getActualRows();
+	}
+
+	/**
+	 * @return Number of loops run by the worker.
+	 */
+	public int getLoops() {
+		return metrics.loops;
+	}
+
+	/**
+	 * @return Time spent by the worker in all loops.
+	 */
+	public float getTime() {
+		return metrics.totalTime * metrics.loops;
+	}
+}
@@ -0,0 +1,230 @@
+package se.pex.analyze;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Imports the output of <code>EXPLAIN (FORMAT XML)</code>, also used by pgAdmin exports.
+ * The input is read with StAX one event at a time, and the fields are handed to a {@link PlanTreeBuilder}
+ * without building a document in memory.
+ */
+class XmlPlanParser {
+	/** The reader. */
+	private final XMLStreamReader reader;
+
+	/** Builds the tree. */
+	private final PlanTreeBuilder builder;
+
+	/** Names of the open elements. */
+	private List<String> elements = new ArrayList<String>();
+
+	/** Text of the field being read. */
+	private StringBuilder text = new StringBuilder();
+
+	/** Items of the field being read, for fields like sort keys that are lists. */
+	private List<String> items = new ArrayList<String>();
+
+	/** Set if the field being read contains anything but items, such fields are skipped. */
+	private boolean complexField;
+
+	/** Fields of the trigger or worker being read, names and values after each other. */
+	private List<String> objectFields = new ArrayList<String>();
+
+	/**
+	 * Creates a new parser.
+	 * @param in The XML input.
+	 * @param builder Builds the tree.
+	 * @throws XMLStreamException If the input can not be read.
+	 */
+	private XmlPlanParser(Reader in, PlanTreeBuilder builder) throws XMLStreamException {
+		this.builder = builder;
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		// Plans are data, never resolve anything outside of the document
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		reader = factory.createXMLStreamReader(in);
+	}
+
+	/**
+	 * Analyzes and creates a node tree from an XML explain. If the input contains several plans, the last one is used.
+	 * Input that is not valid XML gives the tree read up to the error.
+	 * @param in The explain in XML format.
+	 * @param sink Receives the nodes.
+	 * @return The root node in the resulting tree.
+	 * @throws IOException On error reading from the stream.
+	 */
+	static Node parse(Reader in, NodeSink sink) throws IOException {
+		PlanTreeBuilder builder = new PlanTreeBuilder(sink);
+		try {
+			new XmlPlanParser(in, builder).read();
+		}
+		catch (XMLStreamException e) {
+			if (e.getNestedException() instanceof IOException) {
+				throw (IOException) e.getNestedException();
+			}
+			// Keep what was read so far, like the text format does with broken lines
+		}
+		return builder.getRoot();
+	}
+
+	/**
+	 * Reads all events.
+	 * @throws XMLStreamException On error reading or if the input is not valid XML.
+	 */
+	private void read() throws XMLStreamException {
+		while (reader.hasNext()) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				startElement(reader.getLocalName());
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				endElement();
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+				if (isInField() || isInItem()) {
+					text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+				}
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Handles the start of an element.
+	 * @param name The element name.
+	 */
+	private void startElement(String name) {
+		String parent = getElement(0);
+		if ("Plan".equals(name)) {
+			builder.beginPlan();
+		}
+		else if ("Plans".equals(name) && "Plan".equals(parent)) {
+			builder.beginChildren();
+		}
+		else if ("Plan".equals(parent) && !"Workers".equals(name) || "Trigger".equals(parent) || "Worker".equals(parent)) {
+			text.setLength(0);
+			items.clear();
+			complexField = false;
+		}
+		else if ("Item".equals(name) && "Plan".equals(getElement(1))) {
+			text.setLength(0);
+		}
+		else if (isInField()) {
+			complexField = true;
+		}
+		else if ("Trigger".equals(name) && "Triggers".equals(parent) || "Worker".equals(name) && "Workers".equals(parent)) {
+			objectFields.clear();
+		}
+		elements.add(name);
+	}
+
+	/**
+	 * Handles the end of an element.
+	 */
+	private void endElement() {
+		String name = elements.remove(elements.size() - 1);
+		String parent = getElement(0);
+		if ("Plan".equals(name)) {
+			builder.endPlan();
+		}
+		else if (("Plans".equals(name) || "Workers".equals(name)) && "Plan".equals(parent)) {
+			return;
+		}
+		else if ("Plan".equals(parent)) {
+			if (!complexField) {
+				builder.field(toFieldName(name), items.isEmpty() ? text.toString() : join(items));
+			}
+		}
+		else if ("Trigger".equals(parent) || "Worker".equals(parent)) {
+			objectFields.add(toFieldName(name));
+			objectFields.add(text.toString());
+		}
+		else if ("Item".equals(name) && "Plan".equals(getElement(1))) {
+			items.add(text.toString());
+		}
+		else if ("Trigger".equals(name) && "Triggers".equals(parent)) {
+			builder.trigger(getObjectField("Trigger Name", null), getObjectField("Constraint Name", null),
+				getObjectField("Time", "0"), getObjectField("Calls", "0"));
+		}
+		else if ("Worker".equals(name) && "Workers".equals(parent)) {
+			builder.worker(getObjectField("Worker Number", null), getObjectField("Actual Startup Time", null),
+				getObjectField("Actual Total Time", null), getObjectField("Actual Rows", null),
+				getObjectField("Actual Loops", null));
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the innermost open element is a field of a plan, a trigger or a worker.
+	 */
+	private boolean isInField() {
+		String parent = getElement(1);
+		String element = getElement(0);
+		return "Plan".equals(parent) && !"Plans".equals(element) && !"Workers".equals(element)
+			|| "Trigger".equals(parent) || "Worker".equals(parent);
+	}
+
+	/**
+	 * @return <code>true</code> if the innermost open element is an item of a list field of a plan.
+	 */
+	private boolean isInItem() {
+		return "Item".equals(getElement(0)) && "Plan".equals(getElement(2));
+	}
+
+	/**
+	 * @param level Number of levels up from the innermost open element.
+	 * @return The element name, <code>null</code> if there is no such element.
+	 */
+	private String getElement(int level) {
+		int index = elements.size() - 1 - level;
+		return index >= 0 ? elements.get(index) : null;
+	}
+
+	/**
+	 * @param name A field name.
+	 * @param defaultValue Value to use if the field is missing.
+	 * @return The value of the field in the trigger or worker being read.
+	 */
+	private String getObjectField(String name, String defaultValue) {
+		for (int i = 0; i < objectFields.size(); i += 2) {
+			if (objectFields.get(i).equals(name)) {
+				return objectFields.get(i + 1);
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Converts an element name to the field name used in the JSON format.
+	 * The characters that are not allowed in element names are written as dashes.
+	 * @param element The element name, like <code>I-O-Read-Time</code>.
+	 * @return The field name, like <code>I/O Read Time</code>.
+	 */
+	private static String toFieldName(String element) {
+		if (element.startsWith("I-O-")) {
+			return "I/O " + element.substring(4).replace('-', ' ');
+		}
+		return element.replace('-', ' ');
+	}
+
+	/**
+	 * @param values Values of a list field.
+	 * @return The values separated with commas.
+	 */
+	private static String join(List<String> values) {
+		StringBuilder res = new StringBuilder();
+		for (String value : values) {
+			res.append(res.length() == 0 ? "" : ", ").append(value);
+		}
+		return res.toString();
+	}
+}
@@ -0,0 +1,373 @@
+package se.pex.analyze;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Imports the output of <code>EXPLAIN (FORMAT YAML)</code>.
+ * The input is read one line at a time, the structure is given by the indentation and the fields are handed to a
+ * {@link PlanTreeBuilder} without building a document in memory. Only the subset of YAML written by the
+ * explain is understood, strings are always quoted like in JSON.
+ */
+class YamlPlanParser {
+	/** The kinds of blocks. */
+	private enum Kind {
+		/** The list of queries. */
+		QUERIES,
+		/** A query, with the plan and the triggers. */
+		QUERY,
+		/** A plan. */
+		PLAN,
+		/** The list of child plans. */
+		PLANS,
+		/** A list of values, like a sort key. */
+		VALUES,
+		/** The list of workers of a plan. */
+		WORKERS,
+		/** A worker. */
+		WORKER,
+		/** The list of triggers. */
+		TRIGGERS,
+		/** A trigger. */
+		TRIGGER,
+		/** Anything that is not used, everything inside it is skipped. */
+		SKIP
+	}
+
+	/**
+	 * An open block.
+	 */
+	private static class Block {
+		/** The kind of block. */
+		private Kind kind;
+
+		/** Lines indented less than this end the block, as do new list items indented as much. */
+		private final int indentation;
+
+		/** The field name of a list of values. */
+		private String name;
+
+		/** The values of a list of values, or the fields of a trigger or worker as names and values after each other. */
+		private List<String> values = new ArrayList<String>();
+
+		/**
+		 * Creates a new block.
+		 * @param kind The kind of block.
+		 * @param indentation Lines indented less than this end the block.
+		 */
+		private Block(Kind kind, int indentation) {
+			this.kind = kind;
+			this.indentation = indentation;
+		}
+	}
+
+	/** Builds the tree. */
+	private final PlanTreeBuilder builder;
+
+	/** The open blocks, the innermost last. */
+	private List<Block> blocks = new ArrayList<Block>();
+
+	/**
+	 * Creates a new parser.
+	 * @param sink Receives the nodes.
+	 */
+	private YamlPlanParser(NodeSink sink) {
+		builder = new PlanTreeBuilder(sink);
+		blocks.add(new Block(Kind.QUERIES, -1));
+	}
+
+	/**
+	 * Analyzes and creates a node tree from a YAML explain. If the input contains several plans, the last one is used.
+	 * @param in The explain in YAML format.
+	 * @param sink Receives the nodes.
+	 * @return The root node in the resulting tree.
+	 * @throws IOException On error reading from the stream.
+	 */
+	static Node parse(BufferedReader in, NodeSink sink) throws IOException {
+		YamlPlanParser parser = new YamlPlanParser(sink);
+		String line = in.readLine();
+		while (line != null) {
+			parser.analyzeLine(line);
+			line = in.readLine();
+		}
+		parser.closeBlocks(-1, false);
+		return parser.builder.getRoot();
+	}
+
+	/**
+	 * Analyzes the next line of the input.
+	 * @param line The line to analyze.
+	 */
+	private void analyzeLine(String line) {
+		int indentation = 0;
+		while (indentation < line.length() && line.charAt(indentation) == ' ') {
+			indentation++;
+		}
+		if (indentation == line.length()) {
+			return;
+		}
+		String content = line.substring(indentation).trim();
+		boolean listItem = content.equals("-") || content.startsWith("- ");
+		if (listItem) {
+			// The keys of a mapping in a list item are indented two more than the dash
+			content = content.substring(1).trim();
+			indentation += 2;
+		}
+		closeBlocks(indentation, listItem);
+		Block block = blocks.get(blocks.size() - 1);
+		if (block.kind == Kind.SKIP) {
+			return;
+		}
+		if (listItem) {
+			block = startListItem(block, indentation, content);
+			if (block == null || content.length() == 0) {
+				return;
+			}
+		}
+		int colon = findColon(content);
+		if (colon < 0) {
+			return;
+		}
+		String name = content.substring(0, colon).trim();
+		String value = content.substring(colon + 1).trim();
+		if (value.length() > 0) {
+			setValue(block, name, unquote(value));
+		}
+		else {
+			startBlock(block, name, indentation + 1);
+		}
+	}
+
+	/**
+	 * Starts a list item in a block.
+	 * @param list The block the item belongs to.
+	 * @param indentation The indentation of the keys in the item.
+	 * @param content The content after the dash.
+	 * @return The block for the content of the item, <code>null</code> if the content has been handled.
+	 */
+	private Block startListItem(Block list, int indentation, String content) {
+		Kind kind = Kind.SKIP;
+		if (list.kind == Kind.QUERIES) {
+			kind = Kind.QUERY;
+		}
+		else if (list.kind == Kind.PLANS) {
+			builder.beginPlan();
+			kind = Kind.PLAN;
+		}
+		else if (list.kind == Kind.TRIGGERS) {
+			kind = Kind.TRIGGER;
+		}
+		else if (list.kind == Kind.WORKERS) {
+			kind = Kind.WORKER;
+		}
+		else if (list.kind == Kind.VALUES) {
+			if (content.startsWith("\"") || findColon(content) < 0) {
+				list.values.add(unquote(content));
+				return null;
+			}
+			// A list of mappings is not shown
+			list.kind = Kind.SKIP;
+			return null;
+		}
+		Block item = new Block(kind, indentation);
+		blocks.add(item);
+		return kind == Kind.SKIP ? null : item;
+	}
+
+	/**
+	 * Handles a key with a value.
+	 * @param block The innermost block.
+	 * @param name The key.
+	 * @param value The value.
+	 */
+	private void setValue(Block block, String name, String value) {
+		if (block.kind == Kind.PLAN) {
+			builder.field(name, value);
+		}
+		else if (block.kind == Kind.TRIGGER || block.kind == Kind.WORKER) {
+			block.values.add(name);
+			block.values.add(value);
+		}
+	}
+
+	/**
+	 * Handles a key without a value, which starts a block.
+	 * @param block The innermost block.
+	 * @param name The key.
+	 * @param indentation Lines indented less than this end the new block.
+	 */
+	private void startBlock(Block block, String name, int indentation) {
+		Kind kind = Kind.SKIP;
+		// The list of queries is optional
+		boolean query = block.kind == Kind.QUERY || block.kind == Kind.QUERIES;
+		if (query && "Plan".equals(name)) {
+			builder.beginPlan();
+			kind = Kind.PLAN;
+		}
+		else if (query && "Triggers".equals(name)) {
+			kind = Kind.TRIGGERS;
+		}
+		else if (block.kind == Kind.PLAN && "Plans".equals(name)) {
+			builder.beginChildren();
+			kind = Kind.PLANS;
+		}
+		else if (block.kind == Kind.PLAN && "Workers".equals(name)) {
+			kind = Kind.WORKERS;
+		}
+		else if (block.kind == Kind.PLAN) {
+			kind = Kind.VALUES;
+		}
+		Block newBlock = new Block(kind, indentation);
+		newBlock.name = name;
+		blocks.add(newBlock);
+	}
+
+	/**
+	 * Closes the blocks that a line is outside of.
+	 * @param indentation The indentation of the keys on the line.
+	 * @param listItem <code>true</code> if the line starts a new list item, which closes the previous item.
+	 */
+	private void closeBlocks(int indentation, boolean listItem) {
+		while (blocks.size() > 1) {
+			Block block = blocks.get(blocks.size() - 1);
+			if (block.indentation < indentation || (block.indentation == indentation && !listItem)) {
+				return;
+			}
+			blocks.remove(blocks.size() - 1);
+			if (block.kind == Kind.PLAN) {
+				builder.endPlan();
+			}
+			else if (block.kind == Kind.VALUES) {
+				builder.field(block.name, join(block.values));
+			}
+			else if (block.kind == Kind.TRIGGER) {
+				builder.trigger(getValue(block, "Trigger Name", null), getValue(block, "Constraint Name", null),
+					getValue(block, "Time", "0"), getValue(block, "Calls", "0"));
+			}
+			else if (block.kind == Kind.WORKER) {
+				builder.worker(getValue(block, "Worker Number", null), getValue(block, "Actual Startup Time", null),
+					getValue(block, "Actual Total Time", null), getValue(block, "Actual Rows", null),
+					getValue(block, "Actual Loops", null));
+			}
+		}
+	}
+
+	/**
+	 * @param block A trigger or worker block.
+	 * @param name A field name.
+	 * @param defaultValue Value to use if the field is missing.
+	 * @return The value of the field.
+	 */
+	private static String getValue(Block block, String name, String defaultValue) {
+		for (int i = 0; i < block.values.size(); i += 2) {
+			if (block.values.get(i).equals(name)) {
+				return block.values.get(i + 1);
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * @param content The content of a line.
+	 * @return Index of the colon that ends the key, <code>-1</code> if the line is not a key.
+	 */
+	private static int findColon(String content) {
+		if (content.startsWith("\"")) {
+			return -1;
+		}
+		int colon = content.indexOf(':');
+		while (colon >= 0 && colon + 1 < content.length() && content.charAt(colon + 1) != ' ') {
+			colon = content.indexOf(':', colon + 1);
+		}
+		return colon;
+	}
+
+	/**
+	 * Removes the quotes and escapes of a string value.
+	 * @param value The value as written.
+	 * @return The value, numbers exactly as written and <code>null</code> for null.
+	 */
+	private static String unquote(String value) {
+		if ("null".equals(value) || "~".equals(value)) {
+			return null;
+		}
+		if (!value.startsWith("\"") && !value.startsWith("'")) {
+			return value;
+		}
+		char quote = value.charAt(0);
+		StringBuilder res = new StringBuilder();
+		int end = value.length() > 1 && value.charAt(value.length() - 1) == quote ? value.length() - 1 : value.length();
+		for (int i = 1; i < end; i++) {
+			char c = value.charAt(i);
+			if (quote == '\'' && c == '\'' && i + 1 < end) {
+				// Single quotes are escaped by doubling them
+				i++;
+			}
+			else if (quote == '"' && c == '\\' && i + 1 < end) {
+				c = value.charAt(++i);
+				switch (c) {
+				case 'n':
+					c = '\n';
+					break;
+				case 't':
+					c = '\t';
+					break;
+				case 'r':
+					c = '\r';
+					break;
+				case 'u':
+					int code = hexValue(value, i + 1, end);
+					if (code >= 0) {
+						c = (char) code;
+						i += 4;
+					}
+					else {
+						// Not a valid escape, the text is kept as written
+						res.append('\\');
+					}
+					break;
+				default:
+					break;
+				}
+			}
+			res.append(c);
+		}
+		return res.toString();
+	}
+
+	/**
+	 * Reads the four hex digits of a unicode escape.
+	 * @param value The quoted value.
+	 * @param start Where the digits start.
+	 * @param end The end of the value, exclusive the closing quote.
+	 * @return The character code, <code>-1</code> if there are not four hex digits.
+	 */
+	private static int hexValue(String value, int start, int end) {
+		if (start + 4 > end) {
+			return -1;
+		}
+		int code = 0;
+		for (int i = start; i < start + 4; i++) {
+			int digit = Character.digit(value.charAt(i), 16);
+			if (digit < 0) {
+				return -1;
+			}
+			code = code * 16 + digit;
+		}
+		return code;
+	}
+
+	/**
+	 * @param values The values of a list.
+	 * @return The values separated with commas.
+	 */
+	private static String join(List<String> values) {
+		StringBuilder res = new StringBuilder();
+		for (String value : values) {
+			res.append(res.length() == 0 ? "" : ", ").append(value);
+		}
+		return res.toString();
+	}
+}
@@ -0,0 +1,147 @@
+package se.pex.editors;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.widgets.Display;
+
+import se.pex.Activator;
+import se.pex.analyze.Engine;
+import se.pex.analyze.Hotspots;
+import se.pex.analyze.MappedFileReader;
+import se.pex.analyze.Node;
+import se.pex.analyze.NodeIndex;
+import se.pex.analyze.PlanTable;
+
+/**
+ * Analyzes the explain text in the background and hands the resulting tree to the editor on the UI thread.
+ */
+public class AnalyzeJob extends Job {
+	/** Plans with more nodes than this, and all plans read from large files, are kept in a {@link PlanTable} instead of as node objects. */
+	private static final int COMPACT_NODE_COUNT = 50000;
+
+	/** The editor to update. */
+	private final PexEditor editor;
+
+	/** The explain text to analyze, <code>null</code> if a file is analyzed. */
+	private final String text;
+
+	/** The file to analyze, <code>null</code> if a text is analyzed. */
+	private final File file;
+
+	/** The encoding of the file. */
+	private final Charset charset;
+
+	/** The editor generation the text belongs to, used to throw away stale results. */
+	private final int generation;
+
+	/**
+	 * Creates a new job.
+	 * @param editor The editor to update.
+	 * @param text The explain text to analyze.
+	 * @param generation The editor generation the text belongs to.
+	 */
+	public AnalyzeJob(PexEditor editor, String text, int generation) {
+		this(editor, text, null, null, generation);
+	}
+
+	/**
+	 * Creates a new job that reads a file without loading it, for files too large to be opened as a document.
+	 * @param editor The editor to update.
+	 * @param file The file to analyze.
+	 * @param charset The encoding of the file.
+	 * @param generation The editor generation the file belongs to.
+	 */
+	public AnalyzeJob(PexEditor editor, File file, Charset charset, int generation) {
+		this(editor, null, file, charset, generation);
+	}
+
+	/**
+	 * Creates a new job.
+	 * @param editor The editor to update.
+	 * @param text The explain text to analyze, <code>null</code> if a file is analyzed.
+	 * @param file The file to analyze, <code>null</code> if a text is analyzed.
+	 * @param charset The encoding of the file.
+	 * @param generation The editor generation the input belongs to.
+	 */
+	private AnalyzeJob(PexEditor editor, String text, File file, Charset charset, int generation) {
+		super(Messages.AnalyzeJob_Name);
+		this.editor = editor;
+		this.text = text;
+		this.file = file;
+		this.charset = charset;
+		this.generation = generation;
+		setPriority(LONG);
+	}
+
+	/**
+	 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		MappedFileReader mapped = null;
+		try {
+			Reader in;
+			if (file != null) {
+				mapped = new MappedFileReader(file, charset);
+				in = mapped;
+				monitor.beginTask(Messages.AnalyzeJob_Name, (int) Math.min(mapped.length() / MonitoredReader.WORK_UNIT, Integer.MAX_VALUE));
+			}
+			else {
+				in = new StringReader(text);
+				monitor.beginTask(Messages.AnalyzeJob_Name, text.length() / MonitoredReader.WORK_UNIT);
+			}
+			// Files can be huge, so their nodes are written straight into a table while they are read
+			Node analyzed = file != null ? Engine.analyzeCompact(new MonitoredReader(in, monitor))
+				: Engine.analyze(new MonitoredReader(in, monitor));
+			if (monitor.isCanceled()) {
+				return Status.CANCEL_STATUS;
+			}
+			if (file == null && analyzed.getSubtreeNodeCount() > COMPACT_NODE_COUNT) {
+				analyzed = PlanTable.compact(analyzed).getRoot();
+			}
+			final Node root = analyzed;
+			final Hotspots hotspots = Hotspots.calculate(root);
+			final NodeIndex index = NodeIndex.build(root);
+			Display.getDefault().asyncExec(new Runnable() {
+				public void run() {
+					editor.setExplanation(root, hotspots, index, generation);
+				}
+			});
+			return Status.OK_STATUS;
+		}
+		catch (OperationCanceledException e) {
+			return Status.CANCEL_STATUS;
+		}
+		catch (IOException e) {
+			return new Status(IStatus.ERROR, Activator.PLUGIN_ID, e.getMessage(), e);
+		}
+		finally {
+			monitor.done();
+			close(mapped);
+		}
+	}
+
+	/**
+	 * Closes a file, errors are ignored as everything has been read.
+	 * @param reader The file reader, may be <code>null</code>.
+	 */
+	private static void close(MappedFileReader reader) {
+		if (reader != null) {
+			try {
+				reader.close();
+			}
+			catch (IOException e) {
+				// Nothing more is read from the file
+			}
+		}
+	}
+}
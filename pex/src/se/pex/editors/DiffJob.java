@@ -0,0 +1,135 @@
+package se.pex.editors;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.widgets.Display;
+
+import se.pex.Activator;
+import se.pex.analyze.Engine;
+import se.pex.analyze.MappedFileReader;
+import se.pex.analyze.Node;
+import se.pex.analyze.PlanDiff;
+
+/**
+ * Compares the plan of the editor with the plan in another file in the background and hands the diff to the
+ * editor on the UI thread.
+ */
+public class DiffJob extends Job {
+	/** The editor to update. */
+	private final PexEditor editor;
+
+	/** The explain text of the editor, <code>null</code> if the plan of the editor is already analyzed. */
+	private final String text;
+
+	/** The plan of the editor, <code>null</code> if the text is analyzed. */
+	private final Node root;
+
+	/** The file to compare with. */
+	private final File file;
+
+	/** The encoding of the file. */
+	private final Charset charset;
+
+	/** The diff generation the job belongs to, used to throw away stale results. */
+	private final int generation;
+
+	/**
+	 * Creates a job that analyzes the explain text of the editor before comparing. The text is analyzed again
+	 * as the tree of the editor may be changed while the job runs.
+	 * @param editor The editor to update.
+	 * @param text The explain text of the editor.
+	 * @param file The file to compare with.
+	 * @param charset The encoding of the file.
+	 * @param generation The diff generation the job belongs to.
+	 */
+	public DiffJob(PexEditor editor, String text, File file, Charset charset, int generation) {
+		this(editor, text, null, file, charset, generation);
+	}
+
+	/**
+	 * Creates a job that compares a plan that is never changed.
+	 * @param editor The editor to update.
+	 * @param root The plan of the editor.
+	 * @param file The file to compare with.
+	 * @param charset The encoding of the file.
+	 * @param generation The diff generation the job belongs to.
+	 */
+	public DiffJob(PexEditor editor, Node root, File file, Charset charset, int generation) {
+		this(editor, null, root, file, charset, generation);
+	}
+
+	/**
+	 * Creates a new job.
+	 * @param editor The editor to update.
+	 * @param text The explain text of the editor, <code>null</code> if the plan is already analyzed.
+	 * @param root The plan of the editor, <code>null</code> if the text is analyzed.
+	 * @param file The file to compare with.
+	 * @param charset The encoding of the file.
+	 * @param generation The diff generation the job belongs to.
+	 */
+	private DiffJob(PexEditor editor, String text, Node root, File file, Charset charset, int generation) {
+		super(Messages.DiffJob_Name);
+		this.editor = editor;
+		this.text = text;
+		this.root = root;
+		this.file = file;
+		this.charset = charset;
+		this.generation = generation;
+		setPriority(LONG);
+	}
+
+	/**
+	 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		monitor.beginTask(Messages.DiffJob_Name, 3);
+		try {
+			Node before = text != null ? Engine.analyze(text) : root;
+			monitor.worked(1);
+			if (monitor.isCanceled()) {
+				return Status.CANCEL_STATUS;
+			}
+			Node after = analyzeFile();
+			monitor.worked(1);
+			if (monitor.isCanceled()) {
+				return Status.CANCEL_STATUS;
+			}
+			final PlanDiff diff = PlanDiff.compare(before, after);
+			Display.getDefault().asyncExec(new Runnable() {
+				public void run() {
+					editor.setDiff(diff, generation);
+				}
+			});
+			return Status.OK_STATUS;
+		}
+		catch (IOException e) {
+			return new Status(IStatus.ERROR, Activator.PLUGIN_ID, e.getMessage(), e);
+		}
+		finally {
+			monitor.done();
+		}
+	}
+
+	/**
+	 * Analyzes the file to compare with.
+	 * @return The root node of the plan in the file.
+	 * @throws IOException On error reading the file.
+	 */
+	private Node analyzeFile() throws IOException {
+		MappedFileReader in = new MappedFileReader(file, charset);
+		try {
+			return Engine.analyze(new BufferedReader(in));
+		}
+		finally {
+			in.close();
+		}
+	}
+}
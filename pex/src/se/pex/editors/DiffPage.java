@@ -0,0 +1,256 @@
+package se.pex.editors;
+
+import java.io.File;
+
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.ILazyTreeContentProvider;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.TreeViewerColumn;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Label;
+
+import se.pex.analyze.Node;
+import se.pex.analyze.PlanDiff;
+import se.pex.analyze.PlanDiff.Pair;
+
+/**
+ * Shows the plan of the editor side by side with the plan of another file, with the differences of every node.
+ * Tree items are only created for lines that are scrolled into view, so plans with many nodes can be compared.
+ */
+public class DiffPage implements ILazyTreeContentProvider {
+	/** The page. */
+	private final Composite composite;
+
+	/** The name of the file compared with. */
+	private final Label fileLabel;
+
+	/** The tree viewer, the elements are the lines of the diff. */
+	private final TreeViewer viewer;
+
+	/** The diff shown, <code>null</code> until plans have been compared. */
+	private PlanDiff diff;
+
+	/**
+	 * Creates a new page.
+	 * @param parent The composite where to put the page.
+	 * @param editor The editor instance.
+	 */
+	public DiffPage(Composite parent, final PexEditor editor) {
+		composite = new Composite(parent, SWT.NONE);
+		composite.setLayout(new GridLayout(2, false));
+		Button compare = new Button(composite, SWT.PUSH);
+		compare.setText(Messages.DiffPage_CompareWith);
+		compare.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				FileDialog dialog = new FileDialog(composite.getShell(), SWT.OPEN);
+				String path = dialog.open();
+				if (path != null) {
+					fileLabel.setText(path);
+					editor.compareWith(new File(path));
+				}
+			}
+		});
+		fileLabel = new Label(composite, SWT.NONE);
+		fileLabel.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+
+		viewer = new TreeViewer(composite, SWT.SINGLE | SWT.FULL_SELECTION | SWT.H_SCROLL | SWT.V_SCROLL | SWT.BORDER | SWT.VIRTUAL);
+		viewer.getTree().setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true, 2, 1));
+		viewer.setUseHashlookup(true);
+		viewer.getTree().setHeaderVisible(true);
+		viewer.getTree().setLinesVisible(true);
+		viewer.setContentProvider(this);
+
+		createColumn(Messages.DiffPage_Before, 400, SWT.NONE, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object pair) {
+				return getLine(((Pair) pair).getBefore());
+			}
+		});
+		createColumn(Messages.DiffPage_After, 400, SWT.NONE, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object pair) {
+				return getLine(((Pair) pair).getAfter());
+			}
+		});
+		createColumn(Messages.DiffPage_InclusiveDelta, 100, SWT.RIGHT, new DeltaLabelProvider(editor) {
+			@Override
+			float getDelta(Pair pair) {
+				return pair.getTimeInclusiveDelta();
+			}
+		});
+		createColumn(Messages.DiffPage_ExclusiveDelta, 100, SWT.RIGHT, new DeltaLabelProvider(editor) {
+			@Override
+			float getDelta(Pair pair) {
+				return pair.getTimeExclusiveDelta();
+			}
+		});
+		createColumn(Messages.Pex_Loops, 100, SWT.RIGHT, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object pair) {
+				Node before = ((Pair) pair).getBefore();
+				Node after = ((Pair) pair).getAfter();
+				return (before == null ? "" : "" + before.getLoopCount()) + " → " + (after == null ? "" : "" + after.getLoopCount()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			}
+		});
+		createColumn(Messages.Pex_Rowcount, 100, SWT.RIGHT, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object pair) {
+				Node before = ((Pair) pair).getBefore();
+				Node after = ((Pair) pair).getAfter();
+				return (before == null ? "" : before.getRowCountInfo().toString()) + " → " + (after == null ? "" : after.getRowCountInfo().toString()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
+		});
+		createColumn(Messages.DiffPage_QErrorDelta, 100, SWT.RIGHT, new DeltaLabelProvider(editor) {
+			@Override
+			float getDelta(Pair pair) {
+				return pair.getQErrorDelta();
+			}
+		});
+	}
+
+	/**
+	 * Shows a difference, red if it got worse and green if it got better.
+	 */
+	private abstract static class DeltaLabelProvider extends ColumnLabelProvider {
+		/** The editor instance. */
+		private final PexEditor editor;
+
+		/**
+		 * Creates a new label provider.
+		 * @param editor The editor instance.
+		 */
+		DeltaLabelProvider(PexEditor editor) {
+			this.editor = editor;
+		}
+
+		/**
+		 * @param pair A line of the diff.
+		 * @return The difference.
+		 */
+		abstract float getDelta(Pair pair);
+
+		/**
+		 * @see org.eclipse.jface.viewers.ColumnLabelProvider#getText(java.lang.Object)
+		 */
+		@Override
+		public String getText(Object pair) {
+			float delta = getDelta((Pair) pair);
+			return (delta > 0 ? "+" : "") + editor.formatFloat(delta); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+		/**
+		 * @see org.eclipse.jface.viewers.ColumnLabelProvider#getForeground(java.lang.Object)
+		 */
+		@Override
+		public Color getForeground(Object pair) {
+			float delta = getDelta((Pair) pair);
+			if (delta > 0) {
+				return PexEditor.red;
+			}
+			if (delta < 0) {
+				return Display.getCurrent().getSystemColor(SWT.COLOR_DARK_GREEN);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * @param node A node, or <code>null</code>.
+	 * @return The main line of the node without the arrow, empty for <code>null</code>.
+	 */
+	private static String getLine(Node node) {
+		if (node == null) {
+			return ""; //$NON-NLS-1$
+		}
+		String line = node.getMainLine();
+		return line.startsWith("->") ? line.substring(2).trim() : line; //$NON-NLS-1$
+	}
+
+	/**
+	 * Creates a column in the tree.
+	 * @param text The column header.
+	 * @param width The column width.
+	 * @param style The column style.
+	 * @param labelProvider Gives the text of the column.
+	 */
+	private void createColumn(String text, int width, int style, ColumnLabelProvider labelProvider) {
+		TreeViewerColumn column = new TreeViewerColumn(viewer, style);
+		column.getColumn().setText(text);
+		column.getColumn().setWidth(width);
+		column.getColumn().setResizable(true);
+		column.setLabelProvider(labelProvider);
+	}
+
+	/**
+	 * @return The control of the page.
+	 */
+	public Control getControl() {
+		return composite;
+	}
+
+	/**
+	 * Shows a diff.
+	 * @param diff The diff.
+	 */
+	public void setDiff(PlanDiff diff) {
+		this.diff = diff;
+		viewer.setInput(diff);
+		viewer.expandToLevel(2);
+	}
+
+	/**
+	 * @see org.eclipse.jface.viewers.ILazyTreeContentProvider#updateElement(java.lang.Object, int)
+	 */
+	@Override
+	public void updateElement(Object parent, int index) {
+		Pair element = parent instanceof PlanDiff ? diff.getRoot() : ((Pair) parent).getChildren().get(index);
+		viewer.replace(parent, index, element);
+		viewer.setChildCount(element, element.getChildren().size());
+	}
+
+	/**
+	 * @see org.eclipse.jface.viewers.ILazyTreeContentProvider#updateChildCount(java.lang.Object, int)
+	 */
+	@Override
+	public void updateChildCount(Object element, int currentChildCount) {
+		viewer.setChildCount(element, element instanceof PlanDiff ? 1 : ((Pair) element).getChildren().size());
+	}
+
+	/**
+	 * @see org.eclipse.jface.viewers.ILazyTreeContentProvider#getParent(java.lang.Object)
+	 */
+	@Override
+	public Object getParent(Object element) {
+		if (element instanceof PlanDiff) {
+			return null;
+		}
+		Pair parent = ((Pair) element).getParent();
+		return parent == null ? diff : parent;
+	}
+
+	/**
+	 * @see org.eclipse.jface.viewers.IContentProvider#dispose()
+	 */
+	@Override
+	public void dispose() {
+	}
+
+	/**
+	 * @see org.eclipse.jface.viewers.IContentProvider#inputChanged(org.eclipse.jface.viewers.Viewer, java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public void inputChanged(Viewer arg0, Object arg1, Object arg2) {
+	}
+}
@@ -0,0 +1,45 @@
+package se.pex.editors;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IRegion;
+
+import se.pex.analyze.LineSource;
+
+/**
+ * Reads lines from a document.
+ */
+public class DocumentLineSource implements LineSource {
+	/** The document. */
+	private final IDocument document;
+
+	/**
+	 * Creates a new line source.
+	 * @param document The document to read lines from.
+	 */
+	public DocumentLineSource(IDocument document) {
+		this.document = document;
+	}
+
+	/**
+	 * @see se.pex.analyze.LineSource#getLineCount()
+	 */
+	@Override
+	public int getLineCount() {
+		return document.getNumberOfLines();
+	}
+
+	/**
+	 * @see se.pex.analyze.LineSource#getLine(int)
+	 */
+	@Override
+	public String getLine(int index) {
+		try {
+			IRegion region = document.getLineInformation(index);
+			return document.get(region.getOffset(), region.getLength());
+		}
+		catch (BadLocationException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+}
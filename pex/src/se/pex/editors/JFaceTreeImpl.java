@@ -1,25 +1,43 @@
 package se.pex.editors;
 
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+
 import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.jface.resource.JFaceResources;
 import org.eclipse.jface.viewers.ColumnLabelProvider;
 import org.eclipse.jface.viewers.ColumnViewerToolTipSupport;
+import org.eclipse.jface.viewers.ILazyTreeContentProvider;
+import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.jface.viewers.ITreeContentProvider;
+import org.eclipse.jface.viewers.StructuredSelection;
 import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.TreeViewerColumn;
 import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.osgi.util.NLS;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.ModifyEvent;
+import org.eclipse.swt.events.ModifyListener;
 import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Menu;
 import org.eclipse.swt.widgets.MenuItem;
+import org.eclipse.swt.widgets.Text;
 import org.eclipse.swt.widgets.TreeItem;
 import org.eclipse.swt.widgets.Widget;
 
 import se.pex.Activator;
 import se.pex.analyze.Node;
+import se.pex.analyze.RowEstimates;
 import se.pex.editors.PexEditor.MarkMode;
 import se.pex.preferences.PreferenceConstants;
 
@@ -34,7 +52,7 @@ public class JFaceTreeImpl implements TreeImplementation, ITreeContentProvider {
 
 		@Override
 		protected void internalExpandToLevel(Widget widget, int level) {
-			if (editor.foldNeverExecuted() && widget instanceof TreeItem) {
+			if (editor.foldNeverExecuted() && widget instanceof TreeItem && widget.getData() instanceof Node) {
 				if (!((Node) widget.getData()).isExecuted()) {
 					return;
 				}
@@ -47,19 +65,85 @@ public class JFaceTreeImpl implements TreeImplementation, ITreeContentProvider {
 		 * @param parent The parent in which to place the tree viewer.
 		 */
 		public ExtendedTreeViewer(Composite parent) {
-			super(parent);
+			super(parent, SWT.MULTI | SWT.H_SCROLL | SWT.V_SCROLL | SWT.BORDER | SWT.VIRTUAL);
 		}
 
 	}
 
+	/**
+	 * Content provider used for large plans, tree items are only created for nodes that are scrolled into view.
+	 */
+	class LazyContentProvider implements ILazyTreeContentProvider {
+
+		/**
+		 * @see org.eclipse.jface.viewers.ILazyTreeContentProvider#updateElement(java.lang.Object, int)
+		 */
+		@Override
+		public void updateElement(Object parent, int index) {
+			Node element = parent instanceof HiddenRoot ? ((HiddenRoot) parent).realRoot : ((Node) parent).getChildren().get(index);
+			viewer.replace(parent, index, element);
+			viewer.setChildCount(element, element.getChildren().size());
+		}
+
+		/**
+		 * @see org.eclipse.jface.viewers.ILazyTreeContentProvider#updateChildCount(java.lang.Object, int)
+		 */
+		@Override
+		public void updateChildCount(Object element, int currentChildCount) {
+			int count = element instanceof HiddenRoot ? 1 : ((Node) element).getChildren().size();
+			if (count != currentChildCount) {
+				viewer.setChildCount(element, count);
+			}
+		}
+
+		/**
+		 * @see org.eclipse.jface.viewers.ILazyTreeContentProvider#getParent(java.lang.Object)
+		 */
+		@Override
+		public Object getParent(Object element) {
+			return JFaceTreeImpl.this.getParent(element);
+		}
+
+		/**
+		 * @see org.eclipse.jface.viewers.IContentProvider#dispose()
+		 */
+		@Override
+		public void dispose() {
+		}
+
+		/**
+		 * @see org.eclipse.jface.viewers.IContentProvider#inputChanged(org.eclipse.jface.viewers.Viewer, java.lang.Object, java.lang.Object)
+		 */
+		@Override
+		public void inputChanged(Viewer arg0, Object arg1, Object arg2) {
+		}
+	}
+
 	/** Max line length for information. */
 	private static final int MAX_LINE_LENGTH = 300;
+	/** Plans with more nodes than this use the lazy content provider. */
+	private static final int LAZY_NODE_COUNT = 5000;
+	/** Max number of nodes made visible when expanding the tree automatically. */
+	private static final int EXPAND_NODE_BUDGET = 2000;
+	/** Orders nodes with the largest inclusive time first. */
+	private static final Comparator<Node> HOTTEST_FIRST = new Comparator<Node>() {
+		@Override
+		public int compare(Node n1, Node n2) {
+			return Float.compare(n2.getTimeInclusive(true), n1.getTimeInclusive(true));
+		}
+	};
 	/** The editor instance. */
 	private PexEditor editor;
+	/** The page, the search field above the tree. */
+	private Composite composite;
 	/** The treeviewer. */
 	private TreeViewer viewer;
-	/** Total execution time of the explain tree. */
-	private float totalTime;
+	/** The current input of the viewer. */
+	private HiddenRoot hiddenRoot;
+	/** <code>true</code> if the lazy content provider is used for the current plan. */
+	private boolean lazy;
+	/** Content provider used for large plans. */
+	private final LazyContentProvider lazyContentProvider = new LazyContentProvider();
 
 	/**
 	 * Creates a new tree implementation.
@@ -69,7 +153,23 @@ public class JFaceTreeImpl implements TreeImplementation, ITreeContentProvider {
 	public JFaceTreeImpl(Composite parent, final PexEditor editor) {
 		this.editor = editor;
 		parent.setLayout(new FillLayout());
-		viewer = new ExtendedTreeViewer(parent);
+		composite = new Composite(parent, SWT.NONE);
+		GridLayout layout = new GridLayout(1, false);
+		layout.marginWidth = 0;
+		layout.marginHeight = 0;
+		composite.setLayout(layout);
+		final Text search = new Text(composite, SWT.SEARCH | SWT.ICON_SEARCH | SWT.ICON_CANCEL);
+		search.setMessage(Messages.Pex_Search);
+		search.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+		search.addModifyListener(new ModifyListener() {
+			@Override
+			public void modifyText(ModifyEvent e) {
+				editor.search(search.getText());
+			}
+		});
+		viewer = new ExtendedTreeViewer(composite);
+		viewer.getTree().setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+		viewer.setUseHashlookup(true);
 		viewer.getTree().setHeaderVisible(true);
 		ColumnViewerToolTipSupport.enableFor(viewer);
 
@@ -98,7 +198,7 @@ public class JFaceTreeImpl implements TreeImplementation, ITreeContentProvider {
 
 			@Override
 			public Color getBackground(Object node) {
-				return editor.getColor((Node) node, totalTime, MarkMode.Inclusive);
+				return editor.getColor((Node) node, MarkMode.Inclusive);
 			}
 		});
 		createMenuItem(hideMenu, column);
@@ -119,7 +219,7 @@ public class JFaceTreeImpl implements TreeImplementation, ITreeContentProvider {
 
 			@Override
 			public Color getBackground(Object node) {
-				return editor.getColor((Node) node, totalTime, MarkMode.Exclusive);
+				return editor.getColor((Node) node, MarkMode.Exclusive);
 			}
 		});
 		createMenuItem(hideMenu, column);
@@ -128,6 +228,19 @@ public class JFaceTreeImpl implements TreeImplementation, ITreeContentProvider {
 		column.getColumn().setText(Messages.Pex_Rowcount);
 		column.getColumn().setMoveable(true);
 		column.setLabelProvider(new ColumnLabelProvider() {
+			@Override
+			public String getToolTipText(Object element) {
+				Node node = (Node) element;
+				Node source = node.getEstimateSource();
+				if (source == null) {
+					return null;
+				}
+				if (source == node) {
+					return NLS.bind(Messages.Pex_EstimateSource, RowEstimates.getPropagation(node).size());
+				}
+				return NLS.bind(Messages.Pex_EstimateCarried, source.getMainLine().trim());
+			}
+
 			@Override
 			public String getText(Object node) {
 				return ((Node) node).getRowCountInfo().toString();
@@ -135,7 +248,7 @@ public class JFaceTreeImpl implements TreeImplementation, ITreeContentProvider {
 
 			@Override
 			public Color getBackground(Object node) {
-				return editor.getColor((Node) node, totalTime, MarkMode.Count);
+				return editor.getColor((Node) node, MarkMode.Count);
 			}
 		});
 		createMenuItem(hideMenu, column);
@@ -144,6 +257,16 @@ public class JFaceTreeImpl implements TreeImplementation, ITreeContentProvider {
 		column.getColumn().setText(Messages.Pex_Loops);
 		column.getColumn().setMoveable(true);
 		column.setLabelProvider(new ColumnLabelProvider() {
+			@Override
+			public String getToolTipText(Object element) {
+				Node node = (Node) element;
+				if (node.getParallelism() <= 1) {
+					return null;
+				}
+				return "Run by " + node.getParallelism() + " processes, the busiest takes " + editor.formatFloat(node.getWorkerSkew())
+					+ " times the average";
+			}
+
 			@Override
 			public String getText(Object node) {
 				return "" + ((Node) node).getLoopCount();
@@ -151,7 +274,30 @@ public class JFaceTreeImpl implements TreeImplementation, ITreeContentProvider {
 
 			@Override
 			public Color getBackground(Object node) {
-				return editor.getColor((Node) node, totalTime, null);
+				return editor.getColor((Node) node, null);
+			}
+		});
+		createMenuItem(hideMenu, column);
+		column = new TreeViewerColumn(viewer, SWT.NONE);
+		setColumnWidth(PreferenceConstants.P_SHOW_READS, store, column, 100);
+		column.getColumn().setText(Messages.Pex_Reads);
+		column.getColumn().setMoveable(true);
+		column.setLabelProvider(new ColumnLabelProvider() {
+			@Override
+			public String getToolTipText(Object element) {
+				Node node = (Node) element;
+				return "Read inclusive: " + node.getReadBlocks() + " blocks, read time: " + editor.formatFloat(node.getReadTime());
+			}
+
+			@Override
+			public String getText(Object node) {
+				long blocks = ((Node) node).getReadBlocksExclusive();
+				return blocks > 0 ? "" + blocks : ""; //$NON-NLS-1$ //$NON-NLS-2$
+			}
+
+			@Override
+			public Color getBackground(Object node) {
+				return editor.getColor((Node) node, MarkMode.IO);
 			}
 		});
 		createMenuItem(hideMenu, column);
@@ -177,12 +323,16 @@ public class JFaceTreeImpl implements TreeImplementation, ITreeContentProvider {
 				return text;
 			}
 
+			@Override
+			public Font getFont(Object node) {
+				return editor.isSearchMatch((Node) node) ? JFaceResources.getFontRegistry().getBold(JFaceResources.DEFAULT_FONT) : null;
+			}
+
 			@Override
 			public Color getBackground(Object node) {
-				return editor.getColor((Node) node, totalTime, null);
+				return editor.getColor((Node) node, null);
 			}
 		});
-		viewer.setContentProvider(this);
 	}
 
 	/**
@@ -238,7 +388,7 @@ public class JFaceTreeImpl implements TreeImplementation, ITreeContentProvider {
 	 */
 	@Override
 	public Composite createTree() {
-		return viewer.getTree();
+		return composite;
 	}
 
 	/**
@@ -256,12 +406,58 @@ public class JFaceTreeImpl implements TreeImplementation, ITreeContentProvider {
 	public void clearTree() {
 	}
 
+	/**
+	 * @see se.pex.editors.TreeImplementation#refreshNodes(java.util.List)
+	 */
+	@Override
+	public void refreshNodes(List<Node> nodes) {
+		for (Node node : nodes) {
+			// Nodes that have been replaced again have no parent
+			if (node.getParent() != null) {
+				viewer.refresh(node.getParent());
+				expandHotPaths(node);
+			}
+		}
+	}
+
+	/**
+	 * @see se.pex.editors.TreeImplementation#refreshColors()
+	 */
+	@Override
+	public void refreshColors() {
+		viewer.refresh(true);
+	}
+
 	/**
 	 * @see se.pex.editors.TreeImplementation#expandTree()
 	 */
 	@Override
 	public void expandTree() {
-		viewer.expandAll();
+		if (hiddenRoot != null) {
+			expandHotPaths(hiddenRoot.realRoot);
+		}
+	}
+
+	/**
+	 * Expands the subtree below a node, the subtrees with the largest inclusive times are expanded first
+	 * until {@link #EXPAND_NODE_BUDGET} nodes are visible. Small plans are expanded entirely.
+	 * @param start The node to start expanding from.
+	 */
+	private void expandHotPaths(Node start) {
+		PriorityQueue<Node> queue = new PriorityQueue<Node>(11, HOTTEST_FIRST);
+		queue.add(start);
+		int visible = 1;
+		while (!queue.isEmpty()) {
+			Node node = queue.poll();
+			int children = node.getChildren().size();
+			if (children == 0 || (editor.foldNeverExecuted() && !node.isExecuted()) || visible + children > EXPAND_NODE_BUDGET) {
+				continue;
+			}
+			// Parents are always polled before their children, so the parent item exists when a child is expanded
+			viewer.expandToLevel(node, 1);
+			visible += children;
+			queue.addAll(node.getChildren());
+		}
 	}
 
 	/**
@@ -269,10 +465,15 @@ public class JFaceTreeImpl implements TreeImplementation, ITreeContentProvider {
 	 * @param item The node to expand.
 	 */
 	private void expandNode(TreeItem item) {
+		Deque<TreeItem> stack = new ArrayDeque<TreeItem>();
 		if (item != null) {
-			item.setExpanded(true);
-			for (TreeItem child : item.getItems()) {
-				expandNode(child);
+			stack.push(item);
+		}
+		while (!stack.isEmpty()) {
+			TreeItem current = stack.pop();
+			current.setExpanded(true);
+			for (TreeItem child : current.getItems()) {
+				stack.push(child);
 			}
 		}
 	}
@@ -284,10 +485,44 @@ public class JFaceTreeImpl implements TreeImplementation, ITreeContentProvider {
 	public void expandSelectedNode() {
 		TreeItem[] items = viewer.getTree().getSelection();
 		for (TreeItem item : items) {
-			expandNode(item);
+			if (lazy) {
+				// Items below a lazy node do not exist until they are shown
+				if (item.getData() instanceof Node) {
+					expandHotPaths((Node) item.getData());
+				}
+			}
+			else {
+				expandNode(item);
+			}
 		}
 	}
 
+	/**
+	 * @see se.pex.editors.TreeImplementation#getSelectedNode()
+	 */
+	@Override
+	public Node getSelectedNode() {
+		Object selected = ((IStructuredSelection) viewer.getSelection()).getFirstElement();
+		return selected instanceof Node ? (Node) selected : null;
+	}
+
+	/**
+	 * @see se.pex.editors.TreeImplementation#showNodes(java.util.List)
+	 */
+	@Override
+	public void showNodes(List<Node> nodes) {
+		// The viewer expands the ancestors of every node by following the parents, nothing else is expanded
+		viewer.setSelection(new StructuredSelection(nodes), true);
+	}
+
+	/**
+	 * @see se.pex.editors.TreeImplementation#updateNodes(java.util.List)
+	 */
+	@Override
+	public void updateNodes(List<Node> nodes) {
+		viewer.update(nodes.toArray(), null);
+	}
+
 	/**
 	 * @see org.eclipse.jface.viewers.IBaseLabelProvider#dispose()
 	 */
@@ -323,6 +558,9 @@ public class JFaceTreeImpl implements TreeImplementation, ITreeContentProvider {
 		if (node instanceof HiddenRoot) {
 			return null;
 		}
+		if (((Node) node).getParent() == null) {
+			return hiddenRoot;
+		}
 		return ((Node) node).getParent();
 	}
 
@@ -350,9 +588,13 @@ public class JFaceTreeImpl implements TreeImplementation, ITreeContentProvider {
 	 */
 	@Override
 	public boolean setRootNode(Node node) {
-		totalTime = node.getTotalTime();
-		HiddenRoot root = new HiddenRoot(node);
-		viewer.setInput(root);
+		boolean useLazy = node.getSubtreeNodeCount() > LAZY_NODE_COUNT;
+		if (useLazy != lazy || viewer.getContentProvider() == null) {
+			lazy = useLazy;
+			viewer.setContentProvider(lazy ? lazyContentProvider : this);
+		}
+		hiddenRoot = new HiddenRoot(node);
+		viewer.setInput(hiddenRoot);
 		return false;
 	}
 
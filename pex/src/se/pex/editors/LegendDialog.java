@@ -2,12 +2,15 @@ package se.pex.editors;
 
 import org.eclipse.jface.dialogs.PopupDialog;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Shell;
 
+import se.pex.analyze.Heat;
+
 /**
  * A popup dialog that shows the legend for the pex editor.
  */
@@ -39,34 +42,78 @@ public class LegendDialog extends PopupDialog {
 		Label text = new Label(parent, SWT.NONE);
 		text.setBackground(Display.getCurrent().getSystemColor(SWT.COLOR_INFO_BACKGROUND));
 
-		text.setText("Exlusive is the time that is spent on the node exluding time in child nodes, where as\n" +
+		text.setText("Exclusive is the time that is spent on the node excluding time in child nodes, whereas\n" +
 				"inclusive is the time including time in child nodes. The rowcount is the ratio between actual and\n" +
-				"estimated row counts and an arrow indicating if the planner estimated too much or too little.\n\n" +
+				"estimated row counts and an arrow indicating if the planner estimated too much or too little. The reads\n" +
+				"are the blocks read from disk by the node excluding blocks read by child nodes.\n\n" +
 				"The rows are marked based on criteria, ranging from yellow to red.\n" +
 				"The color is dependent on the mark mode.\n\nExclusive and inclusive:\n");
-		text = new Label(parent, SWT.NONE);
-		text.setBackground(PexEditor.red);
-		text.setText("The time is > 90 % of the total query time.");
-		text = new Label(parent, SWT.NONE);
-		text.setBackground(PexEditor.brown);
-		text.setText("The time is > 50 % of the total query time.");
-		text = new Label(parent, SWT.NONE);
-		text.setBackground(PexEditor.yellow);
-		text.setText("The time is > 10 % of the total query time.");
+		Heat heat = Heat.getDefault();
+		addLevels(parent, describeLevels(heat, Heat.EXCLUSIVE));
 		text = new Label(parent, SWT.NONE);
 		text.setBackground(Display.getCurrent().getSystemColor(SWT.COLOR_INFO_BACKGROUND));
 
 		text.setText("\nRowcount:\n");
+		addLevels(parent, describeLevels(heat, Heat.COUNT));
 		text = new Label(parent, SWT.NONE);
-		text.setBackground(PexEditor.red);
-		text.setText("The rowcount ratio > 1000");
-		text = new Label(parent, SWT.NONE);
-		text.setBackground(PexEditor.brown);
-		text.setText("The rowcount ratio > 100");
-		text = new Label(parent, SWT.NONE);
-		text.setBackground(PexEditor.yellow);
-		text.setText("The rowcount ratio > 10");
+		text.setBackground(Display.getCurrent().getSystemColor(SWT.COLOR_INFO_BACKGROUND));
+
+		text.setText("\nI/O:\n");
+		addLevels(parent, describeLevels(heat, Heat.IO));
 
 		return parent;
 	}
+
+	/**
+	 * Adds a label for each level, colored as the nodes on the level.
+	 * @param parent The parent composite.
+	 * @param descriptions The high, medium and low level.
+	 */
+	private static void addLevels(Composite parent, String[] descriptions) {
+		Color[] colors = { PexEditor.red, PexEditor.brown, PexEditor.yellow };
+		for (int i = 0; i < colors.length; i++) {
+			Label text = new Label(parent, SWT.NONE);
+			text.setBackground(colors[i]);
+			text.setText(descriptions[i]);
+		}
+	}
+
+	/**
+	 * Describes where the nodes of a mark mode are colored.
+	 * @param heat The levels nodes are colored on.
+	 * @param mode The mode, {@link Heat#EXCLUSIVE}, {@link Heat#INCLUSIVE}, {@link Heat#COUNT} or {@link Heat#IO}.
+	 * @return The high, medium and low level.
+	 */
+	static String[] describeLevels(Heat heat, int mode) {
+		float[] levels = heat.getLevels(mode);
+		String[] res = new String[levels.length];
+		for (int i = 0; i < levels.length; i++) {
+			String level = format(levels[levels.length - 1 - i]);
+			if (heat.getScale() == Heat.Scale.Percentile) {
+				String what = mode == Heat.COUNT ? "The rowcount ratio is" : mode == Heat.IO ? "The blocks read are" : "The time is";
+				res[i] = what + " at or above percentile " + level + " of the nodes.";
+			}
+			else if (mode == Heat.COUNT) {
+				res[i] = "The rowcount ratio > " + level;
+			}
+			else if (mode == Heat.IO) {
+				res[i] = "The blocks read are > " + level + " % of the blocks read by the query.";
+			}
+			else if (heat.getScale() == Heat.Scale.Absolute) {
+				res[i] = "The time is > " + level + " ms.";
+			}
+			else {
+				res[i] = "The time is > " + level + " % of the total query time.";
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * @param level A level.
+	 * @return The level without decimals if it is a whole number.
+	 */
+	private static String format(float level) {
+		return level == (long) level ? Long.toString((long) level) : Float.toString(level);
+	}
 }
@@ -4,11 +4,14 @@ import org.eclipse.osgi.util.NLS;
 
 public class Messages extends NLS {
 	private static final String BUNDLE_NAME = "se.pex.editors.messages"; //$NON-NLS-1$
+	public static String AnalyzeJob_Name;
 	public static String Pex_Show;
 	public static String Pex_Exclusive;
 	public static String Pex_Inclusive;
 	public static String Pex_Information;
 	public static String Pex_Rowcount;
+	public static String Pex_EstimateCarried;
+	public static String Pex_EstimateSource;
 	public static String PexEditor_ExpandChildren;
 	public static String PexEditor_Explain;
 	public static String PexEditor_MarkModeNotExist;
@@ -16,6 +19,34 @@ public class Messages extends NLS {
 	public static String PexEditor_ShowLegend;
 	public static String PexEditor_Text;
 	public static String Pex_Loops;
+	public static String Pex_Reads;
+	public static String PexEditor_Plans;
+	public static String PlanListPage_Duration;
+	public static String PlanListPage_Line;
+	public static String PlanListPage_LogLine;
+	public static String PlanLogJob_Index;
+	public static String PexEditor_Report;
+	public static String PexEditor_Diff;
+	public static String DiffJob_Name;
+	public static String DiffPage_After;
+	public static String DiffPage_Before;
+	public static String DiffPage_CompareWith;
+	public static String DiffPage_ExclusiveDelta;
+	public static String DiffPage_InclusiveDelta;
+	public static String DiffPage_QErrorDelta;
+	public static String ReportJob_Name;
+	public static String SearchJob_Name;
+	public static String Pex_Search;
+	public static String ReportPage_Count;
+	public static String ReportPage_NodeType;
+	public static String ReportPage_AverageTime;
+	public static String ReportPage_Nodes;
+	public static String ReportPage_Plan;
+	public static String ReportPage_Plans;
+	public static String ReportPage_Shape;
+	public static String ReportPage_TotalTime;
+	public static String ReportPage_Share;
+	public static String ReportPage_WorstEstimate;
 	static {
 		// initialize resource bundle
 		NLS.initializeMessages(BUNDLE_NAME, Messages.class);
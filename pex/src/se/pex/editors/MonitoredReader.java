@@ -0,0 +1,97 @@
+package se.pex.editors;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * A reader that reports progress and stops reading when the job is canceled. The text format is read a line at a
+ * time, while the JSON and XML parsers read blocks of characters, so every way of reading is checked.
+ */
+class MonitoredReader extends BufferedReader {
+	/** Number of characters in a unit of work, so that files larger than 2GB can be counted. */
+	static final int WORK_UNIT = 1024;
+
+	/** Number of characters read between progress updates. */
+	private static final int PROGRESS_INTERVAL = 64 * 1024;
+
+	/** The progress monitor. */
+	private final IProgressMonitor monitor;
+
+	/** Characters read since the last progress update. */
+	private int unreported;
+
+	/**
+	 * Creates a new reader.
+	 * @param in The text to read.
+	 * @param monitor The progress monitor.
+	 */
+	MonitoredReader(Reader in, IProgressMonitor monitor) {
+		super(in);
+		this.monitor = monitor;
+	}
+
+	/**
+	 * @see java.io.BufferedReader#readLine()
+	 */
+	@Override
+	public String readLine() throws IOException {
+		checkCanceled();
+		String line = super.readLine();
+		if (line != null) {
+			consumed(line.length() + 1);
+		}
+		return line;
+	}
+
+	/**
+	 * @see java.io.BufferedReader#read(char[], int, int)
+	 */
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		checkCanceled();
+		int count = super.read(cbuf, off, len);
+		if (count > 0) {
+			consumed(count);
+		}
+		return count;
+	}
+
+	/**
+	 * @see java.io.BufferedReader#read()
+	 */
+	@Override
+	public int read() throws IOException {
+		// Checking the monitor for every character would cost more than the reading, so only the progress is counted
+		int c = super.read();
+		if (c >= 0) {
+			consumed(1);
+		}
+		return c;
+	}
+
+	/**
+	 * @throws OperationCanceledException If the job has been canceled.
+	 */
+	private void checkCanceled() {
+		if (monitor.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+	}
+
+	/**
+	 * Counts characters read, and reports the progress once enough have been read.
+	 * @param count Number of characters read.
+	 */
+	private void consumed(int count) {
+		unreported += count;
+		if (unreported > PROGRESS_INTERVAL) {
+			checkCanceled();
+			monitor.worked(unreported / WORK_UNIT);
+			unreported %= WORK_UNIT;
+		}
+	}
+}
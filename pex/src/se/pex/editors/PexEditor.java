@@ -1,12 +1,24 @@
 package se.pex.editors;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.Charset;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
 import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.dialogs.ErrorDialog;
 import org.eclipse.jface.dialogs.PopupDialog;
 import org.eclipse.jface.preference.IPreferenceStore;
@@ -36,6 +48,8 @@ import org.eclipse.swt.widgets.MenuItem;
 import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.IEditorPart;
 import org.eclipse.ui.IEditorSite;
+import org.eclipse.ui.IFileEditorInput;
+import org.eclipse.ui.IURIEditorInput;
 import org.eclipse.ui.IWorkbenchPage;
 import org.eclipse.ui.PartInitException;
 import org.eclipse.ui.editors.text.TextEditor;
@@ -47,7 +61,14 @@ import org.eclipse.ui.texteditor.SourceViewerDecorationSupport;
 
 import se.pex.Activator;
 import se.pex.analyze.Engine;
+import se.pex.analyze.Heat;
+import se.pex.analyze.Hotspots;
 import se.pex.analyze.Node;
+import se.pex.analyze.NodeIndex;
+import se.pex.analyze.PlanAggregator;
+import se.pex.analyze.PlanDiff;
+import se.pex.analyze.PlanLog;
+import se.pex.analyze.PlanShapes;
 import se.pex.preferences.PreferenceConstants;
 
 
@@ -59,16 +80,40 @@ public class PexEditor extends MultiPageEditorPart implements IResourceChangeLis
 	/** Used as a holder for data in the menu. */
 	private static final String MODE_NAME = "MODE";
 
+	/** The preferences with the levels where nodes are colored. */
+	private static final List<String> HEAT_PREFERENCES = Arrays.asList(PreferenceConstants.P_HEAT_SCALE,
+		PreferenceConstants.P_HEAT_FIXED_LEVELS, PreferenceConstants.P_HEAT_ABSOLUTE_LEVELS,
+		PreferenceConstants.P_HEAT_ROW_LEVELS, PreferenceConstants.P_HEAT_PERCENTILE_LEVELS);
+
+	/** Files larger than this are opened read only without the text page, and are read through a memory mapping. */
+	private static final long LARGE_FILE_SIZE = 32 * 1024 * 1024;
+
+	/** Milliseconds to wait for more typing before the tree is searched. */
+	private static final long SEARCH_DELAY = 150;
+
 	/** The different mark modes. */
 	enum MarkMode {
 		/** Based on exclusive times. */
-		Exclusive,
+		Exclusive(Heat.EXCLUSIVE),
 		/** Based on inclusive times. */
-		Inclusive,
+		Inclusive(Heat.INCLUSIVE),
 		/** Based on row counts. */
-		Count,
+		Count(Heat.COUNT),
+		/** Based on blocks read. */
+		IO(Heat.IO),
 		/** Colors the respective columns. */
-		Mixed;
+		Mixed(-1);
+
+		/** Position of the mode in the heat classes of a node, <code>-1</code> for mixed. */
+		private final int heat;
+
+		/**
+		 * Creates a mark mode.
+		 * @param heat Position of the mode in the heat classes of a node.
+		 */
+		private MarkMode(int heat) {
+			this.heat = heat;
+		}
 
 		/**
 		 * Returns the mark mode from its name.
@@ -108,13 +153,51 @@ public class PexEditor extends MultiPageEditorPart implements IResourceChangeLis
 	static final Color brown = new Color(Display.getCurrent(), 255, 128, 51);
 	/** A little bad color. */
 	static final Color yellow = new Color(Display.getCurrent(), 255, 255, 102);
+	/** The colors of the heat classes, indexed by class. */
+	private static final Color[] HEAT_COLORS = { null, yellow, brown, red };
 
 	/** An implementation for the tree, made as an interface to easily be able to test different options as the SWT tree widget is pretty bad. */
 	private TreeImplementation treeImpl;
 
-	/** The text editor used in the text page. */
+	/** The text editor used in the text page, <code>null</code> if the file is opened as a large file. */
 	public PexTextEditor editor;
 
+	/** The file if it is too large to be opened as a document, <code>null</code> otherwise. */
+	private File largeFile;
+
+	/** The file if it is a log with plans written by auto_explain, <code>null</code> otherwise. */
+	private File logFile;
+
+	/** The plans of the log file, <code>null</code> until the log has been indexed. */
+	private PlanLog planLog;
+
+	/** Index of the plan of the log that is shown, <code>-1</code> if none. */
+	private int logPlan = -1;
+
+	/** The page listing the plans of the log file. */
+	private PlanListPage planListPage;
+
+	/** The page summing up the plans of the log file. */
+	private ReportPage reportPage;
+
+	/** The job summing up the plans of the log file, <code>null</code> if the report has not been asked for. */
+	private ReportJob reportJob;
+
+	/** The page comparing the plan with the plan of another file. */
+	private DiffPage diffPage;
+
+	/** The file the plan is compared with, <code>null</code> until a file has been chosen. */
+	private File compareFile;
+
+	/** The job comparing the plans, <code>null</code> if none is running. */
+	private DiffJob diffJob;
+
+	/** Increased every time the plans are compared, results from older comparisons are thrown away. */
+	private int diffGeneration;
+
+	/** <code>true</code> if the plan has changed since it was compared. */
+	private boolean diffStale;
+
 	/** Mode used for selecting colors. */
 	private MarkMode markMode = MarkMode.Exclusive;
 
@@ -127,6 +210,45 @@ public class PexEditor extends MultiPageEditorPart implements IResourceChangeLis
 	/** Dirty flag for the explanation page. */
 	private boolean documentChanged = true;
 
+	/** Increased every time the explanation is recalculated, results from older analyzes are thrown away. */
+	private int explanationGeneration;
+
+	/** The job analyzing the text or indexing the log, <code>null</code> if no analyze has been started. */
+	private Job analyzeJob;
+
+	/** The root of the tree shown on the explanation page, <code>null</code> until the text has been analyzed. */
+	private Node rootNode;
+
+	/** The hotspots of the tree, <code>null</code> if they have not been found since the tree was changed. */
+	private Hotspots hotspots;
+
+	/** The search index of the tree, <code>null</code> if it has not been built since the tree was changed. */
+	private NodeIndex searchIndex;
+
+	/** The text searched for in the tree, empty if nothing is searched for. */
+	private String searchQuery = ""; //$NON-NLS-1$
+
+	/** The job searching the tree, <code>null</code> if no search is running. */
+	private SearchJob searchJob;
+
+	/** Increased every time the search is started again, matches from older searches are thrown away. */
+	private int searchGeneration;
+
+	/** The nodes that match the search found so far. */
+	private final Set<Node> searchMatches = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+
+	/** Nodes that have replaced subtrees since the explanation page was updated. */
+	private List<Node> replacedNodes = new ArrayList<Node>();
+
+	/** First line of the text that is about to be changed, -1 if unknown. */
+	private int changeFirstLine = -1;
+
+	/** Last line of the text that is about to be changed. */
+	private int changeLastLine;
+
+	/** Number of line breaks in the text that is about to be changed. */
+	private int changeRemovedLines;
+
 	/** Determines if never executed paths should be folded. */
 	private boolean foldNe;
 
@@ -149,9 +271,44 @@ public class PexEditor extends MultiPageEditorPart implements IResourceChangeLis
 		IPreferenceStore store = Activator.getDefault().getPreferenceStore();
 		foldNe = store.getBoolean(PreferenceConstants.P_FOLDNEVEREXECUTED);
 		markMode = MarkMode.getMarkMode(store.getString(PreferenceConstants.P_MARKMODE));
+		Heat.setDefault(readHeat(store));
 		store.addPropertyChangeListener(this);
 	}
 
+	/**
+	 * Reads the levels where nodes are colored from the preferences.
+	 * @param store The preference store.
+	 * @return The levels.
+	 */
+	private static Heat readHeat(IPreferenceStore store) {
+		Heat.Scale scale = Heat.Scale.getScale(store.getString(PreferenceConstants.P_HEAT_SCALE));
+		// Blocks read are always colored in percent of the blocks read by the plan, except for percentiles
+		float[] percents = readLevels(store, PreferenceConstants.P_HEAT_FIXED_LEVELS);
+		switch (scale) {
+			case Fixed:
+				return new Heat(scale, percents, readLevels(store, PreferenceConstants.P_HEAT_ROW_LEVELS), percents);
+			case Absolute:
+				return new Heat(scale, readLevels(store, PreferenceConstants.P_HEAT_ABSOLUTE_LEVELS), readLevels(store, PreferenceConstants.P_HEAT_ROW_LEVELS), percents);
+			default:
+				float[] percentiles = readLevels(store, PreferenceConstants.P_HEAT_PERCENTILE_LEVELS);
+				return new Heat(scale, percentiles, percentiles, percentiles);
+		}
+	}
+
+	/**
+	 * @param store The preference store.
+	 * @param name The name of a levels preference.
+	 * @return The levels, the default levels if the preference can not be read.
+	 */
+	private static float[] readLevels(IPreferenceStore store, String name) {
+		try {
+			return Heat.parseLevels(store.getString(name));
+		}
+		catch (IllegalArgumentException e) {
+			return Heat.parseLevels(store.getDefaultString(name));
+		}
+	}
+
 	/**
 	 * @return <code>true</code> if never executed paths should be folded.
 	 */
@@ -317,15 +474,113 @@ public class PexEditor extends MultiPageEditorPart implements IResourceChangeLis
 	 */
 	private void setMarkMode(MarkMode type) {
 		this.markMode = type;
-		updateExplanation();
+		if (rootNode != null) {
+			treeImpl.refreshColors();
+		}
 	}
 
 	/**
 	 * Creates the pages of the multi-page editor.
 	 */
 	protected void createPages() {
-		createRawTextPage();
+		File file = getLocalFile(getEditorInput());
+		if (file != null && isLog(file)) {
+			logFile = file;
+			createPlanListPage();
+			createExplainPage();
+			createReportPage();
+			createDiffPage();
+			// Nothing is analyzed until a plan is opened
+			documentChanged = false;
+			analyzeJob = new PlanLogJob(this, logFile, getCharset(), explanationGeneration);
+			analyzeJob.schedule();
+			return;
+		}
+		if (file != null && file.length() > LARGE_FILE_SIZE) {
+			largeFile = file;
+		}
+		else {
+			createRawTextPage();
+		}
 		createExplainPage();
+		createDiffPage();
+	}
+
+	/**
+	 * Creates the page listing the plans of a log file.
+	 */
+	void createPlanListPage() {
+		planListPage = new PlanListPage(getContainer(), this);
+		setPageText(addPage(planListPage.getControl()), Messages.PexEditor_Plans);
+	}
+
+	/**
+	 * Creates the page summing up the plans of a log file.
+	 */
+	void createReportPage() {
+		reportPage = new ReportPage(getContainer(), this);
+		setPageText(addPage(reportPage.getControl()), Messages.PexEditor_Report);
+	}
+
+	/**
+	 * Creates the page comparing the plan with the plan of another file.
+	 */
+	void createDiffPage() {
+		diffPage = new DiffPage(getContainer(), this);
+		setPageText(addPage(diffPage.getControl()), Messages.PexEditor_Diff);
+	}
+
+	/**
+	 * @param input The editor input.
+	 * @return The file of the input, <code>null</code> if the input is not a local file.
+	 */
+	private static File getLocalFile(IEditorInput input) {
+		if (!(input instanceof IURIEditorInput)) {
+			return null;
+		}
+		URI uri = ((IURIEditorInput) input).getURI();
+		if (uri == null || !"file".equals(uri.getScheme())) { //$NON-NLS-1$
+			return null;
+		}
+		return new File(uri);
+	}
+
+	/**
+	 * @param file A local file.
+	 * @return <code>true</code> if the file is a log with plans written by auto_explain.
+	 */
+	private static boolean isLog(File file) {
+		try {
+			return PlanLog.isLog(file);
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return The encoding of the file, the workspace setting for workspace files.
+	 */
+	private Charset getCharset() {
+		if (getEditorInput() instanceof IFileEditorInput) {
+			try {
+				return Charset.forName(((IFileEditorInput) getEditorInput()).getFile().getCharset());
+			}
+			catch (CoreException e) {
+				Activator.getDefault().getLog().log(e.getStatus());
+			}
+			catch (IllegalArgumentException e) {
+				// Not supported by the JVM, fall back to the default
+			}
+		}
+		return Charset.defaultCharset();
+	}
+
+	/**
+	 * @return Index of the explanation page, the only page for large files.
+	 */
+	private int getExplainPageIndex() {
+		return largeFile == null ? 1 : 0;
 	}
 
 	/**
@@ -334,6 +589,16 @@ public class PexEditor extends MultiPageEditorPart implements IResourceChangeLis
 	 * Subclasses may extend.
 	 */
 	public void dispose() {
+		cancelAnalyze();
+		if (reportJob != null) {
+			reportJob.cancel();
+		}
+		if (diffJob != null) {
+			diffJob.cancel();
+		}
+		if (searchJob != null) {
+			searchJob.cancel();
+		}
 		Activator.getDefault().getPreferenceStore().removePropertyChangeListener(this);
 		ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
 		super.dispose();
@@ -343,7 +608,9 @@ public class PexEditor extends MultiPageEditorPart implements IResourceChangeLis
 	 * Saves the multi-page editor's document.
 	 */
 	public void doSave(IProgressMonitor monitor) {
-		getEditor(0).doSave(monitor);
+		if (editor != null) {
+			getEditor(0).doSave(monitor);
+		}
 	}
 
 	/**
@@ -364,6 +631,9 @@ public class PexEditor extends MultiPageEditorPart implements IResourceChangeLis
 	 * @param marker The marker to go to.
 	 */
 	public void gotoMarker(IMarker marker) {
+		if (editor == null) {
+			return;
+		}
 		setActivePage(0);
 		IDE.gotoMarker(getEditor(0), marker);
 	}
@@ -384,76 +654,21 @@ public class PexEditor extends MultiPageEditorPart implements IResourceChangeLis
 	 * Method declared on IEditorPart.
 	 */
 	public boolean isSaveAsAllowed() {
-		return true;
+		return editor != null;
 	}
 
 	/**
-	 * Return the color to be used on a certain row.
+	 * Return the color to be used on a certain row, from the heat classes calculated when the plan was analyzed.
 	 * @param n The node to check.
-	 * @param totalTime The totaltime used for the query.
 	 * @param column The column to get color for.
 	 * @return Color to use or <code>null</code>
 	 */
-	public Color getColor(Node n, float totalTime, MarkMode column) {
-		return getColor(markMode, n, totalTime, column);
-	}
-
-	/**
-	 * Return the color to be used on a certain row.
-	 * @param mode The markmode to use.
-	 * @param n The node to check.
-	 * @param totalTime The totaltime used for the query.
-	 * @param column The column to get color for.
-	 * @return Color to use or <code>null</code>
-	 */
-	private Color getColor(MarkMode mode, Node n, float totalTime, MarkMode column) {
-		switch (mode) {
-			case Mixed:
-				if (column == MarkMode.Inclusive) {
-					return getColor(MarkMode.Inclusive, n, totalTime, null);
-				}
-				else if (column == MarkMode.Exclusive) {
-					return getColor(MarkMode.Exclusive, n, totalTime, null);
-				}
-				else if (column == MarkMode.Count) {
-					return getColor(MarkMode.Count, n, totalTime, null);
-				}
-				break;
-			case Exclusive:
-				if (n.getTimeExclusive() > 0.9 * totalTime) {
-					return red;
-				}
-				else if (n.getTimeExclusive() > 0.5 * totalTime) {
-					return brown;
-				}
-				else if (n.getTimeExclusive() > 0.1 * totalTime) {
-					return yellow;
-				}
-				break;
-			case Inclusive:
-				if (n.getTimeInclusive(true) > 0.9 * totalTime) {
-					return red;
-				}
-				else if (n.getTimeInclusive(true) > 0.5 * totalTime) {
-					return brown;
-				}
-				else if (n.getTimeInclusive(true) > 0.1 * totalTime) {
-					return yellow;
-				}
-				break;
-			case Count:
-				if (n.getRowCountInfo().count > 1000) {
-					return red;
-				}
-				else if (n.getRowCountInfo().count > 100) {
-					return brown;
-				}
-				else if (n.getRowCountInfo().count > 10) {
-					return yellow;
-				}
-				break;
+	public Color getColor(Node n, MarkMode column) {
+		MarkMode mode = markMode == MarkMode.Mixed ? column : markMode;
+		if (mode == null || mode == MarkMode.Mixed) {
+			return null;
 		}
-		return null;
+		return HEAT_COLORS[n.getHeat(mode.heat)];
 	}
 
 	/**
@@ -478,14 +693,273 @@ public class PexEditor extends MultiPageEditorPart implements IResourceChangeLis
 	}
 
 	/**
-	 * Updates the explanation tree.
+	 * Updates the explanation tree. The text is analyzed in a background job and the tree is updated when it is done.
 	 */
 	private void updateExplanation() {
+		if (logFile != null) {
+			if (logPlan >= 0) {
+				loadLogPlan(logPlan);
+			}
+			return;
+		}
+		cancelAnalyze();
+		if (largeFile != null) {
+			analyzeJob = new AnalyzeJob(this, largeFile, getCharset(), explanationGeneration);
+		}
+		else {
+			String editorText = editor.getDocumentProvider().getDocument(editor.getEditorInput()).get();
+			analyzeJob = new AnalyzeJob(this, editorText, explanationGeneration);
+		}
+		analyzeJob.schedule();
+	}
+
+	/**
+	 * Shows a plan of the log file on the explanation page.
+	 * @param index Index of the plan.
+	 */
+	void showLogPlan(int index) {
+		loadLogPlan(index);
+		setActivePage(getExplainPageIndex());
+	}
+
+	/**
+	 * Analyzes a plan of the log file in the background, plans that have been analyzed recently are cached.
+	 * @param index Index of the plan.
+	 */
+	private void loadLogPlan(int index) {
+		cancelAnalyze();
+		logPlan = index;
+		analyzeJob = new PlanLogJob(this, planLog, index, explanationGeneration);
+		analyzeJob.schedule();
+	}
+
+	/**
+	 * Shows the plans of an indexed log, called on the UI thread when the log has been indexed.
+	 * @param log The indexed log.
+	 * @param generation The generation of the job, if it is not the latest the log is ignored.
+	 */
+	void setPlanLog(PlanLog log, int generation) {
+		if (generation != explanationGeneration || getContainer() == null || getContainer().isDisposed()) {
+			return;
+		}
+		analyzeJob = null;
+		planLog = log;
+		planListPage.setLog(log);
+		if (getActivePage() >= 0 && getControl(getActivePage()) == reportPage.getControl()) {
+			startReport();
+		}
+	}
+
+	/**
+	 * Sums up the plans of the indexed log in the background, unless that has already been started.
+	 */
+	private void startReport() {
+		if (reportJob == null && planLog != null) {
+			reportJob = new ReportJob(this, planLog);
+			reportJob.schedule();
+		}
+	}
+
+	/**
+	 * Shows the summed up plans of the log file, called on the UI thread when the report job is done.
+	 * @param aggregator The summed up plans.
+	 * @param shapes The plans grouped by shape.
+	 */
+	void setReport(PlanAggregator aggregator, PlanShapes shapes) {
+		if (getContainer() == null || getContainer().isDisposed()) {
+			return;
+		}
+		reportPage.setReport(aggregator, shapes);
+	}
+
+	/**
+	 * Cancels any running analyze, a result that is delivered later is ignored.
+	 */
+	private void cancelAnalyze() {
+		explanationGeneration++;
+		if (analyzeJob != null) {
+			analyzeJob.cancel();
+			analyzeJob = null;
+		}
+	}
+
+	/**
+	 * Shows an analyzed tree, called on the UI thread when an analyze job is done.
+	 * @param root The root node of the analyzed tree.
+	 * @param hotspots The hotspots of the tree.
+	 * @param index The search index of the tree.
+	 * @param generation The generation of the analyze, if it is not the latest the tree is ignored.
+	 */
+	void setExplanation(Node root, Hotspots hotspots, NodeIndex index, int generation) {
+		if (generation != explanationGeneration || getContainer() == null || getContainer().isDisposed()) {
+			return;
+		}
+		analyzeJob = null;
+		rootNode = root;
+		this.hotspots = hotspots;
+		searchIndex = index;
+		replacedNodes.clear();
 		treeImpl.clearTree();
-		String editorText = editor.getDocumentProvider().getDocument(editor.getEditorInput()).get();
-		Node n = Engine.analyze(editorText);
-		treeImpl.setRootNode(n);
+		treeImpl.setRootNode(root);
 		treeImpl.expandTree();
+		search(searchQuery);
+		diffStale = true;
+		if (getActivePage() >= 0 && getControl(getActivePage()) == diffPage.getControl()) {
+			startDiff();
+		}
+	}
+
+	/**
+	 * Selects the next or previous hotspot of the plan, the hottest node if no node is selected.
+	 * @param forward <code>true</code> to go to a colder node, <code>false</code> to go to a hotter node.
+	 */
+	public void gotoHotspot(boolean forward) {
+		Hotspots spots = showHotspots();
+		if (spots == null) {
+			return;
+		}
+		Node current = treeImpl.getSelectedNode();
+		Node node = forward ? spots.next(current) : spots.previous(current);
+		if (node == null) {
+			getContainer().getDisplay().beep();
+			return;
+		}
+		treeImpl.showNodes(Collections.singletonList(node));
+	}
+
+	/**
+	 * Selects the hottest path from the root to a leaf.
+	 */
+	public void showCriticalPath() {
+		Hotspots spots = showHotspots();
+		if (spots != null) {
+			treeImpl.showNodes(spots.getCriticalPath());
+		}
+	}
+
+	/**
+	 * Shows the explanation page and finds the hotspots again if the tree has been edited since they were found.
+	 * @return The hotspots, <code>null</code> if the text is being analyzed.
+	 */
+	private Hotspots showHotspots() {
+		if (getActivePage() != getExplainPageIndex()) {
+			setActivePage(getExplainPageIndex());
+		}
+		if (rootNode == null || analyzeJob != null) {
+			// The tree shown is about to be replaced
+			return null;
+		}
+		if (hotspots == null) {
+			hotspots = Hotspots.calculate(rootNode);
+		}
+		return hotspots;
+	}
+
+	/**
+	 * Searches the tree in the background, the matches found so far are highlighted and the first match is
+	 * selected. Called for every change of the query, a search that is running is canceled.
+	 * @param query The text to search for, empty to stop searching.
+	 */
+	void search(String query) {
+		searchQuery = query;
+		searchGeneration++;
+		if (searchJob != null) {
+			searchJob.cancel();
+			searchJob = null;
+		}
+		if (!searchMatches.isEmpty()) {
+			List<Node> previous = new ArrayList<Node>(searchMatches);
+			searchMatches.clear();
+			treeImpl.updateNodes(previous);
+		}
+		if (query.length() == 0 || rootNode == null) {
+			return;
+		}
+		searchJob = new SearchJob(this, rootNode, searchIndex, query, searchGeneration);
+		// Waits for more typing before searching
+		searchJob.schedule(SEARCH_DELAY);
+	}
+
+	/**
+	 * Highlights matches, called on the UI thread when a search job has found more matches.
+	 * @param index The index searched, kept for the next search.
+	 * @param matches The matches.
+	 * @param done <code>true</code> if these are the last matches.
+	 * @param generation The generation of the search, if it is not the latest the matches are ignored.
+	 */
+	void addSearchMatches(NodeIndex index, List<Node> matches, boolean done, int generation) {
+		if (generation != searchGeneration || getContainer() == null || getContainer().isDisposed()) {
+			return;
+		}
+		searchIndex = index;
+		if (done) {
+			searchJob = null;
+		}
+		boolean first = searchMatches.isEmpty();
+		searchMatches.addAll(matches);
+		treeImpl.updateNodes(matches);
+		if (first && !matches.isEmpty()) {
+			treeImpl.showNodes(Collections.singletonList(matches.get(0)));
+		}
+	}
+
+	/**
+	 * @param node A node.
+	 * @return <code>true</code> if the node matches the search.
+	 */
+	public boolean isSearchMatch(Node node) {
+		return searchMatches.contains(node);
+	}
+
+	/**
+	 * Compares the plan with the plan of another file.
+	 * @param file The file to compare with.
+	 */
+	void compareWith(File file) {
+		compareFile = file;
+		diffStale = true;
+		startDiff();
+	}
+
+	/**
+	 * Compares the plans in the background. A plan analyzed from the text of the editor is analyzed again by the
+	 * job, as the tree is changed when the text is edited.
+	 */
+	private void startDiff() {
+		if (compareFile == null) {
+			return;
+		}
+		DiffJob job;
+		if (editor != null) {
+			String editorText = editor.getDocumentProvider().getDocument(editor.getEditorInput()).get();
+			job = new DiffJob(this, editorText, compareFile, getCharset(), ++diffGeneration);
+		}
+		else if (rootNode != null) {
+			job = new DiffJob(this, rootNode, compareFile, getCharset(), ++diffGeneration);
+		}
+		else {
+			// Compared when the plan has been analyzed
+			return;
+		}
+		if (diffJob != null) {
+			diffJob.cancel();
+		}
+		diffStale = false;
+		diffJob = job;
+		diffJob.schedule();
+	}
+
+	/**
+	 * Shows the diff, called on the UI thread when the plans have been compared.
+	 * @param diff The diff.
+	 * @param generation The generation of the job, if it is not the latest the diff is ignored.
+	 */
+	void setDiff(PlanDiff diff, int generation) {
+		if (generation != diffGeneration || getContainer() == null || getContainer().isDisposed()) {
+			return;
+		}
+		diffJob = null;
+		diffPage.setDiff(diff);
 	}
 
 	/**
@@ -502,6 +976,7 @@ public class PexEditor extends MultiPageEditorPart implements IResourceChangeLis
 	    MarkMode.Exclusive.createMenuItem(childMenu, this);
 	    MarkMode.Inclusive.createMenuItem(childMenu, this);
 	    MarkMode.Count.createMenuItem(childMenu, this);
+	    MarkMode.IO.createMenuItem(childMenu, this);
 	    MarkMode.Mixed.createMenuItem(childMenu, this);
 	    MenuItem mitem = new MenuItem (contextMenu, SWT.PUSH);
 	    mitem.setText(Messages.PexEditor_ExpandChildren);
@@ -529,10 +1004,20 @@ public class PexEditor extends MultiPageEditorPart implements IResourceChangeLis
 	 */
 	protected void pageChange(int newPageIndex) {
 		super.pageChange(newPageIndex);
-		if (newPageIndex == 1 && documentChanged) {
+		if (newPageIndex == getExplainPageIndex() && documentChanged) {
 			updateExplanation();
 			documentChanged = false;
 		}
+		else if (newPageIndex == getExplainPageIndex() && !replacedNodes.isEmpty()) {
+			treeImpl.refreshNodes(replacedNodes);
+			replacedNodes.clear();
+		}
+		else if (reportPage != null && getControl(newPageIndex) == reportPage.getControl()) {
+			startReport();
+		}
+		else if (getControl(newPageIndex) == diffPage.getControl() && diffStale) {
+			startDiff();
+		}
 	}
 
 	/**
@@ -544,8 +1029,8 @@ public class PexEditor extends MultiPageEditorPart implements IResourceChangeLis
 				public void run(){
 					IWorkbenchPage[] pages = getSite().getWorkbenchWindow().getPages();
 					for (int i = 0; i<pages.length; i++){
-						if(((FileEditorInput)editor.getEditorInput()).getFile().getProject().equals(event.getResource())){
-							IEditorPart editorPart = pages[i].findEditor(editor.getEditorInput());
+						if(((FileEditorInput)getEditorInput()).getFile().getProject().equals(event.getResource())){
+							IEditorPart editorPart = pages[i].findEditor(getEditorInput());
 							pages[i].closeEditor(editorPart,true);
 						}
 					}
@@ -558,15 +1043,40 @@ public class PexEditor extends MultiPageEditorPart implements IResourceChangeLis
 	 * @see org.eclipse.jface.text.IDocumentListener#documentAboutToBeChanged(org.eclipse.jface.text.DocumentEvent)
 	 */
 	@Override
-	public void documentAboutToBeChanged(DocumentEvent arg0) {
+	public void documentAboutToBeChanged(DocumentEvent event) {
+		IDocument document = event.getDocument();
+		try {
+			changeFirstLine = document.getLineOfOffset(event.getOffset());
+			changeLastLine = document.getLineOfOffset(event.getOffset() + event.getLength());
+			changeRemovedLines = document.computeNumberOfLines(document.get(event.getOffset(), event.getLength()));
+		}
+		catch (BadLocationException e) {
+			changeFirstLine = -1;
+		}
 	}
 
 	/**
+	 * Analyzes the changed lines again if possible, otherwise the whole text is analyzed when the explanation page is shown.
 	 * @see org.eclipse.jface.text.IDocumentListener#documentChanged(org.eclipse.jface.text.DocumentEvent)
 	 */
 	@Override
-	public void documentChanged(DocumentEvent arg0) {
+	public void documentChanged(DocumentEvent event) {
+		diffStale = true;
+		if (!documentChanged && rootNode != null && analyzeJob == null && changeFirstLine >= 0) {
+			String text = event.getText() != null ? event.getText() : ""; //$NON-NLS-1$
+			int lineDelta = event.getDocument().computeNumberOfLines(text) - changeRemovedLines;
+			Node replacement = Engine.reanalyze(rootNode, changeFirstLine, changeLastLine, lineDelta, new DocumentLineSource(event.getDocument()));
+			if (replacement != null) {
+				replacedNodes.add(replacement);
+				hotspots = null;
+				searchIndex = null;
+				// The running search may hold the nodes of the replaced subtree, so it is started again on the new tree
+				search(searchQuery);
+				return;
+			}
+		}
 		documentChanged = true;
+		cancelAnalyze();
 	}
 
 	/**
@@ -577,5 +1087,13 @@ public class PexEditor extends MultiPageEditorPart implements IResourceChangeLis
 		if (event.getProperty().equals(PreferenceConstants.P_FOLDNEVEREXECUTED)) {
 			instance.foldNe = (Boolean) event.getNewValue();
 		}
+		else if (HEAT_PREFERENCES.contains(event.getProperty())) {
+			Heat heat = readHeat(Activator.getDefault().getPreferenceStore());
+			Heat.setDefault(heat);
+			if (rootNode != null) {
+				heat.apply(rootNode);
+				treeImpl.refreshColors();
+			}
+		}
 	}
 }
@@ -0,0 +1,120 @@
+package se.pex.editors;
+
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.DoubleClickEvent;
+import org.eclipse.jface.viewers.IDoubleClickListener;
+import org.eclipse.jface.viewers.ILazyContentProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TableViewerColumn;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+
+import se.pex.analyze.PlanLog;
+
+/**
+ * Lists the plans of a log file, opening a plan shows it on the explanation page.
+ * Only the rows scrolled into view are created, so logs with many plans open quickly.
+ */
+public class PlanListPage implements ILazyContentProvider {
+	/** The editor instance. */
+	private final PexEditor editor;
+
+	/** The table viewer, the elements are the plan entries. */
+	private final TableViewer viewer;
+
+	/** The log shown, <code>null</code> until the log has been indexed. */
+	private PlanLog log;
+
+	/**
+	 * Creates a new page.
+	 * @param parent The composite where to put the table.
+	 * @param editor The editor instance.
+	 */
+	public PlanListPage(Composite parent, final PexEditor editor) {
+		this.editor = editor;
+		viewer = new TableViewer(parent, SWT.SINGLE | SWT.FULL_SELECTION | SWT.H_SCROLL | SWT.V_SCROLL | SWT.BORDER | SWT.VIRTUAL);
+		viewer.setUseHashlookup(true);
+		viewer.getTable().setHeaderVisible(true);
+		viewer.getTable().setLinesVisible(true);
+		viewer.setContentProvider(this);
+
+		TableViewerColumn column = new TableViewerColumn(viewer, SWT.RIGHT);
+		column.getColumn().setText(Messages.PlanListPage_Line);
+		column.getColumn().setWidth(100);
+		column.setLabelProvider(new ColumnLabelProvider() {
+			@Override
+			public String getText(Object entry) {
+				return "" + (((PlanLog.Entry) entry).getLineNumber() + 1); //$NON-NLS-1$
+			}
+		});
+		column = new TableViewerColumn(viewer, SWT.RIGHT);
+		column.getColumn().setText(Messages.PlanListPage_Duration);
+		column.getColumn().setWidth(100);
+		column.setLabelProvider(new ColumnLabelProvider() {
+			@Override
+			public String getText(Object entry) {
+				return editor.formatFloat(((PlanLog.Entry) entry).getDuration());
+			}
+		});
+		column = new TableViewerColumn(viewer, SWT.NONE);
+		column.getColumn().setText(Messages.PlanListPage_LogLine);
+		column.getColumn().setWidth(1000);
+		column.setLabelProvider(new ColumnLabelProvider() {
+			@Override
+			public String getText(Object entry) {
+				return ((PlanLog.Entry) entry).getHeader();
+			}
+		});
+
+		viewer.addDoubleClickListener(new IDoubleClickListener() {
+			@Override
+			public void doubleClick(DoubleClickEvent event) {
+				int index = viewer.getTable().getSelectionIndex();
+				if (index >= 0) {
+					editor.showLogPlan(index);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return The control of the page.
+	 */
+	public Control getControl() {
+		return viewer.getControl();
+	}
+
+	/**
+	 * Shows the plans of a log.
+	 * @param log The indexed log.
+	 */
+	public void setLog(PlanLog log) {
+		this.log = log;
+		viewer.setInput(log);
+		viewer.setItemCount(log.size());
+	}
+
+	/**
+	 * @see org.eclipse.jface.viewers.ILazyContentProvider#updateElement(int)
+	 */
+	@Override
+	public void updateElement(int index) {
+		viewer.replace(log.getEntry(index), index);
+	}
+
+	/**
+	 * @see org.eclipse.jface.viewers.IContentProvider#dispose()
+	 */
+	@Override
+	public void dispose() {
+	}
+
+	/**
+	 * @see org.eclipse.jface.viewers.IContentProvider#inputChanged(org.eclipse.jface.viewers.Viewer, java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public void inputChanged(Viewer arg0, Object arg1, Object arg2) {
+	}
+}
@@ -0,0 +1,180 @@
+package se.pex.editors;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.widgets.Display;
+
+import se.pex.Activator;
+import se.pex.analyze.Hotspots;
+import se.pex.analyze.Node;
+import se.pex.analyze.NodeIndex;
+import se.pex.analyze.PlanLog;
+
+/**
+ * Indexes the plans of a log file, or analyzes one plan of an indexed log, in the background and hands the
+ * result to the editor on the UI thread.
+ */
+public class PlanLogJob extends Job {
+	/** Number of bytes in a unit of work, so that files larger than 2GB can be counted. */
+	private static final int WORK_UNIT = 1024;
+
+	/**
+	 * A stream that reports progress and stops reading when the job is canceled.
+	 */
+	private static class MonitoredStream extends FilterInputStream {
+		/** The progress monitor. */
+		private final IProgressMonitor monitor;
+
+		/** Bytes read since the last progress update. */
+		private int unreported;
+
+		/**
+		 * Creates a new stream.
+		 * @param in The stream to read.
+		 * @param monitor The progress monitor.
+		 */
+		public MonitoredStream(InputStream in, IProgressMonitor monitor) {
+			super(in);
+			this.monitor = monitor;
+		}
+
+		/**
+		 * @see java.io.FilterInputStream#read(byte[], int, int)
+		 */
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+			int count = super.read(b, off, len);
+			if (count > 0) {
+				unreported += count;
+				monitor.worked(unreported / WORK_UNIT);
+				unreported %= WORK_UNIT;
+			}
+			return count;
+		}
+	}
+
+	/** The editor to update. */
+	private final PexEditor editor;
+
+	/** The log file, <code>null</code> if a plan is analyzed. */
+	private final File file;
+
+	/** The encoding of the file. */
+	private final Charset charset;
+
+	/** The indexed log, <code>null</code> if the file is indexed. */
+	private final PlanLog log;
+
+	/** Index of the plan to analyze. */
+	private final int plan;
+
+	/** The editor generation the job belongs to, used to throw away stale results. */
+	private final int generation;
+
+	/**
+	 * Creates a job that indexes a log file.
+	 * @param editor The editor to update.
+	 * @param file The log file.
+	 * @param charset The encoding of the file.
+	 * @param generation The editor generation the job belongs to.
+	 */
+	public PlanLogJob(PexEditor editor, File file, Charset charset, int generation) {
+		super(Messages.PlanLogJob_Index);
+		this.editor = editor;
+		this.file = file;
+		this.charset = charset;
+		this.log = null;
+		this.plan = -1;
+		this.generation = generation;
+		setPriority(LONG);
+	}
+
+	/**
+	 * Creates a job that analyzes a plan of an indexed log.
+	 * @param editor The editor to update.
+	 * @param log The indexed log.
+	 * @param plan Index of the plan to analyze.
+	 * @param generation The editor generation the job belongs to.
+	 */
+	public PlanLogJob(PexEditor editor, PlanLog log, int plan, int generation) {
+		super(Messages.AnalyzeJob_Name);
+		this.editor = editor;
+		this.file = null;
+		this.charset = null;
+		this.log = log;
+		this.plan = plan;
+		this.generation = generation;
+		setPriority(SHORT);
+	}
+
+	/**
+	 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		try {
+			if (log == null) {
+				monitor.beginTask(Messages.PlanLogJob_Index, (int) Math.min(file.length() / WORK_UNIT, Integer.MAX_VALUE));
+				final PlanLog index = index(monitor);
+				Display.getDefault().asyncExec(new Runnable() {
+					public void run() {
+						editor.setPlanLog(index, generation);
+					}
+				});
+			}
+			else {
+				monitor.beginTask(Messages.AnalyzeJob_Name, IProgressMonitor.UNKNOWN);
+				final Node root = log.getPlan(plan);
+				if (monitor.isCanceled()) {
+					return Status.CANCEL_STATUS;
+				}
+				final Hotspots hotspots = Hotspots.calculate(root);
+				final NodeIndex index = NodeIndex.build(root);
+				Display.getDefault().asyncExec(new Runnable() {
+					public void run() {
+						editor.setExplanation(root, hotspots, index, generation);
+					}
+				});
+			}
+			return Status.OK_STATUS;
+		}
+		catch (OperationCanceledException e) {
+			return Status.CANCEL_STATUS;
+		}
+		catch (IOException e) {
+			return new Status(IStatus.ERROR, Activator.PLUGIN_ID, e.getMessage(), e);
+		}
+		finally {
+			monitor.done();
+		}
+	}
+
+	/**
+	 * Indexes the log file.
+	 * @param monitor The progress monitor.
+	 * @return The index.
+	 * @throws IOException On error reading the file.
+	 */
+	private PlanLog index(IProgressMonitor monitor) throws IOException {
+		InputStream in = new MonitoredStream(new FileInputStream(file), monitor);
+		try {
+			return PlanLog.index(file, charset, in, PlanLog.CACHE_SIZE);
+		}
+		finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package se.pex.editors;
+
+import java.io.IOException;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.widgets.Display;
+
+import se.pex.Activator;
+import se.pex.analyze.Engine;
+import se.pex.analyze.Node;
+import se.pex.analyze.PlanAggregator;
+import se.pex.analyze.PlanLog;
+import se.pex.analyze.PlanShapes;
+
+/**
+ * Sums up all plans of a log in the background and hands the report to the editor on the UI thread.
+ * The plans are analyzed one at a time and thrown away once they have been added, only the sums and the indexes
+ * of the plans are kept.
+ */
+public class ReportJob extends Job {
+	/** Number of node types and misestimates in the report. */
+	private static final int TOP_COUNT = 50;
+
+	/** The editor to update. */
+	private final PexEditor editor;
+
+	/** The indexed log. */
+	private final PlanLog log;
+
+	/**
+	 * Creates a new job.
+	 * @param editor The editor to update.
+	 * @param log The indexed log.
+	 */
+	public ReportJob(PexEditor editor, PlanLog log) {
+		super(Messages.ReportJob_Name);
+		this.editor = editor;
+		this.log = log;
+		setPriority(LONG);
+	}
+
+	/**
+	 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		monitor.beginTask(Messages.ReportJob_Name, log.size());
+		try {
+			final PlanAggregator aggregator = new PlanAggregator(TOP_COUNT);
+			final PlanShapes shapes = new PlanShapes();
+			for (int i = 0; i < log.size(); i++) {
+				if (monitor.isCanceled()) {
+					return Status.CANCEL_STATUS;
+				}
+				Node root = Engine.analyze(log.getPlanText(i));
+				aggregator.add(i, root);
+				shapes.add(i, root);
+				monitor.worked(1);
+			}
+			Display.getDefault().asyncExec(new Runnable() {
+				public void run() {
+					editor.setReport(aggregator, shapes);
+				}
+			});
+			return Status.OK_STATUS;
+		}
+		catch (IOException e) {
+			return new Status(IStatus.ERROR, Activator.PLUGIN_ID, e.getMessage(), e);
+		}
+		finally {
+			monitor.done();
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package se.pex.editors;
+
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.DoubleClickEvent;
+import org.eclipse.jface.viewers.IDoubleClickListener;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TableViewerColumn;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.SashForm;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+
+import se.pex.analyze.PlanAggregator;
+import se.pex.analyze.PlanAggregator.Misestimate;
+import se.pex.analyze.PlanAggregator.NodeType;
+import se.pex.analyze.PlanShapes;
+import se.pex.analyze.PlanShapes.Shape;
+
+/**
+ * Shows the node types with the most exclusive time, the worst row estimates and the plan shapes over all plans
+ * of a log. Opening a misestimate or a shape shows a plan on the explanation page.
+ */
+public class ReportPage {
+	/** Splits the page between the two tables. */
+	private final SashForm sash;
+
+	/** The node types with the most exclusive time. */
+	private final TableViewer types;
+
+	/** The nodes with the worst row estimates. */
+	private final TableViewer misestimates;
+
+	/** The plan shapes with the most total time. */
+	private final TableViewer shapes;
+
+	/** Summed total time of all plans. */
+	private double totalTime;
+
+	/**
+	 * Creates a new page.
+	 * @param parent The composite where to put the page.
+	 * @param editor The editor instance.
+	 */
+	public ReportPage(Composite parent, final PexEditor editor) {
+		sash = new SashForm(parent, SWT.VERTICAL);
+		types = createTable(sash);
+		createColumn(types, Messages.ReportPage_NodeType, 500, SWT.NONE, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object type) {
+				return ((NodeType) type).getName();
+			}
+		});
+		createColumn(types, Messages.ReportPage_Count, 100, SWT.RIGHT, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object type) {
+				return "" + ((NodeType) type).getCount(); //$NON-NLS-1$
+			}
+		});
+		createColumn(types, Messages.Pex_Exclusive, 100, SWT.RIGHT, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object type) {
+				return editor.formatFloat((float) ((NodeType) type).getExclusiveTime());
+			}
+		});
+		createColumn(types, Messages.ReportPage_Share, 100, SWT.RIGHT, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object type) {
+				return totalTime > 0 ? editor.formatFloat((float) (100 * ((NodeType) type).getExclusiveTime() / totalTime)) : ""; //$NON-NLS-1$
+			}
+		});
+		createColumn(types, Messages.ReportPage_WorstEstimate, 100, SWT.RIGHT, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object type) {
+				return "" + ((NodeType) type).getWorstEstimate(); //$NON-NLS-1$
+			}
+		});
+
+		misestimates = createTable(sash);
+		createColumn(misestimates, Messages.Pex_Rowcount, 100, SWT.RIGHT, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object misestimate) {
+				return misestimate.toString();
+			}
+		});
+		createColumn(misestimates, Messages.ReportPage_Plan, 100, SWT.RIGHT, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object misestimate) {
+				return "" + (((Misestimate) misestimate).getPlan() + 1); //$NON-NLS-1$
+			}
+		});
+		createColumn(misestimates, Messages.Pex_Information, 1000, SWT.NONE, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object misestimate) {
+				return ((Misestimate) misestimate).getLine();
+			}
+		});
+		misestimates.addDoubleClickListener(new IDoubleClickListener() {
+			@Override
+			public void doubleClick(DoubleClickEvent event) {
+				Object selected = ((IStructuredSelection) event.getSelection()).getFirstElement();
+				if (selected instanceof Misestimate) {
+					editor.showLogPlan(((Misestimate) selected).getPlan());
+				}
+			}
+		});
+
+		shapes = createTable(sash);
+		createShapeColumns(editor);
+	}
+
+	/**
+	 * Creates the table of plan shapes.
+	 * @param editor The editor instance.
+	 */
+	private void createShapeColumns(final PexEditor editor) {
+		createColumn(shapes, Messages.ReportPage_Plans, 100, SWT.RIGHT, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object shape) {
+				return "" + ((Shape) shape).getPlanCount(); //$NON-NLS-1$
+			}
+		});
+		createColumn(shapes, Messages.ReportPage_TotalTime, 100, SWT.RIGHT, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object shape) {
+				return editor.formatFloat((float) ((Shape) shape).getTotalTime());
+			}
+		});
+		createColumn(shapes, Messages.ReportPage_AverageTime, 100, SWT.RIGHT, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object shape) {
+				return editor.formatFloat((float) (((Shape) shape).getTotalTime() / ((Shape) shape).getPlanCount()));
+			}
+		});
+		createColumn(shapes, Messages.ReportPage_Nodes, 100, SWT.RIGHT, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object shape) {
+				return "" + ((Shape) shape).getNodeCount(); //$NON-NLS-1$
+			}
+		});
+		createColumn(shapes, Messages.ReportPage_Shape, 500, SWT.NONE, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object shape) {
+				return ((Shape) shape).getName();
+			}
+		});
+		shapes.addDoubleClickListener(new IDoubleClickListener() {
+			@Override
+			public void doubleClick(DoubleClickEvent event) {
+				Object selected = ((IStructuredSelection) event.getSelection()).getFirstElement();
+				if (selected instanceof Shape) {
+					editor.showLogPlan(((Shape) selected).getPlan(0));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Creates a table.
+	 * @param parent The composite where to put the table.
+	 * @return The table viewer.
+	 */
+	private static TableViewer createTable(Composite parent) {
+		TableViewer viewer = new TableViewer(parent, SWT.SINGLE | SWT.FULL_SELECTION | SWT.H_SCROLL | SWT.V_SCROLL | SWT.BORDER);
+		viewer.getTable().setHeaderVisible(true);
+		viewer.getTable().setLinesVisible(true);
+		viewer.setContentProvider(ArrayContentProvider.getInstance());
+		return viewer;
+	}
+
+	/**
+	 * Creates a column in a table.
+	 * @param viewer The table viewer.
+	 * @param text The column header.
+	 * @param width The column width.
+	 * @param style The column style.
+	 * @param labelProvider Gives the text of the column.
+	 */
+	private static void createColumn(TableViewer viewer, String text, int width, int style, ColumnLabelProvider labelProvider) {
+		TableViewerColumn column = new TableViewerColumn(viewer, style);
+		column.getColumn().setText(text);
+		column.getColumn().setWidth(width);
+		column.getColumn().setResizable(true);
+		column.setLabelProvider(labelProvider);
+	}
+
+	/**
+	 * @return The control of the page.
+	 */
+	public Control getControl() {
+		return sash;
+	}
+
+	/**
+	 * Shows a report.
+	 * @param aggregator The summed up plans.
+	 * @param planShapes The plans grouped by shape.
+	 */
+	public void setReport(PlanAggregator aggregator, PlanShapes planShapes) {
+		totalTime = aggregator.getTotalTime();
+		types.setInput(aggregator.getHottestTypes());
+		misestimates.setInput(aggregator.getWorstEstimates());
+		shapes.setInput(planShapes.getShapes());
+	}
+}
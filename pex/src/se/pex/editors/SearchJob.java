@@ -0,0 +1,96 @@
+package se.pex.editors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.widgets.Display;
+
+import se.pex.analyze.Node;
+import se.pex.analyze.NodeIndex;
+
+/**
+ * Searches the nodes of the plan in the background and hands the matches to the editor on the UI thread, a batch
+ * at a time so that the first matches are shown before all have been found. A new job is started for every change
+ * of the query and the old one is canceled.
+ */
+public class SearchJob extends Job {
+	/** Number of nodes looked at between checks if the job has been canceled. */
+	private static final int STEP = 1000;
+
+	/** Number of matches handed to the editor at a time. */
+	private static final int BATCH = 500;
+
+	/** The editor to update. */
+	private final PexEditor editor;
+
+	/** The plan to search. */
+	private final Node root;
+
+	/** The index of the plan, <code>null</code> if the index has to be built first. */
+	private final NodeIndex index;
+
+	/** The text to search for. */
+	private final String query;
+
+	/** The search generation the job belongs to, used to throw away stale results. */
+	private final int generation;
+
+	/**
+	 * Creates a new job.
+	 * @param editor The editor to update.
+	 * @param root The plan to search.
+	 * @param index The index of the plan, <code>null</code> if the index has to be built first.
+	 * @param query The text to search for.
+	 * @param generation The search generation the job belongs to.
+	 */
+	public SearchJob(PexEditor editor, Node root, NodeIndex index, String query, int generation) {
+		super(Messages.SearchJob_Name);
+		this.editor = editor;
+		this.root = root;
+		this.index = index;
+		this.query = query;
+		this.generation = generation;
+		setPriority(INTERACTIVE);
+		setSystem(true);
+	}
+
+	/**
+	 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		NodeIndex searched = index != null ? index : NodeIndex.build(root);
+		NodeIndex.Search search = searched.search(query);
+		List<Node> matches = new ArrayList<Node>();
+		while (!search.isDone()) {
+			if (monitor.isCanceled()) {
+				return Status.CANCEL_STATUS;
+			}
+			matches.addAll(search.next(STEP));
+			if (matches.size() >= BATCH) {
+				handOver(searched, matches, false);
+				matches = new ArrayList<Node>();
+			}
+		}
+		handOver(searched, matches, true);
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Hands matches to the editor.
+	 * @param searched The index searched.
+	 * @param matches The matches.
+	 * @param done <code>true</code> if these are the last matches.
+	 */
+	private void handOver(final NodeIndex searched, final List<Node> matches, final boolean done) {
+		Display.getDefault().asyncExec(new Runnable() {
+			public void run() {
+				editor.addSearchMatches(searched, matches, done, generation);
+			}
+		});
+	}
+}
@@ -1,5 +1,7 @@
 package se.pex.editors;
 
+import java.util.List;
+
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.widgets.Composite;
 
@@ -34,6 +36,17 @@ public interface TreeImplementation {
 	 */
 	public boolean setRootNode(Node node);
 
+	/**
+	 * Updates the parts of the tree where subtrees have been replaced, the rest of the tree is left as it is.
+	 * @param nodes The roots of the new subtrees.
+	 */
+	public void refreshNodes(List<Node> nodes);
+
+	/**
+	 * Updates the colors of the tree, the nodes are left as they are.
+	 */
+	public void refreshColors();
+
 	/**
 	 * Clears the tree.
 	 */
@@ -48,4 +61,21 @@ public interface TreeImplementation {
 	 * Expands the currently selected node.
 	 */
 	public void expandSelectedNode();
+
+	/**
+	 * @return The first selected node, <code>null</code> if no node is selected.
+	 */
+	public Node getSelectedNode();
+
+	/**
+	 * Selects nodes and scrolls them into view, only the ancestors of the nodes are expanded.
+	 * @param nodes The nodes to select.
+	 */
+	public void showNodes(List<Node> nodes);
+
+	/**
+	 * Updates the labels of nodes, like when they start or stop matching the search.
+	 * @param nodes The nodes to update.
+	 */
+	public void updateNodes(List<Node> nodes);
 }
@@ -29,7 +29,7 @@ public class GotoBracketHandler extends AbstractHandler {
         IWorkbenchPage page = HandlerUtil.getActiveWorkbenchWindow(event).getActivePage();
         IEditorPart editorInput = page.getActiveEditor();
 
-        if (editorInput instanceof PexEditor) {
+        if (editorInput instanceof PexEditor && ((PexEditor) editorInput).editor != null) {
         	((PexEditor) editorInput).editor.gotoMatchingBracket();
         }
 
@@ -0,0 +1,30 @@
+package se.pex.handlers;
+
+import org.eclipse.core.commands.AbstractHandler;
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.IWorkbenchPage;
+import org.eclipse.ui.handlers.HandlerUtil;
+
+import se.pex.editors.PexEditor;
+
+/**
+ * Selects the next hotter hotspot of the plan.
+ * @see org.eclipse.core.commands.AbstractHandler
+ */
+public class PreviousHotspotHandler extends AbstractHandler {
+	/**
+	 * @see org.eclipse.core.commands.IHandler#execute(org.eclipse.core.commands.ExecutionEvent)
+	 */
+	public Object execute(ExecutionEvent event) throws ExecutionException {
+		IWorkbenchPage page = HandlerUtil.getActiveWorkbenchWindow(event).getActivePage();
+		IEditorPart editor = page.getActiveEditor();
+
+		if (editor instanceof PexEditor) {
+			((PexEditor) editor).gotoHotspot(false);
+		}
+
+		return null;
+	}
+}
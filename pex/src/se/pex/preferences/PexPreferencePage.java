@@ -1,10 +1,12 @@
 package se.pex.preferences;
 
 import org.eclipse.jface.preference.*;
+import org.eclipse.swt.widgets.Composite;
 import org.eclipse.ui.IWorkbenchPreferencePage;
 import org.eclipse.ui.IWorkbench;
 
 import se.pex.Activator;
+import se.pex.analyze.Heat;
 
 /**
  * This class represents a preference page that
@@ -48,6 +50,7 @@ public class PexPreferencePage
 			new String[][] { { "&Exclusive", "exclusive" }, {
 				"&Inclusive", "inclusive" },
 				{"&Count", "count"},
+				{"I/&O", "io"},
 				{"&Mixed", "mixed"}
 		}, getFieldEditorParent()));
 
@@ -55,8 +58,52 @@ public class PexPreferencePage
 		addField(new BooleanFieldEditor(PreferenceConstants.P_SHOW_EXCLUSIVE, "Show exclusive column", getFieldEditorParent()));
 		addField(new BooleanFieldEditor(PreferenceConstants.P_SHOW_ROWCOUNT, "Show rowcount column", getFieldEditorParent()));
 		addField(new BooleanFieldEditor(PreferenceConstants.P_SHOW_LOOP, "Show loops column", getFieldEditorParent()));
+		addField(new BooleanFieldEditor(PreferenceConstants.P_SHOW_READS, "Show reads column", getFieldEditorParent()));
 
 		addField(new BooleanFieldEditor(PreferenceConstants.P_FOLDNEVEREXECUTED, "Fold Never Executed paths", getFieldEditorParent()));
+
+		addField(new RadioGroupFieldEditor(
+				PreferenceConstants.P_HEAT_SCALE,
+			"Color nodes from",
+			1,
+			new String[][] { { "&Fixed levels, in percent of the total time", "fixed" },
+				{ "&Absolute levels, in milliseconds", "absolute" },
+				{ "&Percentiles of the nodes of the plan", "percentile" }
+		}, getFieldEditorParent()));
+		addField(new LevelsFieldEditor(PreferenceConstants.P_HEAT_FIXED_LEVELS, "Fixed time and read levels (%)", getFieldEditorParent()));
+		addField(new LevelsFieldEditor(PreferenceConstants.P_HEAT_ABSOLUTE_LEVELS, "Absolute time levels (ms)", getFieldEditorParent()));
+		addField(new LevelsFieldEditor(PreferenceConstants.P_HEAT_ROW_LEVELS, "Row estimate levels (ratio)", getFieldEditorParent()));
+		addField(new LevelsFieldEditor(PreferenceConstants.P_HEAT_PERCENTILE_LEVELS, "Percentile levels", getFieldEditorParent()));
+	}
+
+	/**
+	 * An editor for three ascending levels separated by commas.
+	 */
+	private static class LevelsFieldEditor extends StringFieldEditor {
+		/**
+		 * Creates a new field editor.
+		 * @param name The name of the preference.
+		 * @param labelText The label text.
+		 * @param parent The parent of the field editor's control.
+		 */
+		public LevelsFieldEditor(String name, String labelText, Composite parent) {
+			super(name, labelText, parent);
+			setErrorMessage(labelText + " must be three ascending numbers, like 10,50,90");
+		}
+
+		/**
+		 * @see org.eclipse.jface.preference.StringFieldEditor#doCheckState()
+		 */
+		@Override
+		protected boolean doCheckState() {
+			try {
+				Heat.parseLevels(getStringValue());
+				return true;
+			}
+			catch (IllegalArgumentException e) {
+				return false;
+			}
+		}
 	}
 
 	/**
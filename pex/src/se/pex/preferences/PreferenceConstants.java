@@ -22,4 +22,22 @@ public class PreferenceConstants {
 
 	/** Show column. */
 	public static final String P_SHOW_LOOP = "showLoop";
+
+	/** Show column. */
+	public static final String P_SHOW_READS = "showReads";
+
+	/** The scale of the levels where nodes are colored: fixed, absolute or percentile. */
+	public static final String P_HEAT_SCALE = "heatScale";
+
+	/** Levels in percent of the total time and of the blocks read, for the fixed scale, the read levels also for the absolute scale. */
+	public static final String P_HEAT_FIXED_LEVELS = "heatFixedLevels";
+
+	/** Time levels in milliseconds, for the absolute scale. */
+	public static final String P_HEAT_ABSOLUTE_LEVELS = "heatAbsoluteLevels";
+
+	/** Row estimate ratio levels, for the fixed and absolute scales. */
+	public static final String P_HEAT_ROW_LEVELS = "heatRowLevels";
+
+	/** Percentile levels, for the percentile scale. */
+	public static final String P_HEAT_PERCENTILE_LEVELS = "heatPercentileLevels";
 }
@@ -21,6 +21,12 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
 		store.setDefault(PreferenceConstants.P_SHOW_EXCLUSIVE, true);
 		store.setDefault(PreferenceConstants.P_SHOW_LOOP, true);
 		store.setDefault(PreferenceConstants.P_SHOW_ROWCOUNT, true);
+		store.setDefault(PreferenceConstants.P_SHOW_READS, true);
+		store.setDefault(PreferenceConstants.P_HEAT_SCALE, "fixed");
+		store.setDefault(PreferenceConstants.P_HEAT_FIXED_LEVELS, "10,50,90");
+		store.setDefault(PreferenceConstants.P_HEAT_ABSOLUTE_LEVELS, "10,100,1000");
+		store.setDefault(PreferenceConstants.P_HEAT_ROW_LEVELS, "10,100,1000");
+		store.setDefault(PreferenceConstants.P_HEAT_PERCENTILE_LEVELS, "75,90,99");
 	}
 
 }
@@ -1,11 +1,20 @@
 package se.pex.analyze;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -57,14 +66,245 @@ public class EngineTest {
 		} while (true);
 	}
 
+	/**
+	 * Parses a plan where an append node has 50000 children, every child used to add a level to the call stack.
+	 */
+	@Test
+	public void testAnalyzeWidePlan() {
+		PlanGenerator generator = new PlanGenerator(7).setMaxDepth(1).setNodeCount(50000).generate();
+		Node root = Engine.analyze(generator.getText());
+		assertEquals(generator.getExpected(), root.toString());
+		assertEquals(50000 - 1, root.getChildren().size());
+		assertEquals(50000, countNodes(root));
+		assertEquals(50000, root.getSubtreeNodeCount());
+		float maxTimeExclusive = root.getTimeExclusive();
+		for (Node child : root.getChildren()) {
+			assertEquals(root.getTimeInclusive(true), child.getTotalTime(), 0);
+			maxTimeExclusive = Math.max(maxTimeExclusive, child.getTimeExclusive());
+		}
+		assertEquals(maxTimeExclusive, root.getSubtreeMaxTimeExclusive(), 0);
+	}
+
+	/**
+	 * Parses a plan with nested nodes 2000 levels deep.
+	 */
+	@Test
+	public void testAnalyzeDeepPlan() {
+		// Without SubPlan and InitPlan nodes, every node but the last has exactly one child
+		PlanGenerator generator = new PlanGenerator(8).setFanOut(1).setMaxDepth(2000).setNodeCount(2001)
+			.setSubPlanPercent(0).setInitPlanPercent(0).generate();
+		Node root = Engine.analyze(generator.getText());
+		assertEquals(generator.getExpected(), root.toString());
+		assertEquals(2001, countNodes(root));
+		int depth = 0;
+		for (Node node = root; !node.getChildren().isEmpty(); node = node.getChildren().get(0)) {
+			depth++;
+		}
+		assertEquals(2000, depth);
+	}
+
+	/**
+	 * Parses generated plans of different shapes, the output should match what the generator expects.
+	 */
+	@Test
+	public void testGeneratedPlans() {
+		PlanGenerator[] generators = {
+			new PlanGenerator(1),
+			new PlanGenerator(2).setMaxDepth(8).setFanOut(2).setNodeCount(2000).setTriggers(3),
+			new PlanGenerator(3).setMaxDepth(3).setSubPlanPercent(60).setInitPlanPercent(40).setNodeCount(1000),
+			new PlanGenerator(4).setMaxDepth(200).setFanOut(1).setNeverExecutedPercent(20).setLongFilterPercent(50).setNodeCount(1000),
+			new PlanGenerator(5).setMaxDepth(1).setNodeCount(10000),
+		};
+		for (PlanGenerator generator : generators) {
+			generator.generate();
+			Node root = Engine.analyze(generator.getText());
+			assertEquals(generator.getExpected(), root.toString());
+			assertEquals(generator.getNodeCount(), countNodes(root));
+		}
+		assertEquals(new PlanGenerator(6).generate().getText(), new PlanGenerator(6).generate().getText());
+	}
+
+	/**
+	 * Parses a JSON explain, the numbers are taken from the JSON fields and broken input gives the tree read so far.
+	 * @throws IOException On error reading the test file.
+	 */
+	@Test
+	public void testAnalyzeJson() throws IOException {
+		String explain = readExplain(6);
+		Node root = Engine.analyze(explain);
+		Node parallelScan = root.getChildren().get(1).getChildren().get(1).getChildren().get(0);
+		assertEquals(3, parallelScan.getLoopCount());
+		assertEquals(5000, parallelScan.getMetrics().getPlanRows());
+		assertEquals(0.006f, parallelScan.getTimeInclusive(true), 0.0001);
+		assertEquals(1.056f, root.getChildren().get(2).getTimeInclusive(false), 0);
+		assertEquals(2.551f, root.getTotalTime(), 0);
+
+		Node broken = Engine.analyze(explain.substring(0, explain.indexOf("\"Hash Join\"")));
+		assertEquals(2, broken.getChildren().size());
+		assertEquals(1, broken.getChildren().get(1).getChildren().size());
+		assertNull(Engine.reanalyze(root, 10, 10, 0, createLineSource(Arrays.asList(explain.split("\n")))));
+	}
+
+	/**
+	 * Parses the same plan in XML and YAML, the trees should be the same as from JSON also when the input is cut off.
+	 * @throws IOException On error reading the test files.
+	 */
+	@Test
+	public void testAnalyzeXmlAndYaml() throws IOException {
+		Node json = Engine.analyze(readExplain(6));
+		for (int index = 7; index <= 8; index++) {
+			String explain = readExplain(index);
+			Node root = Engine.analyze(explain);
+			assertEquals(json.toString(), root.toString());
+			assertEquals(json.getTotalTime(), root.getTotalTime(), 0);
+			assertEquals(json.getTimeExclusive(), root.getTimeExclusive(), 0);
+			Node broken = Engine.analyze(explain.substring(0, explain.indexOf("Hash Join")));
+			assertEquals(2, broken.getChildren().size());
+			assertNull(Engine.reanalyze(root, 10, 10, 0, createLineSource(Arrays.asList(explain.split("\n")))));
+		}
+	}
+
+	/**
+	 * Unicode escapes in quoted YAML values are decoded, broken escapes are kept as written.
+	 */
+	@Test
+	public void testYamlEscapes() {
+		String yaml = "- Plan: \n"
+			+ "    Node Type: \"Seq Scan\"\n"
+			+ "    Relation Name: \"a\"\n"
+			+ "    Alias: \"a\"\n"
+			+ "    Startup Cost: 0.00\n"
+			+ "    Total Cost: 1.00\n"
+			+ "    Plan Rows: 1\n"
+			+ "    Plan Width: 4\n"
+			+ "    Filter: \"((name)::text = '\\u00e9\\uzz12\\u12'::text)\"\n";
+		Node root = Engine.analyze(yaml);
+		assertEquals(Arrays.asList("Filter: ((name)::text = '\u00e9\\uzz12\\u12'::text)"), root.getLines());
+	}
+
+	/**
+	 * Changes a line in the middle of a plan and adds a line, only the changed node should be replaced.
+	 * @throws IOException On error reading the test file.
+	 */
+	@Test
+	public void testReanalyze() throws IOException {
+		String explain = readExplain(1);
+		Node root = Engine.analyze(explain);
+		Node mergeJoin = root.getChildren().get(0).getChildren().get(0).getChildren().get(0);
+		Node statistic = mergeJoin.getChildren().get(0);
+		Node pgClass = root.getChildren().get(0).getChildren().get(0).getChildren().get(1);
+		List<String> lines = new ArrayList<String>(Arrays.asList(explain.split("\n")));
+		lines.set(7, lines.get(7).replace("rows=14 loops=1", "rows=14 loops=2"));
+		lines.add(9, "                           Rows Removed by Filter: 3");
+		String changed = join(lines);
+
+		Node replacement = Engine.reanalyze(root, 7, 8, 1, createLineSource(lines));
+		Node expected = Engine.analyze(changed);
+		assertEquals(expected.toString(), root.toString());
+		assertSame(mergeJoin, replacement.getParent());
+		assertSame(statistic, mergeJoin.getChildren().get(0));
+		assertSame(pgClass, root.getChildren().get(0).getChildren().get(0).getChildren().get(1));
+		assertEquals(10, pgClass.getFirstLine());
+		assertEquals(2, replacement.getLoopCount());
+		assertEquals(expected.getSubtreeNodeCount(), root.getSubtreeNodeCount());
+		Node expectedMergeJoin = expected.getChildren().get(0).getChildren().get(0).getChildren().get(0);
+		assertEquals(expectedMergeJoin.getTimeExclusive(), mergeJoin.getTimeExclusive(), 0);
+
+		lines.set(0, lines.get(0).replace("loops=1", "loops=3"));
+		assertNull(Engine.reanalyze(root, 0, 0, 0, createLineSource(lines)));
+	}
+
+	/**
+	 * Reads the explain part of a test file.
+	 * @param index The file index.
+	 * @return The explain.
+	 * @throws IOException On error reading the test file.
+	 */
+	static String readExplain(int index) throws IOException {
+		BufferedReader br = new BufferedReader(new InputStreamReader(Engine.class.getResourceAsStream("test" + index + ".pex")));
+		List<String> lines = new ArrayList<String>();
+		boolean onExplain = false;
+		String line = br.readLine();
+		while (line != null) {
+			if (onExplain) {
+				lines.add(line);
+			}
+			onExplain |= line.equals("-----");
+			line = br.readLine();
+		}
+		return join(lines);
+	}
+
+	/**
+	 * Joins lines into a text.
+	 * @param lines The lines.
+	 * @return The text with a line break after every line.
+	 */
+	private static String join(List<String> lines) {
+		StringBuilder res = new StringBuilder();
+		for (String line : lines) {
+			res.append(line).append('\n');
+		}
+		return res.toString();
+	}
+
+	/**
+	 * Creates a line source.
+	 * @param lines The lines of the text.
+	 * @return A line source reading from the lines.
+	 */
+	private LineSource createLineSource(final List<String> lines) {
+		return new LineSource() {
+			@Override
+			public int getLineCount() {
+				return lines.size();
+			}
+
+			@Override
+			public String getLine(int index) {
+				return lines.get(index);
+			}
+		};
+	}
+
+	/**
+	 * Counts the nodes in a tree.
+	 * @param root The root of the tree.
+	 * @return The number of nodes.
+	 */
+	private int countNodes(Node root) {
+		int count = 0;
+		Deque<Node> stack = new ArrayDeque<Node>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			count++;
+			for (Node child : node.getChildren()) {
+				stack.push(child);
+			}
+		}
+		return count;
+	}
+
 	/**
 	 * Checks that the expected output matches the actual, otherwise throws an JUnit fail.
 	 * @param expected The expected output from the root node.tostring.
 	 * @param explain The explain as feed to the parser engine.
 	 * @param index The file index, used to display in which file the test fails.
+	 * @throws IOException On error reading the explain.
+	 */
+	private void checkMatch(StringBuilder expected, StringBuilder explain, int index) throws IOException {
+		checkMatch(expected, Engine.analyze(explain.toString()), index);
+		checkMatch(expected, Engine.analyze(new BufferedReader(new StringReader(explain.toString()))), index);
+	}
+
+	/**
+	 * Checks that the expected output matches the actual, otherwise throws an JUnit fail.
+	 * @param expected The expected output from the root node.tostring.
+	 * @param n The root node created by the parser engine.
+	 * @param index The file index, used to display in which file the test fails.
 	 */
-	private void checkMatch(StringBuilder expected, StringBuilder explain, int index) {
-		Node n = Engine.analyze(explain.toString());
+	private void checkMatch(StringBuilder expected, Node n, int index) {
 		if (!expected.toString().trim().equalsIgnoreCase(n.toString().trim())) {
 			String actual = n.toString();
 			System.out.println("actual");
@@ -0,0 +1,98 @@
+package se.pex.analyze;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * A test for the heat classes of the nodes.
+ */
+public class HeatTest {
+	/**
+	 * Classifies the nodes of a plan, every mode should have its own class.
+	 */
+	@Test
+	public void testClassify() {
+		Node root = Engine.analyze(
+			"Hash Join  (cost=1.00..20.00 rows=10 width=8) (actual time=1.000..10.000 rows=10 loops=1)\n"
+			+ "  ->  Seq Scan on a  (cost=0.00..10.00 rows=1 width=4) (actual time=0.010..6.000 rows=500 loops=1)\n"
+			+ "  ->  Hash  (cost=1.00..1.00 rows=2000 width=4) (actual time=0.500..2.000 rows=1 loops=1)\n"
+			+ "        ->  Seq Scan on b  (cost=0.00..1.00 rows=20 width=4) (actual time=0.010..0.400 rows=1 loops=1)\n");
+		assertEquals(Heat.LOW, root.getHeat(Heat.EXCLUSIVE));
+		assertEquals(Heat.HIGH, root.getHeat(Heat.INCLUSIVE));
+		assertEquals(Heat.NONE, root.getHeat(Heat.COUNT));
+
+		Node scan = root.getChildren().get(0);
+		assertEquals(Heat.MEDIUM, scan.getHeat(Heat.EXCLUSIVE));
+		assertEquals(Heat.MEDIUM, scan.getHeat(Heat.INCLUSIVE));
+		assertEquals(Heat.MEDIUM, scan.getHeat(Heat.COUNT));
+
+		Node hash = root.getChildren().get(1);
+		assertEquals(Heat.LOW, hash.getHeat(Heat.EXCLUSIVE));
+		assertEquals(Heat.HIGH, hash.getHeat(Heat.COUNT));
+		assertEquals(Heat.LOW, hash.getChildren().get(0).getHeat(Heat.COUNT));
+		assertEquals(Heat.NONE, hash.getChildren().get(0).getHeat(Heat.INCLUSIVE));
+	}
+
+	/**
+	 * Classifies a plan with absolute and percentile levels, and goes back to the default levels.
+	 */
+	@Test
+	public void testScales() {
+		Node root = Engine.analyze(new PlanGenerator(31).setNodeCount(1000).generate().getText());
+		new Heat(Heat.Scale.Absolute, new float[] { 0, 1, 1000000 }, new float[] { 10, 100, 1000 }, new float[] { 10, 50, 90 }).apply(root);
+		assertEquals(Heat.MEDIUM, root.getHeat(Heat.INCLUSIVE));
+
+		new Heat(Heat.Scale.Percentile, new float[] { 50, 90, 99 }, new float[] { 50, 90, 99 }, new float[] { 50, 90, 99 }).apply(root);
+		int[] classes = new int[4];
+		Deque<Node> stack = new ArrayDeque<Node>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			classes[node.getHeat(Heat.EXCLUSIVE)]++;
+			stack.addAll(node.getChildren());
+		}
+		// Equal times may put a few more nodes in a class
+		assertTrue(classes[Heat.HIGH] >= 10 && classes[Heat.HIGH] < 20);
+		assertTrue(classes[Heat.MEDIUM] >= 80 && classes[Heat.MEDIUM] < 100);
+		assertTrue(classes[Heat.LOW] >= 390 && classes[Heat.LOW] < 420);
+
+		Node compact = PlanTable.compact(root).getRoot();
+		Heat.getDefault().apply(root);
+		Heat.getDefault().apply(compact);
+		assertEquals(root.getHeat(Heat.EXCLUSIVE), compact.getHeat(Heat.EXCLUSIVE));
+		assertEquals(root.getChildren().get(0).getHeat(Heat.COUNT), compact.getChildren().get(0).getHeat(Heat.COUNT));
+	}
+
+	/**
+	 * Selects values at positions, which should be the values of a sorted copy.
+	 */
+	@Test
+	public void testSelect() {
+		Random random = new Random(1);
+		float[] values = new float[1001];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextInt(100);
+		}
+		float[] sorted = values.clone();
+		Arrays.sort(sorted);
+		for (int k : new int[] { 0, 1, 500, 990, 1000 }) {
+			assertEquals(sorted[k], Heat.select(values.clone(), 0, values.length, k), 0);
+		}
+	}
+
+	/**
+	 * Reads levels from preferences.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseLevels() {
+		assertEquals(50f, Heat.parseLevels(" 10, 50,90")[1], 0);
+		Heat.parseLevels("50,10,90");
+	}
+}
@@ -0,0 +1,97 @@
+package se.pex.analyze;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the critical path and stepping through the hotspots of a plan.
+ */
+public class HotspotsTest {
+	/** A join where the scan of b takes most of the time and the hash of c is the hottest branch below it. */
+	private static final String PLAN =
+		"Hash Join  (cost=1.00..20.00 rows=10 width=8) (actual time=1.000..102.000 rows=10 loops=1)\n"
+		+ "  ->  Seq Scan on a  (cost=0.00..10.00 rows=10 width=4) (actual time=0.010..10.000 rows=10 loops=1)\n"
+		+ "  ->  Hash  (cost=1.00..1.00 rows=10 width=4) (actual time=80.000..80.000 rows=10 loops=1)\n"
+		+ "        ->  Nested Loop  (cost=0.00..1.00 rows=10 width=4) (actual time=0.010..75.000 rows=10 loops=1)\n"
+		+ "              ->  Seq Scan on b  (cost=0.00..1.00 rows=10 width=4) (actual time=0.010..60.000 rows=10 loops=1)\n"
+		+ "              ->  Index Scan using c_pkey on c  (cost=0.00..0.10 rows=1 width=4) (actual time=0.001..0.001 rows=1 loops=10)\n";
+
+	/**
+	 * Follows the largest inclusive times from the root to a leaf.
+	 */
+	@Test
+	public void testCriticalPath() {
+		Node root = Engine.analyze(PLAN);
+		Node hash = root.getChildren().get(1);
+		Node join = hash.getChildren().get(0);
+		List<Node> path = Hotspots.calculate(root).getCriticalPath();
+		assertEquals(4, path.size());
+		assertSame(root, path.get(0));
+		assertSame(hash, path.get(1));
+		assertSame(join, path.get(2));
+		assertSame(join.getChildren().get(0), path.get(3));
+
+		List<Node> compactPath = Hotspots.calculate(PlanTable.compact(root).getRoot()).getCriticalPath();
+		assertEquals(4, compactPath.size());
+		assertEquals(path.get(3).getMainLine(), compactPath.get(3).getMainLine());
+	}
+
+	/**
+	 * Steps through the hotspots in order of exclusive time, in both directions.
+	 */
+	@Test
+	public void testNavigation() {
+		Node root = Engine.analyze(PLAN);
+		Hotspots hotspots = Hotspots.calculate(root);
+		Node scanA = root.getChildren().get(0);
+		Node hash = root.getChildren().get(1);
+		Node join = hash.getChildren().get(0);
+		Node scanB = join.getChildren().get(0);
+		Node scanC = join.getChildren().get(1);
+
+		assertSame(scanB, hotspots.next(null));
+		assertSame(join, hotspots.next(scanB));
+		assertSame(root, hotspots.next(join));
+		assertSame(scanA, hotspots.next(root));
+		assertSame(hash, hotspots.next(scanA));
+		assertSame(root, hotspots.previous(scanA));
+		assertNull(hotspots.previous(scanB));
+		for (int i = 1; i < hotspots.size(); i++) {
+			assertTrue(hotspots.get(i - 1).getTimeExclusive() >= hotspots.get(i).getTimeExclusive());
+		}
+		assertSame(scanC, hotspots.previous(null));
+		assertNull(hotspots.next(scanC));
+
+		// A node that is not ranked is placed by its exclusive time
+		Node other = Engine.analyze("Seq Scan on d  (cost=0.00..1.00 rows=10 width=4) (actual time=0.010..11.000 rows=10 loops=1)");
+		assertSame(scanA, hotspots.next(other));
+		assertSame(root, hotspots.previous(other));
+	}
+
+	/**
+	 * The compact tree should rank the same nodes as the node tree.
+	 */
+	@Test
+	public void testCompactGeneratedPlan() {
+		Node root = Engine.analyze(new PlanGenerator(21).setNodeCount(3000).generate().getText());
+		Hotspots hotspots = Hotspots.calculate(root);
+		Hotspots compact = Hotspots.calculate(PlanTable.compact(root).getRoot());
+		assertEquals(Hotspots.MAX_HOTSPOTS, hotspots.size());
+		assertEquals(hotspots.size(), compact.size());
+		for (int i = 0; i < hotspots.size(); i++) {
+			assertEquals(hotspots.get(i).getTimeExclusive(), compact.get(i).getTimeExclusive(), 0);
+		}
+		Node node = compact.next(null);
+		for (int i = 1; i < compact.size(); i++) {
+			node = compact.next(node);
+			assertSame(compact.get(i), node);
+		}
+		assertEquals(hotspots.getCriticalPath().size(), compact.getCriticalPath().size());
+	}
+}
@@ -0,0 +1,98 @@
+package se.pex.analyze;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Tests scanning of the buffer and I/O timing lines, and adding them up over the tree.
+ */
+public class IoMetricsTest {
+	/** A plan where the scans read the blocks and the join reads nothing itself. */
+	private static final String PLAN =
+		"Hash Join  (cost=1.00..20.00 rows=10 width=8) (actual time=1.000..10.000 rows=10 loops=1)\n"
+		+ "  Buffers: shared hit=10 read=100\n"
+		+ "  I/O Timings: read=4.000\n"
+		+ "  ->  Seq Scan on a  (cost=0.00..10.00 rows=10 width=4) (actual time=0.010..6.000 rows=10 loops=1)\n"
+		+ "        Buffers: shared hit=2 read=95\n"
+		+ "        I/O Timings: read=3.500\n"
+		+ "  ->  Hash  (cost=1.00..1.00 rows=10 width=4) (actual time=0.500..2.000 rows=10 loops=1)\n"
+		+ "        ->  Seq Scan on b  (cost=0.00..1.00 rows=10 width=4) (actual time=0.010..1.000 rows=10 loops=1)\n"
+		+ "              Buffers: shared hit=8 read=5\n"
+		+ "              I/O Timings: read=0.500\n";
+
+	/**
+	 * Scans the buffers of all kinds and the I/O timings.
+	 */
+	@Test
+	public void testParse() {
+		IoMetrics m = IoMetrics.parse("Seq Scan on t",
+			Arrays.asList("Filter: (id > 1)", "Buffers: shared hit=12 read=3 dirtied=1 written=2, local hit=4 read=5, temp read=6 written=7",
+				"I/O Timings: read=0.512 write=0.100"));
+		assertEquals(12, m.getSharedHit());
+		assertEquals(3, m.getSharedRead());
+		assertEquals(1, m.getSharedDirtied());
+		assertEquals(2, m.getSharedWritten());
+		assertEquals(4, m.getLocalHit());
+		assertEquals(5, m.getLocalRead());
+		assertEquals(6, m.getTempRead());
+		assertEquals(7, m.getTempWritten());
+		assertEquals(14, m.getReadBlocks());
+		assertEquals(0.512f, m.getReadTime(), 0.0001);
+		assertEquals(0.1f, m.getWriteTime(), 0.0001);
+
+		m = IoMetrics.parse("Seq Scan on t", Arrays.asList("I/O Timings: shared read=1.5 write=0.5, temp read=2.0"));
+		assertEquals(3.5f, m.getReadTime(), 0.0001);
+		assertEquals(0.5f, m.getWriteTime(), 0.0001);
+
+		assertSame(IoMetrics.EMPTY, IoMetrics.parse("Seq Scan on t", Collections.<String>emptyList()));
+		assertSame(IoMetrics.EMPTY, IoMetrics.parse("Seq Scan on t", Arrays.asList("Planning:", "Buffers: shared hit=8")));
+	}
+
+	/**
+	 * Adds up the reads over the tree, the exclusive reads should show where the blocks are read.
+	 */
+	@Test
+	public void testRollup() {
+		Node root = Engine.analyze(PLAN);
+		assertEquals(100, root.getReadBlocks());
+		assertEquals(0, root.getReadBlocksExclusive());
+		assertEquals(4f, root.getReadTime(), 0.0001);
+		assertEquals(0f, root.getReadTimeExclusive(), 0.0001);
+		Node scanA = root.getChildren().get(0);
+		assertEquals(95, scanA.getReadBlocksExclusive());
+		assertEquals(3.5f, scanA.getReadTimeExclusive(), 0.0001);
+		// The Hash has no buffers line, it still reads the blocks of its child
+		Node hash = root.getChildren().get(1);
+		assertEquals(5, hash.getReadBlocks());
+		assertEquals(0, hash.getReadBlocksExclusive());
+		assertEquals(5, hash.getChildren().get(0).getReadBlocksExclusive());
+
+		assertEquals(Heat.HIGH, scanA.getHeat(Heat.IO));
+		assertEquals(Heat.NONE, root.getHeat(Heat.IO));
+		assertEquals(Heat.NONE, hash.getChildren().get(0).getHeat(Heat.IO));
+
+		Node compact = PlanTable.compact(root).getRoot();
+		assertEquals(95, compact.getChildren().get(0).getReadBlocksExclusive());
+		assertEquals(95, compact.getChildren().get(0).getIo().getSharedRead());
+		assertEquals(Heat.HIGH, compact.getChildren().get(0).getHeat(Heat.IO));
+	}
+
+	/**
+	 * Reads the buffers of a JSON plan.
+	 */
+	@Test
+	public void testJson() {
+		Node root = Engine.analyze("[{\"Plan\": {\"Node Type\": \"Seq Scan\", \"Relation Name\": \"a\", \"Alias\": \"a\",\n"
+			+ "  \"Actual Startup Time\": 0.01, \"Actual Total Time\": 2.0, \"Actual Rows\": 1, \"Actual Loops\": 1,\n"
+			+ "  \"Shared Hit Blocks\": 12, \"Shared Read Blocks\": 3, \"Temp Written Blocks\": 7, \"I/O Read Time\": 0.512}}]");
+		assertEquals(12, root.getIo().getSharedHit());
+		assertEquals(7, root.getIo().getTempWritten());
+		assertEquals(3, root.getReadBlocksExclusive());
+		assertEquals(0.512f, root.getReadTime(), 0.0001);
+	}
+}
@@ -0,0 +1,110 @@
+package se.pex.analyze;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+/**
+ * A test for reading files through memory mapped windows.
+ */
+public class MappedFileReaderTest {
+
+	/**
+	 * Reads a file with characters of different byte lengths through windows smaller than the file, so that
+	 * characters are split between windows.
+	 * @throws IOException On error writing or reading the file.
+	 */
+	@Test
+	public void testReadSplitCharacters() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			text.append("a\u00e5\u20ac\ud83d\ude00").append(i % 7 == 0 ? "\n" : "");
+		}
+		Charset utf8 = Charset.forName("UTF-8");
+		File file = writeFile(text.toString(), utf8);
+		try {
+			for (int windowSize : new int[] { 5, 7, 4096, 1 << 20 }) {
+				assertEquals(text.toString(), read(new MappedFileReader(file, utf8, windowSize)));
+			}
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Analyzes a generated plan from a file, the tree should be the same as when analyzing the text.
+	 * @throws IOException On error writing or reading the file.
+	 */
+	@Test
+	public void testAnalyzeMappedFile() throws IOException {
+		PlanGenerator generator = new PlanGenerator(21).setNodeCount(2000).generate();
+		Charset charset = Charset.forName("ISO-8859-1");
+		File file = writeFile(generator.getText(), charset);
+		MappedFileReader reader = new MappedFileReader(file, charset, 10000);
+		try {
+			assertEquals(generator.getExpected(), Engine.analyze(new BufferedReader(reader)).toString());
+			assertEquals(file.length(), reader.position());
+		}
+		finally {
+			reader.close();
+			file.delete();
+		}
+		file = writeFile("", charset);
+		try {
+			assertEquals("", read(new MappedFileReader(file, charset)));
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Writes a temporary file.
+	 * @param text The content.
+	 * @param charset The encoding.
+	 * @return The file.
+	 * @throws IOException On error writing the file.
+	 */
+	private File writeFile(String text, Charset charset) throws IOException {
+		File file = File.createTempFile("pex", ".pex");
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(text.getBytes(charset.name()));
+		}
+		finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Reads everything from a reader and closes it.
+	 * @param reader The reader.
+	 * @return The text.
+	 * @throws IOException On error reading.
+	 */
+	private String read(Reader reader) throws IOException {
+		StringBuilder res = new StringBuilder();
+		char[] buffer = new char[1000];
+		try {
+			int count = reader.read(buffer);
+			while (count >= 0) {
+				res.append(buffer, 0, count);
+				count = reader.read(buffer);
+			}
+		}
+		finally {
+			reader.close();
+		}
+		return res.toString();
+	}
+}
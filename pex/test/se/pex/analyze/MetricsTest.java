@@ -0,0 +1,57 @@
+package se.pex.analyze;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests scanning of the numbers on the main line of a node.
+ */
+public class MetricsTest {
+
+	/**
+	 * Scans a line with both costs and actual times.
+	 */
+	@Test
+	public void testCostAndTime() {
+		Metrics m = Metrics.parse("->  Seq Scan on t  (cost=0.00..671.72 rows=7763 width=70) (actual time=0.032..0.089 rows=14 loops=3)");
+		assertTrue(m.hasCost());
+		assertEquals(0f, m.getStartupCost(), 0);
+		assertEquals(671.72f, m.getTotalCost(), 0);
+		assertEquals(7763, m.getPlanRows());
+		assertEquals(70, m.getPlanWidth());
+		assertTrue(m.hasTime());
+		assertEquals(0.032f, m.getStartupTime(), 0);
+		assertEquals(0.089f, m.getTotalTime(), 0);
+		assertEquals(14, m.getActualRows());
+		assertEquals(3, m.getLoops());
+		assertFalse(m.isTrigger());
+	}
+
+	/**
+	 * Scans a line that was never executed and a line with row counts that do not fit in an int.
+	 */
+	@Test
+	public void testNeverExecutedAndLargeRows() {
+		Metrics m = Metrics.parse("->  Index Scan using idx on t  (cost=0.00..8.48 rows=1 width=8) (never executed)");
+		assertTrue(m.hasCost());
+		assertFalse(m.hasTime());
+		m = Metrics.parse("Seq Scan on big  (cost=0.00..1.00 rows=5000000000 width=4) (actual time=1.5..2.5 rows=6000000000 loops=1)");
+		assertEquals(5000000000L, m.getPlanRows());
+		assertEquals(6000000000L, m.getActualRows());
+	}
+
+	/**
+	 * Scans a trigger line.
+	 */
+	@Test
+	public void testTrigger() {
+		Metrics m = Metrics.parse("Trigger for constraint fk1: time=1.056 calls=2");
+		assertTrue(m.isTrigger());
+		assertEquals(1.056f, m.getTriggerTime(), 0);
+		assertEquals(2, m.getTriggerCalls());
+		assertFalse(m.hasTime());
+	}
+}
@@ -0,0 +1,120 @@
+package se.pex.analyze;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests searching the lines of the nodes of a plan.
+ */
+public class NodeIndexTest {
+	/** A join of two partitions, with filters on both scans. */
+	private static final String PLAN =
+		"Hash Join  (cost=1.00..20.00 rows=10 width=8) (actual time=1.000..10.000 rows=10 loops=1)\n"
+		+ "  Hash Cond: (o.customer_id = c.id)\n"
+		+ "  ->  Seq Scan on orders_2024 o  (cost=0.00..10.00 rows=10 width=4) (actual time=0.010..6.000 rows=10 loops=1)\n"
+		+ "        Filter: (total > 100)\n"
+		+ "        Rows Removed by Filter: 990\n"
+		+ "  ->  Hash  (cost=1.00..1.00 rows=10 width=4) (actual time=0.500..2.000 rows=10 loops=1)\n"
+		+ "        ->  Seq Scan on customers c  (cost=0.00..1.00 rows=10 width=4) (actual time=0.010..1.000 rows=10 loops=1)\n"
+		+ "              Filter: (country = 'SE'::text)\n"
+		+ "              Rows Removed by Filter: 5\n";
+
+	/**
+	 * Finds nodes by table name, by extra lines and by parts of words.
+	 */
+	@Test
+	public void testSearch() {
+		Node root = Engine.analyze(PLAN);
+		Node orders = root.getChildren().get(0);
+		Node customers = root.getChildren().get(1).getChildren().get(0);
+		NodeIndex index = NodeIndex.build(root);
+		assertEquals(4, index.size());
+
+		List<Node> matches = searchAll(index, "orders_2024");
+		assertEquals(1, matches.size());
+		assertSame(orders, matches.get(0));
+
+		matches = searchAll(index, "Rows Removed by Filter");
+		assertEquals(2, matches.size());
+		assertSame(orders, matches.get(0));
+		assertSame(customers, matches.get(1));
+
+		// The first word may be the end of a word, the last word the start of a word
+		assertEquals(1, searchAll(index, "ers_20").size());
+		assertEquals(2, searchAll(index, "ved by filt").size());
+		assertEquals(2, searchAll(index, "customer").size());
+		assertEquals(1, searchAll(index, "o.customer_id = c").size());
+		// The words are there, but not next to each other
+		assertEquals(0, searchAll(index, "removed filter").size());
+		assertEquals(0, searchAll(index, "ved by ilter").size());
+		// Queries without words look at every node
+		assertEquals(1, searchAll(index, "::").size());
+		assertEquals(1, searchAll(index, " > ").size());
+		assertEquals(0, searchAll(index, "").size());
+		assertEquals(0, searchAll(index, "lineitem").size());
+	}
+
+	/**
+	 * The index of a compact tree should find the same nodes, without a node object for every node.
+	 */
+	@Test
+	public void testCompact() {
+		Node root = Engine.analyze(PLAN);
+		Node compact = PlanTable.compact(root).getRoot();
+		NodeIndex index = NodeIndex.build(compact);
+		List<Node> matches = searchAll(index, "rows removed by filter: 5");
+		assertEquals(1, matches.size());
+		assertSame(compact.getChildren().get(1).getChildren().get(0), matches.get(0));
+		assertEquals(1, searchAll(index, "ORDERS_2024 O").size());
+		// A query is never found across lines
+		assertEquals(0, searchAll(index, "(total > 100) rows").size());
+	}
+
+	/**
+	 * A search should give the matches a few nodes at a time, in pre order.
+	 */
+	@Test
+	public void testIncremental() {
+		Node root = Engine.analyze(new PlanGenerator(31).setNodeCount(5000).generate().getText());
+		NodeIndex index = NodeIndex.build(root);
+		NodeIndex.Search search = index.search("scan");
+		List<Node> all = new ArrayList<Node>();
+		int steps = 0;
+		while (!search.isDone()) {
+			all.addAll(search.next(100));
+			steps++;
+		}
+		assertTrue(steps > 1);
+		assertTrue(all.size() > 0);
+		int linear = 0;
+		for (int i = 0; i < index.size(); i++) {
+			if (index.getNode(i).getMainLine().toLowerCase().contains("scan")) {
+				linear++;
+			}
+		}
+		// Only the main lines are searched above, the extra lines may add matches
+		assertTrue(all.size() >= linear);
+		assertEquals(all.size(), searchAll(NodeIndex.build(PlanTable.compact(root).getRoot()), "scan").size());
+	}
+
+	/**
+	 * Runs a search to the end.
+	 * @param index The index.
+	 * @param query The query.
+	 * @return All matches.
+	 */
+	private static List<Node> searchAll(NodeIndex index, String query) {
+		NodeIndex.Search search = index.search(query);
+		List<Node> matches = new ArrayList<Node>();
+		while (!search.isDone()) {
+			matches.addAll(search.next(2));
+		}
+		return matches;
+	}
+}
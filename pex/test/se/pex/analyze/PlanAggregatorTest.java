@@ -0,0 +1,115 @@
+package se.pex.analyze;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import se.pex.analyze.PlanAggregator.Misestimate;
+import se.pex.analyze.PlanAggregator.NodeType;
+
+/**
+ * A test for summing up plans by node type.
+ */
+public class PlanAggregatorTest {
+	/** A sort of a scan, both with too high row estimates. */
+	private static final String SORT_PLAN =
+		"Sort  (cost=10.00..11.00 rows=100 width=4) (actual time=1.000..5.000 rows=10 loops=1)\n"
+		+ "  Sort Key: x.id\n"
+		+ "  Sort Method: quicksort  Memory: 25kB\n"
+		+ "  ->  Seq Scan on a x  (cost=0.00..1.00 rows=100 width=4) (actual time=0.010..2.000 rows=10 loops=1)\n";
+
+	/** A scan with a too low row estimate. */
+	private static final String SCAN_PLAN =
+		"Seq Scan on a  (cost=0.00..1.00 rows=1 width=4) (actual time=0.010..3.000 rows=1000 loops=1)\n";
+
+	/**
+	 * Sums up two plans, the aliases should be left out of the types and the sort method added.
+	 */
+	@Test
+	public void testAdd() {
+		PlanAggregator aggregator = new PlanAggregator(10);
+		aggregator.add(0, Engine.analyze(SORT_PLAN));
+		aggregator.add(1, Engine.analyze(SCAN_PLAN));
+		assertEquals(2, aggregator.getPlanCount());
+		assertEquals(2, aggregator.getTypeCount());
+		assertEquals(8.0, aggregator.getTotalTime(), 0.0001);
+
+		List<NodeType> types = aggregator.getHottestTypes();
+		assertEquals(2, types.size());
+		assertEquals("Seq Scan on a", types.get(0).getName());
+		assertEquals(2, types.get(0).getCount());
+		assertEquals(5.0, types.get(0).getExclusiveTime(), 0.0001);
+		assertEquals(1000, types.get(0).getWorstEstimate());
+		assertEquals("Sort with quicksort", types.get(1).getName());
+		assertEquals(3.0, types.get(1).getExclusiveTime(), 0.0001);
+
+		List<Misestimate> misestimates = aggregator.getWorstEstimates();
+		// The sort carries the error of the scan below it
+		assertEquals(2, misestimates.size());
+		assertEquals(1, misestimates.get(0).getPlan());
+		assertEquals(1000, misestimates.get(0).getCount());
+		assertFalse(misestimates.get(0).isToHigh());
+		assertEquals(0, misestimates.get(1).getPlan());
+		assertEquals(10, misestimates.get(1).getCount());
+		assertTrue(misestimates.get(1).isToHigh());
+	}
+
+	/**
+	 * Gets the type names of plan nodes that are not plain scans.
+	 */
+	@Test
+	public void testTypeNames() {
+		Node root = Engine.analyze(
+			"Index Scan using a_pkey on a x  (cost=0.00..8.27 rows=1 width=4) (actual time=0.010..0.900 rows=1 loops=1)\n"
+			+ "  SubPlan 1\n"
+			+ "    ->  Result  (cost=0.00..0.01 rows=1 width=0) (actual time=0.001..0.001 rows=1 loops=1)\n");
+		assertEquals("Index Scan using a_pkey on a", PlanAggregator.getTypeName(root, root.getMainLine()));
+		Node subPlan = root.getChildren().get(0);
+		assertEquals("SubPlan", PlanAggregator.getTypeName(subPlan, subPlan.getMainLine()));
+		Node result = subPlan.getChildren().get(0);
+		assertEquals("Result", PlanAggregator.getTypeName(result, result.getMainLine()));
+		assertEquals("Trigger for constraint a_fkey", PlanAggregator.getTypeName(root, "Trigger for constraint a_fkey: time=0.100 calls=1"));
+	}
+
+	/**
+	 * Sums up many generated plans, only the hottest types and worst estimates should be kept, in order.
+	 */
+	@Test
+	public void testTopCount() {
+		PlanAggregator aggregator = new PlanAggregator(5);
+		for (int i = 0; i < 50; i++) {
+			aggregator.add(i, Engine.analyze(new PlanGenerator(i).setNodeCount(30).generate().getText()));
+		}
+		assertEquals(50, aggregator.getPlanCount());
+		List<NodeType> types = aggregator.getHottestTypes();
+		assertEquals(Math.min(5, aggregator.getTypeCount()), types.size());
+		for (int i = 1; i < types.size(); i++) {
+			assertTrue(types.get(i - 1).getExclusiveTime() >= types.get(i).getExclusiveTime());
+		}
+		List<Misestimate> misestimates = aggregator.getWorstEstimates();
+		assertTrue(misestimates.size() <= 5);
+		for (int i = 1; i < misestimates.size(); i++) {
+			assertTrue(misestimates.get(i - 1).getCount() >= misestimates.get(i).getCount());
+		}
+	}
+
+	/**
+	 * Ranks misestimates by the exact q-error, errors with the same rounded ratio are still told apart.
+	 */
+	@Test
+	public void testRankByQError() {
+		PlanAggregator aggregator = new PlanAggregator(1);
+		aggregator.add(0, Engine.analyze("Seq Scan on a  (cost=0.00..1.00 rows=10 width=4) (actual time=0.010..3.000 rows=21 loops=1)\n"));
+		aggregator.add(1, Engine.analyze("Seq Scan on b  (cost=0.00..1.00 rows=10 width=4) (actual time=0.010..3.000 rows=29 loops=1)\n"));
+		aggregator.add(2, Engine.analyze("Seq Scan on c  (cost=0.00..1.00 rows=10 width=4) (actual time=0.010..3.000 rows=25 loops=1)\n"));
+		List<Misestimate> misestimates = aggregator.getWorstEstimates();
+		assertEquals(1, misestimates.size());
+		assertEquals(1, misestimates.get(0).getPlan());
+		assertEquals(2, misestimates.get(0).getCount());
+		assertEquals(2.9f, misestimates.get(0).getQError(), 0.0001f);
+	}
+}
@@ -0,0 +1,142 @@
+package se.pex.analyze;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import org.junit.Test;
+
+import se.pex.analyze.PlanDiff.Pair;
+
+/**
+ * A test for aligning the nodes of two plans.
+ */
+public class PlanDiffTest {
+	/** A hash join of a scan of a and a scan of b. */
+	private static final String BEFORE =
+		"Hash Join  (cost=1.00..20.00 rows=10 width=8) (actual time=1.000..9.000 rows=10 loops=1)\n"
+		+ "  Hash Cond: (a.id = b.id)\n"
+		+ "  ->  Seq Scan on a  (cost=0.00..10.00 rows=1000 width=4) (actual time=0.010..6.000 rows=1000 loops=1)\n"
+		+ "  ->  Hash  (cost=1.00..1.00 rows=10 width=4) (actual time=0.500..0.500 rows=10 loops=1)\n"
+		+ "        ->  Seq Scan on b  (cost=0.00..1.00 rows=10 width=4) (actual time=0.010..0.400 rows=10 loops=1)\n";
+
+	/** The same join with the sides swapped, and an index scan of a inside a nested loop. */
+	private static final String AFTER =
+		"Nested Loop  (cost=0.00..9.00 rows=10 width=8) (actual time=0.100..2.000 rows=10 loops=1)\n"
+		+ "  ->  Hash  (cost=1.00..1.00 rows=10 width=4) (actual time=0.500..0.500 rows=10 loops=1)\n"
+		+ "        ->  Seq Scan on b  (cost=0.00..1.00 rows=10 width=4) (actual time=0.010..0.400 rows=10 loops=1)\n"
+		+ "  ->  Index Scan using a_pkey on a  (cost=0.00..0.50 rows=1 width=4) (actual time=0.010..0.100 rows=1 loops=10)\n";
+
+	/**
+	 * Compares a plan with itself, every node should be matched with its copy.
+	 */
+	@Test
+	public void testSamePlan() {
+		Node before = Engine.analyze(BEFORE);
+		Node after = Engine.analyze(BEFORE);
+		PlanDiff diff = PlanDiff.compare(before, after);
+		assertEquals(before.getSubtreeNodeCount(), diff.getMatchedCount());
+		checkPairs(diff.getRoot());
+		assertSame(after.getChildren().get(1).getChildren().get(0), diff.getMatch(before.getChildren().get(1).getChildren().get(0)));
+	}
+
+	/**
+	 * Compares a tuned plan, the moved hash should be found and the scans of a matched as a changed node.
+	 */
+	@Test
+	public void testChangedPlan() {
+		Node before = Engine.analyze(BEFORE);
+		Node after = Engine.analyze(AFTER);
+		PlanDiff diff = PlanDiff.compare(before, after);
+		assertEquals(before.getSubtreeNodeCount(), diff.getMatchedCount());
+
+		Node join = before;
+		Node afterJoin = after;
+		assertSame(afterJoin, diff.getMatch(join));
+		assertSame(afterJoin.getChildren().get(0), diff.getMatch(join.getChildren().get(1)));
+		assertSame(afterJoin.getChildren().get(1), diff.getMatch(join.getChildren().get(0)));
+
+		Pair joinPair = diff.getRoot();
+		assertEquals(-7.0f, joinPair.getTimeInclusiveDelta(), 0.0001);
+		Pair scanPair = joinPair.getChildren().get(0);
+		assertEquals(9, scanPair.getLoopsDelta());
+		assertEquals(-5.0f, scanPair.getTimeInclusiveDelta(), 0.0001);
+		checkPairs(diff.getRoot());
+	}
+
+	/**
+	 * The q-error delta is positive where the row estimate got worse.
+	 */
+	@Test
+	public void testQErrorDelta() {
+		Node before = Engine.analyze(BEFORE);
+		Node after = Engine.analyze(AFTER.replace("Seq Scan on b  (cost=0.00..1.00 rows=10", "Seq Scan on b  (cost=0.00..1.00 rows=1000"));
+		PlanDiff diff = PlanDiff.compare(before, after);
+		Pair hashPair = diff.getRoot().getChildren().get(1);
+		assertSame(before.getChildren().get(1), hashPair.getBefore());
+		Pair scanPair = hashPair.getChildren().get(0);
+		assertEquals(99.0f, scanPair.getQErrorDelta(), 0.0001);
+		assertEquals(0.0f, hashPair.getQErrorDelta(), 0.0001);
+		assertEquals(0.0f, PlanDiff.compare(before, before).getRoot().getQErrorDelta(), 0);
+	}
+
+	/**
+	 * Compares plans where a node has been added above a scan, the scan should still be matched and the new
+	 * node be shown below its parent.
+	 */
+	@Test
+	public void testAddedNode() {
+		Node before = Engine.analyze(AFTER);
+		Node after = Engine.analyze(AFTER.replace("  ->  Index Scan", "  ->  Materialize  (cost=0.00..1.00 rows=1 width=4) (actual time=0.010..0.200 rows=1 loops=10)\n        ->  Index Scan"));
+		PlanDiff diff = PlanDiff.compare(before, after);
+		assertEquals(before.getSubtreeNodeCount(), diff.getMatchedCount());
+		List<Pair> children = diff.getRoot().getChildren();
+		assertEquals(3, children.size());
+		Pair scan = children.get(1);
+		assertSame(after.getChildren().get(1).getChildren().get(0), scan.getAfter());
+		assertNull(children.get(2).getBefore());
+		assertTrue(children.get(2).getAfter().getMainLine().contains("Materialize"));
+		checkPairs(diff.getRoot());
+	}
+
+	/**
+	 * Compares large generated plans, which should be quick.
+	 */
+	@Test
+	public void testLargePlans() {
+		Node before = Engine.analyze(new PlanGenerator(21).setNodeCount(10000).generate().getText());
+		Node after = Engine.analyze(new PlanGenerator(22).setNodeCount(10000).generate().getText());
+		long start = System.nanoTime();
+		PlanDiff diff = PlanDiff.compare(before, after);
+		assertTrue(System.nanoTime() - start < 5000000000L);
+		checkPairs(diff.getRoot());
+		assertEquals(before.getSubtreeNodeCount(), PlanDiff.compare(before, before).getMatchedCount());
+	}
+
+	/**
+	 * Checks that every node of both plans is in exactly one line.
+	 * @param root The root line.
+	 */
+	private static void checkPairs(Pair root) {
+		int beforeCount = 0;
+		int afterCount = 0;
+		Deque<Pair> stack = new ArrayDeque<Pair>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			Pair pair = stack.pop();
+			beforeCount += pair.getBefore() == null ? 0 : 1;
+			afterCount += pair.getAfter() == null ? 0 : 1;
+			for (Pair child : pair.getChildren()) {
+				assertSame(pair, child.getParent());
+				stack.push(child);
+			}
+		}
+		assertEquals(root.getBefore().getSubtreeNodeCount(), beforeCount);
+		assertEquals(root.getAfter().getSubtreeNodeCount(), afterCount);
+	}
+}
@@ -0,0 +1,446 @@
+package se.pex.analyze;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates explain analyze texts as given by psql, for testing the parser on plans of any size.
+ * The same seed and settings always give the same plan. Besides the text, the output expected from
+ * <code>Node.toString()</code> on the analyzed root is generated.
+ * <p>
+ * The root is an Append node that gets subtrees until the node count is reached. Every node in a subtree
+ * gets between one and the fan out children, until the max depth is reached.
+ */
+public class PlanGenerator {
+	/** Names of nodes that have children. */
+	private static final String[] INNER_NODES = { "Hash Join", "Nested Loop", "Merge Join", "Sort", "Hash", "Aggregate", "Materialize" };
+
+	/** Names of scan nodes, %d is replaced with a table number. */
+	private static final String[] SCAN_NODES = { "Seq Scan on orders_%d o", "Index Scan using items_%d_pkey on items_%d i",
+		"Bitmap Heap Scan on customers_%d c", "Index Only Scan using idx_%d on lines_%d l" };
+
+	/** A generated node. */
+	private static class GeneratedNode {
+		/** The node text without costs and times. */
+		private String name;
+		/** Detail lines, each detail is a list of parts that are printed on separate lines. */
+		private List<List<String>> details = new ArrayList<List<String>>();
+		/** Init plans, printed before the children. */
+		private List<GeneratedNode> initPlans = new ArrayList<GeneratedNode>();
+		/** Children. */
+		private List<GeneratedNode> children = new ArrayList<GeneratedNode>();
+		/** Sub plans, printed after the children. */
+		private List<GeneratedNode> subPlans = new ArrayList<GeneratedNode>();
+		/** Depth below the root. */
+		private int depth;
+		/** <code>true</code> if the node was never executed. */
+		private boolean neverExecuted;
+		/** Number of loops. */
+		private int loops = 1;
+		/** Actual rows per loop. */
+		private long rows;
+		/** Estimated rows. */
+		private long planRows;
+		/** Inclusive time of all loops. */
+		private double time;
+	}
+
+	/** The random generator. */
+	private final Random random;
+
+	/** Max depth of the plan. */
+	private int maxDepth = 4;
+
+	/** Max number of children of a node, the root is not limited. */
+	private int fanOut = 3;
+
+	/** Number of nodes to generate. */
+	private int nodeCount = 100;
+
+	/** Chance that a node gets a SubPlan, in percent. */
+	private int subPlanPercent = 10;
+
+	/** Chance that a node gets an InitPlan, in percent. */
+	private int initPlanPercent = 5;
+
+	/** Chance that a subtree was never executed, in percent. */
+	private int neverExecutedPercent = 5;
+
+	/** Chance that a node has a long filter split over several lines, in percent. */
+	private int longFilterPercent = 10;
+
+	/** Number of trigger lines. */
+	private int triggers;
+
+	/** Number of nodes generated so far. */
+	private int generated;
+
+	/** Counter for SubPlan and InitPlan numbers. */
+	private int planNumber;
+
+	/** The generated text. */
+	private StringBuilder text;
+
+	/** The expected output of toString on the analyzed root. */
+	private StringBuilder expected;
+
+	/**
+	 * Creates a new generator.
+	 * @param seed The random seed.
+	 */
+	public PlanGenerator(long seed) {
+		random = new Random(seed);
+	}
+
+	/**
+	 * @param maxDepth Max depth of the plan, the children of the root are on depth 1.
+	 * @return This generator.
+	 */
+	public PlanGenerator setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+		return this;
+	}
+
+	/**
+	 * @param fanOut Max number of children of a node, the root is not limited.
+	 * @return This generator.
+	 */
+	public PlanGenerator setFanOut(int fanOut) {
+		this.fanOut = fanOut;
+		return this;
+	}
+
+	/**
+	 * @param nodeCount Number of nodes to generate, including SubPlan and trigger nodes.
+	 * @return This generator.
+	 */
+	public PlanGenerator setNodeCount(int nodeCount) {
+		this.nodeCount = nodeCount;
+		return this;
+	}
+
+	/**
+	 * @param subPlanPercent Chance that a node gets a SubPlan, in percent.
+	 * @return This generator.
+	 */
+	public PlanGenerator setSubPlanPercent(int subPlanPercent) {
+		this.subPlanPercent = subPlanPercent;
+		return this;
+	}
+
+	/**
+	 * @param initPlanPercent Chance that a node gets an InitPlan, in percent.
+	 * @return This generator.
+	 */
+	public PlanGenerator setInitPlanPercent(int initPlanPercent) {
+		this.initPlanPercent = initPlanPercent;
+		return this;
+	}
+
+	/**
+	 * @param neverExecutedPercent Chance that a subtree was never executed, in percent.
+	 * @return This generator.
+	 */
+	public PlanGenerator setNeverExecutedPercent(int neverExecutedPercent) {
+		this.neverExecutedPercent = neverExecutedPercent;
+		return this;
+	}
+
+	/**
+	 * @param longFilterPercent Chance that a node has a long filter split over several lines, in percent.
+	 * @return This generator.
+	 */
+	public PlanGenerator setLongFilterPercent(int longFilterPercent) {
+		this.longFilterPercent = longFilterPercent;
+		return this;
+	}
+
+	/**
+	 * @param triggers Number of trigger lines after the plan.
+	 * @return This generator.
+	 */
+	public PlanGenerator setTriggers(int triggers) {
+		this.triggers = triggers;
+		return this;
+	}
+
+	/**
+	 * Generates the plan, the result is read with {@link #getText()} and {@link #getExpected()}.
+	 * @return This generator.
+	 */
+	public PlanGenerator generate() {
+		generated = 0;
+		planNumber = 0;
+		GeneratedNode root = createNode(0, false);
+		root.name = "Append";
+		while (generated < nodeCount - triggers) {
+			root.children.add(createSubtree(1, root.neverExecuted));
+		}
+		calculateTimes(root);
+		text = new StringBuilder();
+		expected = new StringBuilder();
+		text.append("                QUERY PLAN\n");
+		text.append("--------------------------------------------------\n");
+		print(root);
+		double total = root.time;
+		for (int i = 0; i < triggers; i++) {
+			double time = 0.01 + random.nextInt(5000) / 1000.0;
+			total += time;
+			String line = "Trigger for constraint fk_" + i + ": time=" + format(time, 3) + " calls=" + (1 + random.nextInt(100));
+			text.append(' ').append(line).append('\n');
+			expected.append("  ").append(line).append('\n');
+		}
+		text.append(" Total runtime: ").append(format(total + 0.5, 3)).append(" ms\n");
+		return this;
+	}
+
+	/**
+	 * @return The explain text as given by psql.
+	 */
+	public String getText() {
+		return text.toString();
+	}
+
+	/**
+	 * @return The expected output of <code>toString()</code> on the analyzed root.
+	 */
+	public String getExpected() {
+		return expected.toString();
+	}
+
+	/**
+	 * @return The number of nodes in the generated plan.
+	 */
+	public int getNodeCount() {
+		return generated + triggers;
+	}
+
+	/**
+	 * Creates a node, without children.
+	 * @param depth The depth below the root.
+	 * @param parentNeverExecuted <code>true</code> if the parent was never executed.
+	 * @return The new node.
+	 */
+	private GeneratedNode createNode(int depth, boolean parentNeverExecuted) {
+		GeneratedNode node = new GeneratedNode();
+		node.depth = depth;
+		node.neverExecuted = parentNeverExecuted || (depth > 0 && random.nextInt(100) < neverExecutedPercent);
+		node.rows = random.nextInt(10) == 0 ? 0 : 1 + random.nextInt(random.nextBoolean() ? 100 : 100000);
+		node.planRows = Math.max(1, random.nextBoolean() ? node.rows : node.rows * (1 + random.nextInt(2000)) / (1 + random.nextInt(2000)));
+		generated++;
+		return node;
+	}
+
+	/**
+	 * Creates a subtree depth first, so that deep plans reach the max depth.
+	 * @param depth The depth of the root of the subtree.
+	 * @param parentNeverExecuted <code>true</code> if the parent was never executed.
+	 * @return The root of the subtree.
+	 */
+	private GeneratedNode createSubtree(int depth, boolean parentNeverExecuted) {
+		GeneratedNode top = createNode(depth, parentNeverExecuted);
+		Deque<GeneratedNode> stack = new ArrayDeque<GeneratedNode>();
+		stack.push(top);
+		while (!stack.isEmpty()) {
+			GeneratedNode node = stack.pop();
+			int childCount = node.depth < maxDepth ? 1 + random.nextInt(fanOut) : 0;
+			for (int i = 0; i < childCount && generated < nodeCount - triggers; i++) {
+				GeneratedNode child = createNode(node.depth + 1, node.neverExecuted);
+				node.children.add(child);
+				stack.push(child);
+			}
+			if (node.depth < maxDepth && generated < nodeCount - triggers - 1 && random.nextInt(100) < initPlanPercent) {
+				GeneratedNode child = createNode(node.depth + 1, node.neverExecuted);
+				node.initPlans.add(child);
+				stack.push(child);
+			}
+			if (node.depth < maxDepth && generated < nodeCount - triggers - 2 && random.nextInt(100) < subPlanPercent) {
+				// The SubPlan line is a node of its own
+				generated++;
+				GeneratedNode child = createNode(node.depth + 1, node.neverExecuted);
+				child.loops = node.neverExecuted ? 1 : (int) Math.max(1, Math.min(node.rows, 1000));
+				node.subPlans.add(child);
+				stack.push(child);
+			}
+			if (random.nextInt(100) < longFilterPercent) {
+				node.details.add(createLongFilter());
+			}
+			else if (random.nextBoolean()) {
+				List<String> detail = new ArrayList<String>();
+				detail.add("Filter: (id_" + node.depth + " = " + random.nextInt(1000) + ")");
+				node.details.add(detail);
+				if (random.nextBoolean()) {
+					detail = new ArrayList<String>();
+					detail.add("Rows Removed by Filter: " + random.nextInt(100000));
+					node.details.add(detail);
+				}
+			}
+		}
+		return top;
+	}
+
+	/**
+	 * Creates a long filter that psql has wrapped over several lines.
+	 * @return The parts of the filter, every part is printed on a line of its own.
+	 */
+	private List<String> createLongFilter() {
+		StringBuilder filter = new StringBuilder("Filter: (");
+		int conditions = 5 + random.nextInt(20);
+		for (int i = 0; i < conditions; i++) {
+			if (i > 0) {
+				filter.append(" OR ");
+			}
+			filter.append("((col_").append(random.nextInt(50)).append(")::text = 'value_").append(random.nextInt(100000)).append("'::text)");
+		}
+		filter.append(')');
+		List<String> parts = new ArrayList<String>();
+		int start = 0;
+		while (start < filter.length()) {
+			int end = Math.min(filter.length(), start + 40 + random.nextInt(40));
+			// Spaces at the end of a line are lost and at the start of a line they look like indentation
+			while (end < filter.length() && (filter.charAt(end) == ' ' || filter.charAt(end - 1) == ' ')) {
+				end++;
+			}
+			parts.add(filter.substring(start, end));
+			start = end;
+		}
+		return parts;
+	}
+
+	/**
+	 * Calculates inclusive times bottom up, so that a parent always takes at least as long as its children.
+	 * @param root The root node.
+	 */
+	private void calculateTimes(GeneratedNode root) {
+		List<GeneratedNode> preOrder = new ArrayList<GeneratedNode>();
+		Deque<GeneratedNode> stack = new ArrayDeque<GeneratedNode>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			GeneratedNode node = stack.pop();
+			preOrder.add(node);
+			for (GeneratedNode child : allChildren(node)) {
+				stack.push(child);
+			}
+		}
+		for (int i = preOrder.size() - 1; i >= 0; i--) {
+			GeneratedNode node = preOrder.get(i);
+			node.time = node.neverExecuted ? 0 : (random.nextInt(10) == 0 ? random.nextInt(5000000) : random.nextInt(5000)) / 1000.0;
+			for (GeneratedNode child : allChildren(node)) {
+				node.time += child.time;
+			}
+		}
+	}
+
+	/**
+	 * @param node The node.
+	 * @return The init plans, children and sub plans of the node, in the order they are printed.
+	 */
+	private static List<GeneratedNode> allChildren(GeneratedNode node) {
+		List<GeneratedNode> all = new ArrayList<GeneratedNode>(node.initPlans);
+		all.addAll(node.children);
+		all.addAll(node.subPlans);
+		return all;
+	}
+
+	/**
+	 * Prints the plan, iteratively as deep plans are allowed.
+	 * @param root The root node.
+	 */
+	private void print(GeneratedNode root) {
+		Deque<Object[]> stack = new ArrayDeque<Object[]>();
+		// Column of the arrow, the root has no arrow but is printed as if it had one at column -3
+		stack.push(new Object[] { root, -3, 0, null });
+		while (!stack.isEmpty()) {
+			Object[] item = stack.pop();
+			GeneratedNode node = (GeneratedNode) item[0];
+			int arrow = (Integer) item[1];
+			int level = (Integer) item[2];
+			String header = (String) item[3];
+			if (header != null) {
+				// A SubPlan line is a node in the tree, an InitPlan line is a detail of the parent
+				indent(text, arrow - 2).append(header).append('\n');
+				if (header.startsWith("SubPlan")) {
+					indent(expected, 2 * level).append(header).append('\n');
+					level++;
+				}
+				else {
+					indent(expected, 2 * (level - 1)).append(header).append('\n');
+				}
+			}
+			String numbers = getNumbers(node);
+			String line = (arrow < 0 ? "" : "->  ") + node.name + "  " + numbers;
+			indent(text, arrow < 0 ? 1 : arrow).append(line).append('\n');
+			indent(expected, 2 * level).append(line).append('\n');
+			for (List<String> detail : node.details) {
+				indent(text, arrow + 6).append(detail.get(0)).append('\n');
+				indent(expected, 2 * level).append(detail.get(0));
+				for (int i = 1; i < detail.size(); i++) {
+					text.append(detail.get(i)).append('\n');
+					expected.append(detail.get(i));
+				}
+				expected.append('\n');
+			}
+			List<Object[]> children = new ArrayList<Object[]>();
+			for (GeneratedNode child : node.initPlans) {
+				planNumber++;
+				children.add(new Object[] { child, arrow + 8, level + 1, "InitPlan " + planNumber + " (returns $" + planNumber + ")" });
+			}
+			for (GeneratedNode child : node.children) {
+				children.add(new Object[] { child, arrow + 6, level + 1, null });
+			}
+			for (GeneratedNode child : node.subPlans) {
+				planNumber++;
+				children.add(new Object[] { child, arrow + 8, level + 1, "SubPlan " + planNumber });
+			}
+			for (int i = children.size() - 1; i >= 0; i--) {
+				stack.push(children.get(i));
+			}
+		}
+	}
+
+	/**
+	 * @param node The node.
+	 * @return The costs and times of a node as printed by psql.
+	 */
+	private String getNumbers(GeneratedNode node) {
+		if (node.name == null) {
+			node.name = node.children.isEmpty() && node.initPlans.isEmpty() && node.subPlans.isEmpty()
+				? String.format(Locale.ROOT, SCAN_NODES[random.nextInt(SCAN_NODES.length)], random.nextInt(100), random.nextInt(100))
+				: INNER_NODES[random.nextInt(INNER_NODES.length)];
+		}
+		double cost = node.time * (1 + random.nextInt(100));
+		String numbers = "(cost=" + format(cost / 10, 2) + ".." + format(cost, 2) + " rows=" + node.planRows + " width=" + (4 + random.nextInt(200)) + ")";
+		if (node.neverExecuted) {
+			return numbers + " (never executed)";
+		}
+		double perLoop = node.time / node.loops;
+		return numbers + " (actual time=" + format(perLoop / 10, 3) + ".." + format(perLoop, 3) + " rows=" + node.rows + " loops=" + node.loops + ")";
+	}
+
+	/**
+	 * Formats a number like psql.
+	 * @param value The number.
+	 * @param decimals Number of decimals.
+	 * @return The formatted number.
+	 */
+	private static String format(double value, int decimals) {
+		return String.format(Locale.ROOT, "%." + decimals + "f", value);
+	}
+
+	/**
+	 * Appends spaces.
+	 * @param res The text to append to.
+	 * @param count Number of spaces.
+	 * @return The text.
+	 */
+	private static StringBuilder indent(StringBuilder res, int count) {
+		for (int i = 0; i < count; i++) {
+			res.append(' ');
+		}
+		return res;
+	}
+}
@@ -0,0 +1,159 @@
+package se.pex.analyze;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A test for indexing the plans of an auto_explain log.
+ */
+public class PlanLogTest {
+	/** The log used by the tests. */
+	private static final String LOG =
+		"2015-03-01 10:00:00 CET LOG:  database system is ready to accept connections\n"
+		+ "2015-03-01 10:00:01 CET LOG:  duration: 12.345 ms  plan:\n"
+		+ "\tQuery Text: select *\n"
+		+ "\t  from a\n"
+		+ "\tSeq Scan on a  (cost=0.00..1.00 rows=10 width=4) (actual time=0.010..12.000 rows=5 loops=1)\n"
+		+ "\t  Filter: (id > 1)\n"
+		+ "2015-03-01 10:00:02 CET LOG:  statement: select 1\n"
+		+ "2015-03-01 10:00:03 CET LOG:  duration: 2.5 ms  plan:\n"
+		+ "\t{\n"
+		+ "\t  \"Query Text\": \"select * from b\",\n"
+		+ "\t  \"Plan\": {\"Node Type\": \"Seq Scan\", \"Relation Name\": \"b\", \"Alias\": \"b\",\n"
+		+ "\t    \"Actual Startup Time\": 0.01, \"Actual Total Time\": 2.0, \"Actual Rows\": 1, \"Actual Loops\": 1}\n"
+		+ "\t}\n"
+		+ "2015-03-01 10:00:04 CET LOG:  duration: 1.000 ms  plan:\n"
+		+ "\tQuery Text: select * from c\n"
+		+ "\tIndex Scan using c_pkey on c  (cost=0.00..8.27 rows=1 width=4) (actual time=0.010..0.900 rows=1 loops=1)";
+
+	/** The log file. */
+	private File file;
+
+	/**
+	 * Writes the log file.
+	 * @throws IOException On error writing the file.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("pex", ".log");
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(LOG.getBytes("UTF-8"));
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Removes the log file.
+	 */
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * Indexes the log, the plans should be found with their log lines and be read without the query text.
+	 * @throws IOException On error reading the file.
+	 */
+	@Test
+	public void testIndex() throws IOException {
+		assertTrue(PlanLog.isLog(file));
+		PlanLog log = PlanLog.index(file, Charset.forName("UTF-8"));
+		assertEquals(3, log.size());
+		assertEquals(1, log.getEntry(0).getLineNumber());
+		assertEquals(12.345f, log.getEntry(0).getDuration(), 0);
+		assertEquals("2015-03-01 10:00:03 CET LOG:  duration: 2.5 ms  plan:", log.getEntry(1).getHeader());
+		assertEquals(13, log.getEntry(2).getLineNumber());
+
+		assertEquals("Seq Scan on a  (cost=0.00..1.00 rows=10 width=4) (actual time=0.010..12.000 rows=5 loops=1)\n"
+			+ "  Filter: (id > 1)\n", log.getPlanText(0));
+		assertEquals("Seq Scan on b (actual time=0.01..2.0 rows=1 loops=1)\n", log.getPlan(1).toString());
+		assertEquals(0.9f, log.getPlan(2).getTotalTime(), 0.0001);
+	}
+
+	/**
+	 * Reads plans through a small cache, the least recently used plan should be analyzed again.
+	 * @throws IOException On error reading the file.
+	 */
+	@Test
+	public void testCache() throws IOException {
+		InputStream in = new FileInputStream(file);
+		PlanLog log;
+		try {
+			log = PlanLog.index(file, Charset.forName("UTF-8"), in, 2);
+		}
+		finally {
+			in.close();
+		}
+		Node first = log.getPlan(0);
+		Node second = log.getPlan(1);
+		assertSame(first, log.getPlan(0));
+		log.getPlan(2);
+		assertSame(first, log.getPlan(0));
+		assertNotSame(second, log.getPlan(1));
+		assertEquals(second.toString(), log.getPlan(1).toString());
+	}
+
+	/**
+	 * Analyzes a log with many plans in parallel, the trees should be in the order of the log.
+	 * @throws IOException On error writing or reading the file.
+	 */
+	@Test
+	public void testAnalyzeAll() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			text.append("2015-03-01 10:00:00 CET LOG:  duration: ").append(i).append(" ms  plan:\n");
+			for (String line : new PlanGenerator(i).setNodeCount(1 + i % 40).generate().getText().split("\n")) {
+				text.append('\t').append(line).append('\n');
+			}
+			text.append("2015-03-01 10:00:00 CET LOG:  statement: select ").append(i).append('\n');
+		}
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(text.toString().getBytes("UTF-8"));
+		}
+		finally {
+			out.close();
+		}
+		PlanLog log = PlanLog.index(file, Charset.forName("UTF-8"));
+		List<Node> roots = Engine.analyzeAll(log, 4);
+		assertEquals(300, roots.size());
+		for (int i = 0; i < roots.size(); i++) {
+			assertEquals(new PlanGenerator(i).setNodeCount(1 + i % 40).generate().getExpected(), roots.get(i).toString());
+		}
+	}
+
+	/**
+	 * A plain explain is not a log.
+	 * @throws IOException On error reading the file.
+	 */
+	@Test
+	public void testNotLog() throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write("Seq Scan on a  (cost=0.00..1.00 rows=10 width=4)\n".getBytes("UTF-8"));
+		}
+		finally {
+			out.close();
+		}
+		assertFalse(PlanLog.isLog(file));
+	}
+}
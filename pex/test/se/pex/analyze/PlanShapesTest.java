@@ -0,0 +1,123 @@
+package se.pex.analyze;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import se.pex.analyze.PlanShapes.Shape;
+
+/**
+ * A test for grouping plans by shape.
+ */
+public class PlanShapesTest {
+	/**
+	 * Creates a join plan.
+	 * @param alias Alias of the scanned table.
+	 * @param id The literal in the condition.
+	 * @param time Total time of the scan.
+	 * @return The plan.
+	 */
+	private static String joinPlan(String alias, int id, String time) {
+		return "Nested Loop  (cost=0.00..20.00 rows=1 width=8) (actual time=0.100..5.000 rows=1 loops=1)\n"
+			+ "  ->  Seq Scan on a " + alias + "  (cost=0.00..1.00 rows=1 width=4) (actual time=0.010.." + time + " rows=1 loops=1)\n"
+			+ "        Filter: (id = " + id + ")\n"
+			+ "  ->  Index Scan using b_pkey on b  (cost=0.00..8.27 rows=1 width=4) (actual time=0.010..0.900 rows=1 loops=1)\n"
+			+ "        Index Cond: (id = " + alias + ".id)\n";
+	}
+
+	/**
+	 * Plans that only differ in numbers, aliases and conditions have the same shape.
+	 */
+	@Test
+	public void testSameShape() {
+		Node first = Engine.analyze(joinPlan("x", 1, "2.000"));
+		Node second = Engine.analyze(joinPlan("y", 2, "3.500"));
+		assertEquals(PlanShapes.fingerprint(first), PlanShapes.fingerprint(second));
+
+		PlanShapes shapes = new PlanShapes();
+		Shape shape = shapes.add(0, first);
+		assertSame(shape, shapes.add(7, second));
+		assertEquals(1, shapes.size());
+		assertEquals(2, shape.getPlanCount());
+		assertEquals(7, shape.getPlan(1));
+		assertEquals("Nested Loop", shape.getName());
+		assertEquals(3, shape.getNodeCount());
+		assertEquals(10.0, shape.getTotalTime(), 0.0001);
+	}
+
+	/**
+	 * Plans with other relations or another nesting have other shapes.
+	 */
+	@Test
+	public void testOtherShape() {
+		Node join = Engine.analyze(joinPlan("x", 1, "2.000"));
+		Node otherRelation = Engine.analyze(joinPlan("x", 1, "2.000").replace("on b", "on c"));
+		Node otherNesting = Engine.analyze(
+			"Nested Loop  (cost=0.00..20.00 rows=1 width=8) (actual time=0.100..5.000 rows=1 loops=1)\n"
+			+ "  ->  Seq Scan on a x  (cost=0.00..1.00 rows=1 width=4) (actual time=0.010..2.000 rows=1 loops=1)\n"
+			+ "        ->  Index Scan using b_pkey on b  (cost=0.00..8.27 rows=1 width=4) (actual time=0.010..0.900 rows=1 loops=1)\n");
+		assertFalse(PlanShapes.fingerprint(join) == PlanShapes.fingerprint(otherRelation));
+		assertFalse(PlanShapes.fingerprint(join) == PlanShapes.fingerprint(otherNesting));
+
+		PlanShapes shapes = new PlanShapes();
+		shapes.add(0, join);
+		shapes.add(1, otherRelation);
+		shapes.add(2, otherNesting);
+		shapes.add(3, Engine.analyze(joinPlan("z", 3, "9.000")));
+		assertEquals(3, shapes.size());
+		assertEquals(4, shapes.getPlanCount());
+		List<Shape> sorted = shapes.getShapes();
+		assertEquals(2, sorted.get(0).getPlanCount());
+		assertTrue(sorted.get(1).getTotalTime() >= sorted.get(2).getTotalTime());
+	}
+
+	/**
+	 * Groups generated plans, every generated plan is added twice.
+	 */
+	@Test
+	public void testGeneratedPlans() {
+		PlanShapes shapes = new PlanShapes();
+		for (int i = 0; i < 40; i++) {
+			Node root = Engine.analyze(new PlanGenerator(i % 20).setNodeCount(50).generate().getText());
+			shapes.add(i, root);
+		}
+		assertEquals(20, shapes.size());
+		for (Shape shape : shapes.getShapes()) {
+			assertEquals(2, shape.getPlanCount());
+			assertEquals(shape.getPlan(0) + 20, shape.getPlan(1));
+			Node expected = Engine.analyze(new PlanGenerator(shape.getPlan(1) % 20).setNodeCount(50).generate().getText());
+			assertEquals(expected.getSubtreeNodeCount(), shape.getNodeCount());
+			assertEquals(2.0 * expected.getTotalTime(), shape.getTotalTime(), 0.001);
+		}
+	}
+
+	/**
+	 * Interned plans of the same shape share the tree structure but keep their own text and numbers.
+	 */
+	@Test
+	public void testIntern() {
+		String firstText = joinPlan("x", 1, "2.000");
+		String secondText = joinPlan("y", 2, "3.500");
+		PlanShapes shapes = new PlanShapes();
+		Node first = shapes.intern(Engine.analyze(firstText));
+		Node second = shapes.intern(Engine.analyze(secondText));
+		Node other = shapes.intern(Engine.analyze(firstText.replace("on b", "on c")));
+		PlanTable firstTable = ((CompactNode) first).getTable();
+		PlanTable secondTable = ((CompactNode) second).getTable();
+		assertSame(firstTable.parent, secondTable.parent);
+		assertSame(firstTable.children, secondTable.children);
+		assertNotSame(firstTable.parent, ((CompactNode) other).getTable().parent);
+		assertEquals(Engine.analyze(firstText).toString(), first.toString());
+		assertEquals(Engine.analyze(secondText).toString(), second.toString());
+		assertEquals(3.5f, second.getChildren().get(0).getTimeInclusive(false), 0.0001f);
+		// Interning does not count plans
+		assertEquals(0, shapes.size());
+		assertEquals(0, shapes.getPlanCount());
+	}
+}
@@ -0,0 +1,214 @@
+package se.pex.analyze;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * A test for the compact plan model, the facade should give the same answers as the node tree it was made from.
+ */
+public class PlanTableTest {
+
+	/**
+	 * Compacts generated plans of different shapes.
+	 */
+	@Test
+	public void testCompactGeneratedPlans() {
+		PlanGenerator[] generators = {
+			new PlanGenerator(11).setTriggers(2),
+			new PlanGenerator(12).setMaxDepth(3).setSubPlanPercent(60).setInitPlanPercent(40).setNodeCount(1000),
+			new PlanGenerator(13).setMaxDepth(200).setFanOut(1).setNeverExecutedPercent(20).setLongFilterPercent(50).setNodeCount(1000),
+			new PlanGenerator(14).setMaxDepth(1).setNodeCount(10000),
+		};
+		for (PlanGenerator generator : generators) {
+			Node root = Engine.analyze(generator.generate().getText());
+			PlanTable table = PlanTable.compact(root);
+			assertEquals(generator.getNodeCount(), table.size());
+			checkSameTree(root, table.getRoot());
+		}
+	}
+
+	/**
+	 * Compacts a plan imported from JSON, where the numbers do not come from the main line.
+	 * @throws IOException On error reading the test file.
+	 */
+	@Test
+	public void testCompactJsonPlan() throws IOException {
+		Node root = Engine.analyze(readPlan("test6.pex"));
+		Node compact = PlanTable.compact(root).getRoot();
+		checkSameTree(root, compact);
+		assertNull(compact.getParent());
+		assertNull(compact.findNodeContainingLines(0, 0));
+		Node child = compact.getChildren().get(1);
+		assertSame(child, compact.getChildren().get(1));
+		assertSame(compact, child.getParent());
+	}
+
+	/**
+	 * Parses generated plans straight into a table, which should give the same tree as the node parser.
+	 * @throws IOException Never, the plans are read from strings.
+	 */
+	@Test
+	public void testAnalyzeCompactGeneratedPlans() throws IOException {
+		PlanGenerator[] generators = {
+			new PlanGenerator(15).setTriggers(2),
+			new PlanGenerator(16).setMaxDepth(3).setSubPlanPercent(60).setInitPlanPercent(40).setNodeCount(1000),
+			new PlanGenerator(17).setMaxDepth(200).setFanOut(1).setNeverExecutedPercent(20).setLongFilterPercent(50).setNodeCount(1000),
+		};
+		for (PlanGenerator generator : generators) {
+			String text = generator.generate().getText();
+			Node root = Engine.analyze(text);
+			Node compact = Engine.analyzeCompact(new BufferedReader(new StringReader(text)));
+			assertTrue(compact instanceof CompactNode);
+			checkSameTree(root, compact);
+		}
+	}
+
+	/**
+	 * Parses text where lines are added to nodes that are not the last one read, where a node is not below the
+	 * root and where the plan is preceded by a header.
+	 * @throws IOException Never, the plans are read from strings.
+	 */
+	@Test
+	public void testAnalyzeCompactOddText() throws IOException {
+		String[] texts = {
+			"",
+			"QUERY PLAN\n----------\nGather  (cost=0.00..1.00 rows=10 width=4)\n (actual time=0.010..4.000 rows=10 loops=1)\n"
+				+ "  Workers Launched: 2\n"
+				+ "  ->  Parallel Seq Scan on a  (cost=0.00..1.00 rows=4 width=4) (actual time=0.010..3.000 rows=3 loops=3)\n",
+			"Hash Join  (cost=1.00..2.00 rows=10 width=4) (actual time=0.010..5.000 rows=10 loops=1)\n"
+				+ "  Hash Cond: (a.id = b.id)\n"
+				+ "  ->  Seq Scan on a  (cost=0.00..1.00 rows=10 width=4) (actual time=0.010..1.000 rows=10 loops=1)\n"
+				+ "        Buffers: shared hit=3 read=4\n"
+				+ "  ->  Hash  (cost=1.00..1.00 rows=10 width=4) (actual time=0.010..2.000 rows=10 loops=1)\n"
+				+ "        SubPlan 1\n"
+				+ "          ->  Result  (cost=0.00..0.01 rows=1 width=4) (actual time=0.001..0.001 rows=1 loops=10)\n"
+				+ "        ->  Seq Scan on b  (cost=0.00..1.00 rows=10 width=4) (never executed)\n"
+				+ "Trigger for constraint fk: time=1.500 calls=10\n"
+				+ "->  Seq Scan on c  (cost=0.00..1.00 rows=10 width=4) (actual time=0.010..1.000 rows=10 loops=1)\n"
+				+ "      Filter: (x > 1)\n",
+		};
+		for (String text : texts) {
+			Node root = Engine.analyze(text);
+			Node compact = Engine.analyzeCompact(new BufferedReader(new StringReader(text)));
+			checkSameTree(root, compact);
+		}
+	}
+
+	/**
+	 * Parses plans imported from JSON, XML and YAML straight into a table, where lines are added to nodes after
+	 * their children.
+	 * @throws IOException On error reading the test files.
+	 */
+	@Test
+	public void testAnalyzeCompactImportedPlans() throws IOException {
+		for (String name : new String[] { "test6.pex", "test7.pex", "test8.pex" }) {
+			Node root = Engine.analyze(readPlan(name));
+			Node compact = Engine.analyzeCompact(readPlan(name));
+			assertTrue(compact instanceof CompactNode);
+			checkSameTree(root, compact);
+		}
+	}
+
+	/**
+	 * Asks for the facades of a table from several threads at once, every thread should get the same facades.
+	 * @throws Exception If a thread fails.
+	 */
+	@Test
+	public void testFacadesFromSeveralThreads() throws Exception {
+		final PlanTable table = PlanTable.compact(Engine.analyze(new PlanGenerator(18).setNodeCount(20000).generate().getText()));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Node[]>> results = new ArrayList<Future<Node[]>>();
+			for (int t = 0; t < 4; t++) {
+				results.add(executor.submit(new Callable<Node[]>() {
+					@Override
+					public Node[] call() {
+						Node[] nodes = new Node[table.size()];
+						for (int i = 0; i < nodes.length; i++) {
+							nodes[i] = table.getNode(i);
+						}
+						return nodes;
+					}
+				}));
+			}
+			Node[] first = results.get(0).get();
+			for (Future<Node[]> result : results) {
+				Node[] nodes = result.get();
+				for (int i = 0; i < nodes.length; i++) {
+					assertSame(first[i], nodes[i]);
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param name The name of a test file.
+	 * @return A reader positioned at the explain of the test file.
+	 * @throws IOException On error reading the test file.
+	 */
+	private BufferedReader readPlan(String name) throws IOException {
+		BufferedReader br = new BufferedReader(new InputStreamReader(Engine.class.getResourceAsStream(name)));
+		String line = br.readLine();
+		while (!line.equals("-----")) {
+			line = br.readLine();
+		}
+		return br;
+	}
+
+	/**
+	 * Walks two trees side by side and compares every node.
+	 * @param expected The node tree.
+	 * @param actual The compact tree.
+	 */
+	private void checkSameTree(Node expected, Node actual) {
+		assertEquals(expected.toString(), actual.toString());
+		Deque<Node> expectedNodes = new ArrayDeque<Node>();
+		Deque<Node> actualNodes = new ArrayDeque<Node>();
+		expectedNodes.push(expected);
+		actualNodes.push(actual);
+		while (!expectedNodes.isEmpty()) {
+			Node e = expectedNodes.pop();
+			Node a = actualNodes.pop();
+			assertEquals(e.getMainLine(), a.getMainLine());
+			assertEquals(e.getExtraInformation(40), a.getExtraInformation(40));
+			assertEquals(e.getLoopCount(), a.getLoopCount());
+			assertEquals(e.getTimeInclusive(false), a.getTimeInclusive(false), 0);
+			assertEquals(e.getTimeInclusive(true), a.getTimeInclusive(true), 0);
+			assertEquals(e.getTimeExclusive(), a.getTimeExclusive(), 0);
+			assertEquals(e.getTotalTime(), a.getTotalTime(), 0);
+			assertEquals(e.getSubtreeNodeCount(), a.getSubtreeNodeCount());
+			assertEquals(e.getSubtreeMaxTimeExclusive(), a.getSubtreeMaxTimeExclusive(), 0);
+			assertEquals(e.getRowCountInfo().toString(), a.getRowCountInfo().toString());
+			assertEquals(e.getHeats(), a.getHeats());
+			assertEquals(e.getMetrics().getPlanRows(), a.getMetrics().getPlanRows());
+			assertEquals(e.isExecuted(), a.isExecuted());
+			assertEquals(e.findSubPlanNode(), a.findSubPlanNode());
+			assertEquals(e.getChildren().size(), a.getChildren().size());
+			for (int i = 0; i < e.getChildren().size(); i++) {
+				assertSame(a, a.getChildren().get(i).getParent());
+				expectedNodes.push(e.getChildren().get(i));
+				actualNodes.push(a.getChildren().get(i));
+			}
+		}
+	}
+}
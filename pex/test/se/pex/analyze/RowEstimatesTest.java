@@ -0,0 +1,116 @@
+package se.pex.analyze;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the q-errors of the row estimates and how the errors are carried upwards.
+ */
+public class RowEstimatesTest {
+	/** A join where the inner index scan finds no rows in most loops, and the join carries the scan error. */
+	private static final String PLAN =
+		"Sort  (cost=10.00..11.00 rows=100 width=4) (actual time=1.000..50.000 rows=100000 loops=1)\n"
+		+ "  ->  Nested Loop  (cost=0.00..10.00 rows=200 width=4) (actual time=0.010..40.000 rows=100000 loops=1)\n"
+		+ "        ->  Seq Scan on a  (cost=0.00..1.00 rows=100 width=4) (actual time=0.010..2.000 rows=100 loops=1)\n"
+		+ "        ->  Index Scan using b_pkey on b  (cost=0.00..0.10 rows=2 width=4) (actual time=0.010..0.300 rows=1000 loops=100)\n"
+		+ "        ->  Index Scan using c_pkey on c  (cost=0.00..0.10 rows=50 width=4) (actual time=0.010..0.001 rows=0 loops=100)\n";
+
+	/**
+	 * Calculates q-errors with 64 bit counts and over all loops.
+	 */
+	@Test
+	public void testQError() {
+		assertEquals(1f, RowEstimates.qError(10, 10, 1), 0);
+		assertEquals(10f, RowEstimates.qError(1, 10, 1), 0);
+		assertEquals(2.5f, RowEstimates.qError(5, 2, 1), 0);
+		assertEquals(6e9f, RowEstimates.qError(6000000000L, 1, 1), 1e3f);
+		// No rows in any loop counts as one row, the estimate was 50 rows in each of the 100 loops
+		assertEquals(5000f, RowEstimates.qError(0, 50, 100), 0);
+		assertEquals(-1f, RowEstimates.qError(10, -1, 1), 0);
+	}
+
+	/**
+	 * Newer versions write average rows with decimals, they are only rounded for all loops together.
+	 */
+	@Test
+	public void testFractionalRows() {
+		assertEquals(2.5f, RowEstimates.qError(0.4, 1, 100000), 0.0001f);
+		Node scan = Engine.analyze(
+			"Index Scan using b_pkey on b  (cost=0.00..0.10 rows=1 width=4) (actual time=0.010..0.020 rows=0.40 loops=100000)\n");
+		assertEquals(2.5f, scan.getQError(), 0.0001f);
+		assertEquals("2 ↑", scan.getRowCountInfo().toString());
+		Node json = Engine.analyze("[{\"Plan\": {\"Node Type\": \"Seq Scan\", \"Relation Name\": \"b\", \"Startup Cost\": 0.00, "
+			+ "\"Total Cost\": 0.10, \"Plan Rows\": 1, \"Plan Width\": 4, \"Actual Startup Time\": 0.010, "
+			+ "\"Actual Total Time\": 0.020, \"Actual Rows\": 0.40, \"Actual Loops\": 100000}}]");
+		assertEquals(2.5f, json.getQError(), 0.0001f);
+	}
+
+	/**
+	 * Decides where errors start from the q-errors alone, as both node models do.
+	 */
+	@Test
+	public void testSource() {
+		assertEquals(RowEstimates.NO_SOURCE, RowEstimates.source(1.5f, true, -1, false));
+		assertEquals(RowEstimates.NO_SOURCE, RowEstimates.source(-1, true, -1, false));
+		assertEquals(RowEstimates.CHILD_SOURCE, RowEstimates.source(-1, true, 10, false));
+		assertEquals(RowEstimates.OWN_SOURCE, RowEstimates.source(10, true, -1, false));
+		assertEquals(RowEstimates.CHILD_SOURCE, RowEstimates.source(15, true, 10, true));
+		assertEquals(RowEstimates.OWN_SOURCE, RowEstimates.source(25, true, 10, true));
+		assertEquals(RowEstimates.OWN_SOURCE, RowEstimates.source(15, true, 10, false));
+		assertTrue(RowEstimates.isWorse(-1, false, 3, true, 2));
+		assertFalse(RowEstimates.isWorse(5, false, 3, true, -1));
+		assertFalse(RowEstimates.isWorse(5, true, 3, true, 4));
+	}
+
+	/**
+	 * Asking for no nodes gives no nodes.
+	 */
+	@Test
+	public void testRankNone() {
+		assertTrue(RowEstimates.rank(Engine.analyze(PLAN), 0).isEmpty());
+	}
+
+	/**
+	 * Finds where the errors start, the nodes above carry the error of the worst child.
+	 */
+	@Test
+	public void testPropagation() {
+		Node sort = Engine.analyze(PLAN);
+		Node join = sort.getChildren().get(0);
+		Node scanB = join.getChildren().get(1);
+		Node scanC = join.getChildren().get(2);
+		assertNull(join.getChildren().get(0).getEstimateSource());
+		assertSame(scanB, scanB.getEstimateSource());
+		assertSame(scanC, scanC.getEstimateSource());
+		assertEquals(500f, scanB.getQError(), 0);
+		assertSame(scanB, join.getEstimateSource());
+		// The sort estimate is 2 times worse than the join, not enough for a new error
+		assertSame(scanB, sort.getEstimateSource());
+		List<Node> carriers = RowEstimates.getPropagation(scanB);
+		assertEquals(2, carriers.size());
+		assertSame(join, carriers.get(0));
+		assertSame(sort, carriers.get(1));
+		assertTrue(RowEstimates.getPropagation(scanC).isEmpty());
+
+		assertEquals(Heat.HIGH, scanC.getHeat(Heat.COUNT));
+		assertEquals("5000 ↑", scanC.getRowCountInfo().toString());
+
+		List<Node> ranked = RowEstimates.rank(sort, 10);
+		assertEquals(2, ranked.size());
+		assertSame(scanC, ranked.get(0));
+		assertSame(scanB, ranked.get(1));
+
+		Node compact = PlanTable.compact(sort).getRoot();
+		Node compactB = compact.getChildren().get(0).getChildren().get(1);
+		assertSame(compactB, compact.getEstimateSource());
+		assertEquals(500f, compactB.getQError(), 0);
+		assertSame(compact.getChildren().get(0).getChildren().get(2), RowEstimates.rank(compact, 1).get(0));
+	}
+}
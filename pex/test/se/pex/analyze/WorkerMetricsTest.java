@@ -0,0 +1,131 @@
+package se.pex.analyze;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the times of nodes run by parallel workers.
+ */
+public class WorkerMetricsTest {
+	/** A parallel aggregate, the scan runs in two workers and the leader. */
+	private static final String PLAN =
+		"Finalize Aggregate  (cost=1.00..2.00 rows=1 width=8) (actual time=100.000..100.000 rows=1 loops=1)\n"
+		+ "  ->  Gather  (cost=1.00..2.00 rows=3 width=8) (actual time=99.000..99.000 rows=3 loops=1)\n"
+		+ "        Workers Planned: 2\n"
+		+ "        Workers Launched: 2\n"
+		+ "        ->  Partial Aggregate  (cost=1.00..2.00 rows=1 width=8) (actual time=95.000..95.000 rows=1 loops=3)\n"
+		+ "              ->  Parallel Seq Scan on t  (cost=0.00..1.00 rows=333 width=4) (actual time=0.010..90.000 rows=333 loops=3)\n"
+		+ "                    Worker 0:  actual time=0.010..120.000 rows=500 loops=1\n"
+		+ "                    Worker 1:  actual time=0.010..60.000 rows=250 loops=1\n";
+
+	/**
+	 * The loops of the workers should not add up, and no exclusive time should be negative.
+	 */
+	@Test
+	public void testGather() {
+		Node root = Engine.analyze(PLAN);
+		Node gather = root.getChildren().get(0);
+		assertEquals(2, gather.getWorkersPlanned());
+		assertEquals(2, gather.getWorkersLaunched());
+		assertEquals(1, gather.getParallelism());
+		Node partial = gather.getChildren().get(0);
+		Node scan = partial.getChildren().get(0);
+		assertEquals(3, partial.getParallelism());
+		assertEquals(3, scan.getParallelism());
+		assertEquals(3, scan.getLoopCount());
+		assertEquals(90f, scan.getTimeInclusive(true), 0.001);
+		assertEquals(5f, partial.getTimeExclusive(), 0.001);
+		assertEquals(4f, gather.getTimeExclusive(), 0.001);
+		assertEquals(-1, scan.getWorkersLaunched());
+
+		Node compact = PlanTable.compact(root).getRoot().getChildren().get(0).getChildren().get(0);
+		assertEquals(3, compact.getParallelism());
+		assertEquals(95f, compact.getTimeInclusive(true), 0.001);
+	}
+
+	/**
+	 * Reads the worker lines, the leader does the rest of the work.
+	 */
+	@Test
+	public void testSkew() {
+		Node scan = Engine.analyze(PLAN).getChildren().get(0).getChildren().get(0).getChildren().get(0);
+		List<WorkerMetrics> workers = scan.getWorkers();
+		assertEquals(2, workers.size());
+		assertEquals(1, workers.get(1).getNumber());
+		assertEquals(250, workers.get(1).getActualRows());
+		assertEquals(120f, workers.get(0).getTime(), 0.001);
+		// The leader took 3 * 90 - 120 - 60 = 90 ms, the average is 90 ms
+		assertEquals(120f / 90f, scan.getWorkerSkew(), 0.001);
+		assertEquals(1f, scan.getParent().getWorkerSkew(), 0);
+	}
+
+	/**
+	 * Without the leader taking part, the scan is run by the workers only.
+	 */
+	@Test
+	public void testWithoutLeader() {
+		Node root = Engine.analyze(PLAN.replace("loops=3", "loops=2"));
+		Node scan = root.getChildren().get(0).getChildren().get(0).getChildren().get(0);
+		assertEquals(2, scan.getParallelism());
+		assertEquals(90f, scan.getTimeInclusive(true), 0.001);
+		assertTrue(root.getChildren().get(0).getTimeExclusive() >= 0);
+	}
+
+	/**
+	 * Reads the workers of a JSON plan.
+	 */
+	@Test
+	public void testJson() {
+		Node root = Engine.analyze("[{\"Plan\": {\"Node Type\": \"Gather\", \"Workers Planned\": 1, \"Workers Launched\": 1,\n"
+			+ "  \"Actual Startup Time\": 0.1, \"Actual Total Time\": 11.0, \"Actual Rows\": 2, \"Actual Loops\": 1,\n"
+			+ "  \"Plans\": [{\"Node Type\": \"Seq Scan\", \"Parallel Aware\": true, \"Relation Name\": \"a\",\n"
+			+ "    \"Actual Startup Time\": 0.01, \"Actual Total Time\": 10.0, \"Actual Rows\": 1, \"Actual Loops\": 2,\n"
+			+ "    \"Workers\": [{\"Worker Number\": 0, \"Actual Startup Time\": 0.01, \"Actual Total Time\": 15.0,\n"
+			+ "      \"Actual Rows\": 1, \"Actual Loops\": 1}]}]}}]");
+		Node scan = root.getChildren().get(0);
+		assertEquals(2, scan.getParallelism());
+		assertEquals(10f, scan.getTimeInclusive(true), 0.001);
+		assertEquals(1, scan.getWorkers().size());
+		assertEquals(1.5f, scan.getWorkerSkew(), 0.001);
+	}
+
+	/**
+	 * Reads the workers of the XML test file.
+	 * @throws IOException On error reading the test file.
+	 */
+	@Test
+	public void testXml() throws IOException {
+		checkTestFileWorkers(7);
+	}
+
+	/**
+	 * Reads the workers of the YAML test file.
+	 * @throws IOException On error reading the test file.
+	 */
+	@Test
+	public void testYaml() throws IOException {
+		checkTestFileWorkers(8);
+	}
+
+	/**
+	 * Checks the workers of the parallel scan in a test file, workers without times are left out.
+	 * @param index The file index.
+	 * @throws IOException On error reading the test file.
+	 */
+	private static void checkTestFileWorkers(int index) throws IOException {
+		Node join = Engine.analyze(EngineTest.readExplain(index)).getChildren().get(1).getChildren().get(1);
+		Node scan = join.getChildren().get(0);
+		assertTrue(scan.getMainLine().contains("Parallel Seq Scan on table4"));
+		List<WorkerMetrics> workers = scan.getWorkers();
+		assertEquals(2, workers.size());
+		assertEquals(1, workers.get(1).getNumber());
+		assertEquals(0.003f, workers.get(1).getTotalTime(), 0.0001);
+		assertEquals(1, workers.get(1).getLoops());
+		assertEquals(0, join.getWorkers().size());
+	}
+}
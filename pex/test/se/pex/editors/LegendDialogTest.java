@@ -0,0 +1,37 @@
+package se.pex.editors;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+import se.pex.analyze.Heat;
+
+/**
+ * A test for the legend texts.
+ */
+public class LegendDialogTest {
+	/**
+	 * The legend follows the scale and levels the nodes are colored on.
+	 */
+	@Test
+	public void testDescribeLevels() {
+		Heat fixed = new Heat(Heat.Scale.Fixed, new float[] { 5, 20, 60 }, new float[] { 2, 8, 64 }, new float[] { 10, 50, 90 });
+		assertArrayEquals(new String[] { "The time is > 60 % of the total query time.", "The time is > 20 % of the total query time.",
+			"The time is > 5 % of the total query time." }, LegendDialog.describeLevels(fixed, Heat.EXCLUSIVE));
+		assertArrayEquals(new String[] { "The rowcount ratio > 64", "The rowcount ratio > 8", "The rowcount ratio > 2" },
+			LegendDialog.describeLevels(fixed, Heat.COUNT));
+		assertArrayEquals(new String[] { "The blocks read are > 90 % of the blocks read by the query.",
+			"The blocks read are > 50 % of the blocks read by the query.", "The blocks read are > 10 % of the blocks read by the query." },
+			LegendDialog.describeLevels(fixed, Heat.IO));
+
+		Heat absolute = new Heat(Heat.Scale.Absolute, new float[] { 0.5f, 10, 100 }, new float[] { 10, 100, 1000 }, new float[] { 10, 50, 90 });
+		assertArrayEquals(new String[] { "The time is > 100 ms.", "The time is > 10 ms.", "The time is > 0.5 ms." },
+			LegendDialog.describeLevels(absolute, Heat.INCLUSIVE));
+
+		float[] percentiles = { 75, 90, 99.5f };
+		Heat percentile = new Heat(Heat.Scale.Percentile, percentiles, percentiles, percentiles);
+		assertArrayEquals(new String[] { "The blocks read are at or above percentile 99.5 of the nodes.",
+			"The blocks read are at or above percentile 90 of the nodes.", "The blocks read are at or above percentile 75 of the nodes." },
+			LegendDialog.describeLevels(percentile, Heat.IO));
+	}
+}
@@ -0,0 +1,115 @@
+package se.pex.editors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.junit.Test;
+
+import se.pex.analyze.Engine;
+import se.pex.analyze.Node;
+
+/**
+ * A test for the reader of the analyze job, the JSON and XML parsers read blocks of characters and must also
+ * report progress and stop when the job is canceled.
+ */
+public class MonitoredReaderTest {
+	/** Number of nodes of the generated plans. */
+	private static final int NODE_COUNT = 20000;
+
+	/**
+	 * A monitor that counts the work done, and cancels itself after a number of progress updates.
+	 */
+	private static class CountingMonitor extends NullProgressMonitor {
+		/** Number of progress updates before the job is canceled, <code>-1</code> to never cancel. */
+		private final int cancelAfter;
+
+		/** Number of progress updates. */
+		private int updates;
+
+		/** The work done. */
+		private int work;
+
+		/**
+		 * Creates a new monitor.
+		 * @param cancelAfter Number of progress updates before the job is canceled, <code>-1</code> to never cancel.
+		 */
+		private CountingMonitor(int cancelAfter) {
+			this.cancelAfter = cancelAfter;
+		}
+
+		/**
+		 * @see org.eclipse.core.runtime.NullProgressMonitor#worked(int)
+		 */
+		@Override
+		public void worked(int amount) {
+			work += amount;
+			if (++updates == cancelAfter) {
+				setCanceled(true);
+			}
+		}
+	}
+
+	/**
+	 * @return A JSON plan with an Append node and many scans below it.
+	 */
+	private static String jsonPlan() {
+		StringBuilder res = new StringBuilder("[{\"Plan\": {\"Node Type\": \"Append\", \"Plans\": [");
+		for (int i = 0; i < NODE_COUNT; i++) {
+			res.append(i == 0 ? "" : ", ").append("{\"Node Type\": \"Seq Scan\", \"Relation Name\": \"t").append(i)
+				.append("\", \"Startup Cost\": 0.00, \"Total Cost\": 1.00, \"Plan Rows\": 1, \"Plan Width\": 4}");
+		}
+		return res.append("]}}]").toString();
+	}
+
+	/**
+	 * @return An XML plan with an Append node and many scans below it.
+	 */
+	private static String xmlPlan() {
+		StringBuilder res = new StringBuilder("<explain xmlns=\"http://www.postgresql.org/2009/explain\"><Query><Plan>"
+			+ "<Node-Type>Append</Node-Type><Plans>");
+		for (int i = 0; i < NODE_COUNT; i++) {
+			res.append("<Plan><Node-Type>Seq Scan</Node-Type><Relation-Name>t").append(i).append("</Relation-Name>")
+				.append("<Startup-Cost>0.00</Startup-Cost><Total-Cost>1.00</Total-Cost><Plan-Rows>1</Plan-Rows>")
+				.append("<Plan-Width>4</Plan-Width></Plan>");
+		}
+		return res.append("</Plans></Plan></Query></explain>").toString();
+	}
+
+	/**
+	 * Analyzes JSON and XML plans to the end, the progress should cover the whole input.
+	 * @throws IOException Never, the plans are read from strings.
+	 */
+	@Test
+	public void testProgress() throws IOException {
+		for (String plan : new String[] { jsonPlan(), xmlPlan() }) {
+			CountingMonitor monitor = new CountingMonitor(-1);
+			Node root = Engine.analyze(new MonitoredReader(new StringReader(plan), monitor));
+			assertEquals(NODE_COUNT + 1, root.getSubtreeNodeCount());
+			assertTrue(monitor.work > plan.length() / MonitoredReader.WORK_UNIT / 2);
+		}
+	}
+
+	/**
+	 * Cancels the analysis of JSON and XML plans after the first progress update.
+	 * @throws IOException Never, the plans are read from strings.
+	 */
+	@Test
+	public void testCancel() throws IOException {
+		for (String plan : new String[] { jsonPlan(), xmlPlan() }) {
+			CountingMonitor monitor = new CountingMonitor(1);
+			try {
+				Engine.analyze(new MonitoredReader(new StringReader(plan), monitor));
+				fail("The analysis should have been canceled");
+			}
+			catch (OperationCanceledException e) {
+				assertTrue(monitor.work < plan.length() / MonitoredReader.WORK_UNIT / 2);
+			}
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package se.pex.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so that the allocation rate is reported next to the times.
+ * Any JMH command line options can be given, for example <code>EngineBenchmark -p nodes=1000</code>
+ * to run a single benchmark class with one plan size.
+ * The JMH_LIB classpath variable must point to a directory with the JMH jars, and annotation
+ * processing must be enabled so that the benchmark code is generated.
+ */
+public class BenchmarkMain {
+
+	/**
+	 * Runs the benchmarks.
+	 * @param args JMH command line options.
+	 * @throws RunnerException On error running the benchmarks.
+	 * @throws CommandLineOptionException On invalid options.
+	 */
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		ChainedOptionsBuilder options = new OptionsBuilder()
+			.parent(commandLine)
+			.addProfiler(GCProfiler.class);
+		if (commandLine.getIncludes().isEmpty()) {
+			options.include("se\\.pex\\.benchmark\\..*");
+		}
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,99 @@
+package se.pex.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.pex.analyze.Engine;
+import se.pex.analyze.Node;
+import se.pex.analyze.PlanLog;
+
+/**
+ * Measures analyzing all plans of an auto_explain log with different numbers of threads.
+ * The scaling is the time with one thread divided by the time with more threads, for a 1GB log run with
+ * <code>BulkAnalyzeBenchmark -p megabytes=1024 -jvmArgsAppend -Xmx32g</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BulkAnalyzeBenchmark {
+	/** Number of threads. */
+	@Param({ "1", "2", "4", "8", "16" })
+	public int threads;
+
+	/** Approximate size of the log. */
+	@Param({ "64" })
+	public int megabytes;
+
+	/** The log file. */
+	private File file;
+
+	/** The indexed log. */
+	private PlanLog log;
+
+	/** Runs the tasks. */
+	private ExecutorService executor;
+
+	/**
+	 * Writes and indexes the log.
+	 * @throws IOException On error writing the log.
+	 */
+	@Setup
+	public void setup() throws IOException {
+		file = File.createTempFile("pexbenchmark", ".log");
+		PlanBuilder.buildLog(file, megabytes);
+		log = PlanLog.index(file, Charset.forName("UTF-8"));
+		executor = Executors.newFixedThreadPool(threads);
+	}
+
+	/**
+	 * Removes the log.
+	 */
+	@TearDown
+	public void tearDown() {
+		executor.shutdownNow();
+		file.delete();
+	}
+
+	/**
+	 * @return The analyzed trees.
+	 * @throws IOException On error reading the log.
+	 */
+	@Benchmark
+	public List<Node> analyzeAll() throws IOException {
+		return Engine.analyzeAll(log, executor);
+	}
+
+	/**
+	 * @return The analyzed trees, one plan at a time without the cache.
+	 * @throws IOException On error reading the log.
+	 */
+	@Benchmark
+	public int analyzeSequential() throws IOException {
+		int nodes = 0;
+		for (int i = 0; i < log.size(); i++) {
+			nodes += Engine.analyze(log.getPlanText(i)).getSubtreeNodeCount();
+		}
+		return nodes;
+	}
+}
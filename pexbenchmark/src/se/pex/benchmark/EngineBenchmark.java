@@ -0,0 +1,68 @@
+package se.pex.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.pex.analyze.Engine;
+import se.pex.analyze.Node;
+
+/**
+ * Measures analyzing explain texts of different sizes and shapes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EngineBenchmark {
+	/** The shape of the plan. */
+	@Param({ "wide", "deep", "subplan" })
+	public String shape;
+
+	/** Approximate number of nodes in the plan. */
+	@Param({ "10", "1000", "100000", "1000000" })
+	public int nodes;
+
+	/** The explain text. */
+	private String text;
+
+	/**
+	 * Builds the explain text.
+	 */
+	@Setup
+	public void setup() {
+		text = PlanBuilder.build(shape, nodes);
+	}
+
+	/**
+	 * @return The analyzed tree.
+	 */
+	@Benchmark
+	public Node analyzeString() {
+		return Engine.analyze(text);
+	}
+
+	/**
+	 * @return The analyzed tree.
+	 * @throws IOException Never, the text is read from a string.
+	 */
+	@Benchmark
+	public Node analyzeReader() throws IOException {
+		return Engine.analyze(new BufferedReader(new StringReader(text)));
+	}
+}
@@ -0,0 +1,114 @@
+package se.pex.benchmark;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import se.pex.analyze.Engine;
+import se.pex.analyze.Node;
+
+/**
+ * Measures reading the metrics of every node in a tree, like the label providers do on a repaint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NodeMetricsBenchmark {
+	/** The shape of the plan. */
+	@Param({ "wide", "deep", "subplan" })
+	public String shape;
+
+	/** Approximate number of nodes in the plan. */
+	@Param({ "10", "1000", "100000", "1000000" })
+	public int nodes;
+
+	/** All nodes in the tree. */
+	private Node[] all;
+
+	/**
+	 * Analyzes the plan and collects the nodes.
+	 */
+	@Setup
+	public void setup() {
+		Node root = Engine.analyze(PlanBuilder.build(shape, nodes));
+		List<Node> list = new ArrayList<Node>();
+		Deque<Node> stack = new ArrayDeque<Node>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			list.add(node);
+			for (Node child : node.getChildren()) {
+				stack.push(child);
+			}
+		}
+		all = list.toArray(new Node[list.size()]);
+	}
+
+	/**
+	 * @param hole Consumes the values.
+	 */
+	@Benchmark
+	public void timeInclusive(Blackhole hole) {
+		for (Node node : all) {
+			hole.consume(node.getTimeInclusive(true));
+		}
+	}
+
+	/**
+	 * @param hole Consumes the values.
+	 */
+	@Benchmark
+	public void timeExclusive(Blackhole hole) {
+		for (Node node : all) {
+			hole.consume(node.getTimeExclusive());
+		}
+	}
+
+	/**
+	 * @param hole Consumes the values.
+	 */
+	@Benchmark
+	public void totalTime(Blackhole hole) {
+		for (Node node : all) {
+			hole.consume(node.getTotalTime());
+		}
+	}
+
+	/**
+	 * @param hole Consumes the values.
+	 */
+	@Benchmark
+	public void rowCountInfo(Blackhole hole) {
+		for (Node node : all) {
+			hole.consume(node.getRowCountInfo());
+		}
+	}
+
+	/**
+	 * @param hole Consumes the values.
+	 */
+	@Benchmark
+	public void loopCount(Blackhole hole) {
+		for (Node node : all) {
+			hole.consume(node.getLoopCount());
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package se.pex.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import se.pex.analyze.PlanGenerator;
+
+/**
+ * Builds explain analyze texts of a given size and shape for the benchmarks.
+ */
+public class PlanBuilder {
+	/** Seed for the generator, the same plans are measured on every run. */
+	private static final long SEED = 4711;
+
+	/**
+	 * Builds an explain text.
+	 * @param shape The shape of the plan, <code>wide</code>, <code>deep</code> or <code>subplan</code>.
+	 * @param nodes The number of nodes in the plan.
+	 * @return The explain as given by psql.
+	 */
+	public static String build(String shape, int nodes) {
+		PlanGenerator generator = new PlanGenerator(SEED).setNodeCount(nodes);
+		if ("deep".equals(shape)) {
+			generator.setMaxDepth(100).setFanOut(1).setSubPlanPercent(0).setInitPlanPercent(0);
+		}
+		else if ("subplan".equals(shape)) {
+			generator.setMaxDepth(4).setFanOut(2).setSubPlanPercent(50).setInitPlanPercent(20);
+		}
+		else {
+			generator.setMaxDepth(1).setSubPlanPercent(0).setInitPlanPercent(0);
+		}
+		return generator.generate().getText();
+	}
+
+	/**
+	 * Writes an auto_explain log with plans of different shapes and sizes mixed with other log lines.
+	 * @param file The file to write.
+	 * @param megabytes Approximate size of the log.
+	 * @throws IOException On error writing the file.
+	 */
+	public static void buildLog(File file, int megabytes) throws IOException {
+		String[] shapes = { "wide", "deep", "subplan" };
+		long size = megabytes * 1024L * 1024L;
+		long written = 0;
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		try {
+			for (int i = 0; written < size; i++) {
+				StringBuilder entry = new StringBuilder();
+				entry.append("2015-03-01 10:00:00 CET LOG:  duration: ").append(i).append(".000 ms  plan:\n");
+				entry.append("\tQuery Text: select ").append(i).append('\n');
+				PlanGenerator generator = new PlanGenerator(SEED + i).setNodeCount(10 + i % 200);
+				if ("deep".equals(shapes[i % 3])) {
+					generator.setMaxDepth(100).setFanOut(1);
+				}
+				else if ("wide".equals(shapes[i % 3])) {
+					generator.setMaxDepth(1);
+				}
+				for (String line : generator.generate().getText().split("\n")) {
+					entry.append('\t').append(line).append('\n');
+				}
+				entry.append("2015-03-01 10:00:00 CET LOG:  statement: select ").append(i).append('\n');
+				out.write(entry.toString());
+				written += entry.length();
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+}